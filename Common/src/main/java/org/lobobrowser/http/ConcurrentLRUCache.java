@@ -0,0 +1,539 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lobobrowser.util.EventDispatch2;
+import org.lobobrowser.util.RemovalDispatch;
+import org.lobobrowser.util.RemovalEvent;
+import org.lobobrowser.util.RemovalListener;
+
+/**
+ * A thread safe, size bounded cache with a segmented least-recently-used
+ * policy. Unlike {@link LRUCache} it needs no external synchronization and
+ * every operation is O(1).
+ * <p>
+ * Keys are spread over lock-striped segments, so concurrent callers rarely
+ * wait for each other. Within a segment a new entry goes to a probation list
+ * and is promoted to a protected list on its first hit. Eviction takes the
+ * least recently used probation entry first, so a burst of entries that are
+ * used once cannot flush the entries that are used repeatedly. Sizes are
+ * accounted against one budget shared by all segments, and victims are taken
+ * from the segments in turn.
+ * <p>
+ * Removal listeners are called without any lock held, on the thread that
+ * caused the removal.
+ */
+public class ConcurrentLRUCache {
+
+    /** The number of segments, a power of two. */
+    private static final int SEGMENTS = 16;
+
+    /** The share of a segment's budget that protected entries may use. */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /** The segments. */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /** The approx max size. */
+    private volatile int approxMaxSize;
+
+    /** The current size. */
+    private final AtomicLong currentSize = new AtomicLong();
+
+    /** The next segment to evict from. */
+    private final AtomicInteger evictionCursor = new AtomicInteger();
+
+    /** The hit count. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The miss count. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The eviction count. */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /** The removal event. */
+    private final EventDispatch2 removalEvent = new RemovalDispatch();
+
+    /**
+     * Instantiates a new concurrent LRU cache.
+     *
+     * @param approxMaxSize
+     *            the approx max size
+     */
+    public ConcurrentLRUCache(int approxMaxSize) {
+        this.approxMaxSize = approxMaxSize;
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment();
+        }
+    }
+
+    /** Gets the approx max size.
+     *
+     * @return the approx max size
+     */
+    public int getApproxMaxSize() {
+        return this.approxMaxSize;
+    }
+
+    /** Sets the approx max size. Entries are evicted right away if the cache
+     * no longer fits.
+     *
+     * @param approxMaxSize
+     *            the new approx max size
+     */
+    public void setApproxMaxSize(int approxMaxSize) {
+        this.approxMaxSize = approxMaxSize;
+        this.evict(null);
+    }
+
+    /**
+     * Gets the value of a key, counting a hit or a miss.
+     *
+     * @param key
+     *            the key
+     * @return the value, or null
+     */
+    public Object get(Object key) {
+        Segment segment = this.segmentFor(key);
+        Object value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            this.missCount.incrementAndGet();
+        } else {
+            this.hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Put.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param approxSize
+     *            the approx size
+     */
+    public void put(Object key, Object value, int approxSize) {
+        if (approxSize > this.approxMaxSize) {
+            // Can't be inserted.
+            return;
+        }
+        Segment segment = this.segmentFor(key);
+        Node node;
+        Object oldValue;
+        synchronized (segment) {
+            node = segment.nodes.get(key);
+            if (node == null) {
+                node = new Node(key, value, approxSize);
+                segment.nodes.put(key, node);
+                segment.probation.append(node);
+                this.currentSize.addAndGet(approxSize);
+                oldValue = null;
+            } else {
+                oldValue = node.value;
+                node.value = value;
+                segment.resize(node, approxSize);
+                segment.touch(node);
+            }
+        }
+        if (oldValue != null && oldValue != value) {
+            this.removalEvent.fireEvent(new RemovalEvent(this, oldValue));
+        }
+        this.evict(node);
+    }
+
+    /**
+     * Removes the.
+     *
+     * @param key
+     *            the key
+     * @return the object
+     */
+    public Object remove(Object key) {
+        Segment segment = this.segmentFor(key);
+        Node node;
+        synchronized (segment) {
+            node = segment.nodes.remove(key);
+            if (node != null) {
+                segment.unlink(node);
+            }
+        }
+        if (node == null) {
+            return null;
+        }
+        this.removalEvent.fireEvent(new RemovalEvent(this, node.value));
+        return node.value;
+    }
+
+    /**
+     * Adds the removal listener.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addRemovalListener(RemovalListener listener) {
+        this.removalEvent.addListener(listener);
+    }
+
+    /**
+     * Removes the removal listener.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeRemovalListener(RemovalListener listener) {
+        this.removalEvent.removeListener(listener);
+    }
+
+    /** Gets the approx size.
+     *
+     * @return the approx size
+     */
+    public int getApproxSize() {
+        return (int) this.currentSize.get();
+    }
+
+    /** Gets the num entries.
+     *
+     * @return the num entries
+     */
+    public int getNumEntries() {
+        int count = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                count += segment.nodes.size();
+            }
+        }
+        return count;
+    }
+
+    /** Gets the entry info list.
+     *
+     * @return the entry info list
+     */
+    public List<EntryInfo> getEntryInfoList() {
+        List<EntryInfo> list = new ArrayList<EntryInfo>();
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                for (Node node : segment.nodes.values()) {
+                    Object value = node.value;
+                    Class<?> vc = value == null ? null : value.getClass();
+                    list.add(new EntryInfo(vc, node.size));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** Gets the number of lookups that found a value.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /** Gets the number of lookups that found no value.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /** Gets the number of entries removed to make room for others.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * Gets the segment of a key.
+     *
+     * @param key
+     *            the key
+     * @return the segment
+     */
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Evicts entries until the cache is within its budget. Probation entries
+     * of every segment are evicted before any protected entry.
+     *
+     * @param keep
+     *            an entry that must not be evicted, or null
+     */
+    private void evict(Node keep) {
+        int misses = 0;
+        while (this.currentSize.get() > this.approxMaxSize
+                && misses < 2 * SEGMENTS) {
+            Segment segment = this.segments[this.evictionCursor
+                    .getAndIncrement() & (SEGMENTS - 1)];
+            Node victim;
+            synchronized (segment) {
+                victim = segment.evictOne(keep, misses >= SEGMENTS);
+            }
+            if (victim == null) {
+                misses++;
+            } else {
+                misses = 0;
+                this.evictionCount.incrementAndGet();
+                this.removalEvent.fireEvent(new RemovalEvent(this, victim.value));
+            }
+        }
+    }
+
+    /**
+     * A cache entry, linked into the probation or protected list of its
+     * segment.
+     */
+    private static final class Node {
+
+        /** The key. */
+        private final Object key;
+
+        /** The value. */
+        private Object value;
+
+        /** The approximate size. */
+        private int size;
+
+        /** The list holding the node. */
+        private NodeList list;
+
+        /** The previous node. */
+        private Node prev;
+
+        /** The next node. */
+        private Node next;
+
+        /**
+         * Instantiates a new node.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param size
+         *            the size
+         */
+        private Node(Object key, Object value, int size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A doubly linked list of nodes, least recently used first.
+     */
+    private static final class NodeList {
+
+        /** The sentinel, whose next node is the head. */
+        private final Node sentinel = new Node(null, null, 0);
+
+        /** The total size of the nodes. */
+        private long size;
+
+        /**
+         * Instantiates a new node list.
+         */
+        private NodeList() {
+            this.sentinel.prev = this.sentinel;
+            this.sentinel.next = this.sentinel;
+        }
+
+        /**
+         * Gets the least recently used node.
+         *
+         * @return the node, or null if the list is empty
+         */
+        private Node head() {
+            Node head = this.sentinel.next;
+            return head == this.sentinel ? null : head;
+        }
+
+        /**
+         * Gets the node after another one.
+         *
+         * @param node
+         *            the node
+         * @return the next node, or null at the end of the list
+         */
+        private Node after(Node node) {
+            Node next = node.next;
+            return next == this.sentinel ? null : next;
+        }
+
+        /**
+         * Appends a node as the most recently used.
+         *
+         * @param node
+         *            the node
+         */
+        private void append(Node node) {
+            Node last = this.sentinel.prev;
+            node.prev = last;
+            node.next = this.sentinel;
+            last.next = node;
+            this.sentinel.prev = node;
+            node.list = this;
+            this.size += node.size;
+        }
+
+        /**
+         * Removes a node.
+         *
+         * @param node
+         *            the node
+         */
+        private void remove(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            node.list = null;
+            this.size -= node.size;
+        }
+    }
+
+    /**
+     * A lock stripe of the cache. All access is synchronized on the segment.
+     */
+    private final class Segment {
+
+        /** The nodes by key. */
+        private final Map<Object, Node> nodes = new HashMap<Object, Node>();
+
+        /** The entries that have not been hit since they were added. */
+        private final NodeList probation = new NodeList();
+
+        /** The entries that have been hit at least once. */
+        private final NodeList protectedList = new NodeList();
+
+        /**
+         * Gets the value of a key and records the access.
+         *
+         * @param key
+         *            the key
+         * @return the value, or null
+         */
+        private Object get(Object key) {
+            Node node = this.nodes.get(key);
+            if (node == null) {
+                return null;
+            }
+            this.touch(node);
+            return node.value;
+        }
+
+        /**
+         * Moves a node to the tail of the protected list, demoting the least
+         * recently used protected nodes if the list is over its share.
+         *
+         * @param node
+         *            the node
+         */
+        private void touch(Node node) {
+            node.list.remove(node);
+            this.protectedList.append(node);
+            long maxProtected = (long) approxMaxSize * PROTECTED_PERCENT / 100 / SEGMENTS;
+            Node head;
+            while (this.protectedList.size > maxProtected
+                    && (head = this.protectedList.head()) != node) {
+                this.protectedList.remove(head);
+                this.probation.append(head);
+            }
+        }
+
+        /**
+         * Changes the size of a node.
+         *
+         * @param node
+         *            the node
+         * @param size
+         *            the new size
+         */
+        private void resize(Node node, int size) {
+            int delta = size - node.size;
+            node.list.size += delta;
+            node.size = size;
+            currentSize.addAndGet(delta);
+        }
+
+        /**
+         * Unlinks a node removed from the map.
+         *
+         * @param node
+         *            the node
+         */
+        private void unlink(Node node) {
+            node.list.remove(node);
+            currentSize.addAndGet(-node.size);
+        }
+
+        /**
+         * Removes the least recently used node, preferring probation nodes.
+         *
+         * @param keep
+         *            a node that must not be removed, or null
+         * @param evictProtected
+         *            whether a protected node may be removed if there is no
+         *            probation node
+         * @return the removed node, or null if there is none to remove
+         */
+        private Node evictOne(Node keep, boolean evictProtected) {
+            Node victim = this.probation.head();
+            if (victim == keep && victim != null) {
+                victim = this.probation.after(victim);
+            }
+            if (victim == null && evictProtected) {
+                victim = this.protectedList.head();
+                if (victim == keep && victim != null) {
+                    victim = this.protectedList.after(victim);
+                }
+            }
+            if (victim != null) {
+                this.nodes.remove(victim.key);
+                this.unlink(victim);
+            }
+            return victim;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a body sent with one <code>Content-Encoding</code>.
+ *
+ * @see ContentDecoders#register(String, ContentDecoder)
+ */
+public interface ContentDecoder {
+
+    /**
+     * Wraps an encoded stream in one that reads the decoded bytes as they
+     * are needed.
+     *
+     * @param in
+     *            the encoded stream
+     * @return the decoded stream, which closes <code>in</code> when it is
+     *         closed
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
@@ -0,0 +1,233 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The decoders of the <code>Content-Encoding</code> values the browser
+ * accepts.
+ * <p>
+ * <code>gzip</code> and <code>deflate</code> are always available.
+ * <code>br</code> is available when a pure Java brotli decoder, such as
+ * <code>org.brotli.dec.BrotliInputStream</code>, is on the class path, and
+ * others can be added with {@link #register(String, ContentDecoder)}. Only
+ * the registered encodings are advertised in <code>Accept-Encoding</code>,
+ * so a server never sends one that cannot be decoded.
+ */
+public final class ContentDecoders {
+
+    /** The Constant logger. */
+    private static final Logger logger = Logger
+            .getLogger(ContentDecoders.class.getName());
+
+    /** The class of the optional brotli decoder. */
+    private static final String BROTLI_CLASS = "org.brotli.dec.BrotliInputStream";
+
+    /** The decoders by lower case encoding, in order of preference. */
+    private static final Map<String, ContentDecoder> decoders = new LinkedHashMap<String, ContentDecoder>();
+
+    /** The accept encoding header value. */
+    private static volatile String acceptEncoding;
+
+    static {
+        ContentDecoder gzip = new ContentDecoder() {
+            @Override
+            public InputStream decode(InputStream in) throws IOException {
+                return new GZIPInputStream(in, 8192);
+            }
+        };
+        register("gzip", gzip);
+        register("deflate", new ContentDecoder() {
+            @Override
+            public InputStream decode(InputStream in) throws IOException {
+                return inflate(in);
+            }
+        });
+        try {
+            final Constructor<?> brotli = Class.forName(BROTLI_CLASS)
+                    .getConstructor(InputStream.class);
+            register("br", new ContentDecoder() {
+                @Override
+                public InputStream decode(InputStream in) throws IOException {
+                    try {
+                        return (InputStream) brotli.newInstance(in);
+                    } catch (Exception err) {
+                        throw new IOException("Unable to decode brotli", err);
+                    }
+                }
+            });
+        } catch (ClassNotFoundException cnf) {
+            // Brotli is not accepted.
+        } catch (Exception err) {
+            logger.log(Level.WARNING, "Unable to load " + BROTLI_CLASS, err);
+        }
+        // Not advertised, but still sent by old servers.
+        synchronized (decoders) {
+            decoders.put("x-gzip", gzip);
+        }
+    }
+
+    /**
+     * Instantiates a new content decoders.
+     */
+    private ContentDecoders() {
+    }
+
+    /**
+     * Registers the decoder of an encoding, replacing any previous one, and
+     * adds the encoding to <code>Accept-Encoding</code>.
+     *
+     * @param encoding
+     *            the encoding, such as <code>br</code>
+     * @param decoder
+     *            the decoder
+     */
+    public static void register(String encoding, ContentDecoder decoder) {
+        synchronized (decoders) {
+            decoders.put(encoding.toLowerCase(), decoder);
+            StringBuilder sb = new StringBuilder();
+            for (String name : decoders.keySet()) {
+                if (!name.startsWith("x-")) {
+                    if (sb.length() > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(name);
+                }
+            }
+            acceptEncoding = sb.toString();
+        }
+    }
+
+    /**
+     * Gets the value of the <code>Accept-Encoding</code> request header.
+     *
+     * @return the accept encoding, such as <code>gzip, deflate</code>
+     */
+    public static String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Checks whether a body needs decoding.
+     *
+     * @param contentEncoding
+     *            the <code>Content-Encoding</code> header, or null
+     * @return true, if the encoding is not blank and not
+     *         <code>identity</code>
+     */
+    public static boolean isEncoded(String contentEncoding) {
+        if (contentEncoding == null) {
+            return false;
+        }
+        StringTokenizer tok = new StringTokenizer(contentEncoding, ", \t");
+        while (tok.hasMoreTokens()) {
+            if (!"identity".equalsIgnoreCase(tok.nextToken())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps a body in the decoders of its <code>Content-Encoding</code>. The
+     * encodings are listed in the order they were applied, so they are
+     * undone from last to first.
+     *
+     * @param in
+     *            the body as sent
+     * @param contentEncoding
+     *            the <code>Content-Encoding</code> header, or null
+     * @return the decoded body, which is <code>in</code> if there is nothing
+     *         to decode
+     * @throws IOException
+     *             if an encoding is not supported or the body is corrupt
+     */
+    public static InputStream decode(InputStream in, String contentEncoding)
+            throws IOException {
+        if (!isEncoded(contentEncoding)) {
+            return in;
+        }
+        String[] encodings = contentEncoding.split("[, \t]+");
+        InputStream result = in;
+        for (int i = encodings.length - 1; i >= 0; i--) {
+            String encoding = encodings[i].toLowerCase();
+            if ((encoding.length() == 0) || "identity".equals(encoding)) {
+                continue;
+            }
+            ContentDecoder decoder;
+            synchronized (decoders) {
+                decoder = decoders.get(encoding);
+            }
+            if (decoder == null) {
+                throw new IOException("Unsupported content encoding: "
+                        + encoding);
+            }
+            result = decoder.decode(result);
+        }
+        return result;
+    }
+
+    /**
+     * Inflates a <code>deflate</code> body. It should be in the zlib format,
+     * but some servers send raw deflate data, so the zlib header is checked
+     * first.
+     *
+     * @param in
+     *            the in
+     * @return the input stream
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        BufferedInputStream bin = new BufferedInputStream(in, 8192);
+        bin.mark(2);
+        int cmf = bin.read();
+        int flg = bin.read();
+        bin.reset();
+        boolean zlib = (cmf != -1) && (flg != -1) && ((cmf & 0x0F) == 8)
+                && ((((cmf << 8) | flg) % 31) == 0);
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(bin, inflater, 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // Not done by the stream for an inflater it did not
+                    // create.
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
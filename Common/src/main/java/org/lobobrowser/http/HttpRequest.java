@@ -24,8 +24,14 @@ import java.awt.Image;
 import java.awt.Toolkit;
 import java.beans.PropertyChangeListener;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.util.Arrays;
 
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
@@ -37,6 +43,23 @@ import org.w3c.dom.Document;
  * The Class HttpRequestImpl.
  */
 public class HttpRequest extends AbstractBean {
+
+    /** The response type of a body read as text, the default. */
+    public static final String RESPONSE_TYPE_TEXT = "text";
+
+    /**
+     * The response type of a body only available as bytes, which is never
+     * converted to text.
+     */
+    public static final String RESPONSE_TYPE_ARRAYBUFFER = "arraybuffer";
+
+    /**
+     * The largest initial size of the response buffer. A larger body makes
+     * the buffer grow as it arrives, so a bogus Content-Length cannot
+     * allocate memory up front.
+     */
+    private static final int MAX_INITIAL_BUFFER_SIZE = 1024 * 1024;
+
     /**
      * The ReadyState of this HttpRequestImpl.
      */
@@ -71,8 +94,20 @@ public class HttpRequest extends AbstractBean {
      */
     /** The image ref. */
     private WeakReference<Image> imageRef;
-    /** The buffer. */
-    private ByteArrayOutputStream buffer;
+    /** The body received so far, or null. */
+    private volatile ResponseBuffer buffer;
+
+    /** The charset of the body. */
+    private volatile String charset;
+
+    /** The number of bytes of the body received so far. */
+    private volatile long bytesReceived;
+
+    /** The response type. */
+    private String responseType = RESPONSE_TYPE_TEXT;
+
+    /** The file the body is written to instead of memory, or null. */
+    private File responseFile;
     
     /** The response xml. */
     private Document responseXML;
@@ -428,7 +463,10 @@ public class HttpRequest extends AbstractBean {
 	 */
     public String getResponseText() {
         if (readyState == ReadyState.RECEIVING) {
-            return responseText == null ? "" : responseText;
+            // The part of the body received so far.
+            String text = RESPONSE_TYPE_TEXT.equals(responseType) ? decode(buffer)
+                    : null;
+            return text == null ? "" : text;
         } else if (readyState == ReadyState.LOADED) {
             return responseText;
         } else {
@@ -490,6 +528,66 @@ public class HttpRequest extends AbstractBean {
     public final boolean getFollowRedirects() {
         return req.getFollowRedirects();
     }
+
+    /** Gets the response type.
+	 *
+	 * @return the response type
+	 */
+    public String getResponseType() {
+        return responseType;
+    }
+
+    /**
+     * Sets how the body is made available. With
+     * {@link #RESPONSE_TYPE_ARRAYBUFFER} the body is only available from
+     * {@link #getResponseBytes()}, and is never converted to text.
+     *
+     * @param responseType
+     *            the new response type; null or the empty string mean
+     *            {@link #RESPONSE_TYPE_TEXT}
+     */
+    public void setResponseType(String responseType) {
+        if (readyState == ReadyState.LOADED
+                || readyState == ReadyState.RECEIVING) {
+            throw new IllegalStateException(
+                    "The response type cannot be set once the response is received");
+        }
+        this.responseType = responseType == null || responseType.length() == 0
+                ? RESPONSE_TYPE_TEXT : responseType;
+    }
+
+    /** Gets the file the body is written to.
+	 *
+	 * @return the response file, or null
+	 */
+    public File getResponseFile() {
+        return responseFile;
+    }
+
+    /**
+     * Sets a file the body is written to while it is received, instead of
+     * being kept in memory. Meant for large downloads: the response text and
+     * bytes are not available then.
+     *
+     * @param responseFile
+     *            the new response file, or null
+     */
+    public void setResponseFile(File responseFile) {
+        if (readyState == ReadyState.LOADED
+                || readyState == ReadyState.RECEIVING) {
+            throw new IllegalStateException(
+                    "The response file cannot be set once the response is received");
+        }
+        this.responseFile = responseFile;
+    }
+
+    /** Gets the number of bytes of the body received so far.
+	 *
+	 * @return the bytes received
+	 */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
     /*
      * public void setTimeout(long timeout) { if (readyState != ReadyState.OPEN)
      * { throw new IllegalStateException(
@@ -572,6 +670,27 @@ public class HttpRequest extends AbstractBean {
         super.removePropertyChangeListener("readyState", listener);
     }
 
+    /**
+     * Adds a listener of the <code>bytesReceived</code> property, which
+     * changes as the body is received.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addProgressListener(PropertyChangeListener listener) {
+        super.addPropertyChangeListener("bytesReceived", listener);
+    }
+
+    /**
+     * Removes a listener of the <code>bytesReceived</code> property.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeProgressListener(PropertyChangeListener listener) {
+        super.removePropertyChangeListener("bytesReceived", listener);
+    }
+
     /** Gets the ready state change listeners.
 	 *
 	 * @return the ready state change listeners
@@ -603,6 +722,10 @@ public class HttpRequest extends AbstractBean {
          * userName = null; password = null; timeout = -1;
          */
         exception = null;
+        buffer = null;
+        charset = null;
+        imageRef = null;
+        bytesReceived = 0;
         req = new Request();
         req.setFollowRedirects(false);
         String old = responseText;
@@ -660,6 +783,26 @@ public class HttpRequest extends AbstractBean {
         firePropertyChange("statusText", old, this.statusText);
     }
 
+    /**
+     * Decodes a body.
+     *
+     * @param buffer
+     *            the buffer, or null
+     * @return the text, or null
+     */
+    private String decode(ResponseBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        String charset = this.charset;
+        // The buffer may grow meanwhile; decode what was there.
+        try {
+            return buffer.toString(charset == null ? "ISO-8859-1" : charset);
+        } catch (UnsupportedEncodingException ex) {
+            return buffer.toString();
+        }
+    }
+
     /** Sets the response xml.
 	 *
 	 * @param dom
@@ -712,6 +855,7 @@ public class HttpRequest extends AbstractBean {
 
         @Override
         protected Object doInBackground() throws Exception {
+            BodyHandler handler = new BodyHandler();
             try {
                 // TODO!!!
                 // connection timeout
@@ -721,21 +865,111 @@ public class HttpRequest extends AbstractBean {
                 // k. Bundle any data that needs to be sent
                 response = null;
                 req.setBody(data);
-                response = s.execute(req);
-                // TODO!!! Need to see if there is a way to set to RECEIVING
-                // when the first bit of data
-                // comes down, instead of waiting until the whole thing is read
-                // (which is what I THINK
-                // is happening here).
-                safeSetReadyState(ReadyState.RECEIVING);
-                // grab the resulting data
-                responseText = response.getBody();
-                handleResponse(responseText); // causes the cached version of
-                // the string to be created
+                // The body is received into the buffer or file, with
+                // readyState RECEIVING as soon as the headers are in.
+                s.execute(req, handler);
+                if (responseFile == null
+                        && RESPONSE_TYPE_TEXT.equals(responseType)) {
+                    responseText = decode(buffer);
+                    handleResponse(responseText); // causes the cached version
+                    // of the string to be created
+                }
                 return responseText;
             } catch (Exception e) {
                 exception = e;
                 return null;
+            } finally {
+                handler.close();
+            }
+        }
+
+        /**
+         * Receives the headers and the body of the response.
+         */
+        private class BodyHandler implements ResponseBodyHandler {
+
+            /** The out, or null before the headers are read. */
+            private OutputStream out;
+
+            /** Whether a progress notification is pending. */
+            private volatile boolean progressPending;
+
+            /*
+             * (non-Javadoc)
+             * @see org.lobobrowser.http.ResponseBodyHandler#headersRead(org.
+             * lobobrowser.http.Response)
+             */
+            @Override
+            public void headersRead(Response r) throws IOException {
+                response = r;
+                setStatus(r.getStatusCode() == null ? -1
+                        : r.getStatusCode().getCode());
+                setStatusText(r.getStatusText());
+                charset = r.getCharset();
+                if (responseFile != null) {
+                    out = new FileOutputStream(responseFile);
+                } else {
+                    // Sized to the body when its length is known and not
+                    // too large, so that it needs no copy once complete.
+                    Header contentLength = r.getHeader("Content-Length");
+                    int size = 8096;
+                    if (contentLength != null) {
+                        try {
+                            long length = Long.parseLong(contentLength
+                                    .getValue().trim());
+                            if (length >= 0) {
+                                size = (int) Math.min(length,
+                                        MAX_INITIAL_BUFFER_SIZE);
+                            }
+                        } catch (NumberFormatException nfe) {
+                            // use the default size
+                        }
+                    }
+                    ResponseBuffer buffer = new ResponseBuffer(size);
+                    HttpRequest.this.buffer = buffer;
+                    out = buffer;
+                }
+                safeSetReadyState(ReadyState.RECEIVING);
+            }
+
+            /*
+             * (non-Javadoc)
+             * @see org.lobobrowser.http.ResponseBodyHandler#bodyRead(byte[],
+             * int, int)
+             */
+            @Override
+            public void bodyRead(byte[] b, int offset, int length)
+                    throws IOException {
+                out.write(b, offset, length);
+                bytesReceived += length;
+                if (!progressPending) {
+                    // At most one notification waits at a time, however
+                    // fast the body arrives.
+                    progressPending = true;
+                    safeRun(new Runnable() {
+                        @Override
+                        public void run() {
+                            progressPending = false;
+                            HttpRequest.this.firePropertyChange(
+                                    "bytesReceived", null, bytesReceived);
+                        }
+                    });
+                }
+            }
+
+            /**
+             * Closes the file, if the body was written to one.
+             */
+            private void close() {
+                if (out != null && responseFile != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ioe) {
+                        if (exception == null) {
+                            exception = ioe;
+                        }
+                    }
+                }
             }
         }
 
@@ -743,15 +977,27 @@ public class HttpRequest extends AbstractBean {
          * Helper method which allows me to set the ready state on the EDT
          */
         protected void safeSetReadyState(final ReadyState state) {
-            if (SwingUtilities.isEventDispatchThread()) {
-                HttpRequest.this.setReadyState(state);
+            safeRun(new Runnable() {
+                @Override
+                public void run() {
+                    HttpRequest.this.setReadyState(state);
+                }
+            });
+        }
+
+        /**
+         * Runs a notification on the EDT if the request is asynchronous, or
+         * right away in the thread that sends a synchronous request, so that
+         * it happens before the request is done.
+         *
+         * @param r
+         *            the r
+         */
+        private void safeRun(Runnable r) {
+            if (!asyncFlag || SwingUtilities.isEventDispatchThread()) {
+                r.run();
             } else {
-                SwingUtilities.invokeLater(new Runnable() {
-                    @Override
-                    public void run() {
-                        HttpRequest.this.setReadyState(state);
-                    }
-                });
+                SwingUtilities.invokeLater(r);
             }
         }
 
@@ -784,7 +1030,7 @@ public class HttpRequest extends AbstractBean {
         WeakReference<Image> imageRef = this.imageRef;
         Image img = imageRef == null ? null : imageRef.get();
         if (img == null) {
-            byte[] bytes = this.getResponseBytes();
+            byte[] bytes = this.getBufferedBytes();
             if (bytes != null) {
                 img = Toolkit.getDefaultToolkit().createImage(bytes);
                 this.imageRef = new WeakReference<Image>(img);
@@ -795,10 +1041,56 @@ public class HttpRequest extends AbstractBean {
 
     /** Gets the response bytes.
 	 *
-	 * @return the response bytes
+	 * @return a copy of the response bytes
 	 */
     public byte[] getResponseBytes() {
-        ByteArrayOutputStream out = this.buffer;
+        ResponseBuffer out = this.buffer;
         return out == null ? null : out.toByteArray();
     }
+
+    /**
+     * Gets the response bytes without a copy once the response is loaded. The
+     * array must not be modified.
+     *
+     * @return the response bytes
+     */
+    private byte[] getBufferedBytes() {
+        ResponseBuffer out = this.buffer;
+        if (out == null) {
+            return null;
+        }
+        // Trimming a buffer that still grows would only copy it again.
+        return readyState == ReadyState.LOADED ? out.getBytes() : out.toByteArray();
+    }
+
+    /**
+     * A byte array output stream whose content can be had without a copy
+     * once it fills the buffer exactly.
+     */
+    private static class ResponseBuffer extends ByteArrayOutputStream {
+
+        /**
+         * Instantiates a new response buffer.
+         *
+         * @param size
+         *            the initial size
+         */
+        private ResponseBuffer(int size) {
+            super(size);
+        }
+
+        /**
+         * Gets the bytes of a buffer no longer written to. The array must not
+         * be modified.
+         *
+         * @return the bytes
+         */
+        private synchronized byte[] getBytes() {
+            if (count != buf.length) {
+                // Trim once; later calls get the same array.
+                buf = Arrays.copyOf(buf, count);
+            }
+            return buf;
+        }
+    }
 }
@@ -193,6 +193,7 @@ public class LRUCache implements java.io.Serializable {
                     .fireEvent(new RemovalEvent(this, ordVal.getValue()));
             this.currentSize -= ordVal.getApproximateSize();
             this.timedSet.remove(ordVal);
+            this.cacheMap.remove(key);
             return ordVal.getValue();
         } else {
             return null;
@@ -46,7 +46,9 @@ public class OrderedValue implements Comparable<Object>, java.io.Serializable {
      *            the approx size
      */
     public OrderedValue(Object key, Object value, int approxSize) {
+        this.key = key;
         this.value = value;
+        this.approximateSize = approxSize;
         this.touch();
     }
     
@@ -79,7 +81,7 @@ public class OrderedValue implements Comparable<Object>, java.io.Serializable {
             hc1 = System.identityHashCode(this.value);
             hc2 = System.identityHashCode(other.value);
         }
-        return hc1 - hc2;
+        return hc1 < hc2 ? -1 : (hc1 == hc2 ? 0 : 1);
     }
     
     /** Gets the timestamp.
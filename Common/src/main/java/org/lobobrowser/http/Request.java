@@ -68,7 +68,8 @@ import org.w3c.dom.Document;
  * HTTP headers are represented by the {@link Header} API. All HTTP headers that
  * will be sent as part of this request are represented with a Header in this
  * class. By default, all Request objects are created with an Accept-Encoding
- * header set to "gzip", and have a Content-Type header set to 'text/plain;
+ * header listing the {@link ContentDecoders} available, such as "gzip,
+ * deflate", and have a Content-Type header set to 'text/plain;
  * charset="UTF-8"'. If you send other data be sure to replace the value of the
  * content type header.
  * </p>
@@ -179,7 +180,7 @@ public class Request extends AbstractBean {
     /**
      * Creates a new instance of Request. The following default values are used:
      * <ul>
-     * <li>headers: Accept-Encoding = gzip</li>
+     * <li>headers: Accept-Encoding = {@link ContentDecoders#getAcceptEncoding()}</li>
      * <li>parameters: empty set</li>
      * <li>followRedirects: true</li>
      * <li>method: GET</li>
@@ -214,7 +215,7 @@ public class Request extends AbstractBean {
      */
     public Request(String method, String url) {
         this.method = method == null ? Method.GET : method;
-        setHeader("Accept-Encoding", "gzip");
+        setHeader("Accept-Encoding", ContentDecoders.getAcceptEncoding());
         setHeader("Content-Type", "text/plain; charset=UTF-8");
         if (url != null) {
             setUrlImpl(url);
@@ -225,6 +225,14 @@ public class Response {
         }
     }
 
+    /** Gets the charset of the body.
+	 *
+	 * @return the charset
+	 */
+    public String getCharset() {
+        return charset;
+    }
+
     /** Gets the base url.
 	 *
 	 * @return the base url
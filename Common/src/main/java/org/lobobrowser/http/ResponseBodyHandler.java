@@ -0,0 +1,58 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.http;
+
+import java.io.IOException;
+
+/**
+ * Receives the body of a response while it is read, instead of having the
+ * {@link Session} collect it in memory.
+ *
+ * @see Session#execute(Request, ResponseBodyHandler)
+ */
+public interface ResponseBodyHandler {
+
+    /**
+     * Called once the status and the headers have been read, before any of
+     * the body.
+     *
+     * @param response
+     *            the response, whose body is empty
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void headersRead(Response response) throws IOException;
+
+    /**
+     * Called with each part of the body, in order. The buffer is reused
+     * afterwards.
+     *
+     * @param buffer
+     *            the buffer
+     * @param offset
+     *            the offset
+     * @param length
+     *            the length
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void bodyRead(byte[] buffer, int offset, int length) throws IOException;
+}
@@ -29,6 +29,7 @@ import java.net.HttpRetryException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
@@ -37,7 +38,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -459,6 +459,29 @@ public class Session extends AbstractBean {
      *             (such as BAD_GATEWAY, etc).
      */
     public Response execute(Request req) throws Exception {
+        return execute(req, null);
+    }
+
+    /**
+     * Executes the given {@link Request}, and returns a {@link Response}. This
+     * method blocks. If a <code>handler</code> is given, the response body is
+     * passed to it while it is read, and the returned <code>Response</code>
+     * has an empty body.
+     *
+     * @param req
+     *            the request
+     * @param handler
+     *            the handler of the response body, or null to have the body
+     *            in the <code>Response</code>
+     * @return the {@link Response} to the {@link Request}.
+     * @throws Exception
+     *             if an error occurs while creating or executing the
+     *             <code>Request</code> on the client machine. That is, if
+     *             normal http errors occur, they will not throw an exception
+     *             (such as BAD_GATEWAY, etc).
+     */
+    public Response execute(Request req, ResponseBodyHandler handler)
+            throws Exception {
         try {
             // initialize the state and such
             setTotalBytes(-1);
@@ -577,75 +600,64 @@ public class Session extends AbstractBean {
                     contentType = h;
                 }
             }
-            // Read the response, possibly from the error stream. Automatically
-            // unzip the response if it was gzip encoded
+            // Open the response, possibly from the error stream. Automatically
+            // decode the response if it was compressed
             byte[] responseBody = null;
             StatusCode responseCode = StatusCode.INTERNAL_SERVER_ERROR;
             InputStream responseStream = null;
             try {
-                // connects and returns the stream
-                responseStream = http.getInputStream();
-                responseCode = StatusCode.valueOf(http.getResponseCode());
-                // if this is GZIP encoded, then wrap the input stream
-                String contentEncoding = http.getContentEncoding();
-                if ("gzip".equals(contentEncoding)) {
-                    responseStream = new GZIPInputStream(responseStream);
-                }
-                responseBody = readFully(responseStream);
-            } catch (FileNotFoundException e) {
-                // check for an error stream
-                responseStream = http.getErrorStream();
-                responseBody = readFully(responseStream);
-            } catch (HttpRetryException e) {
-                // TODO not sure what to do on a retry exception
-                setState(State.FAILED);
-                return new Response(StatusCode.NOT_FOUND,
-                        "HttpRetryException: " + e.getMessage(), null, null,
-                        null, req.getUrl());
-            } catch (UnknownHostException e) {
-                setState(State.FAILED);
-                return new Response(StatusCode.NOT_FOUND, "Unknown host", null,
-                        null, null, req.getUrl());
-            } catch (IOException ex) {
-                String msg = ex.getMessage();
-                if (msg.contains("Server returned HTTP response code:")) {
-                    int startIndex = msg.indexOf("code: ") + 6;
-                    String s = msg.substring(startIndex, startIndex + 3);
-                    responseCode = StatusCode.valueOf(Integer.parseInt(s));
+                try {
+                    // connects and returns the stream
+                    responseStream = http.getInputStream();
+                    responseCode = StatusCode.valueOf(http.getResponseCode());
+                } catch (FileNotFoundException e) {
+                    // check for an error stream
+                    responseCode = StatusCode.valueOf(http.getResponseCode());
                     responseStream = http.getErrorStream();
+                } catch (HttpRetryException e) {
+                    // TODO not sure what to do on a retry exception
+                    setState(State.FAILED);
+                    return new Response(StatusCode.NOT_FOUND,
+                            "HttpRetryException: " + e.getMessage(), null, null,
+                            null, req.getUrl());
+                } catch (UnknownHostException e) {
+                    setState(State.FAILED);
+                    return new Response(StatusCode.NOT_FOUND, "Unknown host",
+                            null, null, null, req.getUrl());
+                } catch (IOException ex) {
+                    String msg = ex.getMessage();
+                    if (msg.contains("Server returned HTTP response code:")) {
+                        int startIndex = msg.indexOf("code: ") + 6;
+                        String s = msg.substring(startIndex, startIndex + 3);
+                        responseCode = StatusCode.valueOf(Integer.parseInt(s));
+                        responseStream = http.getErrorStream();
+                    } else {
+                        throw ex;
+                    }
+                }
+                if (responseStream != null) {
+                    // Error pages may be compressed too.
+                    responseStream = ContentDecoders.decode(responseStream,
+                            http.getContentEncoding());
+                }
+                if (handler == null) {
                     responseBody = readFully(responseStream);
                 } else {
-                    throw ex;
+                    handler.headersRead(new Response(responseCode,
+                            http.getResponseMessage(), null,
+                            getCharset(contentType), headers,
+                            getBaseUrl(req)));
+                    readFully(responseStream, handler);
                 }
             } finally {
                 if (responseStream != null) {
                     responseStream.close();
                 }
             }
-            // figure out the "base url" from which relative urls would be
-            // computed
-            String foo = "foo";
-            URI uri = new URI(req.getUrl());
-            URI uu = uri.resolve(new URI(foo));
-            String baseUrl = uu.toString().substring(0,
-                    uu.toString().length() - foo.length());
-            // learn what the content type is
-            String charset = null;
-            if (contentType != null) {
-                String tmp = contentType.getValue();
-                // find the ; following the content type (if there is one)
-                int index = tmp.indexOf(";");
-                if (index >= 0) {
-                    index = tmp.indexOf("=", index + 1);
-                    if (index > 0) {
-                        charset = contentType.getValue().substring(index + 1);
-                    }
-                }
-            }
             // construct the response
             Response response = new Response(responseCode,
-                    http.getResponseMessage(), responseBody, charset, headers,
-                    baseUrl);
+                    http.getResponseMessage(), responseBody,
+                    getCharset(contentType), headers, getBaseUrl(req));
             // TODO
             // 7. Disconnect (as it is unclear how to reuse the
             // HttpURLConnection, for Session anyway)
@@ -676,6 +688,70 @@ public class Session extends AbstractBean {
         return new URL(surl.toString());
     }
 
+    /**
+     * Gets the base url from which urls relative to a request are resolved.
+     *
+     * @param req
+     *            the request
+     * @return the base url
+     * @throws URISyntaxException
+     *             the URI syntax exception
+     */
+    private static String getBaseUrl(Request req) throws URISyntaxException {
+        String foo = "foo";
+        URI uri = new URI(req.getUrl());
+        URI uu = uri.resolve(new URI(foo));
+        return uu.toString().substring(0,
+                uu.toString().length() - foo.length());
+    }
+
+    /**
+     * Gets the charset of a Content-Type header.
+     *
+     * @param contentType
+     *            the content type header, or null
+     * @return the charset, or null
+     */
+    private static String getCharset(Header contentType) {
+        String charset = null;
+        if (contentType != null) {
+            String tmp = contentType.getValue();
+            // find the ; following the content type (if there is one)
+            int index = tmp.indexOf(";");
+            if (index >= 0) {
+                index = tmp.indexOf("=", index + 1);
+                if (index > 0) {
+                    charset = contentType.getValue().substring(index + 1);
+                }
+            }
+        }
+        return charset;
+    }
+
+    /**
+     * Passes the rest of a stream to a handler.
+     *
+     * @param in
+     *            the in, or null
+     * @param handler
+     *            the handler
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void readFully(InputStream in, ResponseBodyHandler handler)
+            throws IOException {
+        if (in == null) {
+            return;
+        }
+        byte[] buffer = new byte[8096];
+        int length = -1;
+        while ((length = in.read(buffer)) != -1) {
+            handler.bodyRead(buffer, 0, length);
+            setBytesSoFar(bytesSoFar + length);
+        }
+        in.close();
+    }
+
     private byte[] readFully(InputStream in) throws IOException {
         if (in == null) {
             return new byte[0];
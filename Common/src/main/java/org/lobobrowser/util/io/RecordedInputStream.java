@@ -23,37 +23,56 @@
  */
 package org.lobobrowser.util.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Wraps an InputStream and records all of the bytes read. This stream supports
  * mark() and reset().
  * <p>
+ * The bytes are recorded in a list of chunks, each about as large as all the
+ * chunks before it, so recording never copies what was already recorded, and
+ * reset() only moves the read position back. The first call to
+ * {@link #getBytesRead()} joins the chunks into one array, which later calls
+ * return as is.
+ * <p>
  * Note: Buffered streams should wrap this class as opposed to the other way
  * around.
  *
  * @author J. H. S.
  */
 public class RecordedInputStream extends InputStream {
+
+    /** The size of the first chunk. */
+    private static final int MIN_CHUNK_SIZE = 8192;
+
+    /** The maximum size of a chunk. */
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
     /** The delegate. */
     private final InputStream delegate;
-    /** The store. */
-    private final ByteArrayOutputStream store = new ByteArrayOutputStream();
+    /** The recorded chunks; all but the last are full. */
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+    /** The number of bytes recorded. */
+    private int size;
+    /** The number of bytes recorded in the last chunk. */
+    private int lastChunkCount;
     /** The max buffer size. */
     private final int maxBufferSize;
     /** The has reached eof. */
-    private boolean hasReachedEOF = false;
+    private volatile boolean hasReachedEOF = false;
     /** The has reached max buffer size. */
     private boolean hasReachedMaxBufferSize = false;
     /** The mark position. */
     private int markPosition = -1;
-    /** The read position. */
-    private int readPosition = -1;
-    /** The reset buffer. */
-    private byte[] resetBuffer = null;
+    /**
+     * The position of the next byte read, which is below the size only after
+     * a reset.
+     */
+    private int readPosition = 0;
     
     /**
      * Instantiates a new recorded input stream.
@@ -75,25 +94,26 @@ public class RecordedInputStream extends InputStream {
      */
     @Override
     public int read() throws IOException {
-        if ((this.readPosition != -1)
-                && (this.readPosition < this.resetBuffer.length)) {
-            int b = this.resetBuffer[this.readPosition];
-            this.readPosition++;
-            return b;
-        } else {
-            int b = this.delegate.read();
-            if (b != -1) {
+        synchronized (this) {
+            if (this.readPosition < this.size) {
+                int b = this.byteAt(this.readPosition) & 0xFF;
+                this.readPosition++;
+                return b;
+            }
+        }
+        int b = this.delegate.read();
+        if (b != -1) {
+            synchronized (this) {
                 if (!this.hasReachedMaxBufferSize) {
-                    this.store.write(b);
-                    if (this.store.size() > this.maxBufferSize) {
-                        this.hasReachedMaxBufferSize = true;
-                    }
+                    byte[] chunk = this.writableChunk();
+                    chunk[this.lastChunkCount++] = (byte) b;
+                    this.recorded(1);
                 }
-            } else {
-                this.hasReachedEOF = true;
             }
-            return b;
+        } else {
+            this.hasReachedEOF = true;
         }
+        return b;
     }
     
     /*
@@ -102,7 +122,11 @@ public class RecordedInputStream extends InputStream {
      */
     @Override
     public int available() throws IOException {
-        return this.delegate.available();
+        int replayable;
+        synchronized (this) {
+            replayable = this.size - this.readPosition;
+        }
+        return replayable + this.delegate.available();
     }
     
     /*
@@ -133,7 +157,7 @@ public class RecordedInputStream extends InputStream {
             throw new IllegalStateException(
                     "Maximum buffer size was already reached.");
         }
-        this.markPosition = this.store.size();
+        this.markPosition = this.size;
     }
     
     /*
@@ -146,12 +170,7 @@ public class RecordedInputStream extends InputStream {
             throw new IllegalStateException(
                     "Maximum buffer size was already reached.");
         }
-        int mp = this.markPosition;
-        byte[] wholeBuffer = this.store.toByteArray();
-        byte[] resetBuffer = new byte[wholeBuffer.length - mp];
-        System.arraycopy(wholeBuffer, mp, resetBuffer, 0, resetBuffer.length);
-        this.resetBuffer = resetBuffer;
-        this.readPosition = 0;
+        this.readPosition = this.markPosition;
     }
     
     /*
@@ -160,28 +179,36 @@ public class RecordedInputStream extends InputStream {
      */
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException {
-        if ((this.readPosition != -1)
-                && (this.readPosition < this.resetBuffer.length)) {
-            int minLength = Math
-                    .min(this.resetBuffer.length - this.readPosition, length);
-            System.arraycopy(this.resetBuffer, this.readPosition, buffer,
-                    offset, minLength);
-            this.readPosition += minLength;
-            return minLength;
-        } else {
-            int numRead = this.delegate.read(buffer, offset, length);
-            if (numRead != -1) {
+        synchronized (this) {
+            if (this.readPosition < this.size) {
+                int minLength = Math.min(this.size - this.readPosition, length);
+                this.copyTo(this.readPosition, buffer, offset, minLength);
+                this.readPosition += minLength;
+                return minLength;
+            }
+        }
+        // Not holding the lock while the delegate blocks.
+        int numRead = this.delegate.read(buffer, offset, length);
+        if (numRead != -1) {
+            synchronized (this) {
                 if (!this.hasReachedMaxBufferSize) {
-                    this.store.write(buffer, offset, numRead);
-                    if (this.store.size() > this.maxBufferSize) {
-                        this.hasReachedMaxBufferSize = true;
+                    int done = 0;
+                    while (done < numRead) {
+                        byte[] chunk = this.writableChunk();
+                        int n = Math.min(chunk.length - this.lastChunkCount,
+                                numRead - done);
+                        System.arraycopy(buffer, offset + done, chunk,
+                                this.lastChunkCount, n);
+                        this.lastChunkCount += n;
+                        done += n;
                     }
+                    this.recorded(numRead);
                 }
-            } else {
-                this.hasReachedEOF = true;
             }
-            return numRead;
+        } else {
+            this.hasReachedEOF = true;
         }
+        return numRead;
     }
     
     /**
@@ -197,17 +224,33 @@ public class RecordedInputStream extends InputStream {
         }
     }
     
-    /** Gets the bytes read.
+    /** Gets the bytes read. The array may be shared with other callers and
+	 * must not be modified.
 	 *
 	 * @return the bytes read
 	 * @throws BufferExceededException
 	 *             the buffer exceeded exception
 	 */
-    public byte[] getBytesRead() throws BufferExceededException {
+    public synchronized byte[] getBytesRead() throws BufferExceededException {
         if (this.hasReachedMaxBufferSize) {
             throw new BufferExceededException();
         }
-        return this.store.toByteArray();
+        List<byte[]> chunks = this.chunks;
+        int size = this.size;
+        if (chunks.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] first = chunks.get(0);
+        if (chunks.size() == 1 && first.length == size) {
+            return first;
+        }
+        byte[] all = new byte[size];
+        this.copyTo(0, all, 0, size);
+        // Later reads and calls use the joined array.
+        chunks.clear();
+        chunks.add(all);
+        this.lastChunkCount = size;
+        return all;
     }
     
     /**
@@ -223,11 +266,7 @@ public class RecordedInputStream extends InputStream {
      */
     public String getString(String encoding)
             throws UnsupportedEncodingException, BufferExceededException {
-        if (this.hasReachedMaxBufferSize) {
-            throw new BufferExceededException();
-        }
-        byte[] bytes = this.store.toByteArray();
-        return new String(bytes, encoding);
+        return new String(this.getBytesRead(), encoding);
     }
     
     /**
@@ -238,4 +277,92 @@ public class RecordedInputStream extends InputStream {
     public boolean hasReachedEOF() {
         return this.hasReachedEOF;
     }
+
+    /**
+     * Gets the last chunk, adding one if it is full.
+     *
+     * @return the chunk
+     */
+    private byte[] writableChunk() {
+        List<byte[]> chunks = this.chunks;
+        if (!chunks.isEmpty()) {
+            byte[] last = chunks.get(chunks.size() - 1);
+            if (this.lastChunkCount < last.length) {
+                return last;
+            }
+        }
+        byte[] chunk = new byte[Math.max(MIN_CHUNK_SIZE,
+                Math.min(this.size, MAX_CHUNK_SIZE))];
+        chunks.add(chunk);
+        this.lastChunkCount = 0;
+        return chunk;
+    }
+
+    /**
+     * Accounts for bytes just recorded. Once the maximum size is exceeded,
+     * the recording is dropped, as it can no longer be used.
+     *
+     * @param length
+     *            the length
+     */
+    private void recorded(int length) {
+        this.size += length;
+        this.readPosition = this.size;
+        if (this.size > this.maxBufferSize) {
+            this.hasReachedMaxBufferSize = true;
+            this.chunks.clear();
+            this.size = 0;
+            this.readPosition = 0;
+            this.lastChunkCount = 0;
+        }
+    }
+
+    /**
+     * Gets a recorded byte.
+     *
+     * @param position
+     *            the position
+     * @return the byte
+     */
+    private byte byteAt(int position) {
+        List<byte[]> chunks = this.chunks;
+        int n = chunks.size();
+        for (int i = 0; i < n; i++) {
+            byte[] chunk = chunks.get(i);
+            if (position < chunk.length) {
+                return chunk[position];
+            }
+            position -= chunk.length;
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Copies recorded bytes.
+     *
+     * @param position
+     *            the position of the first byte
+     * @param buffer
+     *            the buffer
+     * @param offset
+     *            the offset
+     * @param length
+     *            the length
+     */
+    private void copyTo(int position, byte[] buffer, int offset, int length) {
+        List<byte[]> chunks = this.chunks;
+        int n = chunks.size();
+        for (int i = 0; (i < n) && (length > 0); i++) {
+            byte[] chunk = chunks.get(i);
+            if (position >= chunk.length) {
+                position -= chunk.length;
+                continue;
+            }
+            int count = Math.min(chunk.length - position, length);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            offset += count;
+            length -= count;
+            position = 0;
+        }
+    }
 }
@@ -64,6 +64,9 @@ public interface HtmlAttributeProperties {
 	/** The autocomplete. */
 	String AUTOCOMPLETE = "autocomplete";
 
+	/** The async. */
+	String ASYNC = "async";
+
 	/** The background. */
 	String BACKGROUND = "background";
 
@@ -151,6 +154,9 @@ public interface HtmlAttributeProperties {
 	/** The defaultvalue. */
 	String DEFAULTVALUE = "defaultValue";
 
+	/** The defer. */
+	String DEFER = "defer";
+
 	/** The enctype. */
 	String ENCTYPE = "enctype";
 
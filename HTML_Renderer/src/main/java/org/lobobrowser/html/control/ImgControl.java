@@ -27,36 +27,23 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Image;
-import java.awt.Toolkit;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-import javax.imageio.IIOException;
-import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
 import javax.swing.SwingUtilities;
 
-import org.apache.batik.transcoder.TranscoderException;
+import org.lobobrowser.html.dombl.ImageCache;
 import org.lobobrowser.html.dombl.ImageEvent;
 import org.lobobrowser.html.dombl.ImageListener;
-import org.lobobrowser.html.dombl.SVGRasterizer;
 import org.lobobrowser.html.domimpl.HTMLImageElementImpl;
 import org.lobobrowser.html.renderer.HtmlController;
 import org.lobobrowser.html.renderer.RElement;
 import org.lobobrowser.html.renderer.RenderableSpot;
 import org.lobobrowser.html.style.HtmlValues;
-import org.lobobrowser.http.UserAgentContext;
-import org.lobobrowser.util.SSLCertificate;
-import org.lobobrowser.util.Urls;
 
 /**
  * The Class ImgControl.
@@ -65,9 +52,6 @@ public class ImgControl extends BaseControl implements ImageListener {
 
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 1L;
-	
-	/** The Constant logger. */
-	private static final Logger logger = Logger.getLogger(ImgControl.class.getName());
 
 	/** The image. */
 	private volatile Image image;
@@ -96,6 +80,9 @@ public class ImgControl extends BaseControl implements ImageListener {
 	/** The image height. */
 	private int imageWidth, imageHeight;
 
+	/** The width and height given by attributes, or 0. */
+	private final int specifiedWidth, specifiedHeight;
+
 	/** The mouse being pressed. */
 	private boolean mouseBeingPressed;
 
@@ -103,19 +90,22 @@ public class ImgControl extends BaseControl implements ImageListener {
 	private BufferedImage bufferImage;
 
 	/**
-	 * Instantiates a new img control.
+	 * Instantiates a new img control. The image is loaded in the background by
+	 * the model node, which informs this control once it is decoded.
 	 *
 	 * @param modelNode
 	 *            the model node
-	 * @throws MalformedURLException
-	 * @throws TranscoderException
-	 * @throws IOException
 	 */
 	public ImgControl(HTMLImageElementImpl modelNode) {
 		super(modelNode);
 
 		align = modelNode.getAlign();
 		alt = modelNode.getAlt() != null ? modelNode.getAlt() : "";
+		lastSrc = modelNode.getSrc();
+		specifiedWidth = modelNode.getWidth();
+		specifiedHeight = modelNode.getHeight();
+		imageWidth = specifiedWidth > 0 ? specifiedWidth : 0;
+		imageHeight = specifiedHeight > 0 ? specifiedHeight : 0;
 		bufferImage = null;
 
 		modelNode.addImageListener(this);
@@ -123,13 +113,13 @@ public class ImgControl extends BaseControl implements ImageListener {
 			@Override
 			public void mousePressed(MouseEvent e) {
 				mouseBeingPressed = true;
-				repaint();
+				repaintImage();
 			}
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
 				mouseBeingPressed = false;
-				repaint();
+				repaintImage();
 				HtmlController.getInstance().onPressed(modelNode, e, e.getX(), e.getY());
 			}
 
@@ -141,61 +131,50 @@ public class ImgControl extends BaseControl implements ImageListener {
 				}
 			}
 		});
+	}
 
-		if (modelNode.getSrc() != null) {
-			URL u = null;
-			try {
-				SSLCertificate.setCertificate();
-				URL baseURL = new URL(modelNode.getOwnerDocument().getBaseURI());
-				URL scriptURL = Urls.createURL(baseURL, modelNode.getSrc());
-				String scriptURI = scriptURL == null ? modelNode.getSrc() : scriptURL.toExternalForm();
-				
-				u = new URL(scriptURI.replace(" ", "%20"));	
-				URLConnection con = u.openConnection();
-                con.setRequestProperty("User-Agent", UserAgentContext.DEFAULT_USER_AGENT);
-                
-                if (scriptURI.endsWith(".svg")) {
-					SVGRasterizer r = new SVGRasterizer(u);
-					image = r.bufferedImageToImage();
-				} else if (scriptURI.startsWith("https")) {
-					image = Toolkit.getDefaultToolkit().createImage(ImageIO.read(con.getInputStream()).getSource());
-				} else if (scriptURI.endsWith(".gif")) {
-					try {
-						image = new ImageIcon(u).getImage();
-					} catch (Exception e) {
-						image = ImageIO.read(con.getInputStream());
-					}
-				} else if (scriptURI.endsWith(".bmp")) {
-					try {
-						image = ImageIO.read(con.getInputStream());
-					} catch (IOException e) {
-						logger.log(Level.WARNING, "read error: " + e.getMessage());
-					}
-				} else {
-					image = ImageIO.read(con.getInputStream());
-				}
-			} catch (FileNotFoundException | IIOException ex) {
-				logger.log(Level.WARNING, "ImgControl(): Image not found "+modelNode.getSrc());
-			} catch (TranscoderException | IOException e1) {
-				logger.log(Level.WARNING, e1.getMessage());
-			} catch (Exception e1) {
-				logger.log(Level.WARNING, "ImgControl(): Image not found "+modelNode.getSrc());
-			}
+	/**
+	 * Gets a shared copy of the image scaled to the size given by the width
+	 * and height attributes, so it is not scaled again on every paint.
+	 *
+	 * @param img
+	 *            the img
+	 * @return the scaled image, or null to draw the image as it is
+	 */
+	private BufferedImage getScaledImage(Image img) {
+		if ((specifiedWidth <= 0) || (specifiedHeight <= 0) || (lastSrc == null)
+				|| !(img instanceof BufferedImage)) {
+			return null;
 		}
+		BufferedImage bimg = (BufferedImage) img;
+		if ((bimg.getWidth() == specifiedWidth) && (bimg.getHeight() == specifiedHeight)) {
+			return null;
+		}
+		try {
+			URL url = this.controlElement.getFullURL(lastSrc);
+			return ImageCache.getInstance().getScaledImage(url, bimg, specifiedWidth, specifiedHeight);
+		} catch (MalformedURLException mfu) {
+			return null;
+		}
+	}
 
-		if (modelNode.getHeight() > 0) {
-			imageHeight = modelNode.getHeight();
-		} else {
-			if (image != null) {
-				imageHeight = image.getHeight(this);
+	/**
+	 * Takes the image size for the dimensions not given by attributes.
+	 *
+	 * @param img
+	 *            the img
+	 */
+	private void updateImageSize(Image img) {
+		if (specifiedWidth <= 0) {
+			int w = img.getWidth(this);
+			if (w != -1) {
+				imageWidth = w;
 			}
 		}
-
-		if (modelNode.getWidth() > 0) {
-			imageWidth = modelNode.getWidth();
-		} else {
-			if (image != null) {
-				imageWidth = image.getWidth(this);
+		if (specifiedHeight <= 0) {
+			int h = img.getHeight(this);
+			if (h != -1) {
+				imageHeight = h;
 			}
 		}
 	}
@@ -212,6 +191,7 @@ public class ImgControl extends BaseControl implements ImageListener {
 				g.drawImage(bufferImage, x, y, imageWidth, imageHeight, this);
 			}
 		} else {
+			((HTMLImageElementImpl) this.controlElement).prioritizeImage();
 			g.drawString(alt, 10, 10);
 		}
 
@@ -344,12 +324,28 @@ public class ImgControl extends BaseControl implements ImageListener {
 		}
 	}
 
+	/**
+	 * Repaints the image through its renderable once it has one, so the
+	 * renderer knows the area has changed, rather than only on the screen.
+	 */
+	private void repaintImage() {
+		RUIControl rc = this.ruicontrol;
+		if (rc != null) {
+			rc.repaint();
+		} else {
+			this.repaint();
+		}
+	}
+
 	@Override
 	public boolean imageUpdate(Image img, int infoflags, int x, int y, final int w, final int h) {
 		if (((infoflags & ImageObserver.ALLBITS) != 0) || ((infoflags & ImageObserver.FRAMEBITS) != 0)) {
+			if (img == this.image) {
+				updateImageSize(img);
+			}
 			if (SwingUtilities.isEventDispatchThread()) {
 				if (!checkPreferredSizeChange()) {
-					repaint();
+					repaintImage();
 				} else {
 					if (ruicontrol != null) {
 						ruicontrol.preferredSizeInvalidated();
@@ -360,7 +356,7 @@ public class ImgControl extends BaseControl implements ImageListener {
 					@Override
 					public void run() {
 						if (!checkPreferredSizeChange()) {
-							repaint();
+							repaintImage();
 						} else {
 							if (ruicontrol != null) {
 								ruicontrol.preferredSizeInvalidated();
@@ -386,7 +382,7 @@ public class ImgControl extends BaseControl implements ImageListener {
 	public void imageUpdate(Image img, final int w, final int h) {
 		if (SwingUtilities.isEventDispatchThread()) {
 			if (!checkPreferredSizeChange()) {
-				repaint();
+				repaintImage();
 			} else {
 				if (ruicontrol != null) {
 					ruicontrol.preferredSizeInvalidated();
@@ -397,7 +393,7 @@ public class ImgControl extends BaseControl implements ImageListener {
 				@Override
 				public void run() {
 					if (!checkPreferredSizeChange()) {
-						repaint();
+						repaintImage();
 					} else {
 						if (ruicontrol != null) {
 							ruicontrol.preferredSizeInvalidated();
@@ -428,7 +424,12 @@ public class ImgControl extends BaseControl implements ImageListener {
 	@Override
 	public void imageLoaded(ImageEvent event) {
 		Image image = event.image;
+		if (image == null) {
+			return;
+		}
 		this.image = image;
+		updateImageSize(image);
+		this.bufferImage = this.getScaledImage(image);
 		int width = image.getWidth(this);
 		int height = image.getHeight(this);
 		if ((width != -1) && (height != -1)) {
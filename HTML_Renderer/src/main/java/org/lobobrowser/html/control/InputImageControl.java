@@ -342,6 +342,9 @@ public class InputImageControl extends BaseInputControl implements ImageListener
 		// Implementation of ImageListener. Invoked in a request thread most
 		// likely.
 		Image image = event.image;
+		if (image == null) {
+			return;
+		}
 		// ImageIcon imageIcon = new ImageIcon(image);
 		// this.button.setIcon(imageIcon);
 		this.image = image;
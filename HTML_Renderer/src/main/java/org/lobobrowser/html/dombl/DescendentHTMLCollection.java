@@ -23,7 +23,6 @@
  */
 package org.lobobrowser.html.dombl;
 
-import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -34,14 +33,15 @@ import org.lobobrowser.html.HtmlAttributeProperties;
 import org.lobobrowser.html.domfilter.NodeFilter;
 import org.lobobrowser.html.domimpl.DOMElementImpl;
 import org.lobobrowser.html.domimpl.DOMNodeImpl;
-import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.js.AbstractScriptableDelegate;
-import org.lobobrowser.util.Nodes;
 import org.lobobrowser.w3c.html.HTMLCollection;
 import org.w3c.dom.Node;
 
 /**
- * The Class DescendentHTMLCollection.
+ * The Class DescendentHTMLCollection. It is revalidated lazily: the items are
+ * recomputed on access only if the subtree generation of the root node moved
+ * since they were collected, so mutations outside the root, and repeated
+ * reads between mutations, cost nothing.
  */
 public class DescendentHTMLCollection extends AbstractScriptableDelegate implements HTMLCollection {
 
@@ -88,8 +88,6 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
 		nodeFilter = filter;
 		this.treeLock = treeLock;
 		this.nestIntoMatchingNodes = nestMatchingNodes;
-		HTMLDocumentImpl document = (HTMLDocumentImpl) node.getOwnerDocument();
-		document.addDocumentNotificationListener(new LocalNotificationListener(document, this));
 	}
 
 	/** The items by name. */
@@ -98,17 +96,34 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
 	/** The items by index. */
 	private List<DOMNodeImpl> itemsByIndex = null;
 
+	/** The subtree generation of the root when the items were collected. */
+	private long itemsGeneration;
+
+	/** The subtree generation of the root when the names were collected. */
+	private long namesGeneration;
+
 	/**
 	 * Ensure populated impl.
 	 */
 	private void ensurePopulatedImpl() {
-		if (this.itemsByName == null) {
+		long generation = this.rootNode.getSubtreeGeneration();
+		if (this.itemsByIndex == null || this.itemsGeneration != generation) {
 			ArrayList<DOMNodeImpl> descendents = this.rootNode.getDescendents(this.nodeFilter,
 					this.nestIntoMatchingNodes);
-			this.itemsByIndex = descendents == null ? Collections.emptyList() : descendents;
-			int size = descendents == null ? 0 : descendents.size();
+			this.itemsByIndex = descendents == null ? Collections.<DOMNodeImpl> emptyList() : descendents;
+			this.itemsGeneration = generation;
+		}
+	}
+
+	/**
+	 * Ensure names populated impl.
+	 */
+	private void ensureNamesPopulatedImpl() {
+		this.ensurePopulatedImpl();
+		if (this.itemsByName == null || this.namesGeneration != this.itemsGeneration) {
+			List<DOMNodeImpl> descendents = this.itemsByIndex;
+			int size = descendents.size();
 			Map<String, DOMElementImpl> itemsByName = new HashMap<String, DOMElementImpl>((size * 3) / 2);
-			this.itemsByName = itemsByName;
 			for (int i = 0; i < size; i++) {
 				Object descNode = descendents.get(i);
 				if (descNode instanceof DOMElementImpl) {
@@ -123,27 +138,8 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
 					}
 				}
 			}
-		}
-	}
-
-	/**
-	 * Invalidate.
-	 */
-	private void invalidate() {
-		synchronized (this.treeLock) {
-			this.itemsByName = null;
-			this.itemsByIndex = null;
-		}
-	}
-
-	/**
-	 * Checks if is valid.
-	 *
-	 * @return true, if is valid
-	 */
-	private boolean isValid() {
-		synchronized (this.treeLock) {
-			return (this.itemsByName != null) && (this.itemsByIndex != null);
+			this.itemsByName = itemsByName;
+			this.namesGeneration = this.itemsGeneration;
 		}
 	}
 
@@ -185,7 +181,7 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
 	@Override
 	public Node namedItem(String name) {
 		synchronized (this.treeLock) {
-			this.ensurePopulatedImpl();
+			this.ensureNamesPopulatedImpl();
 			return this.itemsByName.get(name);
 		}
 	}
@@ -203,73 +199,4 @@ public class DescendentHTMLCollection extends AbstractScriptableDelegate impleme
 			return this.itemsByIndex.indexOf(node);
 		}
 	}
-
-	/**
-	 * The listener interface for receiving localNotification events. The class
-	 * that is interested in processing a localNotification event implements
-	 * this interface, and the object created with that class is registered with
-	 * a component using the component's
-	 * <code>addLocalNotificationListener</code> method. When the
-	 * localNotification event occurs, that object's appropriate method is
-	 * invoked.
-	 *
-	 * @see LocalNotificationEvent
-	 */
-	private static class LocalNotificationListener extends DocumentNotificationAdapter {
-		// Needs to be a static class with a weak reference to
-		// the collection object.
-		/** The document. */
-		private final HTMLDocumentImpl document;
-
-		/** The collection ref. */
-		private final WeakReference<DescendentHTMLCollection> collectionRef;
-
-		/**
-		 * Instantiates a new local notification listener.
-		 *
-		 * @param document
-		 *            the document
-		 * @param collection
-		 *            the collection
-		 */
-		public LocalNotificationListener(final HTMLDocumentImpl document, final DescendentHTMLCollection collection) {
-			super();
-			this.document = document;
-			this.collectionRef = new WeakReference<DescendentHTMLCollection>(collection);
-		}
-
-		/*
-		 * (non-Javadoc)
-		 * 
-		 * @see org.lobobrowser.html.dombl.DocumentNotificationAdapter#
-		 * structureInvalidated (org.lobobrowser.html.domimpl.DOMNodeImpl)
-		 */
-		@Override
-		public void structureInvalidated(DOMNodeImpl node) {
-			DescendentHTMLCollection collection = this.collectionRef.get();
-			if (collection == null) {
-				// Gone!
-				this.document.removeDocumentNotificationListener(this);
-				return;
-			}
-			if (collection.isValid()) {
-				if (Nodes.isSameOrAncestorOf(collection.rootNode, node)) {
-					collection.invalidate();
-				}
-			}
-		}
-
-		/*
-		 * (non-Javadoc)
-		 * 
-		 * @see
-		 * org.lobobrowser.html.dombl.DocumentNotificationAdapter#nodeLoaded(org
-		 * .lobobrowser .html.domimpl.DOMNodeImpl)
-		 */
-		@Override
-		public void nodeLoaded(DOMNodeImpl node) {
-			this.structureInvalidated(node);
-		}
-	}
-
 }
@@ -0,0 +1,295 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.dombl;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lobobrowser.http.LRUCache;
+import org.lobobrowser.util.RemovalEvent;
+import org.lobobrowser.util.RemovalListener;
+
+/**
+ * A process-wide cache of decoded images, keyed by URL and by the size the
+ * image was scaled to, shared by all documents. Every element showing the
+ * same image gets the same instance.
+ * <p>
+ * Entries are charged the size of their pixel data and kept in
+ * least-recently-used order within a configurable budget. An entry pushed out
+ * of the budget is only held softly: it can still be handed back, without
+ * being loaded again, for as long as the garbage collector leaves it alone,
+ * which it does while any renderable still draws it.
+ */
+public final class ImageCache {
+
+	/** The Constant instance. */
+	private static final ImageCache instance = new ImageCache();
+
+	/** The default approximate memory budget in bytes. */
+	private static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+	/** The cache of {@link CachedImage} by key. */
+	private final LRUCache cache = new LRUCache(DEFAULT_MAX_SIZE);
+
+	/** The images evicted from the cache, by key. */
+	private final Map<String, SoftImage> softImages = new HashMap<String, SoftImage>();
+
+	/** The queue of cleared soft images. */
+	private final ReferenceQueue<Image> clearedImages = new ReferenceQueue<Image>();
+
+	/**
+	 * Instantiates a new image cache.
+	 */
+	private ImageCache() {
+		this.cache.addRemovalListener(new RemovalListener() {
+			@Override
+			public void removed(RemovalEvent event) {
+				// Called holding the cache lock.
+				CachedImage entry = (CachedImage) event.valueRemoved;
+				softImages.put(entry.key, new SoftImage(entry.key, entry.image, clearedImages));
+			}
+		});
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static ImageCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the approximate memory budget of the cache.
+	 *
+	 * @param approxMaxSize
+	 *            the approximate maximum size in bytes
+	 */
+	public void setApproxMaxSize(int approxMaxSize) {
+		synchronized (this.cache) {
+			this.cache.setApproxMaxSize(approxMaxSize);
+		}
+	}
+
+	/**
+	 * Gets the approximate number of bytes held by the cache, not counting
+	 * evicted images that are still reachable.
+	 *
+	 * @return the approximate size
+	 */
+	public int getApproxSize() {
+		synchronized (this.cache) {
+			return this.cache.getApproxSize();
+		}
+	}
+
+	/**
+	 * Gets the image at its natural size.
+	 *
+	 * @param url
+	 *            the url
+	 * @return the image, or null if it is not cached
+	 */
+	public Image getImage(URL url) {
+		return this.get(url.toExternalForm());
+	}
+
+	/**
+	 * Puts the image at its natural size.
+	 *
+	 * @param url
+	 *            the url
+	 * @param image
+	 *            the image
+	 */
+	public void putImage(URL url, Image image) {
+		this.put(url.toExternalForm(), image);
+	}
+
+	/**
+	 * Gets the image scaled to the given size, scaling and caching it if it is
+	 * not cached yet.
+	 *
+	 * @param url
+	 *            the url of the image
+	 * @param image
+	 *            the image at its natural size
+	 * @param width
+	 *            the width
+	 * @param height
+	 *            the height
+	 * @return the scaled image
+	 */
+	public BufferedImage getScaledImage(URL url, BufferedImage image, int width, int height) {
+		String key = url.toExternalForm() + '@' + width + 'x' + height;
+		Image scaled = this.get(key);
+		if (scaled instanceof BufferedImage) {
+			return (BufferedImage) scaled;
+		}
+		BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = newImage.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		this.put(key, newImage);
+		return newImage;
+	}
+
+	/**
+	 * Gets an image by key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the image
+	 */
+	private Image get(String key) {
+		synchronized (this.cache) {
+			this.expungeClearedImages();
+			CachedImage entry = (CachedImage) this.cache.get(key);
+			if (entry != null) {
+				return entry.image;
+			}
+			SoftImage softImage = this.softImages.get(key);
+			Image image = softImage == null ? null : softImage.get();
+			if (image != null) {
+				// Still in use somewhere; bring it back within the budget.
+				this.softImages.remove(key);
+				this.cache.put(key, new CachedImage(key, image), getImageSize(image));
+			}
+			return image;
+		}
+	}
+
+	/**
+	 * Puts an image by key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param image
+	 *            the image
+	 */
+	private void put(String key, Image image) {
+		int size = getImageSize(image);
+		if (size <= 0) {
+			return;
+		}
+		synchronized (this.cache) {
+			this.expungeClearedImages();
+			this.cache.put(key, new CachedImage(key, image), size);
+			this.softImages.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the entries of soft images that have been collected.
+	 */
+	private void expungeClearedImages() {
+		SoftImage cleared;
+		while ((cleared = (SoftImage) this.clearedImages.poll()) != null) {
+			if (this.softImages.get(cleared.key) == cleared) {
+				this.softImages.remove(cleared.key);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of bytes held by the pixels of an image.
+	 *
+	 * @param image
+	 *            the image
+	 * @return the size, or 0 if the dimensions of the image are not known yet
+	 */
+	static int getImageSize(Image image) {
+		if (image instanceof BufferedImage) {
+			DataBuffer buffer = ((BufferedImage) image).getRaster().getDataBuffer();
+			long bits = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType());
+			return (int) Math.min(Integer.MAX_VALUE, bits / 8);
+		}
+		int width = image.getWidth(null);
+		int height = image.getHeight(null);
+		if ((width <= 0) || (height <= 0)) {
+			return 0;
+		}
+		// Toolkit images are kept as 32-bit pixels.
+		return (int) Math.min(Integer.MAX_VALUE, (long) width * height * 4);
+	}
+
+	/**
+	 * An image in the cache, with its key.
+	 */
+	private static class CachedImage {
+
+		/** The key. */
+		private final String key;
+
+		/** The image. */
+		private final Image image;
+
+		/**
+		 * Instantiates a new cached image.
+		 *
+		 * @param key
+		 *            the key
+		 * @param image
+		 *            the image
+		 */
+		private CachedImage(String key, Image image) {
+			this.key = key;
+			this.image = image;
+		}
+	}
+
+	/**
+	 * A soft reference to an evicted image, with its key.
+	 */
+	private static class SoftImage extends SoftReference<Image> {
+
+		/** The key. */
+		private final String key;
+
+		/**
+		 * Instantiates a new soft image.
+		 *
+		 * @param key
+		 *            the key
+		 * @param image
+		 *            the image
+		 * @param queue
+		 *            the queue
+		 */
+		private SoftImage(String key, Image image, ReferenceQueue<Image> queue) {
+			super(image, queue);
+			this.key = key;
+		}
+	}
+}
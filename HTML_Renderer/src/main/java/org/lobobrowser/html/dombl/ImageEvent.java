@@ -31,7 +31,7 @@ public class ImageEvent extends EventObject {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 1101831272894733276L;
 
-	/** The image. */
+	/** The image, or null if it could not be loaded. */
 	public final Image image;
 
 	/**
@@ -0,0 +1,392 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.dombl;
+
+import java.awt.Image;
+import java.awt.MediaTracker;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+import org.lobobrowser.http.UserAgentContext;
+import org.lobobrowser.util.SSLCertificate;
+import org.lobobrowser.util.io.IORoutines;
+
+/**
+ * Downloads and decodes images on a small pool of background threads shared
+ * by all documents, so neither the event dispatch thread nor the layout
+ * thread waits for the network or for a decoder.
+ * <p>
+ * Requests for a URL that is already queued or loading are attached to the
+ * pending load instead of starting another one. At most
+ * {@link #MAX_LOADS_PER_HOST} loads run against one host at a time; queued
+ * loads start in order of priority, then in the order they were requested,
+ * and a queued load can be promoted to {@link #PRIORITY_VISIBLE} once the
+ * image it feeds is painted. Response bodies are read to the end and closed
+ * so the underlying keep-alive connections go back to the JDK connection
+ * pool.
+ * <p>
+ * Decoded images are kept in the {@link ImageCache}. Listeners of a load are
+ * informed in the event dispatch thread, with a null image if the load
+ * failed.
+ */
+public final class ImageLoader {
+
+	/** The Constant logger. */
+	private static final Logger logger = Logger.getLogger(ImageLoader.class.getName());
+
+	/** The priority of images in the visible part of a page. */
+	public static final int PRIORITY_VISIBLE = 0;
+
+	/** The priority of all other images. */
+	public static final int PRIORITY_NORMAL = 1;
+
+	/** The number of loader threads. */
+	private static final int THREAD_COUNT = 6;
+
+	/** The maximum number of simultaneous loads from one host. */
+	private static final int MAX_LOADS_PER_HOST = 4;
+
+	/** The connect timeout in milliseconds. */
+	private static final int CONNECT_TIMEOUT = 60000;
+
+	/** The read timeout in milliseconds. */
+	private static final int READ_TIMEOUT = 90000;
+
+	/** The listener of preloads, which only fill the cache. */
+	private static final ImageListener PRELOAD_LISTENER = new ImageListener() {
+		@Override
+		public void imageLoaded(ImageEvent event) {
+		}
+	};
+
+	/** The Constant instance. */
+	private static final ImageLoader instance = new ImageLoader();
+
+	/** The queued and running loads by URL. */
+	private final Map<String, Load> loads = new HashMap<String, Load>();
+
+	/** The queued loads in the order they should start. */
+	private final TreeSet<Load> queue = new TreeSet<Load>();
+
+	/** The number of running loads by host. */
+	private final Map<String, Integer> runningByHost = new HashMap<String, Integer>();
+
+	/** The sequence number of the last load. */
+	private long sequence;
+
+	/**
+	 * Instantiates a new image loader.
+	 */
+	private ImageLoader() {
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			Thread thread = new Thread(new Worker(), "ImageLoader-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static ImageLoader getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Loads an image in the background and informs the listener once it has
+	 * been decoded. If the image is in the {@link ImageCache}, the listener is
+	 * informed right away in the calling thread. If the image cannot be
+	 * loaded, the listener is informed with an event whose image is null.
+	 *
+	 * @param url
+	 *            the absolute URL of the image
+	 * @param priority
+	 *            {@link #PRIORITY_VISIBLE} or {@link #PRIORITY_NORMAL}
+	 * @param listener
+	 *            the listener
+	 */
+	public void loadImage(URL url, int priority, ImageListener listener) {
+		Image cachedImage = ImageCache.getInstance().getImage(url);
+		if (cachedImage != null) {
+			listener.imageLoaded(new ImageEvent(this, cachedImage));
+			return;
+		}
+		String key = url.toExternalForm();
+		synchronized (this) {
+			Load load = this.loads.get(key);
+			if (load == null) {
+				load = new Load(url, priority, ++this.sequence);
+				this.loads.put(key, load);
+				this.queue.add(load);
+				this.notifyAll();
+			} else if ((priority < load.priority) && this.queue.remove(load)) {
+				load.priority = priority;
+				this.queue.add(load);
+			}
+			load.listeners.add(listener);
+		}
+	}
+
+	/**
+	 * Starts loading an image that a document is expected to request soon, so
+	 * that it is in the {@link ImageCache} or already queued by then.
+	 *
+	 * @param url
+	 *            the absolute URL of the image
+	 */
+	public void preload(URL url) {
+		this.loadImage(url, PRIORITY_NORMAL, PRELOAD_LISTENER);
+	}
+
+	/**
+	 * Moves a queued load ahead of the loads of images that are not visible.
+	 * Does nothing if the image is not queued.
+	 *
+	 * @param url
+	 *            the absolute URL of the image
+	 */
+	public void prioritize(URL url) {
+		synchronized (this) {
+			Load load = this.loads.get(url.toExternalForm());
+			if ((load != null) && (load.priority > PRIORITY_VISIBLE) && this.queue.remove(load)) {
+				load.priority = PRIORITY_VISIBLE;
+				this.queue.add(load);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the first queued load whose host is below its limit and marks
+	 * it as running.
+	 *
+	 * @return the load
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private synchronized Load take() throws InterruptedException {
+		for (;;) {
+			Iterator<Load> i = this.queue.iterator();
+			while (i.hasNext()) {
+				Load load = i.next();
+				Integer running = this.runningByHost.get(load.host);
+				int count = running == null ? 0 : running.intValue();
+				if (count < MAX_LOADS_PER_HOST) {
+					i.remove();
+					this.runningByHost.put(load.host, count + 1);
+					return load;
+				}
+			}
+			this.wait();
+		}
+	}
+
+	/**
+	 * Marks a load as finished.
+	 *
+	 * @param load
+	 *            the load
+	 * @return the listeners waiting for the load
+	 */
+	private synchronized ImageListener[] finished(Load load) {
+		this.loads.remove(load.url.toExternalForm());
+		Integer running = this.runningByHost.get(load.host);
+		if ((running == null) || (running.intValue() <= 1)) {
+			this.runningByHost.remove(load.host);
+		} else {
+			this.runningByHost.put(load.host, running.intValue() - 1);
+		}
+		this.notifyAll();
+		return load.listeners.toArray(ImageListener.EMPTY_ARRAY);
+	}
+
+	/**
+	 * Downloads and decodes an image.
+	 *
+	 * @param url
+	 *            the url
+	 * @return the image, or null if it could not be decoded
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static Image readImage(URL url) throws IOException {
+		String path = url.getPath().toLowerCase();
+		if (path.endsWith(".svg")) {
+			return new SVGRasterizer(url).createBufferedImage();
+		}
+		SSLCertificate.setCertificate();
+		URLConnection connection = new URL(url.toExternalForm().replace(" ", "%20")).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		connection.setRequestProperty("User-Agent", UserAgentContext.DEFAULT_USER_AGENT);
+		byte[] content;
+		InputStream in = connection.getInputStream();
+		try {
+			content = IORoutines.load(in, 8192);
+		} finally {
+			in.close();
+		}
+		if (path.endsWith(".gif")) {
+			// Keeps animation, which ImageIO drops.
+			ImageIcon icon = new ImageIcon(content);
+			if (icon.getImageLoadStatus() == MediaTracker.COMPLETE) {
+				return icon.getImage();
+			}
+		}
+		Image image = ImageIO.read(new ByteArrayInputStream(content));
+		if (image == null) {
+			ImageIcon icon = new ImageIcon(content);
+			if (icon.getImageLoadStatus() == MediaTracker.COMPLETE) {
+				image = icon.getImage();
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * A queued or running load of one URL.
+	 */
+	private static class Load implements Comparable<Load> {
+
+		/** The url. */
+		private final URL url;
+
+		/** The host. */
+		private final String host;
+
+		/** The sequence number. */
+		private final long sequence;
+
+		/** The priority. Changed only while the load is out of the queue. */
+		private int priority;
+
+		/** The listeners. */
+		private final ArrayList<ImageListener> listeners = new ArrayList<ImageListener>(1);
+
+		/**
+		 * Instantiates a new load.
+		 *
+		 * @param url
+		 *            the url
+		 * @param priority
+		 *            the priority
+		 * @param sequence
+		 *            the sequence
+		 */
+		private Load(URL url, int priority, long sequence) {
+			this.url = url;
+			String host = url.getHost();
+			this.host = host == null ? "" : host.toLowerCase();
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Load other) {
+			if (this.priority != other.priority) {
+				return this.priority < other.priority ? -1 : 1;
+			}
+			return this.sequence < other.sequence ? -1 : (this.sequence == other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * The loop of a loader thread.
+	 */
+	private class Worker implements Runnable {
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			for (;;) {
+				Load load;
+				try {
+					load = take();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				Image image = null;
+				ImageListener[] listeners;
+				try {
+					image = readImage(load.url);
+					if (image != null) {
+						// Cached before the load is removed, so a request in
+						// between does not download the image again.
+						ImageCache.getInstance().putImage(load.url, image);
+					}
+				} catch (FileNotFoundException fnfe) {
+					logger.log(Level.WARNING, "readImage(): Image not found " + load.url);
+				} catch (Exception err) {
+					logger.log(Level.WARNING, "readImage(): Unable to load " + load.url, err);
+				} finally {
+					listeners = finished(load);
+				}
+				this.dispatch(listeners, new ImageEvent(ImageLoader.this, image));
+			}
+		}
+
+		/**
+		 * Informs the listeners in the event dispatch thread.
+		 *
+		 * @param listeners
+		 *            the listeners
+		 * @param event
+		 *            the event
+		 */
+		private void dispatch(final ImageListener[] listeners, final ImageEvent event) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					for (ImageListener listener : listeners) {
+						try {
+							listener.imageLoaded(event);
+						} catch (Exception err) {
+							logger.log(Level.WARNING, "dispatch(): Listener failed for " + event.image, err);
+						}
+					}
+				}
+			});
+		}
+	}
+}
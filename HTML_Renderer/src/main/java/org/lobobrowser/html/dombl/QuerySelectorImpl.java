@@ -21,198 +21,266 @@
 package org.lobobrowser.html.dombl;
 
 import java.util.ArrayList;
+import java.util.List;
 
-import org.lobobrowser.html.domfilter.ElementFilter;
+import org.lobobrowser.html.domfilter.NodeFilter;
+import org.lobobrowser.html.domimpl.DOMNodeImpl;
 import org.lobobrowser.html.domimpl.DOMNodeListImpl;
 import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
+import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.html.info.StyleRuleInfo;
+import org.lobobrowser.html.style.selectors.SelectorParser;
+import org.lobobrowser.html.style.selectors.SimpleSelector;
+import org.lobobrowser.http.LRUCache;
+import org.w3c.dom.DOMException;
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 /**
- * The Class QuerySelectorImpl.
+ * The Class QuerySelectorImpl. Selector strings are compiled with the
+ * {@link SelectorParser} used for style sheets and kept in a process-wide LRU
+ * cache, so scripts that query the same selector in a loop parse it once.
+ * Candidates come from the id, class and tag indexes of the document where
+ * possible, or else from a single document-order traversal of the scope, and
+ * are matched right to left like style rules.
  */
 public class QuerySelectorImpl {
 
-    /**
-     * Document query selector.
-     *
-     * @param document
-     *            the document
-     * @param selectors
-     *            the selectors
-     * @return the element
-     */
-    public Element documentQuerySelector(Document document, String selectors) {
-
-        HTMLDocumentImpl doc = (HTMLDocumentImpl) document;
-        Element element = null;
-        if (selectors.startsWith("#")) {
-            element = doc.getElementById(selectors.replace("#", ""));
-        } else if (selectors.contains(".")) {
-            String[] str = selectors.split("\\.");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            if ("".equals(str0) || (str0 == null)) {
-                element = (Element) doc.getElementsByClassName(
-                        selectors.replace(".", "")).item(0);
-            } else {
-                NodeList node = doc.getElementsByTagName(str0);
-                for (int i = 0; i < node.getLength(); i++) {
-                    if (str0.equals(node.item(i).getNodeName())) {
-                        NamedNodeMap attributes = node.item(i).getAttributes();
-                        for (int s = 0; s < attributes.getLength(); s++) {
-                            Attr attr = (Attr) attributes.item(s);
-                            if (attr.getName().equals("class")
-                                    && attr.getValue().equals(str1)) {
-                                element = (Element) doc.getElementsByTagName(
-                                        node.item(i).getNodeName()).item(i);
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        } else if (selectors.contains(">")) {
-
-            String[] str = selectors.split(">");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            NodeList node = doc.getElementsByTagName(str1);
-
-            for (int i = 0; i < node.getLength(); i++) {
-                if (str0.equals(node.item(i).getParentNode().getNodeName())) {
-                    element = (Element) doc.getElementsByTagName(
-                            node.item(i).getNodeName()).item(i);
-                    break;
-                }
-            }
-        } else if (selectors.contains("[") && selectors.contains("]")) {
-
-            String[] str = selectors.split("\\[");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            NodeList node = doc.getElementsByTagName(str0);
-
-            for (int i = 0; i < node.getLength(); i++) {
-                NamedNodeMap attributes = node.item(i).getAttributes();
-                for (int s = 0; s < attributes.getLength(); s++) {
-                    Attr attr = (Attr) attributes.item(s);
-                    if (attr.getName().equals(str1.replace("]", "").trim())) {
-                        element = (Element) doc.getElementsByTagName(
-                                node.item(i).getNodeName()).item(i);
-                        break;
-                    }
-                }
-            }
-        } else if (selectors.contains(",")) {
-
-            String[] str = selectors.split("\\,");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            NodeList node = doc.getNodeList(new ElementFilter());
-            for (int i = 0; i < node.getLength(); i++) {
-                if (str0.equals(node.item(i).getNodeName())
-                        || str1.equals(node.item(i).getNodeName())) {
-                    element = (Element) doc.getElementsByTagName(
-                            node.item(i).getNodeName()).item(0);
-                    break;
-                }
-            }
-        } else {
-            element = (Element) doc.getElementsByTagName(selectors).item(0);
-        }
-        return element;
-    }
-
-    /**
-     * Document query selector all.
-     *
-     * @param document
-     *            the document
-     * @param selectors
-     *            the selectors
-     * @return the node list
-     */
-    public NodeList documentQuerySelectorAll(Document document, String selectors) {
-        HTMLDocumentImpl doc = (HTMLDocumentImpl) document;
-        ArrayList<Node> listNode = new ArrayList<Node>();
-        NodeList list = null;
-
-        if (selectors.contains(".")) {
-
-            String[] str = selectors.split("\\.");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            if ("".equals(str0) || (str0 == null)) {
-                list = doc.getElementsByClassName(selectors.replace(".", ""));
-            } else {
-
-                NodeList node = doc.getElementsByTagName(str0);
-
-                for (int i = 0; i < node.getLength(); i++) {
-                    if (str0.equals(node.item(i).getNodeName())) {
-                        NamedNodeMap attributes = node.item(i).getAttributes();
-                        for (int s = 0; s < attributes.getLength(); s++) {
-                            Attr attr = (Attr) attributes.item(s);
-                            if (attr.getName().equals("class")
-                                    && attr.getValue().equals(str1)) {
-                                listNode.add(node.item(i));
-                                list = new DOMNodeListImpl(listNode);
-                            }
-                        }
-                    }
-                }
-            }
-        } else if (selectors.contains("[") && selectors.contains("]")) {
-
-            String[] str = selectors.split("\\[");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            NodeList node = doc.getElementsByTagName(str0);
-
-            for (int i = 0; i < node.getLength(); i++) {
-                NamedNodeMap attributes = node.item(i).getAttributes();
-                for (int s = 0; s < attributes.getLength(); s++) {
-                    Attr attr = (Attr) attributes.item(s);
-                    if (attr.getName().equals(str1.replace("]", "").trim())) {
-                        listNode.add(node.item(i));
-                        list = new DOMNodeListImpl(listNode);
-                    }
-                }
-            }
-        } else if (selectors.contains(">")) {
-
-            String[] str = selectors.split(">");
-            String str0 = str[0].trim();
-            String str1 = str[1].trim();
-            NodeList node = doc.getElementsByTagName(str1);
-
-            for (int i = 0; i < node.getLength(); i++) {
-                if (str0.equals(node.item(i).getParentNode().getNodeName())) {
-                    listNode.add(node.item(i));
-                    list = new DOMNodeListImpl(listNode);
-                }
-            }
-        } else if (selectors.contains(",")) {
-
-            String[] str = selectors.split("\\,");
-            NodeList node = doc.getNodeList(new ElementFilter());
-            for (int i = 0; i < node.getLength(); i++) {
-
-                for (int j = 0; j < str.length; j++) {
-                    if (node.item(i).getNodeName().equals(str[j].trim())) {
-                        listNode.add(node.item(i));
-                    }
-                }
-            }
-            list = new DOMNodeListImpl(listNode);
-        } else {
-            list = doc.getElementsByClassName(selectors);
-        }
-        return list;
-    }
+	/** The maximum number of compiled selectors kept in the cache. */
+	private static final int MAX_COMPILED_SELECTORS = 256;
+
+	/** The compiled selectors by selector text. */
+	private static final LRUCache compiledSelectors = new LRUCache(MAX_COMPILED_SELECTORS);
+
+	/**
+	 * Gets the first element within the scope that matches the selectors.
+	 *
+	 * @param scope
+	 *            the document, element or fragment whose descendents are
+	 *            searched
+	 * @param selectors
+	 *            the selectors
+	 * @return the element, or null
+	 */
+	public Element querySelector(DOMNodeImpl scope, String selectors) {
+		CompiledSelector compiled = compile(selectors);
+		NodeList candidates = compiled.getIndexedCandidates(scope);
+		if (candidates == null) {
+			return (Element) scope.getFirstDescendent(compiled);
+		}
+		int length = candidates.getLength();
+		for (int i = 0; i < length; i++) {
+			Node candidate = candidates.item(i);
+			if (compiled.acceptWithin(candidate, scope)) {
+				return (Element) candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets all elements within the scope that match the selectors, in
+	 * document order.
+	 *
+	 * @param scope
+	 *            the document, element or fragment whose descendents are
+	 *            searched
+	 * @param selectors
+	 *            the selectors
+	 * @return the node list
+	 */
+	public NodeList querySelectorAll(DOMNodeImpl scope, String selectors) {
+		CompiledSelector compiled = compile(selectors);
+		NodeList candidates = compiled.getIndexedCandidates(scope);
+		if (candidates == null) {
+			return new DOMNodeListImpl(scope.getDescendents(compiled, true));
+		}
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		int length = candidates.getLength();
+		for (int i = 0; i < length; i++) {
+			Node candidate = candidates.item(i);
+			if (compiled.acceptWithin(candidate, scope)) {
+				nodes.add(candidate);
+			}
+		}
+		return new DOMNodeListImpl(nodes);
+	}
+
+	/**
+	 * Gets the compiled form of a selector group, parsing it on a cache miss.
+	 *
+	 * @param selectors
+	 *            the selectors
+	 * @return the compiled selector
+	 * @throws DOMException
+	 *             if the text holds no selector
+	 */
+	private static CompiledSelector compile(String selectors) {
+		CompiledSelector compiled;
+		synchronized (compiledSelectors) {
+			compiled = (CompiledSelector) compiledSelectors.get(selectors);
+		}
+		if (compiled != null) {
+			return compiled;
+		}
+		List<String> parts = SelectorParser.splitGroup(selectors);
+		StyleRuleInfo[] rules = new StyleRuleInfo[parts.size()];
+		for (int i = 0; i < rules.length; i++) {
+			ArrayList<SimpleSelector> simpleSelectors = SelectorParser.parse(parts.get(i).toLowerCase());
+			if (simpleSelectors == null) {
+				throw new DOMException(DOMException.SYNTAX_ERR, "Invalid selector: " + selectors);
+			}
+			rules[i] = new StyleRuleInfo(simpleSelectors, null);
+		}
+		if (rules.length == 0) {
+			throw new DOMException(DOMException.SYNTAX_ERR, "Invalid selector: " + selectors);
+		}
+		String subjectId = null;
+		String subjectClass = null;
+		String subjectTag = null;
+		if (rules.length == 1) {
+			SimpleSelector subject = rules[0].getSubjectSelector();
+			subjectId = subject.getIdTL();
+			if (subject.getClassesTL().length != 0) {
+				subjectClass = subject.getClassesTL()[0];
+			}
+			subjectTag = subject.getElementTL();
+		}
+		compiled = new CompiledSelector(rules, subjectId, subjectClass, subjectTag);
+		synchronized (compiledSelectors) {
+			compiledSelectors.put(selectors, compiled, 1);
+		}
+		return compiled;
+	}
+
+	/**
+	 * A selector group compiled into one {@link StyleRuleInfo} per selector.
+	 */
+	private static class CompiledSelector implements NodeFilter {
+
+		/** The selectors of the group. */
+		private final StyleRuleInfo[] rules;
+
+		/**
+		 * The id the subject must have, if the group is a single selector
+		 * with an id in its rightmost compound.
+		 */
+		private final String subjectId;
+
+		/** A class the subject must have, for a single selector. */
+		private final String subjectClass;
+
+		/** The lowercase tag the subject must have, for a single selector. */
+		private final String subjectTag;
+
+		/**
+		 * Instantiates a new compiled selector.
+		 *
+		 * @param rules
+		 *            the rules
+		 * @param subjectId
+		 *            the subject id, or null
+		 * @param subjectClass
+		 *            a subject class, or null
+		 * @param subjectTag
+		 *            the subject tag, or null
+		 */
+		private CompiledSelector(StyleRuleInfo[] rules, String subjectId, String subjectClass, String subjectTag) {
+			this.rules = rules;
+			this.subjectId = subjectId;
+			this.subjectClass = subjectClass;
+			this.subjectTag = subjectTag;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.lobobrowser.html.domfilter.NodeFilter#accept(org.w3c.dom.Node)
+		 */
+		@Override
+		public boolean accept(Node node) {
+			if (!(node instanceof HTMLElementImpl)) {
+				return false;
+			}
+			HTMLElementImpl element = (HTMLElementImpl) node;
+			for (StyleRuleInfo rule : this.rules) {
+				if (rule.isSelectorMatch(element, null)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the elements of the document index for the subject, a superset
+		 * of the matches in document order. The id index is used for any
+		 * scope attached to the document, then the class index; the tag index
+		 * is used only when the whole document is searched, since a tag is
+		 * rarely selective enough to beat walking a smaller scope.
+		 *
+		 * @param scope
+		 *            the scope
+		 * @return the candidates, or null if the scope must be traversed
+		 */
+		private NodeList getIndexedCandidates(DOMNodeImpl scope) {
+			if (this.rules.length != 1) {
+				return null;
+			}
+			HTMLDocumentImpl document;
+			if (scope instanceof HTMLDocumentImpl) {
+				document = (HTMLDocumentImpl) scope;
+			} else {
+				Object ownerDocument = scope.getOwnerDocument();
+				if (!(ownerDocument instanceof HTMLDocumentImpl)
+						|| !isDescendentOf(scope, (Node) ownerDocument)) {
+					return null;
+				}
+				document = (HTMLDocumentImpl) ownerDocument;
+			}
+			// The filter ignores the case of ids and classes, so the index
+			// is only used when its keys can be told apart the same way.
+			if (this.subjectId != null) {
+				return document.getElementsByIdIgnoreCase(this.subjectId);
+			}
+			if (this.subjectClass != null) {
+				return document.getElementsByClassNameIgnoreCase(this.subjectClass);
+			}
+			if (this.subjectTag != null && scope == document) {
+				return document.getElementsByTagName(this.subjectTag);
+			}
+			return null;
+		}
+
+		/**
+		 * Checks whether a candidate from an index is within the scope and
+		 * matches.
+		 *
+		 * @param candidate
+		 *            the candidate
+		 * @param scope
+		 *            the scope
+		 * @return true, if successful
+		 */
+		private boolean acceptWithin(Node candidate, DOMNodeImpl scope) {
+			return candidate != scope && isDescendentOf(candidate, scope) && this.accept(candidate);
+		}
+
+		/**
+		 * Checks whether a node is a descendent of another.
+		 *
+		 * @param node
+		 *            the node
+		 * @param scope
+		 *            the scope
+		 * @return true, if successful
+		 */
+		private static boolean isDescendentOf(Node node, Node scope) {
+			for (Node n = node.getParentNode(); n != null; n = n.getParentNode()) {
+				if (n == scope) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
 }
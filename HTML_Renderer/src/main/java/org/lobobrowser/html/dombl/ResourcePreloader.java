@@ -0,0 +1,299 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.dombl;
+
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs speculative loads of resources a document is expected to request soon,
+ * on a few background threads, and hands each result to the first caller
+ * that asks for it.
+ * <p>
+ * A load is identified by a key made of a kind and a URL (see
+ * {@link #getKey(String, URL)}). {@link #take(String)} removes the load: a
+ * load that has not started yet runs in the calling thread, one that is
+ * running is waited for, and a finished one returns at once. Results that
+ * nobody takes within {@link #MAX_AGE} milliseconds are discarded, as are
+ * the oldest loads once there are more than {@link #MAX_PRELOADS}.
+ */
+public final class ResourcePreloader {
+
+	/** The Constant logger. */
+	private static final Logger logger = Logger.getLogger(ResourcePreloader.class.getName());
+
+	/** The kind of a script load. */
+	public static final String KIND_SCRIPT = "script";
+
+	/** The kind of a style sheet load. */
+	public static final String KIND_STYLESHEET = "stylesheet";
+
+	/** The number of loader threads. */
+	private static final int NUM_THREADS = 4;
+
+	/** The maximum number of loads kept. */
+	private static final int MAX_PRELOADS = 64;
+
+	/** The time in milliseconds a result is kept for a caller. */
+	private static final long MAX_AGE = 30000;
+
+	/** The Constant instance. */
+	private static final ResourcePreloader instance = new ResourcePreloader();
+
+	/** The loads by key, oldest first. */
+	private final Map<String, Preload> preloads = new LinkedHashMap<String, Preload>();
+
+	/** The loads not started yet. */
+	private final LinkedList<Preload> queue = new LinkedList<Preload>();
+
+	/**
+	 * Instantiates a new resource preloader.
+	 */
+	private ResourcePreloader() {
+		for (int i = 0; i < NUM_THREADS; i++) {
+			Thread t = new Thread(new Worker(), "ResourcePreloader-" + i);
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			t.start();
+		}
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static ResourcePreloader getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the key of a load.
+	 *
+	 * @param kind
+	 *            the kind, such as {@link #KIND_SCRIPT}
+	 * @param url
+	 *            the url
+	 * @return the key
+	 */
+	public static String getKey(String kind, URL url) {
+		return kind + ' ' + url.toExternalForm();
+	}
+
+	/**
+	 * Queues a load, unless one with the same key is already queued, running
+	 * or waiting to be taken.
+	 *
+	 * @param key
+	 *            the key
+	 * @param loader
+	 *            the loader, which returns the result or throws if the
+	 *            resource cannot be loaded
+	 */
+	public void preload(String key, Callable<?> loader) {
+		synchronized (this) {
+			Preload preload = this.preloads.get(key);
+			if ((preload != null) && !preload.isExpired()) {
+				return;
+			}
+			if (this.preloads.size() >= MAX_PRELOADS) {
+				Iterator<Preload> i = this.preloads.values().iterator();
+				Preload eldest = i.next();
+				i.remove();
+				this.queue.remove(eldest);
+			}
+			preload = new Preload(key, loader);
+			this.preloads.put(key, preload);
+			this.queue.add(preload);
+			this.notify();
+		}
+	}
+
+	/**
+	 * Removes a load and gets its result.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the result, or null if there is no such load or it failed
+	 */
+	public Object take(String key) {
+		Preload preload;
+		boolean runHere;
+		synchronized (this) {
+			preload = this.preloads.remove(key);
+			if (preload == null) {
+				return null;
+			}
+			runHere = this.queue.remove(preload);
+		}
+		if (runHere) {
+			preload.run();
+		} else if (preload.isExpired()) {
+			return null;
+		}
+		return preload.getResult();
+	}
+
+	/**
+	 * Checks whether {@link #take(String)} would return without waiting for a
+	 * load. That is the case once the load has finished, and also when it is
+	 * not kept, for example because it was discarded to make room for newer
+	 * loads; the caller then gets null and loads the resource itself.
+	 *
+	 * @param key
+	 *            the key
+	 * @return true, if the load has finished or is not kept
+	 */
+	public boolean isDone(String key) {
+		Preload preload;
+		synchronized (this) {
+			preload = this.preloads.get(key);
+		}
+		return (preload == null) || preload.isDone();
+	}
+
+	/**
+	 * Waits for the next load to run.
+	 *
+	 * @return the preload
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private synchronized Preload next() throws InterruptedException {
+		while (this.queue.isEmpty()) {
+			this.wait();
+		}
+		return this.queue.removeFirst();
+	}
+
+	/**
+	 * A queued, running or finished load.
+	 */
+	private static class Preload {
+
+		/** The key. */
+		private final String key;
+
+		/** The loader. */
+		private final Callable<?> loader;
+
+		/** The result. */
+		private Object result;
+
+		/** The time the load finished, or 0. */
+		private long doneTime;
+
+		/**
+		 * Instantiates a new preload.
+		 *
+		 * @param key
+		 *            the key
+		 * @param loader
+		 *            the loader
+		 */
+		private Preload(String key, Callable<?> loader) {
+			this.key = key;
+			this.loader = loader;
+		}
+
+		/**
+		 * Runs the loader.
+		 */
+		private void run() {
+			Object result = null;
+			try {
+				result = this.loader.call();
+			} catch (Throwable err) {
+				logger.log(Level.INFO, "run(): Unable to preload " + this.key, err);
+			} finally {
+				synchronized (this) {
+					this.result = result;
+					this.doneTime = System.currentTimeMillis();
+					this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Waits for the load to finish and gets its result.
+		 *
+		 * @return the result
+		 */
+		private synchronized Object getResult() {
+			while (this.doneTime == 0) {
+				try {
+					this.wait();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+			return this.result;
+		}
+
+		/**
+		 * Checks whether the load has finished.
+		 *
+		 * @return true, if is done
+		 */
+		private synchronized boolean isDone() {
+			return this.doneTime != 0;
+		}
+
+		/**
+		 * Checks whether the load finished too long ago to be used.
+		 *
+		 * @return true, if is expired
+		 */
+		private synchronized boolean isExpired() {
+			return (this.doneTime != 0) && (System.currentTimeMillis() - this.doneTime > MAX_AGE);
+		}
+	}
+
+	/**
+	 * The loop of a loader thread.
+	 */
+	private class Worker implements Runnable {
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			for (;;) {
+				Preload preload;
+				try {
+					preload = next();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				preload.run();
+			}
+		}
+	}
+}
@@ -38,6 +38,7 @@ import org.lobobrowser.w3c.html.HTMLMenuElement;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Comment;
 import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -608,13 +609,15 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 	@Override
 	public void removeAttribute(String name) throws DOMException {
 		String normalName = this.normalizeAttributeName(name);
+		String oldValue;
 		synchronized (this) {
 			Map<String, String> attributes = this.attributes;
 			if (attributes == null) {
 				return;
 			}
-			attributes.remove(normalName);
+			oldValue = attributes.remove(normalName);
 		}
+		this.attributeRemoved(normalName, oldValue);
 	}
 
 	/*
@@ -631,11 +634,54 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 				return null;
 			}
 			String oldValue = attributes.remove(normalName);
+			this.attributeRemoved(normalName, oldValue);
 			// TODO: "specified" attributes
 			return oldValue == null ? null : this.getAttr(normalName, oldValue);
 		}
 	}
 
+	/**
+	 * Clears the id field and updates the document indexes after an
+	 * attribute was removed.
+	 *
+	 * @param normalName
+	 *            the normal name
+	 * @param oldValue
+	 *            the removed value, or null
+	 */
+	private void attributeRemoved(String normalName, String oldValue) {
+		if (HtmlAttributeProperties.ID.equals(normalName)) {
+			this.id = null;
+		}
+		this.attributeChanged(normalName, oldValue, null);
+	}
+
+	/**
+	 * Stamps the subtree generation after an attribute changed, since
+	 * collections may filter on attributes, and tells the document when the
+	 * <code>id</code> or <code>class</code> attribute changed so it can update
+	 * its indexes.
+	 *
+	 * @param normalName
+	 *            the normal name
+	 * @param oldValue
+	 *            the old value, or null
+	 * @param newValue
+	 *            the new value, or null
+	 */
+	private void attributeChanged(String normalName, String oldValue, String newValue) {
+		if (Objects.equals(oldValue, newValue)) {
+			return;
+		}
+		this.subtreeModified();
+		if (HtmlAttributeProperties.ID.equals(normalName) || HtmlAttributeProperties.CLASS.equals(normalName)) {
+			Document doc = this.document;
+			if (doc instanceof HTMLDocumentImpl) {
+				((HTMLDocumentImpl) doc).indexedAttributeChanged(this, normalName, oldValue, newValue);
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -665,24 +711,19 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 			// Note that the value of name is used
 			// as an ID, but the value of ID is not
 			// used as a name.
+			// The document indexes ids itself, see indexedAttributeChanged.
 			if (!isName) {
 				this.id = value;
+				return;
 			}
 			HTMLDocumentImpl document = (HTMLDocumentImpl) this.document;
 			if (document != null) {
-				// // Do not remove old ID. Consider scenario where both
-				// // name and ID are provided in an element.
-				// if (oldId != null) {
-				// document.removeElementById(oldId);
-				// }
 				document.setElementById(value, this);
-				if (isName) {
-					String oldName = this.getAttribute(HtmlAttributeProperties.NAME);
-					if (oldName != null) {
-						document.removeNamedItem(oldName);
-					}
-					document.setNamedItem(value, this);
+				String oldName = this.getAttribute(HtmlAttributeProperties.NAME);
+				if (oldName != null) {
+					document.removeNamedItem(oldName);
 				}
+				document.setNamedItem(value, this);
 			}
 		}
 	}
@@ -706,15 +747,17 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 	@Override
 	public void setAttribute(String name, String value) throws DOMException {
 		String normalName = this.normalizeAttributeName(name);
+		String oldValue;
 		synchronized (this) {
 			Map<String, String> attribs = this.attributes;
 			if (attribs == null) {
 				attribs = new HashMap<String, String>(2);
 				this.attributes = attribs;
 			}
-			attribs.put(normalName, value);
+			oldValue = attribs.put(normalName, value);
 		}
 		this.assignAttributeField(normalName, value);
+		this.attributeChanged(normalName, oldValue, value);
 	}
 
 	/**
@@ -736,7 +779,8 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 			this.attributes = attribs;
 		}
 		this.assignAttributeField(normalName, value);
-		attribs.put(normalName, value);
+		String oldValue = attribs.put(normalName, value);
+		this.attributeChanged(normalName, oldValue, value);
 	}
 
 	/*
@@ -748,14 +792,16 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 	public Attr setAttributeNode(Attr newAttr) throws DOMException {
 		String normalName = this.normalizeAttributeName(newAttr.getName());
 		String value = newAttr.getValue();
+		String oldValue;
 		synchronized (this) {
 			if (this.attributes == null) {
 				this.attributes = new HashMap<String, String>();
 			}
-			this.attributes.put(normalName, value);
+			oldValue = this.attributes.put(normalName, value);
 			// this.setIdAttribute(normalName, newAttr.isId());
 		}
 		this.assignAttributeField(normalName, value);
+		this.attributeChanged(normalName, oldValue, value);
 		return newAttr;
 	}
 
@@ -957,10 +1003,7 @@ public class DOMElementImpl extends DOMNodeImpl implements Element {
 			return;
 		}
 		synchronized (this.getTreeLock()) {
-			ArrayList<Node> nl = this.nodeList;
-			if (nl != null) {
-				nl.clear();
-			}
+			this.clearChildrenImpl();
 		}
 		// Create node and call appendChild outside of synchronized block.
 		Node textNode = document.createTextNode(newText);
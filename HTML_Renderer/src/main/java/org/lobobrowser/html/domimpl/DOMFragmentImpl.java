@@ -105,7 +105,7 @@ HTMLDocumentFragment {
     @Override
     public Element querySelector(String selectors) {
         QuerySelectorImpl qsel = new QuerySelectorImpl();
-        return qsel.documentQuerySelector(this.document, selectors);
+        return qsel.querySelector(this, selectors);
     }
 
     /*
@@ -117,6 +117,6 @@ HTMLDocumentFragment {
     @Override
     public NodeList querySelectorAll(String selectors) {
         QuerySelectorImpl qsel = new QuerySelectorImpl();
-        return qsel.documentQuerySelectorAll(this.document, selectors);
+        return qsel.querySelectorAll(this, selectors);
     }
 }
@@ -96,6 +96,12 @@ Node, ModelNode {
      */
     private volatile Object treeLock = this;
 
+    /**
+     * The modification generation of the document when this node or one of
+     * its descendents last changed.
+     */
+    private volatile long subtreeGeneration;
+
     /**
      * Instantiates a new DOM node impl.
      */
@@ -155,6 +161,7 @@ Node, ModelNode {
             if (newChild instanceof DOMNodeImpl) {
                 ((DOMNodeImpl) newChild).setParentImpl(this);
             }
+            this.childAttached(newChild);
         }
 
         if (!this.notificationsSuspended) {
@@ -177,17 +184,107 @@ Node, ModelNode {
      */
     protected void removeAllChildrenImpl() {
         synchronized (this.getTreeLock()) {
-            ArrayList<Node> nl = this.nodeList;
-            if (nl != null) {
-                nl.clear();
-                // this.nodeList = null;
-            }
+            this.clearChildrenImpl();
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
         }
     }
 
+    /**
+     * Removes all children without informing of the structure change. Caller
+     * should hold the tree lock.
+     */
+    protected void clearChildrenImpl() {
+        ArrayList<Node> nl = this.nodeList;
+        if (nl != null) {
+            for (Node child : nl) {
+                this.childDetached(child);
+            }
+            nl.clear();
+        }
+    }
+
+    /**
+     * Gets the document this node is attached to, found by walking up to the
+     * root of its tree.
+     *
+     * @return the document, or null if the node is not in an HTML document
+     */
+    final HTMLDocumentImpl getConnectedDocument() {
+        Node root = this;
+        for (Node parent = root.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            root = parent;
+        }
+        return root instanceof HTMLDocumentImpl ? (HTMLDocumentImpl) root : null;
+    }
+
+    /**
+     * Stamps this node and its ancestors with a new modification generation
+     * of the document, so collections rooted at any of them know they must
+     * be revalidated.
+     *
+     * @return the root of the tree this node is in
+     */
+    final Node subtreeModified() {
+        Document doc = this.document;
+        long generation = doc instanceof HTMLDocumentImpl
+                ? ((HTMLDocumentImpl) doc).nextModificationGeneration()
+                : this.subtreeGeneration + 1;
+        DOMNodeImpl node = this;
+        for (;;) {
+            node.subtreeGeneration = generation;
+            Node parent = node.parentNode;
+            if (!(parent instanceof DOMNodeImpl)) {
+                return node;
+            }
+            node = (DOMNodeImpl) parent;
+        }
+    }
+
+    /**
+     * Gets the modification generation of the document when this node or one
+     * of its descendents last changed. A collection of descendents that
+     * recorded this value is still valid while it is unchanged.
+     *
+     * @return the subtree generation
+     */
+    public long getSubtreeGeneration() {
+        return this.subtreeGeneration;
+    }
+
+    /**
+     * Indexes a child that was inserted under this node, if this node is
+     * attached to a document. Caller should hold the tree lock.
+     *
+     * @param child
+     *            the child
+     */
+    private void childAttached(Node child) {
+        Node root = this.subtreeModified();
+        if (child instanceof DOMElementImpl && root instanceof HTMLDocumentImpl) {
+            ((HTMLDocumentImpl) root).indexSubtree((DOMNodeImpl) child);
+        }
+    }
+
+    /**
+     * Unindexes a child that was removed from this node, if this node is
+     * attached to a document, and clears its parent. Caller should hold the
+     * tree lock.
+     *
+     * @param child
+     *            the child
+     */
+    private void childDetached(Node child) {
+        Node root = this.subtreeModified();
+        if (child instanceof DOMElementImpl && root instanceof HTMLDocumentImpl) {
+            ((HTMLDocumentImpl) root).unindexSubtree((DOMNodeImpl) child);
+        }
+        if (child instanceof DOMNodeImpl && child.getParentNode() == this) {
+            ((DOMNodeImpl) child).setParentImpl(null);
+        }
+    }
+
     /**
      * Gets the node list.
      *
@@ -264,6 +361,46 @@ Node, ModelNode {
         return al;
     }
 
+    /**
+     * Gets the first descendent, in document order, that matches the filter.
+     *
+     * @param filter
+     *            the filter
+     * @return the descendent, or null if none matches
+     */
+    public DOMNodeImpl getFirstDescendent(NodeFilter filter) {
+        synchronized (this.getTreeLock()) {
+            return this.findFirstDescendentImpl(filter);
+        }
+    }
+
+    /**
+     * Find first descendent impl.
+     *
+     * @param filter
+     *            the filter
+     * @return the descendent, or null
+     */
+    private DOMNodeImpl findFirstDescendentImpl(NodeFilter filter) {
+        ArrayList<Node> nl = this.nodeList;
+        if (nl != null) {
+            Iterator<Node> i = nl.iterator();
+            while (i.hasNext()) {
+                DOMNodeImpl n = (DOMNodeImpl) i.next();
+                if (filter.accept(n)) {
+                    return n;
+                }
+                if (n.getNodeType() == Node.ELEMENT_NODE) {
+                    DOMNodeImpl found = n.findFirstDescendentImpl(filter);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * Extracts all descendents that match the filter, except those descendents
      * of nodes that match the filter.
@@ -577,6 +714,7 @@ Node, ModelNode {
             if (newChild instanceof DOMNodeImpl) {
                 ((DOMNodeImpl) newChild).setParentImpl(this);
             }
+            this.childAttached(newChild);
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
@@ -606,6 +744,7 @@ Node, ModelNode {
             if (newChild instanceof DOMNodeImpl) {
                 ((DOMNodeImpl) newChild).setParentImpl(this);
             }
+            this.childAttached(newChild);
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
@@ -627,6 +766,11 @@ Node, ModelNode {
                         "oldChild not found");
             }
             nl.set(idx, newChild);
+            this.childDetached(oldChild);
+            if (newChild instanceof DOMNodeImpl) {
+                ((DOMNodeImpl) newChild).setParentImpl(this);
+            }
+            this.childAttached(newChild);
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
@@ -646,6 +790,7 @@ Node, ModelNode {
                 throw new DOMException(DOMException.NOT_FOUND_ERR,
                         "oldChild not found");
             }
+            this.childDetached(oldChild);
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
@@ -675,6 +820,7 @@ Node, ModelNode {
                     throw new DOMException(DOMException.INDEX_SIZE_ERR,
                             "No node with that index");
                 }
+                this.childDetached(n);
                 return n;
             }
         } finally {
@@ -1013,6 +1159,7 @@ Node, ModelNode {
                     this.nodeList = nl;
                 }
                 nl.add(t);
+                this.childAttached(t);
             }
         }
         if (!this.notificationsSuspended) {
@@ -1049,6 +1196,7 @@ Node, ModelNode {
                 Node node = nl.get(i);
                 if (filter.accept(node)) {
                     nl.remove(i);
+                    this.childDetached(node);
                 }
             }
         }
@@ -1075,6 +1223,7 @@ Node, ModelNode {
             if (newChild instanceof DOMNodeImpl) {
                 ((DOMNodeImpl) newChild).setParentImpl(this);
             }
+            this.childAttached(newChild);
         }
         if (!this.notificationsSuspended) {
             this.informStructureInvalid();
@@ -0,0 +1,258 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Node;
+
+/**
+ * Elements of a document grouped by a key, such as an id, a class name or a
+ * lowercase tag name. The document adds and removes elements as they are
+ * attached, detached or change attributes, so a lookup costs the size of its
+ * result instead of a walk of the whole tree. The elements of a key are put
+ * in document order when first requested, and that order is kept until the
+ * elements of the key change.
+ */
+final class ElementIndex {
+
+	/** The entries by key. */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/** The number of changes made so far. */
+	private int modCount;
+
+	/** The keys with entries by lowercase key. */
+	private final Map<String, List<String>> keysByLowerCase = new HashMap<String, List<String>>();
+
+	/**
+	 * Adds an element under a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param element
+	 *            the element
+	 */
+	synchronized void add(String key, DOMElementImpl element) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			entry = new Entry();
+			this.entries.put(key, entry);
+			String keyTL = key.toLowerCase();
+			List<String> keys = this.keysByLowerCase.get(keyTL);
+			if (keys == null) {
+				keys = new ArrayList<String>(1);
+				this.keysByLowerCase.put(keyTL, keys);
+			}
+			keys.add(key);
+		}
+		// An element added again may have moved, so its order is recomputed.
+		entry.elements.add(element);
+		entry.ordered = null;
+		this.modCount++;
+	}
+
+	/**
+	 * Removes an element from a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @param element
+	 *            the element
+	 */
+	synchronized void remove(String key, DOMElementImpl element) {
+		Entry entry = this.entries.get(key);
+		if (entry != null && entry.elements.remove(element)) {
+			this.modCount++;
+			if (entry.elements.isEmpty()) {
+				this.entries.remove(key);
+				String keyTL = key.toLowerCase();
+				List<String> keys = this.keysByLowerCase.get(keyTL);
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					this.keysByLowerCase.remove(keyTL);
+				}
+			} else {
+				entry.ordered = null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the elements of a key in document order.
+	 *
+	 * @param key
+	 *            the key
+	 * @return an unmodifiable list, empty if there are none
+	 */
+	synchronized List<DOMElementImpl> get(String key) {
+		Entry entry = this.entries.get(key);
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		List<DOMElementImpl> ordered = entry.ordered;
+		if (ordered == null) {
+			ordered = Collections.unmodifiableList(sortInDocumentOrder(entry.elements));
+			entry.ordered = ordered;
+		}
+		return ordered;
+	}
+
+	/**
+	 * Gets the number of elements of a key.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the size
+	 */
+	synchronized int size(String key) {
+		Entry entry = this.entries.get(key);
+		return entry == null ? 0 : entry.elements.size();
+	}
+
+	/**
+	 * Gets the key that equals a key ignoring case. Looking up the key found
+	 * gives the same elements as a lookup that ignores case, unless there are
+	 * several such keys.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the only key with elements that equals the key ignoring case,
+	 *         the key itself if there is none, or null if there are several
+	 */
+	synchronized String getKeyIgnoreCase(String key) {
+		List<String> keys = this.keysByLowerCase.get(key.toLowerCase());
+		if (keys == null) {
+			return key;
+		}
+		return keys.size() == 1 ? keys.get(0) : null;
+	}
+
+	/**
+	 * Gets the number of changes made so far, which grows whenever an element
+	 * is added or removed under any key.
+	 *
+	 * @return the modification count
+	 */
+	synchronized int getModCount() {
+		return this.modCount;
+	}
+
+	/**
+	 * Removes all elements.
+	 */
+	synchronized void clear() {
+		this.modCount++;
+		this.entries.clear();
+		this.keysByLowerCase.clear();
+	}
+
+	/**
+	 * Sorts elements in document order. Each element is given the path of
+	 * child indexes from the root once, so the sort itself does not walk the
+	 * tree. The children of a parent are numbered in one scan the first time
+	 * one of them is met, so many siblings cost a single pass over their
+	 * parent's children.
+	 *
+	 * @param elements
+	 *            the elements
+	 * @return the sorted list
+	 */
+	private static List<DOMElementImpl> sortInDocumentOrder(Set<DOMElementImpl> elements) {
+		ArrayList<DOMElementImpl> list = new ArrayList<DOMElementImpl>(elements);
+		if (list.size() < 2) {
+			return list;
+		}
+		final Map<DOMElementImpl, int[]> paths = new IdentityHashMap<DOMElementImpl, int[]>(list.size());
+		Map<Node, Integer> childIndexes = new IdentityHashMap<Node, Integer>();
+		for (DOMElementImpl element : list) {
+			paths.put(element, path(element, childIndexes));
+		}
+		Collections.sort(list, new Comparator<DOMElementImpl>() {
+			@Override
+			public int compare(DOMElementImpl e1, DOMElementImpl e2) {
+				int[] p1 = paths.get(e1);
+				int[] p2 = paths.get(e2);
+				int length = Math.min(p1.length, p2.length);
+				for (int i = 0; i < length; i++) {
+					if (p1[i] != p2[i]) {
+						return p1[i] < p2[i] ? -1 : 1;
+					}
+				}
+				return p1.length - p2.length;
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Gets the child indexes leading from the root to a node.
+	 *
+	 * @param node
+	 *            the node
+	 * @param childIndexes
+	 *            the indexes of the children of the parents scanned so far
+	 * @return the path
+	 */
+	private static int[] path(DOMNodeImpl node, Map<Node, Integer> childIndexes) {
+		int depth = 0;
+		for (Node n = node; n.getParentNode() != null; n = n.getParentNode()) {
+			depth++;
+		}
+		int[] path = new int[depth];
+		Node child = node;
+		for (int i = depth; --i >= 0;) {
+			DOMNodeImpl parent = (DOMNodeImpl) child.getParentNode();
+			Integer index = childIndexes.get(child);
+			if (index == null) {
+				ArrayList<Node> nl = parent.nodeList;
+				int size = nl == null ? 0 : nl.size();
+				for (int j = 0; j < size; j++) {
+					childIndexes.put(nl.get(j), j);
+				}
+				index = childIndexes.get(child);
+			}
+			path[i] = index == null ? -1 : index;
+			child = parent;
+		}
+		return path;
+	}
+
+	/**
+	 * The elements of one key.
+	 */
+	private static class Entry {
+
+		/** The elements. */
+		private final Set<DOMElementImpl> elements = Collections
+				.newSetFromMap(new IdentityHashMap<DOMElementImpl, Boolean>());
+
+		/** The elements in document order, or null if not computed. */
+		private List<DOMElementImpl> ordered;
+	}
+}
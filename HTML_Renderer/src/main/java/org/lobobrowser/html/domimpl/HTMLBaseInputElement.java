@@ -957,10 +957,10 @@ public abstract class HTMLBaseInputElement extends HTMLAbstractUIElement {
 			// Inform listener, holding no lock.
 			listenerArray[i].imageLoaded(event);
 		}
-		Function onload = this.getOnload();
-		if (onload != null) {
+		Function handler = event.image == null ? this.getOnerror() : this.getOnload();
+		if (handler != null) {
 			// TODO: onload event object?
-			Executor.executeFunction(HTMLBaseInputElement.this, onload, null);
+			Executor.executeFunction(HTMLBaseInputElement.this, handler, null);
 		}
 	}
 
@@ -23,8 +23,6 @@
  */
 package org.lobobrowser.html.domimpl;
 
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
@@ -40,8 +38,10 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,25 +56,19 @@ import org.lobobrowser.html.dombl.DocumentNotificationListener;
 import org.lobobrowser.html.dombl.ElementFactory;
 import org.lobobrowser.html.dombl.ImageEvent;
 import org.lobobrowser.html.dombl.ImageListener;
+import org.lobobrowser.html.dombl.ImageLoader;
 import org.lobobrowser.html.dombl.LocalErrorHandler;
 import org.lobobrowser.html.dombl.NodeVisitor;
 import org.lobobrowser.html.dombl.QuerySelectorImpl;
 import org.lobobrowser.html.domfilter.AnchorFilter;
 import org.lobobrowser.html.domfilter.AppletFilter;
-import org.lobobrowser.html.domfilter.ClassNameFilter;
 import org.lobobrowser.html.domfilter.CommandFilter;
 import org.lobobrowser.html.domfilter.ElementAttributeFilter;
 import org.lobobrowser.html.domfilter.ElementFilter;
 import org.lobobrowser.html.domfilter.ElementNameFilter;
-import org.lobobrowser.html.domfilter.EmbedFilter;
-import org.lobobrowser.html.domfilter.FormFilter;
 import org.lobobrowser.html.domfilter.FrameFilter;
-import org.lobobrowser.html.domfilter.ImageFilter;
 import org.lobobrowser.html.domfilter.LinkFilter;
 import org.lobobrowser.html.domfilter.PluginsFilter;
-import org.lobobrowser.html.domfilter.ScriptFilter;
-import org.lobobrowser.html.domfilter.TagNameFilter;
-import org.lobobrowser.html.info.ImageInfo;
 import org.lobobrowser.html.io.WritableLineReader;
 import org.lobobrowser.html.js.Executor;
 import org.lobobrowser.html.js.Location;
@@ -96,11 +90,11 @@ import org.lobobrowser.html.xpath.XPathEvaluatorImpl;
 import org.lobobrowser.html.xpath.XPathNSResolverImpl;
 import org.lobobrowser.html.xpath.XPathResultImpl;
 import org.lobobrowser.http.HttpRequest;
-import org.lobobrowser.http.Method;
 import org.lobobrowser.http.ReadyState;
 import org.lobobrowser.http.UserAgentContext;
 import org.lobobrowser.util.Domains;
 import org.lobobrowser.util.SSLCertificate;
+import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
 import org.lobobrowser.util.WeakValueHashMap;
 import org.lobobrowser.util.io.EmptyReader;
@@ -160,18 +154,30 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	/** The window. */
 	private final Window window;
 
-	/** The elements by id. */
+	/**
+	 * The elements by <code>name</code>, which {@link #getElementById(String)}
+	 * falls back to.
+	 */
 	private final Map<Object, Object> elementsById = new WeakValueHashMap();
 
+	/** The attached elements by id. */
+	private final ElementIndex idIndex = new ElementIndex();
+
+	/** The attached elements by class name. */
+	private final ElementIndex classIndex = new ElementIndex();
+
+	/** The attached elements by lowercase tag name. */
+	private final ElementIndex tagIndex = new ElementIndex();
+
+	/** The modification generation, incremented on every DOM change. */
+	private final AtomicLong modificationGeneration = new AtomicLong();
+
 	/** The elements by name. */
 	private final Map<String, Element> elementsByName = new HashMap<String, Element>(0);
 
 	/** The style sheets. */
 	private final CSSStyleSheetListImpl styleSheets = new CSSStyleSheetListImpl();
 
-	/** The image infos. */
-	private final Map<String, ImageInfo> imageInfos = new HashMap<String, ImageInfo>(4);
-
 	/** The document notification listeners. */
 	private final ArrayList<DocumentNotificationListener> documentNotificationListeners = new ArrayList<DocumentNotificationListener>(
 			1);
@@ -233,6 +239,9 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	/** The onload handler. */
 	private Function onloadHandler;
 
+	/** The async and deferred scripts. */
+	private final ScriptQueue scriptQueue = new ScriptQueue();
+
 	/** The locales. */
 	private Set<?> locales;
 
@@ -853,7 +862,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 		if ("*".equals(tagname)) {
 			return this.getNodeList(new ElementFilter());
 		} else {
-			return this.getNodeList(new TagNameFilter(tagname));
+			return new IndexedHTMLCollection(this.tagIndex, tagname.toLowerCase());
 		}
 	}
 
@@ -940,6 +949,10 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	@Override
 	public Element getElementById(String elementId) {
 		if (elementId != null && elementId.length() > 0) {
+			List<DOMElementImpl> elements = this.idIndex.get(elementId);
+			if (!elements.isEmpty()) {
+				return elements.get(0);
+			}
 			synchronized (this) {
 				return (Element) this.elementsById.get(elementId);
 			}
@@ -947,6 +960,35 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 			return null;
 		}
 	}
+
+	/**
+	 * Gets all the elements with an id in document order, ignoring case as
+	 * selectors do. Unlike {@link #getElementById(String)}, this keeps every
+	 * element of an id that is not unique.
+	 *
+	 * @param elementId
+	 *            the element id
+	 * @return the node list, or null if the document has ids that differ
+	 *         only in case, which the index cannot tell apart
+	 */
+	public NodeList getElementsByIdIgnoreCase(String elementId) {
+		String key = this.idIndex.getKeyIgnoreCase(elementId);
+		return key == null ? null : new IndexedHTMLCollection(this.idIndex, key);
+	}
+
+	/**
+	 * Gets the elements with a class name in document order, ignoring case
+	 * as selectors do.
+	 *
+	 * @param className
+	 *            the class name
+	 * @return the node list, or null if the document has class names that
+	 *         differ only in case, which the index cannot tell apart
+	 */
+	public NodeList getElementsByClassNameIgnoreCase(String className) {
+		String key = this.classIndex.getKeyIgnoreCase(className);
+		return key == null ? null : new IndexedHTMLCollection(this.classIndex, key);
+	}
 	
 
 	/**
@@ -1520,9 +1562,9 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	}
 
 	/**
-	 * Loads images asynchronously such that they are shared if loaded
-	 * simultaneously from the same URI. Informs the listener immediately if an
-	 * image is already known.
+	 * Loads images asynchronously through the shared {@link ImageLoader}, such
+	 * that they are shared if loaded simultaneously from the same URI, by this
+	 * or any other document.
 	 *
 	 * @param relativeUri
 	 *            the relative uri
@@ -1537,72 +1579,24 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 			imageListener.imageLoaded(BLANK_IMAGE_EVENT);
 			return;
 		}
-		final URL url = this.getFullURL(relativeUri);
+		URL url = this.getFullURL(relativeUri);
 		if (url == null) {
 			imageListener.imageLoaded(BLANK_IMAGE_EVENT);
 			return;
 		}
-		final String urlText = url.toExternalForm();
-		final Map<String, ImageInfo> map = this.imageInfos;
-		ImageEvent event = null;
-		synchronized (map) {
-			ImageInfo info = map.get(urlText);
-			if (info != null) {
-				if (info.loaded) {
-					event = info.imageEvent;
-				} else {
-					info.addListener(imageListener);
-				}
-			} else {
-				UserAgentContext uac = rcontext.getUserAgentContext();
-				final HttpRequest httpRequest = uac.createHttpRequest();
-				final ImageInfo newInfo = new ImageInfo();
-				map.put(urlText, newInfo);
-				newInfo.addListener(imageListener);
-				httpRequest.addReadyStateChangeListener(new PropertyChangeListener() {
-
-					@Override
-					public void propertyChange(PropertyChangeEvent evt) {
-						if (httpRequest.getReadyState() == ReadyState.COMPLETE) {
-							java.awt.Image newImage = httpRequest.getResponseImage();
-							ImageEvent newEvent = newImage == null ? null
-									: new ImageEvent(HTMLDocumentImpl.this, newImage);
-							ImageListener[] listeners;
-							synchronized (map) {
-								newInfo.imageEvent = newEvent;
-								newInfo.loaded = true;
-								listeners = newEvent == null ? null : newInfo.getListeners();
-								map.remove(urlText);
-							}
-							if (listeners != null) {
-								int llength = listeners.length;
-								for (int i = 0; i < llength; i++) {
-									listeners[i].imageLoaded(newEvent);
-								}
-							}
-						}
+		ImageLoader.getInstance().loadImage(url, ImageLoader.PRIORITY_NORMAL, imageListener);
+	}
 
-					}
-				});
-				SecurityManager sm = System.getSecurityManager();
-				if (sm == null) {
-					httpRequest.open(Method.GET, url, true);
-					httpRequest.send();
-				} else {
-					AccessController.doPrivileged(new PrivilegedAction<Object>() {
-						@Override
-						public Object run() {
-							httpRequest.open(Method.GET, url, true);
-							httpRequest.send();
-							return null;
-						}
-					});
-				}
-			}
-		}
-		if (event != null) {
-			// Call holding no locks.
-			imageListener.imageLoaded(event);
+	/**
+	 * Moves the load of an image ahead of images that are not visible.
+	 *
+	 * @param relativeUri
+	 *            the relative uri
+	 */
+	protected void prioritizeImage(String relativeUri) {
+		URL url = this.getFullURL(relativeUri);
+		if (url != null) {
+			ImageLoader.getInstance().prioritize(url);
 		}
 	}
 
@@ -1615,6 +1609,15 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	 */
 	@Override
 	public Object setUserData(String key, Object data, UserDataHandler handler) {
+		if (HtmlParser.MODIFYING_KEY.equals(key)) {
+			if (data == Boolean.TRUE) {
+				this.scriptQueue.setParsing(true);
+			} else {
+				// Deferred and async scripts run before onload.
+				this.scriptQueue.runAll();
+				this.scriptQueue.setParsing(false);
+			}
+		}
 		Function onloadHandler = this.onloadHandler;
 		if (onloadHandler != null) {
 			if (HtmlParser.MODIFYING_KEY.equals(key) && (data == Boolean.FALSE)) {
@@ -1755,7 +1758,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	public HTMLCollection getImages() {
 		synchronized (this) {
 			if (this.images == null) {
-				this.images = new DescendentHTMLCollection(this, new ImageFilter(), this.getTreeLock());
+				this.images = new IndexedHTMLCollection(this.tagIndex, HtmlProperties.IMG.toLowerCase());
 			}
 			return this.images;
 		}
@@ -1800,7 +1803,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	public HTMLCollection getForms() {
 		synchronized (this) {
 			if (this.forms == null) {
-				this.forms = new DescendentHTMLCollection(this, new FormFilter(), this.getTreeLock());
+				this.forms = new IndexedHTMLCollection(this.tagIndex, HtmlProperties.FORM.toLowerCase());
 			}
 			return this.forms;
 		}
@@ -1964,6 +1967,23 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 		this.onloadHandler = onloadHandler;
 	}
 
+	/**
+	 * Gets the async and deferred scripts.
+	 *
+	 * @return the script queue
+	 */
+	ScriptQueue getScriptQueue() {
+		return this.scriptQueue;
+	}
+
+	/**
+	 * Runs the async scripts that have finished loading. The parser calls it
+	 * between elements.
+	 */
+	public void runLoadedScripts() {
+		this.scriptQueue.runLoaded();
+	}
+
 	/**
 	 * Gets the locales.
 	 *
@@ -2120,6 +2140,122 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 		}
 	}
 
+	/**
+	 * Gets a new modification generation, greater than any returned before.
+	 *
+	 * @return the generation
+	 */
+	long nextModificationGeneration() {
+		return this.modificationGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Adds the elements of a subtree that was attached to this document to the
+	 * id, class and tag indexes.
+	 *
+	 * @param node
+	 *            the root of the subtree
+	 */
+	void indexSubtree(DOMNodeImpl node) {
+		this.updateSubtreeIndex(node, true);
+	}
+
+	/**
+	 * Removes the elements of a subtree that was detached from this document
+	 * from the id, class and tag indexes.
+	 *
+	 * @param node
+	 *            the root of the subtree
+	 */
+	void unindexSubtree(DOMNodeImpl node) {
+		this.updateSubtreeIndex(node, false);
+	}
+
+	/**
+	 * Update subtree index.
+	 *
+	 * @param node
+	 *            the node
+	 * @param add
+	 *            whether to add or remove the elements
+	 */
+	private void updateSubtreeIndex(DOMNodeImpl node, boolean add) {
+		if (node instanceof DOMElementImpl) {
+			DOMElementImpl element = (DOMElementImpl) node;
+			String tagTL = element.getTagName().toLowerCase();
+			if (add) {
+				this.tagIndex.add(tagTL, element);
+			} else {
+				this.tagIndex.remove(tagTL, element);
+			}
+			this.updateAttributeIndex(element, HtmlAttributeProperties.ID,
+					element.getAttribute(HtmlAttributeProperties.ID), add);
+			this.updateAttributeIndex(element, HtmlAttributeProperties.CLASS,
+					element.getAttribute(HtmlAttributeProperties.CLASS), add);
+		}
+		ArrayList<Node> nl = node.nodeList;
+		if (nl != null) {
+			for (Node child : nl) {
+				if (child instanceof DOMElementImpl) {
+					this.updateSubtreeIndex((DOMNodeImpl) child, add);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves an attached element within the id or class index after the
+	 * attribute changed.
+	 *
+	 * @param element
+	 *            the element
+	 * @param normalName
+	 *            the attribute name, <code>id</code> or <code>class</code>
+	 * @param oldValue
+	 *            the old value, or null
+	 * @param newValue
+	 *            the new value, or null
+	 */
+	void indexedAttributeChanged(DOMElementImpl element, String normalName, String oldValue, String newValue) {
+		if (element.getConnectedDocument() == this) {
+			this.updateAttributeIndex(element, normalName, oldValue, false);
+			this.updateAttributeIndex(element, normalName, newValue, true);
+		}
+	}
+
+	/**
+	 * Update attribute index.
+	 *
+	 * @param element
+	 *            the element
+	 * @param normalName
+	 *            the attribute name, <code>id</code> or <code>class</code>
+	 * @param value
+	 *            the attribute value, or null
+	 * @param add
+	 *            whether to add or remove the element
+	 */
+	private void updateAttributeIndex(DOMElementImpl element, String normalName, String value, boolean add) {
+		if (value == null || value.length() == 0) {
+			return;
+		}
+		if (HtmlAttributeProperties.ID.equals(normalName)) {
+			if (add) {
+				this.idIndex.add(value, element);
+			} else {
+				this.idIndex.remove(value, element);
+			}
+		} else {
+			for (String className : Strings.split(value)) {
+				if (add) {
+					this.classIndex.add(className, element);
+				} else {
+					this.classIndex.remove(className, element);
+				}
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -2232,7 +2368,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	public HTMLCollection getEmbeds() {
 		synchronized (this) {
 			if (this.embeds == null) {
-				this.embeds = new DescendentHTMLCollection(this, new EmbedFilter(), this.getTreeLock());
+				this.embeds = new IndexedHTMLCollection(this.tagIndex, HtmlProperties.EMBED.toLowerCase());
 			}
 			return this.embeds;
 		}
@@ -2262,7 +2398,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	public HTMLCollection getScripts() {
 		synchronized (this) {
 			if (this.scripts == null) {
-				this.scripts = new DescendentHTMLCollection(this, new ScriptFilter(), this.getTreeLock());
+				this.scripts = new IndexedHTMLCollection(this.tagIndex, HtmlProperties.SCRIPT.toLowerCase());
 			}
 			return this.scripts;
 		}
@@ -2277,7 +2413,21 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	 */
 	@Override
 	public NodeList getElementsByClassName(String classNames) {
-		return this.getNodeList(new ClassNameFilter(classNames));
+		String[] tokens = Strings.split(classNames);
+		if (tokens.length == 0) {
+			// No element is ever indexed under an empty class name.
+			return new IndexedHTMLCollection(this.classIndex, "");
+		}
+		String rarest = tokens[0];
+		for (int i = 1; i < tokens.length; i++) {
+			if (this.classIndex.size(tokens[i]) < this.classIndex.size(rarest)) {
+				rarest = tokens[i];
+			}
+		}
+		if (tokens.length == 1) {
+			return new IndexedHTMLCollection(this.classIndex, rarest);
+		}
+		return new IndexedHTMLCollection(this.classIndex, rarest, tokens);
 	}
 
 	/*
@@ -2430,7 +2580,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	@Override
 	public Element querySelector(String selectors) {
 		QuerySelectorImpl qsel = new QuerySelectorImpl();
-		return qsel.documentQuerySelector(this.document, selectors);
+		return qsel.querySelector(this, selectors);
 	}
 
 	/*
@@ -2442,7 +2592,7 @@ public class HTMLDocumentImpl extends DOMNodeImpl implements HTMLDocument, Docum
 	@Override
 	public NodeList querySelectorAll(String selectors) {
 		QuerySelectorImpl qsel = new QuerySelectorImpl();
-		return qsel.documentQuerySelectorAll(this.document, selectors);
+		return qsel.querySelectorAll(this, selectors);
 	}
 
 	/*
@@ -50,6 +50,7 @@ import org.lobobrowser.html.style.CSS2PropertiesContext;
 import org.lobobrowser.html.style.ComputedCSS2Properties;
 import org.lobobrowser.html.style.LocalCSS2Properties;
 import org.lobobrowser.html.style.StyleSheetAggregator;
+import org.lobobrowser.html.style.selectors.AncestorFilter;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.gui.LAFSettings;
 import org.lobobrowser.w3c.html.DOMSettableTokenList;
@@ -140,6 +141,67 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 		}
 	}
 
+	/** The ancestor filter of this element and its ancestors. */
+	private AncestorFilter selfFilter;
+
+	/** The parent filter that {@link #selfFilter} was derived from. */
+	private AncestorFilter selfFilterParent;
+
+	/** The id that {@link #selfFilter} was built with. */
+	private String selfFilterId;
+
+	/** The class names that {@link #selfFilter} was built with. */
+	private String selfFilterClassName;
+
+	/**
+	 * Gets the bloom filter of the tags, ids and classes of the ancestors of
+	 * this element. Style rules use it to reject descendant selectors without
+	 * walking up the tree.
+	 *
+	 * @return the ancestor filter
+	 */
+	public AncestorFilter getAncestorFilter() {
+		Node pn = this.parentNode;
+		if (pn instanceof HTMLElementImpl) {
+			return ((HTMLElementImpl) pn).getSelfFilter();
+		}
+		return AncestorFilter.EMPTY;
+	}
+
+	/**
+	 * Gets the filter of this element and its ancestors. It is derived from
+	 * the parent's filter and reused as long as the parent's filter, the id
+	 * and the class names are unchanged, so cascading a subtree top-down
+	 * builds each filter once.
+	 *
+	 * @return the filter
+	 */
+	private AncestorFilter getSelfFilter() {
+		AncestorFilter parentFilter = this.getAncestorFilter();
+		String id = this.getId();
+		String className = this.getClassName();
+		synchronized (this) {
+			AncestorFilter filter = this.selfFilter;
+			if (filter != null && this.selfFilterParent == parentFilter && id.equals(this.selfFilterId)
+					&& (className == null ? this.selfFilterClassName == null
+							: className.equals(this.selfFilterClassName))) {
+				return filter;
+			}
+		}
+		String[] classesTL = null;
+		if (className != null && className.length() != 0) {
+			classesTL = Strings.split(className.toLowerCase());
+		}
+		AncestorFilter filter = parentFilter.extend(this.getTagName().toLowerCase(), id.toLowerCase(), classesTL);
+		synchronized (this) {
+			this.selfFilter = filter;
+			this.selfFilterParent = parentFilter;
+			this.selfFilterId = id;
+			this.selfFilterClassName = className;
+		}
+		return filter;
+	}
+
 	/**
 	 * Gets the current style.
 	 *
@@ -438,39 +500,15 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 			// do later
 			return style;
 		}
-		String classNames = this.getClassName();
-		if ((classNames != null) && (classNames.length() != 0)) {
-			String id = this.getId();
-			String elementName = this.getTagName();
-			String[] classNameArray = Strings.split(classNames);
-			for (int i = classNameArray.length; --i >= 0;) {
-				String className = classNameArray[i];
-				Collection<CSSStyleDeclaration> sds = this.findStyleDeclarations(elementName, id, className,
-						pseudoNames);
-				if (sds != null) {
-					Iterator<CSSStyleDeclaration> sdsi = sds.iterator();
-					while (sdsi.hasNext()) {
-						CSSStyleDeclaration sd = sdsi.next();
-						if (style == null) {
-							style = new ComputedCSS2Properties(this);
-						}
-						style.addStyleDeclaration(sd);
-					}
-				}
-			}
-		} else {
-			String id = this.getId();
-			String elementName = this.getTagName();
-			Collection<CSSStyleDeclaration> sds = this.findStyleDeclarations(elementName, id, null, pseudoNames);
-			if (sds != null) {
-				Iterator<CSSStyleDeclaration> sdsi = sds.iterator();
-				while (sdsi.hasNext()) {
-					CSSStyleDeclaration sd = sdsi.next();
-					if (style == null) {
-						style = new ComputedCSS2Properties(this);
-					}
-					style.addStyleDeclaration(sd);
+		Collection<CSSStyleDeclaration> sds = this.findStyleDeclarations(pseudoNames);
+		if (sds != null) {
+			Iterator<CSSStyleDeclaration> sdsi = sds.iterator();
+			while (sdsi.hasNext()) {
+				CSSStyleDeclaration sd = sdsi.next();
+				if (style == null) {
+					style = new ComputedCSS2Properties(this);
 				}
+				style.addStyleDeclaration(sd);
 			}
 		}
 		return style;
@@ -555,15 +593,7 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 			ihs = Boolean.FALSE;
 		} else {
 			StyleSheetAggregator ssa = doc.getStyleSheetAggregator();
-			String id = this.getId();
-			String elementName = this.getTagName();
-			String classNames = this.getClassName();
-			String[] classNameArray = null;
-			if ((classNames != null) && (classNames.length() != 0)) {
-				classNameArray = Strings.split(classNames);
-			}
-			ihs = Boolean
-					.valueOf(ssa.affectedByPseudoNameInAncestor(this, this, elementName, id, classNameArray, "hover"));
+			ihs = Boolean.valueOf(ssa.affectedByPseudoNameInAncestor(this, this, "hover"));
 		}
 		synchronized (this) {
 			this.isHoverStyle = ihs;
@@ -595,15 +625,7 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 			hhs = Boolean.FALSE;
 		} else {
 			StyleSheetAggregator ssa = doc.getStyleSheetAggregator();
-			String id = this.getId();
-			String elementName = this.getTagName();
-			String classNames = this.getClassName();
-			String[] classNameArray = null;
-			if ((classNames != null) && (classNames.length() != 0)) {
-				classNameArray = Strings.split(classNames);
-			}
-			hhs = Boolean.valueOf(
-					ssa.affectedByPseudoNameInAncestor(this, ancestor, elementName, id, classNameArray, "hover"));
+			hhs = Boolean.valueOf(ssa.affectedByPseudoNameInAncestor(this, ancestor, "hover"));
 		}
 		synchronized (this) {
 			ihs = this.hasHoverStyleByElement;
@@ -633,7 +655,9 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 		pnset.add("nth-last-child");
 		pnset.add("nth-of-type");
 		pnset.add("nth-last-of-type");
-		pnset.add("hover");
+		if (this.isMouseOver) {
+			pnset.add("hover");
+		}
 		pnset.add("root");
 		pnset.add("empty");
 		return pnset;
@@ -642,25 +666,18 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 	/**
 	 * Find style declarations.
 	 *
-	 * @param elementName
-	 *            the element name
-	 * @param id
-	 *            the id
-	 * @param className
-	 *            the class name
 	 * @param pseudoNames
 	 *            the pseudo names
-	 * @return the collection
+	 * @return the collection, in cascade order
 	 */
-	protected final Collection<CSSStyleDeclaration> findStyleDeclarations(String elementName, String id,
-			String className, Set<String> pseudoNames) {
+	protected final Collection<CSSStyleDeclaration> findStyleDeclarations(Set<String> pseudoNames) {
 		HTMLDocumentImpl doc = (HTMLDocumentImpl) this.document;
 		if (doc == null) {
 			return null;
 		}
 
 		StyleSheetAggregator ssa = doc.getStyleSheetAggregator();
-		return ssa.getActiveStyleDeclarations(this, elementName, id, className, pseudoNames, getAttributes());
+		return ssa.getActiveStyleDeclarations(this, pseudoNames);
 	}
 
 	/*
@@ -996,11 +1013,8 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 			return;
 		}
 		HtmlParser parser = new HtmlParser(document.getUserAgentContext(), document, null, null, null);
-		synchronized (this) {
-			ArrayList<Node> nl = this.nodeList;
-			if (nl != null) {
-				nl.clear();
-			}
+		synchronized (this.getTreeLock()) {
+			this.clearChildrenImpl();
 		}
 		// Should not synchronize around parser probably.
 		try {
@@ -1383,7 +1397,7 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 	@Override
 	public Element querySelector(String selectors) {
 		QuerySelectorImpl qsel = new QuerySelectorImpl();
-		return qsel.documentQuerySelector(this.document, selectors);
+		return qsel.querySelector(this, selectors);
 	}
 
 	/*
@@ -1395,7 +1409,7 @@ public class HTMLElementImpl extends DOMElementImpl implements HTMLElement, CSS2
 	@Override
 	public NodeList querySelectorAll(String selectors) {
 		QuerySelectorImpl qsel = new QuerySelectorImpl();
-		return qsel.documentQuerySelectorAll(this.document, selectors);
+		return qsel.querySelectorAll(this, selectors);
 	}
 
 	@Override
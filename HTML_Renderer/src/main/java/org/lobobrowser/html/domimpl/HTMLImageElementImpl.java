@@ -249,6 +249,24 @@ public class HTMLImageElementImpl extends HTMLAbstractUIElement implements HTMLI
 		}
 	}
 
+	/**
+	 * Moves the load of the image ahead of images that are not visible, if it
+	 * has not been loaded yet. Called when the image is painted.
+	 */
+	public void prioritizeImage() {
+		String src;
+		synchronized (this.listeners) {
+			if (this.image != null) {
+				return;
+			}
+			src = this.imageSrc;
+		}
+		HTMLDocumentImpl document = (HTMLDocumentImpl) this.document;
+		if ((document != null) && (src != null)) {
+			document.prioritizeImage(src);
+		}
+	}
+
 	/**
 	 * Gets the image.
 	 *
@@ -323,10 +341,10 @@ public class HTMLImageElementImpl extends HTMLAbstractUIElement implements HTMLI
 			// Inform listener, holding no lock.
 			listenerArray[i].imageLoaded(event);
 		}
-		Function onload = this.getOnload();
-		if (onload != null) {
+		Function handler = event.image == null ? this.getOnerror() : this.getOnload();
+		if (handler != null) {
 			// TODO: onload event object?
-			Executor.executeFunction(HTMLImageElementImpl.this, onload, null);
+			Executor.executeFunction(HTMLImageElementImpl.this, handler, null);
 		}
 	}
 
@@ -182,7 +182,6 @@ HTMLLinkElement {
 							CSSStyleSheet sheet = CSSUtilities.parse(this.getHref(), doc);
 							CSSStyleSheetImpl sheetImpl = null;
 							if (sheet != null) {
-								doc.addStyleSheet(sheet);
 								this.styleSheet = sheet;
 								if (sheet instanceof CSSStyleSheetImpl) {
 									sheetImpl = (CSSStyleSheetImpl) sheet;
@@ -31,13 +31,18 @@ import java.net.URI;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 import java.util.MissingResourceException;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lobobrowser.html.HtmlAttributeProperties;
 import org.lobobrowser.html.HtmlProperties;
+import org.lobobrowser.html.dombl.ResourcePreloader;
 import org.lobobrowser.html.js.Executor;
+import org.lobobrowser.html.js.ScriptCache;
 import org.lobobrowser.http.HttpRequest;
 import org.lobobrowser.http.Method;
 import org.lobobrowser.http.UserAgentContext;
@@ -141,8 +146,8 @@ HTMLScriptElement {
         this.setAttribute(HtmlAttributeProperties.EVENT, event);
     }
 
-    /** The defer. */
-    private boolean defer;
+    /** The key of the load of a queued script, or null. */
+    private String preloadKey;
 
     /*
      * (non-Javadoc)
@@ -150,7 +155,7 @@ HTMLScriptElement {
      */
     @Override
     public boolean getDefer() {
-        return this.defer;
+        return this.hasAttribute(HtmlAttributeProperties.DEFER);
     }
 
     /*
@@ -159,7 +164,33 @@ HTMLScriptElement {
      */
     @Override
     public void setDefer(boolean defer) {
-        this.defer = defer;
+        if (defer) {
+            this.setAttribute(HtmlAttributeProperties.DEFER, HtmlAttributeProperties.DEFER);
+        } else {
+            this.removeAttribute(HtmlAttributeProperties.DEFER);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.lobobrowser.w3c.html.HTMLScriptElement#getAsync()
+     */
+    @Override
+    public boolean getAsync() {
+        return this.hasAttribute(HtmlAttributeProperties.ASYNC);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.lobobrowser.w3c.html.HTMLScriptElement#setAsync(boolean)
+     */
+    @Override
+    public void setAsync(boolean async) {
+        if (async) {
+            this.setAttribute(HtmlAttributeProperties.ASYNC, HtmlAttributeProperties.ASYNC);
+        } else {
+            this.removeAttribute(HtmlAttributeProperties.ASYNC);
+        }
     }
 
     /*
@@ -213,9 +244,132 @@ HTMLScriptElement {
     }
 
     /**
-     * Process script.
+     * Starts fetching an external script in the background, so that the
+     * script element that later refers to it finds it ready.
+     *
+     * @param bcontext
+     *            the user agent context
+     * @param scriptURL
+     *            the absolute URL of the script
+     */
+    public static void preload(final UserAgentContext bcontext, final URL scriptURL) {
+        ResourcePreloader.getInstance().preload(
+                ResourcePreloader.getKey(ResourcePreloader.KIND_SCRIPT, scriptURL),
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return loadScript(bcontext, scriptURL, scriptURL.toExternalForm());
+                    }
+                });
+    }
+
+    /**
+     * Loads the text of an external script.
+     *
+     * @param bcontext
+     *            the user agent context
+     * @param url
+     *            the url, or null if the script uri is not valid
+     * @param scriptURI
+     *            the script uri
+     * @return the text
+     */
+    private static String loadScript(UserAgentContext bcontext, URL url, String scriptURI) {
+        if (url == null) {
+            return httpURLConnection(scriptURI);
+        }
+        HttpRequest request = bcontext.createHttpRequest();
+        try {
+            sendSync(request, url);
+        } catch (IOException thrown) {
+            logger.log(Level.WARNING, "processScript()", thrown);
+        }
+        int status = request.getStatus();
+        if ((status != 200) && (status != 0)) {
+            return httpURLConnection(scriptURI);
+        }
+        return request.getResponseText();
+    }
+
+    /**
+     * Performs a synchronous GET request.
+     *
+     * @param request
+     *            the request
+     * @param url
+     *            the url
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static void sendSync(final HttpRequest request, final URL url) throws IOException {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm == null) {
+            request.open(Method.GET, url, false);
+            request.send();
+        } else {
+            try {
+                AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
+                    // Code might have restrictions on accessing items from
+                    // elsewhere.
+                    @Override
+                    public Object run() throws IOException {
+                        request.open(Method.GET, url, false);
+                        request.send();
+                        return null;
+                    }
+                });
+            } catch (PrivilegedActionException pae) {
+                throw (IOException) pae.getException();
+            }
+        }
+    }
+
+    /**
+     * Process script. An external script with the <code>async</code> or
+     * <code>defer</code> attribute found while the document is parsed is
+     * loaded in the background and queued instead of run now.
      */
 	protected final void processScript() {
+		UserAgentContext bcontext = this.getUserAgentContext();
+		String src = this.getSrc();
+		Document doc = this.document;
+		if ((bcontext != null) && bcontext.isScriptingEnabled() && (src != null)
+				&& (doc instanceof HTMLDocumentImpl)) {
+			ScriptQueue queue = ((HTMLDocumentImpl) doc).getScriptQueue();
+			boolean async = this.getAsync();
+			if ((async || this.getDefer()) && queue.isParsing()) {
+				URL scriptURL = ((HTMLDocumentImpl) doc).getFullURL(src);
+				if (scriptURL != null) {
+					preload(bcontext, scriptURL);
+					this.preloadKey = ResourcePreloader.getKey(ResourcePreloader.KIND_SCRIPT, scriptURL);
+					if (async) {
+						queue.addAsync(this);
+					} else {
+						queue.addDeferred(this);
+					}
+					return;
+				}
+			}
+		}
+		this.runScript();
+	}
+
+	/**
+	 * Checks whether a queued script can run without waiting for its load. A
+	 * script whose preload was discarded is fetched directly when it runs.
+	 *
+	 * @return true, if is loaded
+	 */
+	final boolean isLoaded() {
+		String key = this.preloadKey;
+		return (key == null) || ResourcePreloader.getInstance().isDone(key);
+	}
+
+	/**
+	 * Loads the script if it is external and runs it.
+	 */
+	final void runScript() {
+		this.preloadKey = null;
 		UserAgentContext bcontext = this.getUserAgentContext();
 		if (bcontext != null && bcontext.isScriptingEnabled()) {
 			String text;
@@ -237,45 +391,13 @@ HTMLScriptElement {
 							.toExternalForm();
 					long time1 = liflag ? System.currentTimeMillis() : 0;
 					try {
-						final HttpRequest request = bcontext
-								.createHttpRequest();
-						// Perform a synchronous request
-						SecurityManager sm = System.getSecurityManager();
-						if (sm == null) {
-							try {
-								request.open(Method.GET, getFullURL(scriptURI), false);
-								request.send();
-							} catch (IOException thrown) {
-								logger.log(Level.WARNING, "processScript()",
-										thrown);
-							}
-						} else {
-							AccessController
-									.doPrivileged(new PrivilegedAction<Object>() {
-										@Override
-										public Object run() {
-											// Code might have restrictions on
-											// accessing
-											// items from elsewhere.
-											try {
-												request.open(Method.GET, getFullURL(scriptURI), false);
-												request.send();
-											} catch (IOException thrown) {
-												logger.log(Level.WARNING,
-														"processScript()",
-														thrown);
-											}
-											return null;
-										}
-									});
+						// A preload scanner may have fetched it already.
+						text = scriptURL == null ? null
+								: (String) ResourcePreloader.getInstance().take(
+										ResourcePreloader.getKey(ResourcePreloader.KIND_SCRIPT, scriptURL));
+						if (text == null) {
+							text = loadScript(bcontext, scriptURL, scriptURI);
 						}
-						int status = request.getStatus();
-						if ((status != 200) && (status != 0)) {
-							text = httpURLConnection(scriptURI);
-						} else {
-							text = request.getResponseText();
-						}
-
 					} finally {
 						if (liflag) {
 							long time2 = System.currentTimeMillis();
@@ -297,8 +419,9 @@ HTMLScriptElement {
 
 						long time1 = liflag ? System.currentTimeMillis() : 0;
 						if (text != null) {
-							ctx.evaluateString(scope, text, scriptURI,
-									baseLineNumber, null);
+							ScriptCache.getInstance().evaluate(ctx, scope,
+									this.getDocumentURL(), text, scriptURI,
+									baseLineNumber);
 							if (liflag) {
 								long time2 = System.currentTimeMillis();
 								logger.info("addNotify(): Evaluated (or attempted to evaluate) Javascript in "
@@ -377,16 +500,4 @@ HTMLScriptElement {
     protected void appendInnerTextImpl(StringBuffer buffer) {
         // nop
     }
-
-	@Override
-	public boolean getAsync() {
-		// TODO Auto-generated method stub
-		return false;
-	}
-
-	@Override
-	public void setAsync(boolean async) {
-		// TODO Auto-generated method stub
-		
-	}
 }
@@ -0,0 +1,181 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.domimpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.lobobrowser.html.HtmlAttributeProperties;
+import org.lobobrowser.js.AbstractScriptableDelegate;
+import org.lobobrowser.util.Strings;
+import org.lobobrowser.w3c.html.HTMLCollection;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A live collection of the elements of a document with a given tag or class
+ * name. It reads the document index on every access, and the index keeps the
+ * ordered elements of a key until elements with that key are added or
+ * removed, so changes elsewhere in the document cost nothing here.
+ * <p>
+ * A collection of several class names filters the elements of one of them.
+ * The filtered elements are kept until any class of the document changes.
+ */
+public class IndexedHTMLCollection extends AbstractScriptableDelegate implements HTMLCollection, NodeList {
+	// Note: class must be public for reflection to work.
+
+	/** The index. */
+	private final ElementIndex index;
+
+	/** The key. */
+	private final String key;
+
+	/** The class names the elements must all have, or null. */
+	private final String[] classNames;
+
+	/** The filtered elements, or null if not computed. */
+	private List<DOMElementImpl> filtered;
+
+	/** The modification count of the index the filtered elements are from. */
+	private int filteredModCount;
+
+	/**
+	 * Instantiates a new indexed html collection.
+	 *
+	 * @param index
+	 *            the index
+	 * @param key
+	 *            the key
+	 */
+	IndexedHTMLCollection(ElementIndex index, String key) {
+		this(index, key, null);
+	}
+
+	/**
+	 * Instantiates a new indexed html collection of the elements of a class
+	 * index key that have all of several class names.
+	 *
+	 * @param index
+	 *            the class index
+	 * @param key
+	 *            the key, preferably the class name with fewest elements
+	 * @param classNames
+	 *            the class names, or null to keep every element of the key
+	 */
+	IndexedHTMLCollection(ElementIndex index, String key, String[] classNames) {
+		this.index = index;
+		this.key = key;
+		this.classNames = classNames;
+	}
+
+	/**
+	 * Gets the elements of the collection in document order.
+	 *
+	 * @return the elements
+	 */
+	private List<DOMElementImpl> getElements() {
+		String[] classNames = this.classNames;
+		if (classNames == null) {
+			return this.index.get(this.key);
+		}
+		synchronized (this) {
+			// Read before the elements, so a change made meanwhile is seen
+			// on the next access.
+			int modCount = this.index.getModCount();
+			List<DOMElementImpl> filtered = this.filtered;
+			if (filtered == null || modCount != this.filteredModCount) {
+				filtered = new ArrayList<DOMElementImpl>();
+				for (DOMElementImpl element : this.index.get(this.key)) {
+					if (hasClasses(element, classNames)) {
+						filtered.add(element);
+					}
+				}
+				this.filtered = filtered;
+				this.filteredModCount = modCount;
+			}
+			return filtered;
+		}
+	}
+
+	/**
+	 * Checks whether an element has all of the class names.
+	 *
+	 * @param element
+	 *            the element
+	 * @param classNames
+	 *            the class names
+	 * @return true, if successful
+	 */
+	private static boolean hasClasses(DOMElementImpl element, String[] classNames) {
+		String classAttribute = element.getAttribute(HtmlAttributeProperties.CLASS);
+		if (classAttribute == null) {
+			return false;
+		}
+		List<String> elementClasses = Arrays.asList(Strings.split(classAttribute));
+		for (String className : classNames) {
+			if (!elementClasses.contains(className)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.lobobrowser.w3c.html.HTMLCollection#getLength()
+	 */
+	@Override
+	public int getLength() {
+		return this.getElements().size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.lobobrowser.w3c.html.HTMLCollection#item(int)
+	 */
+	@Override
+	public Node item(int index) {
+		List<DOMElementImpl> elements = this.getElements();
+		return index >= 0 && index < elements.size() ? elements.get(index) : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.lobobrowser.w3c.html.HTMLCollection#namedItem(java.lang.String)
+	 */
+	@Override
+	public Node namedItem(String name) {
+		if (name == null || name.length() == 0) {
+			return null;
+		}
+		for (DOMElementImpl element : this.getElements()) {
+			if (name.equals(element.getId())
+					|| name.equals(element.getAttribute(HtmlAttributeProperties.NAME))) {
+				return element;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,150 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.domimpl;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * The external scripts of a document that do not block the parser.
+ * <p>
+ * Scripts with the <code>async</code> attribute are loaded in the background
+ * and run in the order their loads finish, the next time the parser closes
+ * an element. Scripts with the <code>defer</code> attribute are loaded in the
+ * background too, but run in document order once parsing is done. Either
+ * kind always runs before the document's <code>onload</code> handler, and
+ * always on the parser thread, so scripts never run concurrently.
+ * <p>
+ * This class is not thread safe; it is only used by the thread parsing the
+ * document.
+ */
+final class ScriptQueue {
+
+	/** The async scripts not run yet, in document order. */
+	private final LinkedList<HTMLScriptElementImpl> asyncScripts = new LinkedList<HTMLScriptElementImpl>();
+
+	/** The deferred scripts not run yet, in document order. */
+	private final LinkedList<HTMLScriptElementImpl> deferredScripts = new LinkedList<HTMLScriptElementImpl>();
+
+	/** Whether the document is being parsed. */
+	private boolean parsing;
+
+	/** Whether a script of the queue is running. */
+	private boolean running;
+
+	/**
+	 * Sets whether the document is being parsed. Scripts can only be queued
+	 * while it is.
+	 *
+	 * @param parsing
+	 *            the new parsing
+	 */
+	void setParsing(boolean parsing) {
+		this.parsing = parsing;
+	}
+
+	/**
+	 * Checks if is parsing.
+	 *
+	 * @return true, if is parsing
+	 */
+	boolean isParsing() {
+		return this.parsing;
+	}
+
+	/**
+	 * Adds a script that runs as soon as it has been loaded.
+	 *
+	 * @param script
+	 *            the script, whose load has been started
+	 */
+	void addAsync(HTMLScriptElementImpl script) {
+		this.asyncScripts.add(script);
+	}
+
+	/**
+	 * Adds a script that runs after parsing, after the deferred scripts
+	 * added before it.
+	 *
+	 * @param script
+	 *            the script, whose load has been started
+	 */
+	void addDeferred(HTMLScriptElementImpl script) {
+		this.deferredScripts.add(script);
+	}
+
+	/**
+	 * Runs the async scripts that have been loaded.
+	 */
+	void runLoaded() {
+		if (this.asyncScripts.isEmpty() || this.running) {
+			return;
+		}
+		this.running = true;
+		try {
+			Iterator<HTMLScriptElementImpl> i = this.asyncScripts.iterator();
+			while (i.hasNext()) {
+				HTMLScriptElementImpl script = i.next();
+				if (script.isLoaded()) {
+					i.remove();
+					script.runScript();
+					// The script may have queued or run others.
+					i = this.asyncScripts.iterator();
+				}
+			}
+		} finally {
+			this.running = false;
+		}
+	}
+
+	/**
+	 * Runs the deferred scripts in order, then the async scripts that have
+	 * not run yet, waiting for their loads as needed.
+	 */
+	void runAll() {
+		if (this.running) {
+			return;
+		}
+		this.running = true;
+		try {
+			while (!this.deferredScripts.isEmpty() || !this.asyncScripts.isEmpty()) {
+				// Async scripts that are ready need not wait for the
+				// deferred ones.
+				Iterator<HTMLScriptElementImpl> i = this.asyncScripts.iterator();
+				while (i.hasNext()) {
+					HTMLScriptElementImpl script = i.next();
+					if (script.isLoaded()) {
+						i.remove();
+						script.runScript();
+						i = this.asyncScripts.iterator();
+					}
+				}
+				if (!this.deferredScripts.isEmpty()) {
+					this.deferredScripts.removeFirst().runScript();
+				} else if (!this.asyncScripts.isEmpty()) {
+					this.asyncScripts.removeFirst().runScript();
+				}
+			}
+		} finally {
+			this.running = false;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.gui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lobobrowser.html.domimpl.DOMNodeImpl;
+
+/**
+ * The document notifications of a panel that have not been processed yet,
+ * at most one per node.
+ * <p>
+ * A notification for a node that already has one replaces it only if its
+ * type is stronger, in the order {@link DocumentNotification#LOOK},
+ * {@link DocumentNotification#POSITION}, {@link DocumentNotification#SIZE},
+ * {@link DocumentNotification#GENERIC}, so any number of changes to a node
+ * costs a single notification. Nodes keep the order of their first
+ * notification. This class is thread safe.
+ */
+final class DocumentNotificationQueue {
+
+    /** The notifications by node. */
+    private final Map<DOMNodeImpl, DocumentNotification> notifications = new LinkedHashMap<DOMNodeImpl, DocumentNotification>();
+
+    /** The notification for the whole document, or null. */
+    private DocumentNotification allInvalidated;
+
+    /**
+     * Adds a notification.
+     *
+     * @param notification
+     *            the notification
+     */
+    synchronized void add(DocumentNotification notification) {
+        DOMNodeImpl node = notification.node;
+        if (node == null) {
+            if (this.allInvalidated == null) {
+                this.allInvalidated = notification;
+            }
+            return;
+        }
+        DocumentNotification previous = this.notifications.get(node);
+        if ((previous == null) || (previous.type < notification.type)) {
+            this.notifications.put(node, notification);
+        }
+    }
+
+    /**
+     * Removes all the notifications.
+     *
+     * @return the notifications, with the one for the whole document first,
+     *         or null if there are none
+     */
+    synchronized DocumentNotification[] removeAll() {
+        DocumentNotification all = this.allInvalidated;
+        int size = this.notifications.size() + (all == null ? 0 : 1);
+        if (size == 0) {
+            return null;
+        }
+        DocumentNotification[] result = new DocumentNotification[size];
+        int index = 0;
+        if (all != null) {
+            result[index++] = all;
+        }
+        for (DocumentNotification notification : this.notifications.values()) {
+            result[index++] = notification;
+        }
+        this.notifications.clear();
+        this.allInvalidated = null;
+        return result;
+    }
+}
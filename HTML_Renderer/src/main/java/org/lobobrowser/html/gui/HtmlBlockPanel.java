@@ -58,14 +58,17 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JComponent;
+import javax.swing.JScrollBar;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 
 import org.lobobrowser.html.HtmlRendererContext;
+import org.lobobrowser.html.control.ImgControl;
 import org.lobobrowser.html.dombl.ModelNode;
 import org.lobobrowser.html.dombl.UINode;
 import org.lobobrowser.html.domimpl.DOMNodeImpl;
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.html.renderer.BaseBoundableRenderable;
 import org.lobobrowser.html.renderer.BoundableRenderable;
 import org.lobobrowser.html.renderer.DelayedPair;
 import org.lobobrowser.html.renderer.FrameContext;
@@ -106,6 +109,12 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 	/** The Constant loggableInfo. */
 	private static final boolean loggableInfo = logger.isLoggable(Level.INFO);
 
+	/**
+	 * The maximum number of blocks laid out one by one in a batch of
+	 * notifications. Past it, the whole tree is laid out once instead.
+	 */
+	private static final int MAX_INCREMENTAL_LAYOUTS = 32;
+
 	/** The frame context. */
 	protected final FrameContext frameContext;
 
@@ -142,6 +151,9 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 	/** The default overflow y. */
 	protected int defaultOverflowY = RenderState.OVERFLOW_SCROLL;
 
+	/** The backing store the document is painted from, or null. */
+	private TiledBackingStore backingStore;
+
 	/**
 	 * Instantiates a new html block panel.
 	 *
@@ -627,7 +639,7 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 	@Override
 	public void setRootNode(DOMNodeImpl node) {
 		if (node != null) {
-			RBlock block = new RBlock(node, 0, this.ucontext, this.rcontext, this.frameContext, this);
+			RBlock block = new RootBlock(node, 0, this.ucontext, this.rcontext, this.frameContext, this);
 			block.setDefaultMarginInsets(this.defaultMarginInsets);
 			// block.setDefaultPaddingInsets(this.defaultPaddingInsets);
 			block.setDefaultOverflowX(this.defaultOverflowX);
@@ -637,6 +649,10 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 		} else {
 			this.rblock = null;
 		}
+		TiledBackingStore store = this.backingStore;
+		if (store != null) {
+			store.clear();
+		}
 		this.invalidate();
 		this.validateAll();
 		this.repaint();
@@ -934,6 +950,10 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 				block.setOrigin(0, 0);
 				block.updateWidgetBounds(0, 0);
 				this.updateGUIComponents();
+				TiledBackingStore store = this.backingStore;
+				if (store != null) {
+					store.invalidateAll();
+				}
 				if (liflag) {
 					long time2 = System.currentTimeMillis();
 					String uri = rootNode instanceof Document ? ((Document) rootNode).getDocumentURI() : "";
@@ -958,9 +978,68 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 	 */
 	public void repaint(ModelNode modelNode) {
 		// this.rblock.invalidateRenderStyle();
+		RBlock block = this.rblock;
+		TiledBackingStore store = this.backingStore;
+		if ((store != null) && (block != null) && (modelNode instanceof Node)) {
+			Rectangle bounds = this.getNodeBounds((Node) modelNode, true);
+			RBlockViewport viewport = block.getRBlockViewport();
+			if ((bounds != null) && (viewport != null)) {
+				// Only the tiles of the node are painted again.
+				this.repaint(bounds.x + block.getX() + viewport.getX(), bounds.y + block.getY() + viewport.getY(),
+						bounds.width, bounds.height);
+				return;
+			}
+		}
+		if (store != null) {
+			this.invalidateTiles(store, null);
+		}
 		this.repaint();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see java.awt.Component#repaint(int, int, int, int)
+	 */
+	@Override
+	public void repaint(int x, int y, int width, int height) {
+		// Renderables repaint the areas that changed through this method.
+		RBlock block = this.rblock;
+		TiledBackingStore store = this.backingStore;
+		if ((store != null) && (block instanceof RootBlock) && !((RootBlock) block).scrolling) {
+			RBlockViewport viewport = block.getRBlockViewport();
+			if (viewport != null) {
+				this.invalidateTiles(store, new Rectangle(x - block.getX() - viewport.getX(),
+						y - block.getY() - viewport.getY(), width, height));
+			}
+		}
+		super.repaint(x, y, width, height);
+	}
+
+	/**
+	 * Invalidates an area of the backing store. Images repaint from the
+	 * threads that load and animate them, so the invalidation is posted to
+	 * the GUI thread when made from another thread.
+	 *
+	 * @param store
+	 *            the backing store
+	 * @param area
+	 *            the area in content coordinates, or null for all of it
+	 */
+	private void invalidateTiles(final TiledBackingStore store, final Rectangle area) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					HtmlBlockPanel.this.invalidateTiles(store, area);
+				}
+			});
+		} else if (area == null) {
+			store.invalidateAll();
+		} else {
+			store.invalidate(area);
+		}
+	}
+
 	/**
 	 * Gets the selection text.
 	 *
@@ -1062,6 +1141,7 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 			// notifications come in batches. Other types
 			// of noitifications probably come one by one.
 			boolean topLayout = false;
+			int incrementalLayouts = 0;
 			ArrayList<RElement> repainters = null;
 			int length = notifications.length;
 			for (int i = 0; i < length; i++) {
@@ -1078,11 +1158,20 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 						}
 						this.rblock.invalidateLayoutDeep();
 						// this.rblock.invalidateRenderStyle();
+						topLayout = true;
 					} else {
 						UINode uiNode = node.findUINode();
 						if (uiNode != null) {
-							RElement relement = (RElement) uiNode;
-							relement.invalidateLayoutUpTree();
+							RBlock block = this.relayoutIncrementally((RElement) uiNode,
+									!topLayout && (incrementalLayouts++ < MAX_INCREMENTAL_LAYOUTS));
+							if (block == null) {
+								topLayout = true;
+							} else {
+								if (repainters == null) {
+									repainters = new ArrayList<RElement>(1);
+								}
+								repainters.add(block);
+							}
 							// if(type == DocumentNotification.GENERIC) {
 							// relement.invalidateRenderStyle();
 							// }
@@ -1090,23 +1179,25 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 							if (loggableInfo) {
 								logger.info("processDocumentNotifications(): Unable to find UINode for " + node);
 							}
+							topLayout = true;
 						}
 					}
-					topLayout = true;
 					break;
 				}
 				case DocumentNotification.POSITION: {
-					// TODO: Could be more efficient.
 					DOMNodeImpl node = dn.node;
 					DOMNodeImpl parent = (DOMNodeImpl) node.getParentNode();
-					if (parent != null) {
-						UINode uiNode = parent.findUINode();
-						if (uiNode != null) {
-							RElement relement = (RElement) uiNode;
-							relement.invalidateLayoutUpTree();
+					UINode uiNode = parent == null ? null : parent.findUINode();
+					RBlock block = uiNode == null ? null : this.relayoutIncrementally((RElement) uiNode,
+							!topLayout && (incrementalLayouts++ < MAX_INCREMENTAL_LAYOUTS));
+					if (block == null) {
+						topLayout = true;
+					} else {
+						if (repainters == null) {
+							repainters = new ArrayList<RElement>(1);
 						}
+						repainters.add(block);
 					}
-					topLayout = true;
 					break;
 				}
 				case DocumentNotification.LOOK: {
@@ -1142,6 +1233,28 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 		}
 	}
 
+	/**
+	 * Lays out the renderables affected by a change of an element, without
+	 * laying out the whole block tree if possible.
+	 *
+	 * @param relement
+	 *            the element, or the closest one, whose layout changed
+	 * @param incremental
+	 *            whether to try laying out blocks in place, which is useless
+	 *            once the whole tree has to be laid out anyway
+	 * @return the block that kept its size after being laid out, which only
+	 *         needs to be repainted, or null if the whole tree has to be laid
+	 *         out, in which case the renderables affected have been
+	 *         invalidated
+	 */
+	private RBlock relayoutIncrementally(RElement relement, boolean incremental) {
+		if (incremental && (relement instanceof BaseBoundableRenderable)) {
+			return ((BaseBoundableRenderable) relement).relayoutIncrementally();
+		}
+		relement.invalidateLayoutUpTree();
+		return null;
+	}
+
 	@Override
 	public void addDelayedPair(DelayedPair pair) {
 		// NOP
@@ -1303,10 +1416,139 @@ public class HtmlBlockPanel extends JComponent implements NodeRenderer, Renderab
 		}
 	}
 
+	/**
+	 * Checks if the document is painted from image tiles that are kept
+	 * between paints.
+	 *
+	 * @return true, if is tiled painting
+	 */
+	public boolean isTiledPainting() {
+		return this.backingStore != null;
+	}
+
+	/**
+	 * Sets whether the document is painted from image tiles that are kept
+	 * between paints. Scrolling then mostly draws tiles already painted, at
+	 * the cost of the memory of the tiles. This method should be invoked in
+	 * the GUI thread.
+	 *
+	 * @param tiledPainting
+	 *            the new tiled painting
+	 */
+	public void setTiledPainting(boolean tiledPainting) {
+		if (tiledPainting != this.isTiledPainting()) {
+			TiledBackingStore store = this.backingStore;
+			if (store != null) {
+				store.clear();
+			}
+			this.backingStore = tiledPainting ? new TiledBackingStore(this) : null;
+			this.repaint();
+		}
+	}
+
+	/**
+	 * Gets the bounds of the components that may repaint themselves without
+	 * the renderer knowing, in the coordinates of the viewport given.
+	 *
+	 * @param viewport
+	 *            the viewport of the root block
+	 * @return the live bounds
+	 */
+	private Collection<Rectangle> getLiveBounds(RBlockViewport viewport) {
+		Collection<Rectangle> bounds = new ArrayList<Rectangle>();
+		int dx = this.rblock.getX() + viewport.getX();
+		int dy = this.rblock.getY() + viewport.getY();
+		for (Component component : this.getComponents()) {
+			// Scroll bars and images repaint through their renderables.
+			if (component.isVisible() && !(component instanceof JScrollBar) && !(component instanceof ImgControl)) {
+				Rectangle componentBounds = component.getBounds();
+				componentBounds.translate(-dx, -dy);
+				bounds.add(componentBounds);
+			}
+		}
+		return bounds;
+	}
+
 	@Override
 	  public Insets getInsets(final boolean hscroll, final boolean vscroll) {
 	    throw new UnsupportedOperationException(
 	        "Method added while implementing absolute positioned elements inside relative elements. But not implemented yet.");
 	  }
 
+	/**
+	 * The root block of the panel, which paints its viewport from the backing
+	 * store when there is one, and tells the panel when it scrolls, since
+	 * scrolling moves the content of the viewport without changing it.
+	 */
+	private class RootBlock extends RBlock {
+
+		/** Whether the block is repainting after it scrolled. */
+		private boolean scrolling;
+
+		/**
+		 * Instantiates a new root block.
+		 *
+		 * @param modelNode
+		 *            the model node
+		 * @param listNesting
+		 *            the list nesting
+		 * @param pcontext
+		 *            the pcontext
+		 * @param rcontext
+		 *            the rcontext
+		 * @param frameContext
+		 *            the frame context
+		 * @param parentContainer
+		 *            the parent container
+		 */
+		public RootBlock(DOMNodeImpl modelNode, int listNesting, UserAgentContext pcontext,
+				HtmlRendererContext rcontext, FrameContext frameContext, RenderableContainer parentContainer) {
+			super(modelNode, listNesting, pcontext, rcontext, frameContext, parentContainer);
+		}
+
+		@Override
+		protected void paintViewport(Graphics g) {
+			TiledBackingStore store = HtmlBlockPanel.this.backingStore;
+			RBlockViewport viewport = this.getRBlockViewport();
+			if (store == null) {
+				super.paintViewport(g);
+			} else {
+				store.paint(g, viewport, HtmlBlockPanel.this.getLiveBounds(viewport));
+			}
+		}
+
+		@Override
+		public void scrollHorizontalTo(int newX) {
+			boolean wasScrolling = this.scrolling;
+			this.scrolling = true;
+			try {
+				super.scrollHorizontalTo(newX);
+			} finally {
+				this.scrolling = wasScrolling;
+			}
+		}
+
+		@Override
+		public void scrollVerticalTo(int newY) {
+			boolean wasScrolling = this.scrolling;
+			this.scrolling = true;
+			try {
+				super.scrollVerticalTo(newY);
+			} finally {
+				this.scrolling = wasScrolling;
+			}
+		}
+
+		@Override
+		public void ensureVisible(Point point) {
+			boolean wasScrolling = this.scrolling;
+			this.scrolling = true;
+			try {
+				super.ensureVisible(point);
+			} finally {
+				this.scrolling = wasScrolling;
+			}
+		}
+	}
+
 }
@@ -28,7 +28,6 @@ import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.ArrayList;
 
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -78,12 +77,21 @@ public class HtmlPanel extends JComponent implements FrameContext {
     /** The notification listener. */
     private final DocumentNotificationListener notificationListener;
 
-    /** The notification immediate action. */
-    private final Runnable notificationImmediateAction;
-
     /** The Constant NOTIF_TIMER_DELAY. */
     private static final int NOTIF_TIMER_DELAY = 300;
 
+    /**
+     * The minimum time in milliseconds between two flushes of notifications
+     * made in the GUI thread, about one display frame.
+     */
+    private static final int FRAME_INTERVAL = 16;
+
+    /** The time notifications were last processed. */
+    private volatile long lastNotificationTime;
+
+    /** The time the notification timer is due, if it is running. */
+    private long notificationDueTime;
+
     /** The is frame set. */
     private volatile boolean isFrameSet = false;
 
@@ -105,6 +113,9 @@ public class HtmlPanel extends JComponent implements FrameContext {
     /** The default overflow y. */
     private volatile int defaultOverflowY = RenderState.OVERFLOW_SCROLL;
 
+    /** The tiled painting. */
+    private volatile boolean tiledPainting;
+
     /** The html block panel. */
     protected volatile HtmlBlockPanel htmlBlockPanel;
 
@@ -119,15 +130,9 @@ public class HtmlPanel extends JComponent implements FrameContext {
         this.setLayout(WrapperLayout.getInstance());
         this.setOpaque(false);
         this.notificationTimer = new Timer(NOTIF_TIMER_DELAY,
-                new NotificationTimerAction());
+                new NotificationTimerAction(this));
         this.notificationTimer.setRepeats(false);
-        this.notificationListener = new LocalDocumentNotificationListener();
-        this.notificationImmediateAction = new Runnable() {
-            @Override
-            public void run() {
-                processNotifications();
-            }
-        };
+        this.notificationListener = new LocalDocumentNotificationListener(this);
     }
 
     /** Sets the preferred width.
@@ -222,6 +227,7 @@ public class HtmlPanel extends JComponent implements FrameContext {
         shp.setDefaultMarginInsets(this.defaultMarginInsets);
         shp.setDefaultOverflowX(this.defaultOverflowX);
         shp.setDefaultOverflowY(this.defaultOverflowY);
+        shp.setTiledPainting(this.tiledPainting);
         this.htmlBlockPanel = shp;
         this.frameSetPanel = null;
         this.removeAll();
@@ -818,31 +824,67 @@ public class HtmlPanel extends JComponent implements FrameContext {
         }
     }
 
+    /**
+     * Sets whether documents are painted from image tiles that are kept
+     * between paints, which makes scrolling cheaper at the cost of the
+     * memory of the tiles. It is off by default.
+     *
+     * @param tiledPainting
+     *            the new tiled painting
+     * @see HtmlBlockPanel#setTiledPainting(boolean)
+     */
+    public void setTiledPainting(boolean tiledPainting) {
+        this.tiledPainting = tiledPainting;
+        HtmlBlockPanel block = this.htmlBlockPanel;
+        if (block != null) {
+            block.setTiledPainting(tiledPainting);
+        }
+    }
+
     /** The notifications. */
-    private ArrayList<DocumentNotification> notifications = new ArrayList<DocumentNotification>(
-            1);
+    private final DocumentNotificationQueue notifications = new DocumentNotificationQueue();
 
     /**
-     * Adds the notification.
+     * Adds the notification. Notifications are processed together, at most
+     * once per display frame, and only the strongest one of each node.
      *
      * @param notification
      *            the notification
      */
     public void addNotification(DocumentNotification notification) {
         // This can be called in a random thread.
-        ArrayList<DocumentNotification> notifs = this.notifications;
-        synchronized (notifs) {
-            notifs.add(notification);
-        }
+        this.notifications.add(notification);
         if (SwingUtilities.isEventDispatchThread()) {
             // In this case we want the notification to be processed
-            // immediately. However, we don't want potential recursions
+            // soon. However, we don't want potential recursions
             // to occur when a Javascript property is set in the GUI thread.
             // Additionally, many property values may be set in one
             // event block.
-            SwingUtilities.invokeLater(this.notificationImmediateAction);
+            long sinceLast = System.currentTimeMillis()
+                    - this.lastNotificationTime;
+            this.scheduleNotifications((int) Math.max(0, FRAME_INTERVAL
+                    - sinceLast));
         } else {
-            this.notificationTimer.restart();
+            this.scheduleNotifications(NOTIF_TIMER_DELAY);
+        }
+    }
+
+    /**
+     * Makes sure notifications are processed within the delay given.
+     *
+     * @param delay
+     *            the delay in milliseconds
+     */
+    private void scheduleNotifications(int delay) {
+        Timer timer = this.notificationTimer;
+        long dueTime = System.currentTimeMillis() + delay;
+        synchronized (timer) {
+            if (timer.isRunning() && (this.notificationDueTime <= dueTime)) {
+                return;
+            }
+            this.notificationDueTime = dueTime;
+            timer.setInitialDelay(delay);
+            timer.restart();
         }
     }
 
@@ -856,11 +898,9 @@ public class HtmlPanel extends JComponent implements FrameContext {
      */
     @Override
     public void delayedRelayout(DOMNodeImpl node) {
-        ArrayList<DocumentNotification> notifs = this.notifications;
-        synchronized (notifs) {
-            notifs.add(new DocumentNotification(DocumentNotification.SIZE, node));
-        }
-        this.notificationTimer.restart();
+        this.notifications.add(new DocumentNotification(
+                DocumentNotification.SIZE, node));
+        this.scheduleNotifications(NOTIF_TIMER_DELAY);
     }
 
     /**
@@ -868,16 +908,10 @@ public class HtmlPanel extends JComponent implements FrameContext {
      */
     public void processNotifications() {
         // This is called in the GUI thread.
-        ArrayList<DocumentNotification> notifs = this.notifications;
-        DocumentNotification[] notifsArray;
-        synchronized (notifs) {
-            int size = notifs.size();
-            if (size == 0) {
-                return;
-            }
-            notifsArray = new DocumentNotification[size];
-            notifsArray = notifs.toArray(notifsArray);
-            notifs.clear();
+        this.lastNotificationTime = System.currentTimeMillis();
+        DocumentNotification[] notifsArray = this.notifications.removeAll();
+        if (notifsArray == null) {
+            return;
         }
         int length = notifsArray.length;
         for (int i = 0; i < length; i++) {
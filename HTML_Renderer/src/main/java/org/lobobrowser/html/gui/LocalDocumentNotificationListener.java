@@ -24,27 +24,32 @@ import org.lobobrowser.html.dombl.DocumentNotificationListener;
 import org.lobobrowser.html.domimpl.DOMNodeImpl;
 
 /**
- * The listener interface for receiving localDocumentNotification events. The
- * class that is interested in processing a localDocumentNotification event
- * implements this interface, and the object created with that class is
- * registered with a component using the component's
- * <code>addLocalDocumentNotificationListener</code> method. When the
- * localDocumentNotification event occurs, that object's appropriate method is
- * invoked.
- *
- * @see LocalDocumentNotificationEvent
+ * Forwards the notifications of a document to the {@link HtmlPanel} that
+ * renders it.
  */
 public class LocalDocumentNotificationListener implements
 DocumentNotificationListener {
 
+    /** The html panel. */
+    private final HtmlPanel htmlPanel;
+
+    /**
+     * Instantiates a new local document notification listener.
+     *
+     * @param htmlPanel
+     *            the html panel
+     */
+    public LocalDocumentNotificationListener(HtmlPanel htmlPanel) {
+        this.htmlPanel = htmlPanel;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.lobobrowser.html.dombl.DocumentNotificationListener#allInvalidated()
      */
     @Override
     public void allInvalidated() {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.GENERIC, null));
     }
 
@@ -55,8 +60,7 @@ DocumentNotificationListener {
      */
     @Override
     public void invalidated(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.GENERIC, node));
     }
 
@@ -68,8 +72,7 @@ DocumentNotificationListener {
      */
     @Override
     public void lookInvalidated(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.LOOK, node));
     }
 
@@ -81,8 +84,7 @@ DocumentNotificationListener {
      */
     @Override
     public void positionInvalidated(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.POSITION, node));
     }
 
@@ -94,8 +96,7 @@ DocumentNotificationListener {
      */
     @Override
     public void sizeInvalidated(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.SIZE, node));
     }
 
@@ -117,8 +118,7 @@ DocumentNotificationListener {
      */
     @Override
     public void nodeLoaded(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.GENERIC, node));
     }
 
@@ -130,8 +130,7 @@ DocumentNotificationListener {
      */
     @Override
     public void structureInvalidated(DOMNodeImpl node) {
-        HtmlPanel html = new HtmlPanel();
-        html.addNotification(new DocumentNotification(
+        this.htmlPanel.addNotification(new DocumentNotification(
                 DocumentNotification.GENERIC, node));
     }
 }
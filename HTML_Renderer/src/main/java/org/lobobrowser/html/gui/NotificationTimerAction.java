@@ -28,6 +28,19 @@ import java.awt.event.ActionListener;
  */
 public class NotificationTimerAction implements ActionListener {
 
+	/** The html panel. */
+	private final HtmlPanel htmlPanel;
+
+	/**
+	 * Instantiates a new notification timer action.
+	 *
+	 * @param htmlPanel
+	 *            the html panel whose notifications are processed
+	 */
+	public NotificationTimerAction(HtmlPanel htmlPanel) {
+		this.htmlPanel = htmlPanel;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -36,7 +49,6 @@ public class NotificationTimerAction implements ActionListener {
 	 */
 	@Override
 	public void actionPerformed(ActionEvent e) {
-		HtmlPanel html = new HtmlPanel();
-		html.processNotifications();
+		this.htmlPanel.processNotifications();
 	}
 }
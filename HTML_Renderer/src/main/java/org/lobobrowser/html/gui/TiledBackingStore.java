@@ -0,0 +1,262 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lobobrowser.html.renderer.Renderable;
+
+/**
+ * Keeps the painted content of a document in fixed size image tiles, so
+ * that scrolling and partial repaints draw images instead of walking the
+ * renderable tree again.
+ * <p>
+ * Tiles are in the coordinates of the content, so they stay valid while it
+ * scrolls. The areas of the content that change must be invalidated. Areas
+ * that may change without the renderer knowing, such as those of Swing
+ * components that repaint themselves, are never cached and are painted
+ * directly. The least recently used tiles are dropped once there are more
+ * than needed to cover the screen a few times. This class is only used in
+ * the GUI thread; invalidations made in other threads, such as those of
+ * images that load or animate, are posted to it by the panel.
+ */
+final class TiledBackingStore {
+
+	/** The width and height of a tile. */
+	private static final int TILE_SIZE = 256;
+
+	/** The minimum number of tiles kept. */
+	private static final int MIN_TILES = 48;
+
+	/** The component the content is painted in. */
+	private final Component component;
+
+	/** The maximum number of tiles kept. */
+	private int maxTiles = MIN_TILES;
+
+	/** The tiles by column and row, the least recently used first. */
+	private final Map<Point, Tile> tiles = new LinkedHashMap<Point, Tile>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Point, Tile> eldest) {
+			if (this.size() > TiledBackingStore.this.maxTiles) {
+				eldest.getValue().image.flush();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Instantiates a new tiled backing store.
+	 *
+	 * @param component
+	 *            the component the content is painted in
+	 */
+	TiledBackingStore(Component component) {
+		this.component = component;
+	}
+
+	/**
+	 * Paints the content in the clip of the graphics, from the tiles, which
+	 * are painted first if they are not valid.
+	 *
+	 * @param g
+	 *            the graphics, in the coordinates of the content
+	 * @param content
+	 *            the content
+	 * @param liveBounds
+	 *            the bounds of the areas of the content that are never
+	 *            cached
+	 */
+	void paint(Graphics g, Renderable content, Collection<Rectangle> liveBounds) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			content.paint(g);
+			return;
+		}
+		int firstColumn = Math.floorDiv(clip.x, TILE_SIZE);
+		int lastColumn = Math.floorDiv((clip.x + clip.width) - 1, TILE_SIZE);
+		int firstRow = Math.floorDiv(clip.y, TILE_SIZE);
+		int lastRow = Math.floorDiv((clip.y + clip.height) - 1, TILE_SIZE);
+		int shown = ((lastColumn - firstColumn) + 1) * ((lastRow - firstRow) + 1);
+		this.maxTiles = Math.max(MIN_TILES, shown * 3);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Rectangle bounds = new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+				if (intersects(bounds, liveBounds)) {
+					Graphics liveG = g.create();
+					try {
+						liveG.clipRect(bounds.x, bounds.y, bounds.width, bounds.height);
+						content.paint(liveG);
+					} finally {
+						liveG.dispose();
+					}
+				} else {
+					Point key = new Point(column, row);
+					Tile tile = this.tiles.get(key);
+					if (tile == null) {
+						tile = new Tile(this.createImage());
+						this.tiles.put(key, tile);
+					}
+					if (!tile.valid) {
+						this.paintTile(tile, bounds, content, g);
+					}
+					g.drawImage(tile.image, bounds.x, bounds.y, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the tiles that intersect an area of the content.
+	 *
+	 * @param area
+	 *            the area
+	 */
+	void invalidate(Rectangle area) {
+		for (Map.Entry<Point, Tile> entry : this.tiles.entrySet()) {
+			Point key = entry.getKey();
+			if (area.intersects(key.x * TILE_SIZE, key.y * TILE_SIZE, TILE_SIZE, TILE_SIZE)) {
+				entry.getValue().valid = false;
+			}
+		}
+	}
+
+	/**
+	 * Invalidates all the tiles, keeping their images.
+	 */
+	void invalidateAll() {
+		for (Tile tile : this.tiles.values()) {
+			tile.valid = false;
+		}
+	}
+
+	/**
+	 * Drops all the tiles.
+	 */
+	void clear() {
+		for (Tile tile : this.tiles.values()) {
+			tile.image.flush();
+		}
+		this.tiles.clear();
+	}
+
+	/**
+	 * Paints a tile.
+	 *
+	 * @param tile
+	 *            the tile
+	 * @param bounds
+	 *            the bounds of the tile in the content
+	 * @param content
+	 *            the content
+	 * @param g
+	 *            the graphics the tile is drawn in, whose settings are used
+	 */
+	private void paintTile(Tile tile, Rectangle bounds, Renderable content, Graphics g) {
+		// Valid first, so a change made while painting invalidates it again.
+		tile.valid = true;
+		Graphics2D tileG = tile.image.createGraphics();
+		try {
+			tileG.setComposite(AlphaComposite.Clear);
+			tileG.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+			tileG.setComposite(AlphaComposite.SrcOver);
+			if (g instanceof Graphics2D) {
+				tileG.setRenderingHints(((Graphics2D) g).getRenderingHints());
+			}
+			tileG.setColor(g.getColor());
+			tileG.setFont(g.getFont());
+			tileG.translate(-bounds.x, -bounds.y);
+			tileG.clipRect(bounds.x, bounds.y, bounds.width, bounds.height);
+			content.paint(tileG);
+		} finally {
+			tileG.dispose();
+		}
+	}
+
+	/**
+	 * Creates the image of a tile, translucent so the background of the
+	 * component shows through.
+	 *
+	 * @return the buffered image
+	 */
+	private BufferedImage createImage() {
+		GraphicsConfiguration gc = this.component.getGraphicsConfiguration();
+		if (gc != null) {
+			return gc.createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT);
+		}
+		return new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	/**
+	 * Checks if an area intersects any of the areas given.
+	 *
+	 * @param bounds
+	 *            the area
+	 * @param areas
+	 *            the areas
+	 * @return true, if successful
+	 */
+	private static boolean intersects(Rectangle bounds, Collection<Rectangle> areas) {
+		for (Rectangle area : areas) {
+			if (bounds.intersects(area)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A tile of the content.
+	 */
+	private static final class Tile {
+
+		/** The image. */
+		private final BufferedImage image;
+
+		/** Whether the image shows the current content. */
+		private boolean valid;
+
+		/**
+		 * Instantiates a new tile.
+		 *
+		 * @param image
+		 *            the image
+		 */
+		Tile(BufferedImage image) {
+			this.image = image;
+		}
+	}
+}
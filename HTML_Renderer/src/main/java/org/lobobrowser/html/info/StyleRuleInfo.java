@@ -22,14 +22,19 @@ package org.lobobrowser.html.info;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.html.style.selectors.AncestorFilter;
 import org.lobobrowser.html.style.selectors.SimpleSelector;
+import org.w3c.dom.Node;
 import org.w3c.dom.css.CSSStyleRule;
 
 /**
- * The Class StyleRuleInfo.
+ * The Class StyleRuleInfo. It pairs one selector of a style rule with the
+ * rule itself, along with the specificity and source order used to sort
+ * matching rules in cascade order.
  */
 public class StyleRuleInfo implements Serializable {
 
@@ -42,6 +47,18 @@ public class StyleRuleInfo implements Serializable {
 	/** The ancestor selectors. */
 	private final ArrayList<SimpleSelector> ancestorSelectors;
 
+	/** The specificity. */
+	private final int specificity;
+
+	/** The source order. */
+	private final int order;
+
+	/**
+	 * The {@link AncestorFilter} hashes of the tags, ids and classes that
+	 * ancestors of a matching element must have.
+	 */
+	private final int[] ancestorHashes;
+
 	/**
 	 * Instantiates a new style rule info.
 	 *
@@ -51,11 +68,69 @@ public class StyleRuleInfo implements Serializable {
 	 *            A CSS rule.
 	 */
 	public StyleRuleInfo(ArrayList<SimpleSelector> simpleSelectors, CSSStyleRule rule) {
+		this(simpleSelectors, rule, 0);
+	}
+
+	/**
+	 * Instantiates a new style rule info.
+	 *
+	 * @param simpleSelectors
+	 *            A collection of SimpleSelector's, from left to right.
+	 * @param rule
+	 *            A CSS rule.
+	 * @param order
+	 *            The position of the rule among all rules of the document.
+	 */
+	public StyleRuleInfo(ArrayList<SimpleSelector> simpleSelectors, CSSStyleRule rule, int order) {
 		super();
 		ancestorSelectors = simpleSelectors;
+		int spec = 0;
+		for (SimpleSelector simpleSelector : simpleSelectors) {
+			spec += simpleSelector.getSpecificity();
+		}
+		this.specificity = spec;
+		this.order = order;
+		this.ancestorHashes = ancestorHashes(simpleSelectors);
 		setStyleRule(rule);
 	}
 
+	/**
+	 * Collects the hashes of the compound selectors that can only match
+	 * ancestors of the subject, i.e. those whose own combinator is a
+	 * descendant or child combinator. Such a compound matches an ancestor of
+	 * the compound to its right, and the elements that compound reaches
+	 * through sibling combinators have the same parent, so it matches an
+	 * ancestor of the subject too. Compounds followed by a sibling combinator
+	 * match siblings, which are not ancestors, and are skipped.
+	 *
+	 * @param simpleSelectors
+	 *            the simple selectors
+	 * @return the hashes
+	 */
+	private static int[] ancestorHashes(ArrayList<SimpleSelector> simpleSelectors) {
+		ArrayList<Integer> hashes = new ArrayList<Integer>();
+		for (int i = simpleSelectors.size() - 1; --i >= 0;) {
+			SimpleSelector simpleSelector = simpleSelectors.get(i);
+			int selectorType = simpleSelector.getSelectorType();
+			if (selectorType == SimpleSelector.ANCESTOR || selectorType == SimpleSelector.PARENT) {
+				if (simpleSelector.getElementTL() != null) {
+					hashes.add(AncestorFilter.tagHash(simpleSelector.getElementTL()));
+				}
+				if (simpleSelector.getIdTL() != null) {
+					hashes.add(AncestorFilter.idHash(simpleSelector.getIdTL()));
+				}
+				for (String classTL : simpleSelector.getClassesTL()) {
+					hashes.add(AncestorFilter.classHash(classTL));
+				}
+			}
+		}
+		int[] result = new int[hashes.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = hashes.get(i);
+		}
+		return result;
+	}
+
 	/**
 	 * Affected by pseudo name in ancestor.
 	 *
@@ -70,45 +145,14 @@ public class StyleRuleInfo implements Serializable {
 	public final boolean affectedByPseudoNameInAncestor(HTMLElementImpl element, HTMLElementImpl ancestor,
 			String pseudoName) {
 		ArrayList<SimpleSelector> as = this.ancestorSelectors;
-		HTMLElementImpl currentElement = element;
-		int size = as.size();
-		boolean first = true;
-		for (int i = size; --i >= 0;) {
-			SimpleSelector simpleSelector = as.get(i);
-			if (first) {
-				if (ancestor == element) {
-					return simpleSelector.hasPseudoName(pseudoName);
-				}
-				first = false;
-				continue;
-			}
-			String selectorText = simpleSelector.getSimpleSelectorText();
-			int dotIdx = selectorText.indexOf('.');
-			HTMLElementImpl newElement;
-			if (dotIdx != -1) {
-				String elemtl = selectorText.substring(0, dotIdx);
-				String classtl = selectorText.substring(dotIdx + 1);
-				newElement = currentElement.getAncestorWithClass(elemtl, classtl);
-			} else {
-				int poundIdx = selectorText.indexOf('#');
-				if (poundIdx != -1) {
-					String elemtl = selectorText.substring(0, poundIdx);
-					String idtl = selectorText.substring(poundIdx + 1);
-					newElement = currentElement.getAncestorWithId(elemtl, idtl);
-				} else {
-					String elemtl = selectorText;
-					newElement = currentElement.getAncestor(elemtl);
-				}
-			}
-			if (newElement == null) {
-				return false;
-			}
-			currentElement = newElement;
-			if (currentElement == ancestor) {
-				return simpleSelector.hasPseudoName(pseudoName);
+		boolean hasPseudoName = false;
+		for (int i = as.size(); --i >= 0;) {
+			if (as.get(i).hasPseudoName(pseudoName)) {
+				hasPseudoName = true;
+				break;
 			}
 		}
-		return false;
+		return hasPseudoName && this.matchFrom(as.size() - 1, element, null, ancestor, pseudoName);
 	}
 
 	/**
@@ -120,72 +164,142 @@ public class StyleRuleInfo implements Serializable {
 	 *            A set of pseudo-names in lowercase.
 	 * @return true, if is selector match
 	 */
-	public final boolean isSelectorMatch(HTMLElementImpl element, Set pseudoNames) {
-		ArrayList<SimpleSelector> as = this.ancestorSelectors;
-		HTMLElementImpl currentElement = element;
-		int size = as.size();
-		boolean first = true;
-		for (int i = size; --i >= 0;) {
-			SimpleSelector simpleSelector = as.get(i);
-			if (first) {
-				if (!simpleSelector.matches(pseudoNames)) {
-					return false;
+	public final boolean isSelectorMatch(HTMLElementImpl element, Set<String> pseudoNames) {
+		return this.isSelectorMatch(element, pseudoNames, null);
+	}
+
+	/**
+	 * Checks if is selector match.
+	 *
+	 * @param element
+	 *            The element to test for a match.
+	 * @param pseudoNames
+	 *            A set of pseudo-names in lowercase.
+	 * @param ancestorFilter
+	 *            The filter of the ancestors of the element, or null to
+	 *            always walk the tree.
+	 * @return true, if is selector match
+	 */
+	public final boolean isSelectorMatch(HTMLElementImpl element, Set<String> pseudoNames,
+			AncestorFilter ancestorFilter) {
+		if (ancestorFilter != null && this.ancestorHashes.length != 0
+				&& !ancestorFilter.mayContainAll(this.ancestorHashes)) {
+			return false;
+		}
+		return this.matchFrom(this.ancestorSelectors.size() - 1, element, pseudoNames, null, null);
+	}
+
+	/**
+	 * Matches the selectors up to <code>index</code> right to left, starting
+	 * with <code>element</code> as the subject of the selector at
+	 * <code>index</code>. Descendant and general sibling combinators backtrack
+	 * when a nearer candidate fails further to the left.
+	 *
+	 * @param index
+	 *            the index of the selector to match
+	 * @param element
+	 *            the element
+	 * @param pseudoNames
+	 *            the pseudo names of the element, or null
+	 * @param forcedElement
+	 *            an element assumed to be in the <code>forcedName</code>
+	 *            state, or null
+	 * @param forcedName
+	 *            the forced pseudo name
+	 * @return true, if successful
+	 */
+	private boolean matchFrom(int index, HTMLElementImpl element, Set<String> pseudoNames,
+			HTMLElementImpl forcedElement, String forcedName) {
+		SimpleSelector simpleSelector = this.ancestorSelectors.get(index);
+		Set<String> names = pseudoNames;
+		if (element == forcedElement) {
+			names = new HashSet<String>(names == null ? element.getPseudoNames() : names);
+			names.add(forcedName);
+		}
+		if (!simpleSelector.matches(element, names)) {
+			return false;
+		}
+		if (index == 0) {
+			return true;
+		}
+		int prior = index - 1;
+		switch (this.ancestorSelectors.get(prior).getSelectorType()) {
+		case SimpleSelector.PARENT:
+			HTMLElementImpl parent = parentElement(element);
+			return parent != null && this.matchFrom(prior, parent, null, forcedElement, forcedName);
+		case SimpleSelector.PRECEEDING_SIBLING:
+			HTMLElementImpl sibling = previousElement(element);
+			return sibling != null && this.matchFrom(prior, sibling, null, forcedElement, forcedName);
+		case SimpleSelector.GENERAL_SIBLING:
+			for (HTMLElementImpl s = previousElement(element); s != null; s = previousElement(s)) {
+				if (this.matchFrom(prior, s, null, forcedElement, forcedName)) {
+					return true;
 				}
-				first = false;
-				continue;
 			}
-			String selectorText = simpleSelector.getSimpleSelectorText();
-			int dotIdx = selectorText.indexOf('.');
-			int selectorType = simpleSelector.getSelectorType();
-			HTMLElementImpl priorElement;
-			if (dotIdx != -1) {
-				String elemtl = selectorText.substring(0, dotIdx);
-				String classtl = selectorText.substring(dotIdx + 1);
-				if (selectorType == SimpleSelector.ANCESTOR) {
-					priorElement = currentElement.getAncestorWithClass(elemtl, classtl);
-				} else if (selectorType == SimpleSelector.PARENT) {
-					priorElement = currentElement.getParentWithClass(elemtl, classtl);
-				} else if (selectorType == SimpleSelector.PRECEEDING_SIBLING) {
-					priorElement = currentElement.getPreceedingSiblingWithClass(elemtl, classtl);
-				} else {
-					throw new IllegalStateException("selectorType=" + selectorType);
-				}
-			} else {
-				int poundIdx = selectorText.indexOf('#');
-				if (poundIdx != -1) {
-					String elemtl = selectorText.substring(0, poundIdx);
-					String idtl = selectorText.substring(poundIdx + 1);
-					if (selectorType == SimpleSelector.ANCESTOR) {
-						priorElement = currentElement.getAncestorWithId(elemtl, idtl);
-					} else if (selectorType == SimpleSelector.PARENT) {
-						priorElement = currentElement.getParentWithId(elemtl, idtl);
-					} else if (selectorType == SimpleSelector.PRECEEDING_SIBLING) {
-						priorElement = currentElement.getPreceedingSiblingWithId(elemtl, idtl);
-					} else {
-						throw new IllegalStateException("selectorType=" + selectorType);
-					}
-				} else {
-					String elemtl = selectorText;
-					if (selectorType == SimpleSelector.ANCESTOR) {
-						priorElement = currentElement.getAncestor(elemtl);
-					} else if (selectorType == SimpleSelector.PARENT) {
-						priorElement = currentElement.getParent(elemtl);
-					} else if (selectorType == SimpleSelector.PRECEEDING_SIBLING) {
-						priorElement = currentElement.getPreceedingSibling(elemtl);
-					} else {
-						throw new IllegalStateException("selectorType=" + selectorType);
-					}
+			return false;
+		default:
+			for (HTMLElementImpl a = parentElement(element); a != null; a = parentElement(a)) {
+				if (this.matchFrom(prior, a, null, forcedElement, forcedName)) {
+					return true;
 				}
 			}
-			if (priorElement == null) {
-				return false;
-			}
-			if (!simpleSelector.matches(priorElement)) {
-				return false;
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the parent element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the parent element, or null
+	 */
+	private static HTMLElementImpl parentElement(HTMLElementImpl element) {
+		Node parent = element.getParentNode();
+		return parent instanceof HTMLElementImpl ? (HTMLElementImpl) parent : null;
+	}
+
+	/**
+	 * Gets the previous sibling element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the previous sibling element, or null
+	 */
+	private static HTMLElementImpl previousElement(HTMLElementImpl element) {
+		for (Node n = element.getPreviousSibling(); n != null; n = n.getPreviousSibling()) {
+			if (n instanceof HTMLElementImpl) {
+				return (HTMLElementImpl) n;
 			}
-			currentElement = priorElement;
 		}
-		return true;
+		return null;
+	}
+
+	/**
+	 * Gets the rightmost selector, the one the subject element must match.
+	 *
+	 * @return the subject selector
+	 */
+	public SimpleSelector getSubjectSelector() {
+		return this.ancestorSelectors.get(this.ancestorSelectors.size() - 1);
+	}
+
+	/**
+	 * Gets the specificity.
+	 *
+	 * @return the specificity
+	 */
+	public int getSpecificity() {
+		return specificity;
+	}
+
+	/**
+	 * Gets the source order.
+	 *
+	 * @return the order
+	 */
+	public int getOrder() {
+		return order;
 	}
 
 	/**
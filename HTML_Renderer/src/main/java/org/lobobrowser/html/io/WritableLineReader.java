@@ -28,10 +28,45 @@ import java.io.LineNumberReader;
 import java.io.Reader;
 
 /**
- * The Class WritableLineReader.
+ * A line reader that allows text to be inserted at the current read position,
+ * as <code>document.write</code> does while a document is being parsed.
+ * <p>
+ * Input is read in blocks into a reusable window and handed out from there,
+ * so reading one character is an array access rather than a synchronized
+ * call into {@link LineNumberReader}. Line terminators are translated to
+ * <code>'\n'</code> as {@link LineNumberReader#read()} does. Written text is
+ * kept in a separate buffer in front of the window and is always consumed
+ * first; consuming it only advances an index, and the buffer is compacted
+ * when it needs room, so a large write costs time linear in its length.
+ * <p>
+ * Note: Not implicitly thread safe.
  */
 public class WritableLineReader extends LineNumberReader {
 
+    /** The default window size. */
+    private static final int WINDOW_SIZE = 8192;
+
+    /** The window of characters read from the underlying reader. */
+    private char[] window;
+
+    /** The position of the next character in the window. */
+    private int windowPos;
+
+    /** The number of valid characters in the window. */
+    private int windowLimit;
+
+    /** Whether a line feed following a carriage return must be skipped. */
+    private boolean skipLF;
+
+    /** The write buffer. */
+    private char[] writeBuffer;
+
+    /** The position of the next written character. */
+    private int writePos;
+
+    /** The end of the written characters. */
+    private int writeLimit;
+
     /**
      * Instantiates a new writable line reader.
      *
@@ -42,6 +77,7 @@ public class WritableLineReader extends LineNumberReader {
      */
     public WritableLineReader(Reader reader, int bufferSize) {
         super(reader, bufferSize);
+        this.window = new char[bufferSize];
     }
 
     /**
@@ -51,47 +87,287 @@ public class WritableLineReader extends LineNumberReader {
      *            the reader
      */
     public WritableLineReader(Reader reader) {
-        super(reader);
+        super(reader, WINDOW_SIZE);
+        this.window = new char[WINDOW_SIZE];
     }
 
-    /*
-     * Note: Not implicitly thread safe.
-     */
     /*
      * (non-Javadoc)
      * @see java.io.LineNumberReader#read()
      */
     @Override
     public int read() throws IOException {
-        StringBuffer sb = this.writeBuffer;
-        if ((sb != null) && (sb.length() > 0)) {
-            char ch = sb.charAt(0);
-            sb.deleteCharAt(0);
-            if (sb.length() == 0) {
-                this.writeBuffer = null;
+        if (this.writePos < this.writeLimit) {
+            return this.writeBuffer[this.writePos++];
+        }
+        for (;;) {
+            int ch = this.nextWindowChar();
+            if (ch != -1) {
+                return ch;
+            }
+            if (!this.fill()) {
+                return -1;
             }
-            return ch;
         }
-        return super.read();
     }
 
     /*
-     * (non-Javadoc) Note: Not implicitly thread safe.
-     * @see java.io.Reader#read(byte[], int, int)
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#read(char[], int, int)
      */
     @Override
     public int read(char[] b, int off, int len) throws IOException {
-        StringBuffer sb = this.writeBuffer;
-        if ((sb != null) && (sb.length() > 0)) {
-            int srcEnd = Math.min(sb.length(), len);
-            sb.getChars(0, srcEnd, b, off);
-            sb.delete(0, srcEnd);
-            if (sb.length() == 0) {
-                this.writeBuffer = null;
+        if (len == 0) {
+            return 0;
+        }
+        int pending = this.writeLimit - this.writePos;
+        if (pending > 0) {
+            int count = Math.min(pending, len);
+            System.arraycopy(this.writeBuffer, this.writePos, b, off, count);
+            this.writePos += count;
+            return count;
+        }
+        int count = 0;
+        while (count < len) {
+            int ch = this.nextWindowChar();
+            if (ch == -1) {
+                if ((count > 0) || !this.fill()) {
+                    break;
+                }
+                continue;
             }
-            return srcEnd;
+            b[off + count++] = (char) ch;
         }
-        return super.read(b, off, len);
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Reads characters up to the next occurrence of <code>delimiter</code>,
+     * appending them to <code>sb</code>. The delimiter itself is consumed but
+     * not appended.
+     *
+     * @param delimiter
+     *            the delimiter, which must not be a line terminator
+     * @param sb
+     *            the builder receiving the characters before the delimiter
+     * @return the delimiter, or -1 if the end of the stream was reached first
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public int readUntil(char delimiter, StringBuilder sb) throws IOException {
+        for (;;) {
+            int start = this.writePos;
+            int limit = this.writeLimit;
+            if (start < limit) {
+                char[] buf = this.writeBuffer;
+                for (int i = start; i < limit; i++) {
+                    if (buf[i] == delimiter) {
+                        sb.append(buf, start, i - start);
+                        this.writePos = i + 1;
+                        return delimiter;
+                    }
+                }
+                sb.append(buf, start, limit - start);
+                this.writePos = limit;
+            }
+            if ((this.windowPos >= this.windowLimit) && !this.fill()) {
+                return -1;
+            }
+            char[] win = this.window;
+            start = this.windowPos;
+            limit = this.windowLimit;
+            if (this.skipLF) {
+                this.skipLF = false;
+                if (win[start] == '\n') {
+                    this.windowPos = start + 1;
+                    continue;
+                }
+            }
+            int i = start;
+            for (; i < limit; i++) {
+                char ch = win[i];
+                if (ch == delimiter) {
+                    sb.append(win, start, i - start);
+                    this.windowPos = i + 1;
+                    return delimiter;
+                } else if (ch == '\r') {
+                    sb.append(win, start, i - start);
+                    sb.append('\n');
+                    this.skipLF = true;
+                    break;
+                }
+            }
+            this.windowPos = i < limit ? i + 1 : limit;
+            if (i == limit) {
+                sb.append(win, start, limit - start);
+            }
+        }
+    }
+
+    /**
+     * Returns the next character of the window, translating line
+     * terminators, without reading from the underlying reader.
+     *
+     * @return the character, or -1 if the window is exhausted
+     */
+    private int nextWindowChar() {
+        while (this.windowPos < this.windowLimit) {
+            char ch = this.window[this.windowPos++];
+            if (this.skipLF) {
+                this.skipLF = false;
+                if (ch == '\n') {
+                    continue;
+                }
+            }
+            if (ch == '\r') {
+                this.skipLF = true;
+                return '\n';
+            }
+            return ch;
+        }
+        return -1;
+    }
+
+    /**
+     * Refills the window from the underlying reader.
+     *
+     * @return false at the end of the stream
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private boolean fill() throws IOException {
+        int count;
+        do {
+            count = super.read(this.window, 0, this.window.length);
+        } while (count == 0);
+        if (count == -1) {
+            this.windowPos = 0;
+            this.windowLimit = 0;
+            return false;
+        }
+        this.windowPos = 0;
+        this.windowLimit = count;
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#getLineNumber()
+     */
+    @Override
+    public int getLineNumber() {
+        // Lines still in the window have been counted but not consumed.
+        int unread = 0;
+        char[] win = this.window;
+        for (int i = this.windowPos; i < this.windowLimit; i++) {
+            char ch = win[i];
+            if ((ch == '\n') ? ((i == 0) || (win[i - 1] != '\r')) : (ch == '\r')) {
+                unread++;
+            }
+        }
+        return super.getLineNumber() - unread;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#readLine()
+     */
+    @Override
+    public String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int ch;
+        while (((ch = this.read()) != -1) && (ch != '\n')) {
+            sb.append((char) ch);
+        }
+        return ((ch == -1) && (sb.length() == 0)) ? null : sb.toString();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#skip(long)
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while ((skipped < n) && (this.read() != -1)) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.BufferedReader#markSupported()
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#mark(int)
+     */
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.LineNumberReader#reset()
+     */
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /**
+     * Gets the characters that follow the read position, without consuming
+     * them. Input that can be read from the underlying reader without
+     * blocking is first pulled into the window, so a caller about to block
+     * on something else can look at what is coming. Line terminators are
+     * returned as they are in the input.
+     *
+     * @param maxChars
+     *            the maximum number of characters
+     * @return the characters, possibly none
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public String peekBuffered(int maxChars) throws IOException {
+        while ((this.windowLimit - this.windowPos < maxChars) && super.ready()) {
+            if (this.windowLimit == this.window.length) {
+                // Keep the last consumed character, which getLineNumber()
+                // looks at.
+                int start = Math.max(0, this.windowPos - 1);
+                int length = this.windowLimit - start;
+                char[] win = this.window;
+                if ((start == 0) || (length * 2 > win.length)) {
+                    win = new char[this.window.length * 2];
+                }
+                System.arraycopy(this.window, start, win, 0, length);
+                this.window = win;
+                this.windowPos -= start;
+                this.windowLimit = length;
+            }
+            int count = super.read(this.window, this.windowLimit, Math.min(this.window.length - this.windowLimit,
+                    maxChars - (this.windowLimit - this.windowPos)));
+            if (count <= 0) {
+                break;
+            }
+            this.windowLimit += count;
+        }
+        StringBuilder sb = new StringBuilder();
+        int pending = Math.min(this.writeLimit - this.writePos, maxChars);
+        if (pending > 0) {
+            sb.append(this.writeBuffer, this.writePos, pending);
+        }
+        int buffered = Math.min(this.windowLimit - this.windowPos, maxChars - sb.length());
+        if (buffered > 0) {
+            sb.append(this.window, this.windowPos, buffered);
+        }
+        return sb.toString();
     }
 
     /*
@@ -100,8 +376,7 @@ public class WritableLineReader extends LineNumberReader {
      */
     @Override
     public boolean ready() throws IOException {
-        StringBuffer sb = this.writeBuffer;
-        if ((sb != null) && (sb.length() > 0)) {
+        if ((this.writePos < this.writeLimit) || (this.windowPos < this.windowLimit)) {
             return true;
         }
         return super.ready();
@@ -114,13 +389,17 @@ public class WritableLineReader extends LineNumberReader {
     @Override
     public void close() throws IOException {
         this.writeBuffer = null;
+        this.writePos = 0;
+        this.writeLimit = 0;
+        this.windowPos = 0;
+        this.windowLimit = 0;
         super.close();
     }
 
-    /** The write buffer. */
-    private StringBuffer writeBuffer = null;
-
     /**
+     * Inserts text at the current read position, after any text written
+     * earlier that has not been read yet.
+     * <p>
      * Note: Not implicitly thread safe.
      *
      * @param text
@@ -130,11 +409,31 @@ public class WritableLineReader extends LineNumberReader {
      */
     public void write(String text) throws IOException {
         // Document overrides this to know that new data is coming.
-        StringBuffer sb = this.writeBuffer;
-        if (sb == null) {
-            sb = new StringBuffer();
-            this.writeBuffer = sb;
+        int length = text.length();
+        char[] buf = this.writeBuffer;
+        int pos = this.writePos;
+        int limit = this.writeLimit;
+        if (pos == limit) {
+            pos = 0;
+            limit = 0;
+        }
+        int pending = limit - pos;
+        if ((buf == null) || (limit + length > buf.length)) {
+            if ((buf == null) || (pending + length > buf.length)) {
+                char[] newBuf = new char[Math.max(pending + length, (buf == null ? 0 : buf.length) * 2)];
+                if (pending > 0) {
+                    System.arraycopy(buf, pos, newBuf, 0, pending);
+                }
+                buf = newBuf;
+                this.writeBuffer = buf;
+            } else {
+                System.arraycopy(buf, pos, buf, 0, pending);
+            }
+            pos = 0;
+            limit = pending;
         }
-        sb.append(text);
+        text.getChars(0, length, buf, limit);
+        this.writePos = pos;
+        this.writeLimit = limit + length;
     }
 }
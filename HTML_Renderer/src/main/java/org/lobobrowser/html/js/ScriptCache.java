@@ -0,0 +1,197 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+
+package org.lobobrowser.html.js;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.lobobrowser.http.LRUCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * A process-wide cache of compiled scripts. The same library loaded by many
+ * pages is parsed and compiled by Rhino once and then only executed.
+ * <p>
+ * An entry is keyed by the origin of the code source, the source name, the
+ * optimization level of the context and a SHA-256 digest of the source text,
+ * so a script whose content changes under the same URL is compiled again.
+ * The origin is part of the key because classes generated by the optimizer
+ * are defined in a class loader bound to the code source of the document
+ * that compiled them (see {@link SecurityControllerImpl}).
+ * <p>
+ * A compiled {@link Script} holds no reference to the scope it runs in and
+ * may be executed against the scope of any document.
+ */
+public final class ScriptCache {
+
+	/** The Constant instance. */
+	private static final ScriptCache instance = new ScriptCache();
+
+	/** The default approximate memory budget in bytes. */
+	private static final int DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+	/**
+	 * Approximate bytes of compiled code per character of source. Used for
+	 * accounting only.
+	 */
+	private static final int BYTES_PER_SOURCE_CHAR = 4;
+
+	/** The hex digits. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** The cache of {@link Script} by key. */
+	private final LRUCache cache = new LRUCache(DEFAULT_MAX_SIZE);
+
+	/**
+	 * Instantiates a new script cache.
+	 */
+	private ScriptCache() {
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static ScriptCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the approximate memory budget of the cache.
+	 *
+	 * @param approxMaxSize
+	 *            the approximate maximum size in bytes
+	 */
+	public void setApproxMaxSize(int approxMaxSize) {
+		synchronized (this.cache) {
+			this.cache.setApproxMaxSize(approxMaxSize);
+		}
+	}
+
+	/**
+	 * Compiles the source, or reuses a script previously compiled from the
+	 * same source, and executes it in the scope.
+	 *
+	 * @param ctx
+	 *            the current context, as returned by
+	 *            {@link Executor#createContext(URL, org.lobobrowser.http.UserAgentContext)}
+	 * @param scope
+	 *            the scope
+	 * @param codeSource
+	 *            the code source of the document, or null
+	 * @param source
+	 *            the source text
+	 * @param sourceName
+	 *            the source name used in error messages
+	 * @param lineNumber
+	 *            the line number of the first line of the source
+	 * @return the result of the script
+	 */
+	public Object evaluate(Context ctx, Scriptable scope, URL codeSource, String source, String sourceName,
+			int lineNumber) {
+		return this.getScript(ctx, codeSource, source, sourceName, lineNumber).exec(ctx, scope);
+	}
+
+	/**
+	 * Gets the compiled script for the source, compiling it on a miss.
+	 * Compilation errors are thrown as by
+	 * {@link Context#compileString(String, String, int, Object)} and are not
+	 * cached.
+	 *
+	 * @param ctx
+	 *            the current context
+	 * @param codeSource
+	 *            the code source of the document, or null
+	 * @param source
+	 *            the source text
+	 * @param sourceName
+	 *            the source name used in error messages
+	 * @param lineNumber
+	 *            the line number of the first line of the source
+	 * @return the script
+	 */
+	public Script getScript(Context ctx, URL codeSource, String source, String sourceName, int lineNumber) {
+		String key = getKey(ctx, codeSource, source, sourceName, lineNumber);
+		Script script;
+		synchronized (this.cache) {
+			script = (Script) this.cache.get(key);
+		}
+		if (script == null) {
+			script = ctx.compileString(source, sourceName, lineNumber, null);
+			synchronized (this.cache) {
+				this.cache.put(key, script, source.length() * BYTES_PER_SOURCE_CHAR);
+			}
+		}
+		return script;
+	}
+
+	/**
+	 * Gets the key.
+	 *
+	 * @param ctx
+	 *            the ctx
+	 * @param codeSource
+	 *            the code source
+	 * @param source
+	 *            the source
+	 * @param sourceName
+	 *            the source name
+	 * @param lineNumber
+	 *            the line number
+	 * @return the key
+	 */
+	private static String getKey(Context ctx, URL codeSource, String source, String sourceName, int lineNumber) {
+		StringBuilder key = new StringBuilder(128);
+		if (codeSource != null) {
+			key.append(codeSource.getProtocol()).append("://").append(codeSource.getHost()).append(':')
+					.append(codeSource.getPort());
+		}
+		key.append(' ').append(ctx.getOptimizationLevel()).append(' ').append(lineNumber).append(' ');
+		byte[] digest = digest(source);
+		for (byte b : digest) {
+			key.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+		}
+		return key.append(' ').append(sourceName).toString();
+	}
+
+	/**
+	 * Digests the source text.
+	 *
+	 * @param source
+	 *            the source
+	 * @return the SHA-256 digest
+	 */
+	private static byte[] digest(String source) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(source.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException nsa) {
+			throw new IllegalStateException(nsa);
+		} catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+}
@@ -675,7 +675,7 @@ public class Window extends AbstractScriptableDelegate implements AbstractView {
 			if (logger.isLoggable(Level.INFO)) {
 				logger.info("eval(): javascript follows...\r\n" + javascript);
 			}
-			return ctx.evaluateString(scope, javascript, scriptURI, 1, null);
+			return ScriptCache.getInstance().evaluate(ctx, scope, document.getDocumentURL(), javascript, scriptURI, 1);
 		} finally {
 			Context.exit();
 		}
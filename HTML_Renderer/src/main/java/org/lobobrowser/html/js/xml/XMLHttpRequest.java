@@ -41,6 +41,8 @@ import org.lobobrowser.w3c.events.EventListener;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.Function;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.typedarrays.NativeArrayBuffer;
 import org.w3c.dom.Document;
 import org.w3c.dom.events.EventException;
 
@@ -70,6 +72,15 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	/** The listener added. */
 	private boolean listenerAdded;
 
+	/** The onprogress. */
+	private Function onprogress;
+
+	/** The progress listener added. */
+	private boolean progressListenerAdded;
+
+	/** The response as an array buffer, once created. */
+	private NativeArrayBuffer arrayBuffer;
+
 	/**
 	 * Instantiates a new XML http request.
 	 *
@@ -153,6 +164,57 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 		return request.getResponseText();
 	}
 
+	/**
+	 * Gets the response type.
+	 *
+	 * @return the response type, which is the empty string for text
+	 */
+	public String getResponseType() {
+		String type = request.getResponseType();
+		return HttpRequest.RESPONSE_TYPE_TEXT.equals(type) ? "" : type;
+	}
+
+	/**
+	 * Sets the response type. Only <code>"arraybuffer"</code> changes how the
+	 * response is made available; any other type is treated as text.
+	 *
+	 * @param responseType
+	 *            the new response type
+	 */
+	public void setResponseType(String responseType) {
+		request.setResponseType(HttpRequest.RESPONSE_TYPE_ARRAYBUFFER.equals(responseType)
+				? responseType : HttpRequest.RESPONSE_TYPE_TEXT);
+	}
+
+	/**
+	 * Gets the response, which is an <code>ArrayBuffer</code> backed by the
+	 * bytes of the body if the response type is <code>"arraybuffer"</code>,
+	 * and the response text otherwise.
+	 *
+	 * @return the response
+	 */
+	public Object getResponse() {
+		if (!HttpRequest.RESPONSE_TYPE_ARRAYBUFFER.equals(request.getResponseType())) {
+			return this.getResponseText();
+		}
+		if (request.getReadyState() != ReadyState.LOADED) {
+			return null;
+		}
+		synchronized (this) {
+			if (this.arrayBuffer == null) {
+				byte[] bytes = request.getResponseBytes();
+				NativeArrayBuffer ab = new NativeArrayBuffer(bytes == null ? 0 : bytes.length);
+				if (bytes != null) {
+					System.arraycopy(bytes, 0, ab.getBuffer(), 0, bytes.length);
+				}
+				ab.setParentScope(this.scope);
+				ab.setPrototype(ScriptableObject.getClassPrototype(this.scope, NativeArrayBuffer.CLASS_NAME));
+				this.arrayBuffer = ab;
+			}
+			return this.arrayBuffer;
+		}
+	}
+
 	/**
 	 * Gets the response xml.
 	 *
@@ -212,6 +274,7 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	 */
 	public void open(String method, String url, boolean asyncFlag, String userName, String password)
 			throws IOException {
+		this.clearArrayBuffer();
 		request.open(method, this.getFullURL(url), asyncFlag, userName, password);
 	}
 
@@ -228,6 +291,7 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void open(String method, String url, boolean asyncFlag) throws IOException {
+		this.clearArrayBuffer();
 		request.open(method, this.getFullURL(url), asyncFlag);
 	}
 
@@ -242,6 +306,7 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void open(String method, String url) throws IOException {
+		this.clearArrayBuffer();
 		request.open(method, this.getFullURL(url));
 	}
 
@@ -393,8 +458,65 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	 * @return the response body
 	 */
 	public byte[] getResponseBody() {
-		// TODO Auto-generated method stub
-		return null;
+		return request.getResponseBytes();
+	}
+
+	/**
+	 * Gets the onprogress.
+	 *
+	 * @return the onprogress
+	 */
+	public Function getOnprogress() {
+		synchronized (this) {
+			return this.onprogress;
+		}
+	}
+
+	/**
+	 * Sets the onprogress, which is called as parts of the response body are
+	 * received.
+	 *
+	 * @param value
+	 *            the new onprogress
+	 */
+	public void setOnprogress(Function value) {
+		synchronized (this) {
+			this.onprogress = value;
+			if (value != null) {
+				this.addProgressListener();
+			}
+		}
+	}
+
+	/**
+	 * Adds the listener that reports parts of the response body as they are
+	 * received, once.
+	 */
+	private void addProgressListener() {
+		if (!this.progressListenerAdded) {
+			this.request.addProgressListener(new PropertyChangeListener() {
+
+				@Override
+				public void propertyChange(PropertyChangeEvent arg0) {
+					// readyState stays RECEIVING, but changes are reported
+					// for each part, as in browsers.
+					if (request.getReadyState() == ReadyState.RECEIVING) {
+						executeReadyStateChange();
+					}
+					executeFunction(getOnprogress());
+				}
+			});
+			this.progressListenerAdded = true;
+		}
+	}
+
+	/**
+	 * Discards the array buffer of the previous response.
+	 */
+	private void clearArrayBuffer() {
+		synchronized (this) {
+			this.arrayBuffer = null;
+		}
 	}
 
 	/**
@@ -417,6 +539,9 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 				});
 				this.listenerAdded = true;
 			}
+			if (value != null) {
+				this.addProgressListener();
+			}
 		}
 	}
 
@@ -425,8 +550,17 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 	 */
 	private void executeReadyStateChange() {
 		// Not called in GUI thread to ensure consistency of readyState.
+		this.executeFunction(XMLHttpRequest.this.getOnreadystatechange());
+	}
+
+	/**
+	 * Calls an event handler.
+	 *
+	 * @param f
+	 *            the handler, or null
+	 */
+	private void executeFunction(Function f) {
 		try {
-			Function f = XMLHttpRequest.this.getOnreadystatechange();
 			if (f != null) {
 				Context ctx = Executor.createContext(this.codeSource, this.pcontext);
 				try {
@@ -438,7 +572,7 @@ public class XMLHttpRequest extends AbstractScriptableDelegate {
 				}
 			}
 		} catch (Exception err) {
-			logger.log(Level.WARNING, "Error processing ready state change.", err);
+			logger.log(Level.WARNING, "Error processing event handler.", err);
 		}
 	}
 }
@@ -132,4 +132,30 @@ public class LayoutValue {
 	public void setHasVScrollBar(boolean hasVScrollBar) {
 		this.hasVScrollBar = hasVScrollBar;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof LayoutValue)) {
+			return false;
+		}
+		LayoutValue other = (LayoutValue) obj;
+		return (other.width == this.width) && (other.height == this.height)
+				&& (other.hasHScrollBar == this.hasHScrollBar) && (other.hasVScrollBar == this.hasVScrollBar);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (this.width * 1000) + this.height;
+	}
 }
@@ -41,6 +41,7 @@ import java.util.logging.Logger;
 
 import org.lobobrowser.html.HtmlMapping;
 import org.lobobrowser.html.HtmlMappingChar;
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.html.info.ElementInfo;
 import org.lobobrowser.html.io.WritableLineReader;
 import org.lobobrowser.http.UserAgentContext;
@@ -109,6 +110,24 @@ public class HtmlParser {
 	 */
 	private boolean justReadEmptyElement = false;
 
+	/** The names of the tags and attributes read so far. */
+	private final NameTable names = new NameTable();
+
+	/** The reusable builder for text between tags. */
+	private final StringBuilder textBuffer = new StringBuilder();
+
+	/** The reusable builder for tag names. */
+	private final StringBuilder tagBuffer = new StringBuilder();
+
+	/** The reusable builder for attribute names. */
+	private final StringBuilder attributeNameBuffer = new StringBuilder();
+
+	/** The reusable builder for attribute values. */
+	private final StringBuilder attributeValueBuffer = new StringBuilder();
+
+	/** The preload scanner, created at the first external script. */
+	private PreloadScanner preloadScanner;
+
 	/**
 	 * A node <code>UserData</code> key used to tell nodes that their content
 	 * may be about to be modified. Elements could use this to temporarily
@@ -214,7 +233,7 @@ public class HtmlParser {
 	 *             Thrown if there are parse errors.
 	 */
 	public void parse(Reader reader) throws IOException, SAXException {
-		this.parse(new LineNumberReader(reader));
+		this.parse(new WritableLineReader(reader));
 	}
 
 	/**
@@ -246,7 +265,7 @@ public class HtmlParser {
 	 *             the SAX exception
 	 */
 	public void parse(Reader reader, Node parent) throws IOException, SAXException {
-		this.parse(new LineNumberReader(reader), parent);
+		this.parse(new WritableLineReader(reader), parent);
 	}
 
 	/**
@@ -301,13 +320,13 @@ public class HtmlParser {
 	private final int parseToken(Node parent, LineNumberReader reader, Set<String> stopTags,
 			LinkedList<String> ancestors) throws IOException, StopException, SAXException {
 		Document doc = this.document;
-		StringBuffer textSb = this.readUpToTagBegin(reader);
+		StringBuilder textSb = this.readUpToTagBegin(reader);
 		if (textSb == null) {
 			return TOKEN_EOD;
 		}
 		if (textSb.length() != 0) {
 			// int textLine = reader.getLineNumber();
-			StringBuffer decText = this.entityDecode(textSb);
+			StringBuilder decText = this.entityDecode(textSb);
 			Node textNode = doc.createTextNode(decText.toString());
 			try {
 				parent.appendChild(textNode);
@@ -322,13 +341,13 @@ public class HtmlParser {
 			if (tag == null) {
 				return TOKEN_EOD;
 			}
-			String normalTag = tag.toUpperCase();
+			String normalTag = this.names.toUpperCase(tag);
 			try {
 				if (tag.startsWith("!")) {
 					if ("!--".equals(tag)) {
 						// int commentLine = reader.getLineNumber();
-						StringBuffer comment = this.passEndOfComment(reader);
-						StringBuffer decText = this.entityDecode(comment);
+						StringBuilder comment = this.passEndOfComment(reader);
+						StringBuilder decText = this.entityDecode(comment);
 						parent.appendChild(doc.createComment(decText.toString()));
 						return TOKEN_COMMENT;
 					} else {
@@ -343,7 +362,7 @@ public class HtmlParser {
 					return TOKEN_END_ELEMENT;
 				} else if (tag.startsWith("?")) {
 					tag = tag.substring(1);
-					StringBuffer data = readProcessingInstruction(reader);
+					StringBuilder data = readProcessingInstruction(reader);
 					parent.appendChild(doc.createProcessingInstruction(tag, data.toString()));
 					return TOKEN_FULL_ELEMENT;
 				} else {
@@ -442,7 +461,7 @@ public class HtmlParser {
 											// parent.
 											Element newElement = se.getElement();
 											tag = newElement.getTagName();
-											normalTag = tag.toUpperCase();
+											normalTag = this.names.toUpperCase(tag);
 											// If a subelement throws
 											// StopException with
 											// a tag matching the current stop
@@ -489,10 +508,19 @@ public class HtmlParser {
 						}
 						return TOKEN_BEGIN_ELEMENT;
 					} finally {
+						if ("SCRIPT".equalsIgnoreCase(element.getTagName()) && element.hasAttribute("src")
+								&& !element.hasAttribute("async") && !element.hasAttribute("defer")) {
+							// The parser blocks on the script; start loading
+							// what comes after it in the meantime.
+							this.preload(reader);
+						}
 						// This can inform elements to continue with
 						// notifications.
 						// It can also cause Javascript to get processed.
 						element.setUserData(MODIFYING_KEY, Boolean.FALSE, null);
+						if (doc instanceof HTMLDocumentImpl) {
+							((HTMLDocumentImpl) doc).runLoadedScripts();
+						}
 					}
 				}
 			} finally {
@@ -504,6 +532,29 @@ public class HtmlParser {
 		}
 	}
 
+	/**
+	 * Scans the input that has arrived but not been parsed yet for resources
+	 * to preload.
+	 *
+	 * @param reader
+	 *            the reader
+	 */
+	private void preload(LineNumberReader reader) {
+		UserAgentContext ucontext = this.ucontext;
+		if (!(reader instanceof WritableLineReader) || !(this.document instanceof HTMLDocumentImpl)
+				|| (ucontext == null) || !ucontext.isScriptingEnabled()) {
+			return;
+		}
+		if (this.preloadScanner == null) {
+			this.preloadScanner = new PreloadScanner((HTMLDocumentImpl) this.document, ucontext);
+		}
+		try {
+			this.preloadScanner.scan(((WritableLineReader) reader).peekBuffered(PreloadScanner.MAX_LOOK_AHEAD));
+		} catch (IOException ioe) {
+			logger.log(Level.WARNING, "preload()", ioe);
+		}
+	}
+
 	/**
 	 * Reads text until the beginning of the next tag. Leaves the reader offset
 	 * past the opening angle bracket. Returns null only on EOF.
@@ -516,29 +567,19 @@ public class HtmlParser {
 	 * @throws SAXException
 	 *             the SAX exception
 	 */
-	private final StringBuffer readUpToTagBegin(LineNumberReader reader) throws IOException, SAXException {
-		StringBuffer sb = null;
-		int intCh;
-		while ((intCh = reader.read()) != -1) {
-			char ch = (char) intCh;
-			if (ch == '<') {
-				this.justReadTagBegin = true;
-				this.justReadTagEnd = false;
-				this.justReadEmptyElement = false;
-				if (sb == null) {
-					sb = new StringBuffer(0);
-				}
-				return sb;
-			}
-			if (sb == null) {
-				sb = new StringBuffer();
-			}
-			sb.append(ch);
+	private final StringBuilder readUpToTagBegin(LineNumberReader reader) throws IOException, SAXException {
+		StringBuilder sb = this.textBuffer;
+		sb.setLength(0);
+		if (readUntil(reader, '<', sb) == '<') {
+			this.justReadTagBegin = true;
+			this.justReadTagEnd = false;
+			this.justReadEmptyElement = false;
+			return sb;
 		}
 		this.justReadTagBegin = false;
 		this.justReadTagEnd = false;
 		this.justReadEmptyElement = false;
-		return sb;
+		return sb.length() == 0 ? null : sb;
 	}
 
 	/**
@@ -565,64 +606,52 @@ public class HtmlParser {
 			boolean decodeEntities) throws IOException, SAXException {
 		Document doc = this.document;
 		int intCh;
-		StringBuffer sb = new StringBuffer();
-		while ((intCh = reader.read()) != -1) {
-			char ch = (char) intCh;
-			if (ch == '<') {
-				intCh = reader.read();
-				if (intCh != -1) {
-					ch = (char) intCh;
-					if (ch == '/') {
-						StringBuffer tempBuffer = new StringBuffer();
-						INNER: while ((intCh = reader.read()) != -1) {
-							ch = (char) intCh;
-							if (ch == '>') {
-								String thisTag = tempBuffer.toString().trim();
-								if (thisTag.equalsIgnoreCase(tagName)) {
-									this.justReadTagBegin = false;
-									this.justReadTagEnd = true;
-									this.justReadEmptyElement = false;
-									this.normalLastTag = thisTag.toUpperCase();
-									if (addTextNode) {
-										if (decodeEntities) {
-											sb = this.entityDecode(sb);
-										}
-										String text = sb.toString();
-										if (text.length() != 0) {
-											Node textNode = doc.createTextNode(text);
-											parent.appendChild(textNode);
-										}
-									}
-									return HtmlParser.TOKEN_END_ELEMENT;
-								} else {
-									break INNER;
+		StringBuilder sb = new StringBuilder();
+		while (readUntil(reader, '<', sb) != -1) {
+			intCh = reader.read();
+			if (intCh != -1) {
+				char ch = (char) intCh;
+				if (ch == '/') {
+					StringBuilder tempBuffer = new StringBuilder();
+					if (readUntil(reader, '>', tempBuffer) != -1) {
+						String thisTag = tempBuffer.toString().trim();
+						if (thisTag.equalsIgnoreCase(tagName)) {
+							this.justReadTagBegin = false;
+							this.justReadTagEnd = true;
+							this.justReadEmptyElement = false;
+							this.normalLastTag = thisTag.toUpperCase();
+							if (addTextNode) {
+								if (decodeEntities) {
+									sb = this.entityDecode(sb);
+								}
+								String text = sb.toString();
+								if (text.length() != 0) {
+									Node textNode = doc.createTextNode(text);
+									parent.appendChild(textNode);
 								}
-							} else {
-								tempBuffer.append(ch);
-							}
-						}
-						sb.append("</");
-						sb.append(tempBuffer);
-						sb.append(">");
-					} else if (ch == '!') {
-						final String nextSeven = readN(reader, 7);
-						if ("[CDATA[".equals(nextSeven)) {
-							readCData(reader, sb);
-						} else {
-							sb.append('!');
-							if (nextSeven != null) {
-								sb.append(nextSeven);
 							}
+							return HtmlParser.TOKEN_END_ELEMENT;
 						}
+					}
+					sb.append("</");
+					sb.append(tempBuffer);
+					sb.append(">");
+				} else if (ch == '!') {
+					final String nextSeven = readN(reader, 7);
+					if ("[CDATA[".equals(nextSeven)) {
+						readCData(reader, sb);
 					} else {
-						sb.append('<');
-						sb.append(ch);
+						sb.append('!');
+						if (nextSeven != null) {
+							sb.append(nextSeven);
+						}
 					}
 				} else {
 					sb.append('<');
+					sb.append(ch);
 				}
 			} else {
-				sb.append(ch);
+				sb.append('<');
 			}
 		}
 
@@ -654,7 +683,8 @@ public class HtmlParser {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	private final String readTag(Node parent, LineNumberReader reader) throws IOException {
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = this.tagBuffer;
+		sb.setLength(0);
 		int chInt;
 		chInt = reader.read();
 		if (chInt != -1) {
@@ -695,7 +725,7 @@ public class HtmlParser {
 						cont = false;
 					}
 				} else if (ch == '<') {
-					StringBuffer ltText = new StringBuffer(3);
+					StringBuilder ltText = new StringBuilder(3);
 					ltText.append('<');
 					while ((chInt = reader.read()) == '<') {
 						ltText.append('<');
@@ -716,7 +746,7 @@ public class HtmlParser {
 						continue LOOP;
 					}
 				} else if (Character.isWhitespace(ch)) {
-					StringBuffer ltText = new StringBuffer();
+					StringBuilder ltText = new StringBuilder();
 					ltText.append('<');
 					ltText.append(ch);
 					while ((chInt = reader.read()) != -1) {
@@ -754,8 +784,7 @@ public class HtmlParser {
 						this.justReadTagEnd = true;
 						this.justReadTagBegin = false;
 						this.justReadEmptyElement = lastCharSlash;
-						String tag = sb.toString();
-						return tag;
+						return this.names.intern(sb);
 					} else if (ch == '/') {
 						lastCharSlash = true;
 					} else {
@@ -778,8 +807,7 @@ public class HtmlParser {
 			this.justReadTagBegin = false;
 			this.justReadEmptyElement = false;
 		}
-		String tag = sb.toString();
-		return tag;
+		return this.names.intern(sb);
 	}
 
 	/**
@@ -791,65 +819,60 @@ public class HtmlParser {
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	private final StringBuffer passEndOfComment(LineNumberReader reader) throws IOException {
+	private final StringBuilder passEndOfComment(LineNumberReader reader) throws IOException {
 		if (this.justReadTagEnd) {
-			return new StringBuffer(0);
+			return new StringBuilder(0);
 		}
-		StringBuffer sb = new StringBuffer();
+		StringBuilder sb = new StringBuilder();
 		OUTER: for (;;) {
+			if (readUntil(reader, '-', sb) == -1) {
+				break OUTER;
+			}
+			char ch = '-';
 			int chInt = reader.read();
 			if (chInt == -1) {
+				sb.append(ch);
 				break OUTER;
 			}
-			char ch = (char) chInt;
+			ch = (char) chInt;
 			if (ch == '-') {
-				chInt = reader.read();
-				if (chInt == -1) {
-					sb.append(ch);
-					break OUTER;
-				}
-				ch = (char) chInt;
-				if (ch == '-') {
-					StringBuffer extra = null;
-					INNER: for (;;) {
-						chInt = reader.read();
-						if (chInt == -1) {
-							if (extra != null) {
-								sb.append(extra.toString());
-							}
-							break OUTER;
+				StringBuilder extra = null;
+				INNER: for (;;) {
+					chInt = reader.read();
+					if (chInt == -1) {
+						if (extra != null) {
+							sb.append(extra.toString());
 						}
-						ch = (char) chInt;
-						if (ch == '>') {
-							this.justReadTagBegin = false;
-							this.justReadTagEnd = true;
-							return sb;
-						} else if (ch == '-') {
-							// Allow any number of dashes at the end
-							if (extra == null) {
-								extra = new StringBuffer();
-								extra.append("--");
-							}
-							extra.append("-");
-						} else if (Character.isWhitespace(ch)) {
-							if (extra == null) {
-								extra = new StringBuffer();
-								extra.append("--");
-							}
-							extra.append(ch);
-						} else {
-							if (extra != null) {
-								sb.append(extra.toString());
-							}
-							sb.append(ch);
-							break INNER;
+						break OUTER;
+					}
+					ch = (char) chInt;
+					if (ch == '>') {
+						this.justReadTagBegin = false;
+						this.justReadTagEnd = true;
+						return sb;
+					} else if (ch == '-') {
+						// Allow any number of dashes at the end
+						if (extra == null) {
+							extra = new StringBuilder();
+							extra.append("--");
 						}
+						extra.append("-");
+					} else if (Character.isWhitespace(ch)) {
+						if (extra == null) {
+							extra = new StringBuilder();
+							extra.append("--");
+						}
+						extra.append(ch);
+					} else {
+						if (extra != null) {
+							sb.append(extra.toString());
+						}
+						sb.append(ch);
+						break INNER;
 					}
-				} else {
-					sb.append('-');
-					sb.append(ch);
 				}
 			} else {
+				sb.append('-');
 				sb.append(ch);
 			}
 		}
@@ -901,15 +924,12 @@ public class HtmlParser {
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	private final StringBuffer readProcessingInstruction(LineNumberReader reader) throws IOException {
-		StringBuffer pidata = new StringBuffer();
+	private final StringBuilder readProcessingInstruction(LineNumberReader reader) throws IOException {
+		StringBuilder pidata = new StringBuilder();
 		if (this.justReadTagEnd) {
 			return pidata;
 		}
-		int ch;
-		for (ch = reader.read(); (ch != -1) && (ch != '>'); ch = reader.read()) {
-			pidata.append((char) ch);
-		}
+		int ch = readUntil(reader, '>', pidata);
 		this.justReadTagBegin = false;
 		this.justReadTagEnd = ch != -1;
 		return pidata;
@@ -936,14 +956,14 @@ public class HtmlParser {
 		// Read attribute name up to '=' character.
 		// May read several attribute names without explicit values.
 
-		StringBuffer attributeName = null;
+		StringBuilder attributeName = null;
 		boolean blankFound = false;
 		boolean lastCharSlash = false;
 		for (;;) {
 			int chInt = reader.read();
 			if (chInt == -1) {
 				if ((attributeName != null) && (attributeName.length() != 0)) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					element.setAttribute(attributeNameStr, attributeNameStr);
 					attributeName.setLength(0);
 				}
@@ -959,7 +979,7 @@ public class HtmlParser {
 				break;
 			} else if (ch == '>') {
 				if ((attributeName != null) && (attributeName.length() != 0)) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					element.setAttribute(attributeNameStr, attributeNameStr);
 				}
 				this.justReadTagBegin = false;
@@ -977,19 +997,20 @@ public class HtmlParser {
 				if (blankFound) {
 					blankFound = false;
 					if ((attributeName != null) && (attributeName.length() != 0)) {
-						String attributeNameStr = attributeName.toString();
+						String attributeNameStr = this.names.intern(attributeName);
 						element.setAttribute(attributeNameStr, attributeNameStr);
 						attributeName.setLength(0);
 					}
 				}
 				if (attributeName == null) {
-					attributeName = new StringBuffer(6);
+					attributeName = this.attributeNameBuffer;
+					attributeName.setLength(0);
 				}
 				attributeName.append(ch);
 			}
 		}
 		// Read blanks up to open quote or first non-blank.
-		StringBuffer attributeValue = null;
+		StringBuilder attributeValue = null;
 		int openQuote = -1;
 		for (;;) {
 			int chInt = reader.read();
@@ -999,7 +1020,7 @@ public class HtmlParser {
 			char ch = (char) chInt;
 			if (ch == '>') {
 				if ((attributeName != null) && (attributeName.length() != 0)) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					element.setAttribute(attributeNameStr, attributeNameStr);
 				}
 				this.justReadTagBegin = false;
@@ -1018,7 +1039,8 @@ public class HtmlParser {
 				} else {
 					openQuote = -1;
 					if (attributeValue == null) {
-						attributeValue = new StringBuffer(6);
+						attributeValue = this.attributeValueBuffer;
+						attributeValue.setLength(0);
 					}
 					if (lastCharSlash) {
 						attributeValue.append('/');
@@ -1041,14 +1063,14 @@ public class HtmlParser {
 			if ((openQuote != -1) && (ch == openQuote)) {
 				lastCharSlash = false;
 				if (attributeName != null) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					if (attributeValue == null) {
 						// Quotes are closed. There's a distinction
 						// between blank values and null in HTML, as
 						// processed by major browsers.
 						element.setAttribute(attributeNameStr, "");
 					} else {
-						StringBuffer actualAttributeValue = this.entityDecode(attributeValue);
+						StringBuilder actualAttributeValue = this.entityDecode(attributeValue);
 						element.setAttribute(attributeNameStr, actualAttributeValue.toString());
 					}
 				}
@@ -1057,11 +1079,11 @@ public class HtmlParser {
 				return true;
 			} else if ((openQuote == -1) && (ch == '>')) {
 				if (attributeName != null) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					if (attributeValue == null) {
 						element.setAttribute(attributeNameStr, null);
 					} else {
-						StringBuffer actualAttributeValue = this.entityDecode(attributeValue);
+						StringBuilder actualAttributeValue = this.entityDecode(attributeValue);
 						element.setAttribute(attributeNameStr, actualAttributeValue.toString());
 					}
 				}
@@ -1072,11 +1094,11 @@ public class HtmlParser {
 			} else if ((openQuote == -1) && Character.isWhitespace(ch)) {
 				lastCharSlash = false;
 				if (attributeName != null) {
-					String attributeNameStr = attributeName.toString();
+					String attributeNameStr = this.names.intern(attributeName);
 					if (attributeValue == null) {
 						element.setAttribute(attributeNameStr, null);
 					} else {
-						StringBuffer actualAttributeValue = this.entityDecode(attributeValue);
+						StringBuilder actualAttributeValue = this.entityDecode(attributeValue);
 						element.setAttribute(attributeNameStr, actualAttributeValue.toString());
 					}
 				}
@@ -1085,7 +1107,8 @@ public class HtmlParser {
 				return true;
 			} else {
 				if (attributeValue == null) {
-					attributeValue = new StringBuffer(6);
+					attributeValue = this.attributeValueBuffer;
+					attributeValue.setLength(0);
 				}
 				if (lastCharSlash) {
 					attributeValue.append('/');
@@ -1097,11 +1120,11 @@ public class HtmlParser {
 		this.justReadTagBegin = false;
 		this.justReadTagEnd = false;
 		if (attributeName != null) {
-			String attributeNameStr = attributeName.toString();
+			String attributeNameStr = this.names.intern(attributeName);
 			if (attributeValue == null) {
 				element.setAttribute(attributeNameStr, null);
 			} else {
-				StringBuffer actualAttributeValue = this.entityDecode(attributeValue);
+				StringBuilder actualAttributeValue = this.entityDecode(attributeValue);
 				element.setAttribute(attributeNameStr, actualAttributeValue.toString());
 			}
 		}
@@ -1117,9 +1140,9 @@ public class HtmlParser {
 	 * @throws SAXException
 	 *             the SAX exception
 	 */
-	private final StringBuffer entityDecode(StringBuffer rawText) throws org.xml.sax.SAXException {
+	private final StringBuilder entityDecode(StringBuilder rawText) throws org.xml.sax.SAXException {
 		int startIdx = 0;
-		StringBuffer sb = null;
+		StringBuilder sb = null;
 		for (;;) {
 			int ampIdx = rawText.indexOf("&", startIdx);
 			if (ampIdx == -1) {
@@ -1131,7 +1154,7 @@ public class HtmlParser {
 				}
 			}
 			if (sb == null) {
-				sb = new StringBuffer();
+				sb = new StringBuilder();
 			}
 			sb.append(rawText.substring(startIdx, ampIdx));
 			int colonIdx = rawText.indexOf(";", ampIdx);
@@ -1189,16 +1212,46 @@ public class HtmlParser {
 		return c.charValue();
 	}
 
+	/**
+	 * Reads characters up to the next occurrence of <code>delimiter</code>,
+	 * appending them to <code>sb</code>. The delimiter is consumed but not
+	 * appended. A {@link WritableLineReader} scans its buffer in bulk; other
+	 * readers are read one character at a time.
+	 *
+	 * @param reader
+	 *            the reader
+	 * @param delimiter
+	 *            the delimiter, which must not be a line terminator
+	 * @param sb
+	 *            the sb
+	 * @return the delimiter, or -1 on EOF
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static int readUntil(LineNumberReader reader, char delimiter, StringBuilder sb) throws IOException {
+		if (reader instanceof WritableLineReader) {
+			return ((WritableLineReader) reader).readUntil(delimiter, sb);
+		}
+		int intCh;
+		while ((intCh = reader.read()) != -1) {
+			if (intCh == delimiter) {
+				return delimiter;
+			}
+			sb.append((char) intCh);
+		}
+		return -1;
+	}
+
 	/**
 	 * read CData
 	 *
 	 * @param LineNumberReader
 	 *            the reader
-	 * @param StringBuffer
+	 * @param StringBuilder
 	 *            the sb
 	 * @return void
 	 */
-	private static void readCData(LineNumberReader reader, StringBuffer sb) throws IOException {
+	private static void readCData(LineNumberReader reader, StringBuilder sb) throws IOException {
 		int next = reader.read();
 		while (next >= 0) {
 			final char nextCh = (char) next;
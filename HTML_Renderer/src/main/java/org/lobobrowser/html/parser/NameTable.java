@@ -0,0 +1,145 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the tag and attribute names read by one {@link HtmlParser}, so each
+ * distinct name is turned into a <code>String</code> once and every element
+ * and attribute shares that instance. Names are looked up directly from the
+ * builder they were read into. The upper case form of a name, used to look up
+ * element information, is cached as well. Not thread safe.
+ */
+final class NameTable {
+
+	/** Names longer than this are not interned. */
+	private static final int MAX_NAME_LENGTH = 32;
+
+	/** The maximum number of names kept. */
+	private static final int MAX_NAMES = 4096;
+
+	/** The open addressing table of names. */
+	private String[] names = new String[256];
+
+	/** The number of names. */
+	private int count;
+
+	/** The upper case forms by name. */
+	private final Map<String, String> upperCaseNames = new HashMap<String, String>(64);
+
+	/**
+	 * Gets the shared string equal to the characters of the builder.
+	 *
+	 * @param chars
+	 *            the chars
+	 * @return the name
+	 */
+	String intern(StringBuilder chars) {
+		int length = chars.length();
+		if (length > MAX_NAME_LENGTH) {
+			return chars.toString();
+		}
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		String[] table = this.names;
+		int mask = table.length - 1;
+		int index = (hash ^ (hash >>> 16)) & mask;
+		String name;
+		while ((name = table[index]) != null) {
+			if ((name.hashCode() == hash) && contentEquals(name, chars)) {
+				return name;
+			}
+			index = (index + 1) & mask;
+		}
+		name = chars.toString();
+		if (this.count < MAX_NAMES) {
+			table[index] = name;
+			if (++this.count * 2 > table.length) {
+				this.rehash();
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Gets the upper case form of a name.
+	 *
+	 * @param name
+	 *            the name
+	 * @return the upper case name
+	 */
+	String toUpperCase(String name) {
+		String upper = this.upperCaseNames.get(name);
+		if (upper == null) {
+			upper = name.toUpperCase();
+			if (this.upperCaseNames.size() < MAX_NAMES) {
+				this.upperCaseNames.put(name, upper);
+			}
+		}
+		return upper;
+	}
+
+	/**
+	 * Doubles the size of the table.
+	 */
+	private void rehash() {
+		String[] oldTable = this.names;
+		String[] table = new String[oldTable.length * 2];
+		int mask = table.length - 1;
+		for (String name : oldTable) {
+			if (name != null) {
+				int hash = name.hashCode();
+				int index = (hash ^ (hash >>> 16)) & mask;
+				while (table[index] != null) {
+					index = (index + 1) & mask;
+				}
+				table[index] = name;
+			}
+		}
+		this.names = table;
+	}
+
+	/**
+	 * Compares a string with the characters of a builder.
+	 *
+	 * @param name
+	 *            the name
+	 * @param chars
+	 *            the chars
+	 * @return true, if equal
+	 */
+	private static boolean contentEquals(String name, StringBuilder chars) {
+		int length = chars.length();
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,262 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.parser;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.lobobrowser.html.dombl.ImageLoader;
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
+import org.lobobrowser.html.domimpl.HTMLScriptElementImpl;
+import org.lobobrowser.html.style.CSSUtilities;
+import org.lobobrowser.http.UserAgentContext;
+
+/**
+ * Looks ahead in the input of a document for the style sheets, scripts and
+ * images it will request, while the parser is blocked on an external script,
+ * and starts loading them in the background.
+ * <p>
+ * The scan is speculative and deliberately simple: it finds
+ * <code>&lt;link rel=stylesheet href&gt;</code>,
+ * <code>&lt;script src&gt;</code>, <code>&lt;img src&gt;</code> and
+ * <code>@import</code> in <code>&lt;style&gt;</code> elements, skips comments
+ * and inline scripts, and ignores anything a script might write. A resource
+ * the document ends up not requesting is loaded for nothing, and a resource
+ * it requests before the load finishes waits for it instead of loading it
+ * again.
+ */
+final class PreloadScanner {
+
+	/** The Constant logger. */
+	private static final Logger logger = Logger.getLogger(PreloadScanner.class.getName());
+
+	/** The maximum number of characters looked at in one scan. */
+	static final int MAX_LOOK_AHEAD = 64 * 1024;
+
+	/** The pattern of an attribute. */
+	private static final Pattern ATTRIBUTE = Pattern
+			.compile("([a-zA-Z_:][-a-zA-Z0-9_:.]*)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+
+	/** The pattern of an import rule. */
+	private static final Pattern IMPORT = Pattern
+			.compile("@import\\s+(?:url\\(\\s*)?(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"');]+))");
+
+	/** The document. */
+	private final HTMLDocumentImpl document;
+
+	/** The user agent context. */
+	private final UserAgentContext ucontext;
+
+	/** The resources already preloaded, by kind and href. */
+	private final Set<String> seen = new HashSet<String>();
+
+	/**
+	 * Instantiates a new preload scanner.
+	 *
+	 * @param document
+	 *            the document
+	 * @param ucontext
+	 *            the user agent context
+	 */
+	PreloadScanner(HTMLDocumentImpl document, UserAgentContext ucontext) {
+		this.document = document;
+		this.ucontext = ucontext;
+	}
+
+	/**
+	 * Scans markup that has not been parsed yet.
+	 *
+	 * @param markup
+	 *            the markup
+	 */
+	void scan(String markup) {
+		int length = markup.length();
+		int pos = 0;
+		while ((pos = markup.indexOf('<', pos)) != -1) {
+			pos++;
+			if (markup.startsWith("!--", pos)) {
+				pos = markup.indexOf("-->", pos + 3);
+				if (pos == -1) {
+					return;
+				}
+				continue;
+			}
+			int nameEnd = pos;
+			while ((nameEnd < length) && Character.isLetterOrDigit(markup.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			int tagEnd = markup.indexOf('>', nameEnd);
+			if ((nameEnd == pos) || (tagEnd == -1)) {
+				continue;
+			}
+			String name = markup.substring(pos, nameEnd).toLowerCase();
+			pos = tagEnd + 1;
+			if ("link".equals(name)) {
+				Map<String, String> attributes = getAttributes(markup, nameEnd, tagEnd);
+				String rel = attributes.get("rel");
+				if ((rel != null) && rel.toLowerCase().contains("stylesheet")) {
+					this.preloadStyleSheet(attributes.get("href"));
+				}
+			} else if ("img".equals(name)) {
+				this.preloadImage(getAttributes(markup, nameEnd, tagEnd).get("src"));
+			} else if ("script".equals(name)) {
+				Map<String, String> attributes = getAttributes(markup, nameEnd, tagEnd);
+				String type = attributes.get("type");
+				if ((type == null) || (type.length() == 0) || type.toLowerCase().contains("javascript")) {
+					this.preloadScript(attributes.get("src"));
+				}
+				// Markup inside a script is not markup.
+				pos = indexOfEndTag(markup, "script", pos);
+			} else if ("style".equals(name)) {
+				int end = indexOfEndTag(markup, "style", pos);
+				Matcher matcher = IMPORT.matcher(markup.substring(pos, end == -1 ? length : end));
+				while (matcher.find()) {
+					this.preloadStyleSheet(getValue(matcher));
+				}
+				pos = end;
+			}
+			if (pos == -1) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Preloads a style sheet.
+	 *
+	 * @param href
+	 *            the href, or null
+	 */
+	private void preloadStyleSheet(String href) {
+		if ((href == null) || !this.ucontext.isExternalCSSEnabled() || !this.seen.add("stylesheet " + href)) {
+			return;
+		}
+		try {
+			CSSUtilities.preload(href, this.document);
+		} catch (Exception err) {
+			logger.log(Level.INFO, "preloadStyleSheet(): Unable to preload " + href, err);
+		}
+	}
+
+	/**
+	 * Preloads a script.
+	 *
+	 * @param src
+	 *            the src, or null
+	 */
+	private void preloadScript(String src) {
+		if ((src == null) || !this.ucontext.isScriptingEnabled() || !this.seen.add("script " + src)) {
+			return;
+		}
+		URL url = this.document.getFullURL(src);
+		if (url != null) {
+			HTMLScriptElementImpl.preload(this.ucontext, url);
+		}
+	}
+
+	/**
+	 * Preloads an image.
+	 *
+	 * @param src
+	 *            the src, or null
+	 */
+	private void preloadImage(String src) {
+		if ((src == null) || !this.seen.add("img " + src)) {
+			return;
+		}
+		URL url = this.document.getFullURL(src);
+		if (url != null) {
+			ImageLoader.getInstance().preload(url);
+		}
+	}
+
+	/**
+	 * Gets the attributes of a start tag.
+	 *
+	 * @param markup
+	 *            the markup
+	 * @param start
+	 *            the index after the tag name
+	 * @param end
+	 *            the index of the closing angle bracket
+	 * @return the attributes by lower case name, with the most common
+	 *         entities decoded
+	 */
+	private static Map<String, String> getAttributes(String markup, int start, int end) {
+		Map<String, String> attributes = new HashMap<String, String>(4);
+		Matcher matcher = ATTRIBUTE.matcher(markup).region(start, end);
+		while (matcher.find()) {
+			String name = matcher.group(1).toLowerCase();
+			if (!attributes.containsKey(name)) {
+				attributes.put(name, getValue(matcher).replace("&amp;", "&").trim());
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * Gets the value of a match, which is in the first non-null group after
+	 * the name.
+	 *
+	 * @param matcher
+	 *            the matcher
+	 * @return the value
+	 */
+	private static String getValue(Matcher matcher) {
+		for (int i = matcher.groupCount() - 2; i <= matcher.groupCount(); i++) {
+			String value = matcher.group(i);
+			if (value != null) {
+				return value;
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Finds the end tag of an element whose content is not markup.
+	 *
+	 * @param markup
+	 *            the markup
+	 * @param name
+	 *            the lower case element name
+	 * @param from
+	 *            the index to search from
+	 * @return the index of the end tag, or -1 if it has not been read yet
+	 */
+	private static int indexOfEndTag(String markup, String name, int from) {
+		int length = markup.length();
+		int pos = from;
+		while ((pos = markup.indexOf("</", pos)) != -1) {
+			pos += 2;
+			if ((pos + name.length() <= length) && markup.regionMatches(true, pos, name, 0, name.length())) {
+				return pos - 2;
+			}
+		}
+		return -1;
+	}
+}
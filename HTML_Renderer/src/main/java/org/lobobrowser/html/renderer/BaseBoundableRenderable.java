@@ -302,6 +302,34 @@ BoundableRenderable {
         }
     }
 
+    /**
+     * Lays out the tree again after a change at or below this renderable,
+     * only as far up as the change reaches. Renderables on the way up are
+     * invalidated, and blocks on the way up are laid out again in place
+     * until one keeps its sizes. Other renderables keep their layout.
+     *
+     * @return the block that kept its sizes, which only needs to be
+     *         repainted, or null if the whole tree has to be laid out again
+     */
+    public final RBlock relayoutIncrementally() {
+        BaseBoundableRenderable renderable = this;
+        for (;;) {
+            if (renderable instanceof RBlock) {
+                RBlock block = (RBlock) renderable;
+                if (block.relayoutInPlace()) {
+                    return block;
+                }
+            } else {
+                renderable.invalidateLayoutLocal();
+            }
+            RCollection parent = renderable.getOriginalOrCurrentParent();
+            if (!(parent instanceof BaseBoundableRenderable)) {
+                return null;
+            }
+            renderable = (BaseBoundableRenderable) parent;
+        }
+    }
+
      /** Checks if is valid.
 	 *
 	 * @return true, if is valid
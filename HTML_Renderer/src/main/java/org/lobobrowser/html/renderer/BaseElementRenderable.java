@@ -28,25 +28,19 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Insets;
 import java.awt.Rectangle;
-import java.awt.Toolkit;
 import java.awt.image.ImageObserver;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.logging.Level;
 
-import javax.imageio.IIOException;
-import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
 
-import org.apache.batik.transcoder.TranscoderException;
+import org.lobobrowser.html.dombl.ImageEvent;
+import org.lobobrowser.html.dombl.ImageListener;
+import org.lobobrowser.html.dombl.ImageLoader;
 import org.lobobrowser.html.dombl.ModelNode;
-import org.lobobrowser.html.dombl.SVGRasterizer;
 import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
 import org.lobobrowser.html.info.BackgroundInfo;
@@ -56,7 +50,6 @@ import org.lobobrowser.html.style.AbstractCSS2Properties;
 import org.lobobrowser.html.style.HtmlInsets;
 import org.lobobrowser.html.style.HtmlValues;
 import org.lobobrowser.http.UserAgentContext;
-import org.lobobrowser.util.SSLCertificate;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.gui.GUITasks;
 import org.w3c.dom.css.CSS2Properties;
@@ -117,7 +110,7 @@ public abstract class BaseElementRenderable extends BaseRCollection
 	protected BorderInfo borderInfo;
 
 	/** The last background image uri. */
-	protected URL lastBackgroundImageUri;
+	protected volatile URL lastBackgroundImageUri;
 
 	/** The default margin insets. */
 	protected Insets defaultMarginInsets = null;
@@ -419,6 +412,17 @@ public abstract class BaseElementRenderable extends BaseRCollection
 		}
 	}
 
+	/**
+	 * Checks whether GUI components were added below this renderer node in
+	 * its last layout.
+	 *
+	 * @return true, if there are GUI components
+	 */
+	protected final boolean hasGUIComponents() {
+		Collection<Component> gc = this.guiComponents;
+		return (gc != null) && !gc.isEmpty();
+	}
+
 	/**
 	 * Clear gui components.
 	 */
@@ -689,50 +693,29 @@ public abstract class BaseElementRenderable extends BaseRCollection
 	}
 
 	/**
-	 * Load background image.
+	 * Load background image. The image is downloaded and decoded in the
+	 * background; the renderable is repainted once it is available, unless
+	 * the background image has changed in the meantime.
 	 *
 	 * @param imageURL
 	 *            the image url
 	 */
 	protected void loadBackgroundImage(final URL imageURL) {
-		Image image = null;
-		String url = imageURL.toString();
-		try {
-			SSLCertificate.setCertificate();
-			
-			URLConnection con = imageURL.openConnection();
-            con.setRequestProperty("User-Agent", UserAgentContext.DEFAULT_USER_AGENT);
-			
-			if (url.endsWith(".svg")) {
-				SVGRasterizer r = new SVGRasterizer(imageURL);
-				image = r.bufferedImageToImage();
-			} else if (url.startsWith("https")) {
-				image = Toolkit.getDefaultToolkit().createImage(ImageIO.read(con.getInputStream()).getSource());
-			} else if (url.endsWith(".gif")) {
-				try {
-					image = new ImageIcon(imageURL).getImage();
-				} catch (Exception e) {
-					image = ImageIO.read(con.getInputStream());
+		ImageLoader.getInstance().loadImage(imageURL, ImageLoader.PRIORITY_NORMAL, new ImageListener() {
+			@Override
+			public void imageLoaded(ImageEvent event) {
+				Image image = event.image;
+				if (image == null || BaseElementRenderable.this.lastBackgroundImageUri != imageURL) {
+					return;
+				}
+				BaseElementRenderable.this.backgroundImage = image;
+				int w = image.getWidth(BaseElementRenderable.this);
+				int h = image.getHeight(BaseElementRenderable.this);
+				if ((w != -1) && (h != -1)) {
+					BaseElementRenderable.this.repaint();
 				}
-			} else if (url.endsWith(".bmp")) {
-				image = ImageIO.read(con.getInputStream());
-			} else {
-				image = ImageIO.read(con.getInputStream());
-			}
-			
-			BaseElementRenderable.this.backgroundImage = image;
-			int w = image.getWidth(BaseElementRenderable.this);
-			int h = image.getHeight(BaseElementRenderable.this);
-			if ((w != -1) && (h != -1)) {
-				BaseElementRenderable.this.repaint();
 			}
-		} catch (FileNotFoundException | IIOException ex) {
-			logger.log(Level.WARNING, "loadBackgroundImage(): Image not found "+url);
-		} catch (IOException | TranscoderException thrown) {
-			logger.log(Level.WARNING, "loadBackgroundImage()", thrown);
-		} catch (Exception e) {
-			logger.log(Level.WARNING, "loadBackgroundImage()", e);
-		}
+		});
 	}
 
 	/*
@@ -945,7 +928,12 @@ public abstract class BaseElementRenderable extends BaseRCollection
 				}
 				BackgroundInfo binfo = rs == null ? null : rs.getBackgroundInfo();
 				Image image = this.backgroundImage;
-				if (image != null) {
+				if (image == null) {
+					URL imageUri = this.lastBackgroundImageUri;
+					if (imageUri != null) {
+						ImageLoader.getInstance().prioritize(imageUri);
+					}
+				} else {
 					if (bkgBounds == null) {
 						bkgBounds = clientG.getClipBounds();
 					}
@@ -35,6 +35,7 @@ import java.awt.event.AdjustmentListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.image.ImageObserver;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -125,6 +126,15 @@ public class RBlock extends BaseElementRenderable implements
     /** The last layout key. */
     private LayoutKey lastLayoutKey = null;
 
+    /** The display of the block in its last layout. */
+    private int lastLayoutDisplay;
+
+    /** The float of the block in its last layout. */
+    private int lastLayoutFloat;
+
+    /** The position of the block in its last layout. */
+    private int lastLayoutPosition;
+
     /**
      * Instantiates a new r block.
      *
@@ -355,7 +365,7 @@ public class RBlock extends BaseElementRenderable implements
                     int by = bodyLayout.y;
                     g.translate(bx, by);
                     try {
-                        bodyLayout.paint(g);
+                        this.paintViewport(g);
                     } finally {
                         g.translate(-bx, -by);
                     }
@@ -370,7 +380,7 @@ public class RBlock extends BaseElementRenderable implements
                         newG.translate(bodyLayout.x - insets.left, bodyLayout.y
                                 - insets.top);
                         // Third, paint in clipped + translated region.
-                        bodyLayout.paint(newG);
+                        this.paintViewport(newG);
                     } finally {
                         newG.dispose();
                     }
@@ -431,6 +441,18 @@ public class RBlock extends BaseElementRenderable implements
         }
     }
 
+    /**
+     * Paints the viewport, which holds the content of the block. The
+     * graphics have been translated to the origin of the viewport, and
+     * clipped to the block if its overflow is not visible.
+     *
+     * @param g
+     *            the graphics
+     */
+    protected void paintViewport(Graphics g) {
+        this.bodyLayout.paint(g);
+    }
+
     /**
      * Layout.
      *
@@ -626,6 +648,11 @@ public class RBlock extends BaseElementRenderable implements
         this.height = value.getHeight();
         this.hasHScrollBar = value.isHasHScrollBar();
         this.hasVScrollBar = value.isHasVScrollBar();
+        if (!sizeOnly && (renderState != null)) {
+            this.lastLayoutDisplay = renderState.getDisplay();
+            this.lastLayoutFloat = renderState.getFloat();
+            this.lastLayoutPosition = renderState.getPosition();
+        }
         
         bodyLayout.positionDelayed();
 
@@ -638,6 +665,86 @@ public class RBlock extends BaseElementRenderable implements
         this.sendDelayedPairsToParent();
     }
 
+    /**
+     * Lays out the block again after a change of its content, under each of
+     * the constraints its parent last laid it out with, without laying out
+     * the parent. The block is invalidated in any case.
+     *
+     * @return true, if the block has the same sizes as before under all of
+     *         those constraints, so that the layout of its parent still
+     *         holds; false if the parent has to be laid out again
+     */
+    public boolean relayoutInPlace() {
+        LayoutKey lastKey = this.lastLayoutKey;
+        LayoutValue lastValue = this.lastLayoutValue;
+        Map<LayoutKey, LayoutValue> sizes = new HashMap<LayoutKey, LayoutValue>(
+                this.cachedLayout);
+        boolean contained = (lastKey != null) && this.isSelfContained();
+        this.invalidateLayoutLocal();
+        if (!contained) {
+            return false;
+        }
+        // How the parent places the block depends on these.
+        RenderState rs = this.modelNode.getRenderState();
+        if ((rs == null) || (rs.getDisplay() != this.lastLayoutDisplay)
+                || (rs.getFloat() != this.lastLayoutFloat)
+                || (rs.getPosition() != this.lastLayoutPosition)) {
+            return false;
+        }
+        RenderThreadState state = RenderThreadState.getState();
+        boolean prevOverrideNoWrap = state.overrideNoWrap;
+        boolean same = true;
+        try {
+            // Size-only layouts first, as the parent did, so that the
+            // renderables are left from the last one.
+            Iterator<Map.Entry<LayoutKey, LayoutValue>> i = sizes.entrySet()
+                    .iterator();
+            while (i.hasNext()) {
+                Map.Entry<LayoutKey, LayoutValue> entry = i.next();
+                LayoutKey key = entry.getKey();
+                this.layoutAgain(key, true);
+                same = same
+                        && entry.getValue().equals(this.cachedLayout.get(key));
+            }
+            this.layoutAgain(lastKey, false);
+            same = same && lastKey.equals(this.lastLayoutKey)
+                    && lastValue.equals(this.lastLayoutValue);
+        } finally {
+            state.overrideNoWrap = prevOverrideNoWrap;
+        }
+        return same && this.isSelfContained();
+    }
+
+    /**
+     * Lays out the block under constraints it was laid out with before.
+     *
+     * @param key
+     *            the key of the earlier layout
+     * @param sizeOnly
+     *            the size only
+     */
+    private void layoutAgain(LayoutKey key, boolean sizeOnly) {
+        RenderThreadState.getState().overrideNoWrap = key.isOverrideNoWrap();
+        this.layout(key.getAvailWidth(), key.getAvailHeight(),
+                key.isExpandWidth(), key.isExpandHeight(),
+                key.getFloatBoundsSource(), key.getDefaultOverflowX(),
+                key.getDefaultOverflowY(), sizeOnly);
+    }
+
+    /**
+     * Checks whether the last layout of the block left nothing for its
+     * parent to place: no floats sticking out of it, no positioned
+     * renderables, no GUI components and no scroll bars.
+     *
+     * @return true, if is self contained
+     */
+    private boolean isSelfContained() {
+        Collection<DelayedPair> pairs = this.getDelayedPairs();
+        return ((pairs == null) || pairs.isEmpty()) && !this.hasGUIComponents()
+                && !this.hasHScrollBar && !this.hasVScrollBar
+                && (this.getExportableFloatingInfo() == null);
+    }
+
     /**
      * Correct viewport origin.
      *
@@ -56,6 +56,7 @@ import org.lobobrowser.html.domimpl.HTMLTableElementImpl;
 import org.lobobrowser.html.info.FloatingInfo;
 import org.lobobrowser.html.layout.MiscLayout;
 import org.lobobrowser.html.renderstate.RenderState;
+import org.lobobrowser.html.renderstate.WordWidthCache;
 import org.lobobrowser.html.style.AbstractCSS2Properties;
 import org.lobobrowser.html.style.HtmlInsets;
 import org.lobobrowser.html.style.HtmlValues;
@@ -1375,87 +1376,78 @@ public class RBlockViewport extends BaseRCollection {
 		int descent = fm.getDescent();
 		int ascentPlusLeading = fm.getAscent() + fm.getLeading();
 		int wordHeight = fm.getHeight();
-		int blankWidth = fm.charWidth(' ');
+		int blankWidth = WordWidthCache.getInstance().charWidth(fm, ' ');
 		int whiteSpace = this.overrideNoWrap ? RenderState.WS_NOWRAP : renderState.getWhiteSpace();
 		int textTransform = renderState.getTextTransform();
 		String text = textNode.getNodeValue();
+		int length = text.length();
+		// Words are slices of the text, so segmenting it creates nothing
+		// but the renderables.
 		if (whiteSpace != RenderState.WS_PRE) {
+			// Blanks only need a renderable if they paint something.
+			boolean paintedBlanks = (renderState.getTextDecorationMask() != 0)
+					|| (renderState.getTextBackgroundColor() != null) || (renderState.getOverlayColor() != null);
 			boolean prevAllowOverflow = this.currentLine.isAllowOverflow();
 			boolean allowOverflow = whiteSpace == RenderState.WS_NOWRAP;
 			this.currentLine.setAllowOverflow(allowOverflow);
 			try {
-				int length = text.length();
-				StringBuffer word = new StringBuffer(12);
+				int wordStart = -1;
 				for (int i = 0; i < length; i++) {
-					char ch = text.charAt(i);
-					if (Character.isWhitespace(ch)) {
-						int wlen = word.length();
-						if (wlen > 0) {
-							RWord rword = new RWord(textNode, word.toString(), container, fm, descent,
-									ascentPlusLeading, wordHeight, textTransform);
-							this.addWordToLine(rword);
-							word.delete(0, wlen);
+					if (!Character.isWhitespace(text.charAt(i))) {
+						if (wordStart == -1) {
+							wordStart = i;
 						}
-						RLine line = this.currentLine;
-						if (line.width > 0) {
+						continue;
+					}
+					if (wordStart != -1) {
+						RWord rword = new RWord(textNode, text, wordStart, i, container, fm, descent,
+								ascentPlusLeading, wordHeight, textTransform);
+						this.addWordToLine(rword);
+						wordStart = -1;
+					}
+					RLine line = this.currentLine;
+					if (line.width > 0) {
+						if (paintedBlanks) {
 							RBlank rblank = new RBlank(textNode, fm, container, ascentPlusLeading, blankWidth,
 									wordHeight);
 							line.addBlank(rblank);
+						} else {
+							line.addBlank(blankWidth);
 						}
-						for (i++; i < length; i++) {
-							ch = text.charAt(i);
-							if (!Character.isWhitespace(ch)) {
-								word.append(ch);
-								break;
-							}
-						}
-					} else {
-						word.append(ch);
+					}
+					while ((i + 1 < length) && Character.isWhitespace(text.charAt(i + 1))) {
+						i++;
 					}
 				}
-				if (word.length() > 0) {
-					RWord rword = new RWord(textNode, word.toString(), container, fm, descent, ascentPlusLeading,
-							wordHeight, textTransform);
+				if (wordStart != -1) {
+					RWord rword = new RWord(textNode, text, wordStart, length, container, fm, descent,
+							ascentPlusLeading, wordHeight, textTransform);
 					this.addWordToLine(rword);
 				}
 			} finally {
 				this.currentLine.setAllowOverflow(prevAllowOverflow);
 			}
 		} else {
-			int length = text.length();
-			boolean lastCharSlashR = false;
-			StringBuffer line = new StringBuffer();
-			for (int i = 0; i < length; i++) {
-				char ch = text.charAt(i);
-				switch (ch) {
-				case '\r':
-					lastCharSlashR = true;
-					break;
-				case '\n':
-					int llen = line.length();
-					if (llen > 0) {
-						RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading,
-								wordHeight, textTransform);
-						this.addWordToLine(rword);
-						line.delete(0, line.length());
-					}
+			int lineStart = 0;
+			for (int i = 0; i <= length; i++) {
+				boolean lineEnd = i == length;
+				if (!lineEnd && (text.charAt(i) != '\n')) {
+					continue;
+				}
+				// A carriage return before a line feed or at the end of the
+				// text is not shown.
+				int end = (i > lineStart) && (text.charAt(i - 1) == '\r') ? i - 1 : i;
+				if (end > lineStart) {
+					RWord rword = new RWord(textNode, text, lineStart, end, container, fm, descent,
+							ascentPlusLeading, wordHeight, textTransform);
+					this.addWordToLine(rword);
+				}
+				if (!lineEnd) {
 					RLine prevLine = this.currentLine;
 					prevLine.setLineBreak(new LineBreak(LineBreak.NONE, textNode));
 					this.addLine(textNode, prevLine, prevLine.y + prevLine.height);
-					break;
-				default:
-					if (lastCharSlashR) {
-						line.append('\r');
-						lastCharSlashR = false;
-					}
-					line.append(ch);
-					break;
 				}
-			}
-			if (line.length() > 0) {
-				RWord rword = new RWord(textNode, line.toString(), container, fm, descent, ascentPlusLeading,
-						wordHeight, textTransform);
-				this.addWordToLine(rword);
+				lineStart = i + 1;
 			}
 		}
 	}
@@ -65,6 +65,27 @@ public class RLine extends BaseRCollection {
 	/** The first allow overflow word. */
 	private boolean firstAllowOverflowWord = false;
 
+	/** The number of blanks added with {@link #addBlank(int)}. */
+	private int blankCount;
+
+	/**
+	 * The number of renderables in the line when the last counted blank was
+	 * added, or -1.
+	 */
+	private int lastBlankIndex = -1;
+
+	/** The x of the last counted blank. */
+	private int lastBlankX;
+
+	/** The width of the last counted blanks, if adjacent. */
+	private int lastBlankWidth;
+
+	/** The width of the counted blanks after the last word or element. */
+	private int pendingBlankWidth;
+
+	/** The x of the first counted blank after the last word or element. */
+	private int pendingBlankX;
+
 	/**
 	 * Instantiates a new r line.
 	 *
@@ -308,6 +329,13 @@ public class RLine extends BaseRCollection {
 			int newOffset = offset;
 			int newWidth = offset;
 			for (int i = renderables.size(); --i >= 0;) {
+				if (i < this.lastBlankIndex) {
+					// A counted blank is between the renderable and the
+					// ones already taken.
+					newWidth = this.lastBlankX;
+					newOffset = newWidth + this.lastBlankWidth;
+					break;
+				}
 				Renderable renderable = renderables.get(i);
 				if ((renderable instanceof RWord) || !(renderable instanceof BoundableRenderable)) {
 					if (overflow == null) {
@@ -371,6 +399,8 @@ public class RLine extends BaseRCollection {
 		}
 		this.renderables.add(rword);
 		rword.setParent(this);
+		rword.setBlankBefore(offset - this.pendingBlankX, this.pendingBlankWidth);
+		this.pendingBlankWidth = 0;
 		int x = offset;
 		offset += wiwidth;
 		this.width = this.xoffset = offset;
@@ -390,10 +420,47 @@ public class RLine extends BaseRCollection {
 		rblank.setOrigin(x, this.baseLineOffset - rblank.getAscentPlusLeading());
 		this.renderables.add(rblank);
 		rblank.setParent(this);
+		this.pendingBlankWidth = 0;
 		// Only move xoffset, but not width
 		this.xoffset = x + width;
 	}
 
+	/**
+	 * Adds a blank that paints nothing, without a renderable for it. Like an
+	 * {@link RBlank}, it keeps the words before it from being overflown with
+	 * a word after it, and the word after it selects and extracts it.
+	 *
+	 * @param width
+	 *            the width of the blank
+	 */
+	public final void addBlank(int width) {
+		int x = this.xoffset;
+		int size = this.renderables.size();
+		if (this.lastBlankIndex == size) {
+			this.lastBlankWidth += width;
+		} else {
+			this.lastBlankIndex = size;
+			this.lastBlankX = x;
+			this.lastBlankWidth = width;
+		}
+		this.blankCount++;
+		if (this.pendingBlankWidth == 0) {
+			this.pendingBlankX = x;
+		}
+		this.pendingBlankWidth += width;
+		// Only move xoffset, but not width
+		this.xoffset = x + width;
+	}
+
+	/**
+	 * Gets the number of blanks added without a renderable.
+	 *
+	 * @return the blank count
+	 */
+	public int getBlankCount() {
+		return this.blankCount;
+	}
+
 	/**
 	 * Adds the spacing.
 	 *
@@ -494,6 +561,7 @@ public class RLine extends BaseRCollection {
 		}
 		this.renderables.add(relement);
 		relement.setParent(this);
+		this.pendingBlankWidth = 0;
 		relement.setX(origXOffset);
 		this.setElementY(relement, ph, valign);
 		int newX = origXOffset + pw;
@@ -584,6 +652,36 @@ public class RLine extends BaseRCollection {
 		// TODO: Could throw OverflowException when we add floating widgets
 	}
 
+	/**
+	 * Finds the renderable at a point of the line. A point on a counted blank
+	 * is on the word after it.
+	 *
+	 * @param x
+	 *            the x
+	 * @param y
+	 *            the y
+	 * @return the boundable renderable, or null
+	 */
+	private BoundableRenderable findRenderable(int x, int y) {
+		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
+		BoundableRenderable r = MarkupUtilities.findRenderable(rarray, x, y, false);
+		if ((r == null) && (this.blankCount > 0)) {
+			for (int i = 0; i < rarray.length; i++) {
+				if (rarray[i] instanceof RWord) {
+					RWord rword = (RWord) rarray[i];
+					int wx = rword.getX();
+					int wy = rword.getY();
+					int blankX = wx - rword.getBlankOffsetBefore();
+					if ((x >= blankX) && (x < blankX + rword.getBlankWidthBefore()) && (y >= wy)
+							&& (y < wy + rword.getHeight())) {
+						return rword;
+					}
+				}
+			}
+		}
+		return r;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -593,8 +691,7 @@ public class RLine extends BaseRCollection {
 	 */
 	@Override
 	public boolean onMouseClick(MouseEvent event, int x, int y) {
-		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
-		BoundableRenderable r = MarkupUtilities.findRenderable(rarray, x, y, false);
+		BoundableRenderable r = this.findRenderable(x, y);
 		if (r != null) {
 			Rectangle rbounds = r.getBounds();
 			return r.onMouseClick(event, x - rbounds.x, y - rbounds.y);
@@ -612,8 +709,7 @@ public class RLine extends BaseRCollection {
 	 */
 	@Override
 	public boolean onDoubleClick(MouseEvent event, int x, int y) {
-		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
-		BoundableRenderable r = MarkupUtilities.findRenderable(rarray, x, y, false);
+		BoundableRenderable r = this.findRenderable(x, y);
 		if (r != null) {
 			Rectangle rbounds = r.getBounds();
 			return r.onDoubleClick(event, x - rbounds.x, y - rbounds.y);
@@ -634,8 +730,7 @@ public class RLine extends BaseRCollection {
 	 */
 	@Override
 	public boolean onMousePressed(MouseEvent event, int x, int y) {
-		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
-		BoundableRenderable r = MarkupUtilities.findRenderable(rarray, x, y, false);
+		BoundableRenderable r = this.findRenderable(x, y);
 		if (r != null) {
 			this.mousePressTarget = r;
 			Rectangle rbounds = r.getBounds();
@@ -672,8 +767,7 @@ public class RLine extends BaseRCollection {
 	 */
 	@Override
 	public RenderableSpot getLowestRenderableSpot(int x, int y) {
-		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
-		BoundableRenderable br = MarkupUtilities.findRenderable(rarray, x, y, false);
+		BoundableRenderable br = this.findRenderable(x, y);
 		if (br != null) {
 			Rectangle rbounds = br.getBounds();
 			return br.getLowestRenderableSpot(x - rbounds.x, y - rbounds.y);
@@ -691,8 +785,7 @@ public class RLine extends BaseRCollection {
 	 */
 	@Override
 	public boolean onMouseReleased(MouseEvent event, int x, int y) {
-		Renderable[] rarray = this.renderables.toArray(Renderable.EMPTY_ARRAY);
-		BoundableRenderable r = MarkupUtilities.findRenderable(rarray, x, y, false);
+		BoundableRenderable r = this.findRenderable(x, y);
 		if (r != null) {
 			Rectangle rbounds = r.getBounds();
 			BoundableRenderable oldArmedRenderable = this.mousePressTarget;
@@ -150,6 +150,18 @@ public class RListItem extends BaseRListElement {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.lobobrowser.html.renderer.RBlock#relayoutInPlace()
+	 */
+	@Override
+	public boolean relayoutInPlace() {
+		// The count of the item depends on the items laid out before it.
+		this.invalidateLayoutLocal();
+		return false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
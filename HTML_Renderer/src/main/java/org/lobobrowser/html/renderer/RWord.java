@@ -31,15 +31,34 @@ import java.awt.event.MouseEvent;
 
 import org.lobobrowser.html.dombl.ModelNode;
 import org.lobobrowser.html.renderstate.RenderState;
+import org.lobobrowser.html.renderstate.WordWidthCache;
 
 /**
  * The Class RWord.
  */
 public final class RWord extends BaseBoundableRenderable {
 
-    /** The shown word. */
+    /** The shown word, created from the text when first needed. */
     private String shownWord;
 
+    /** The text the word is a part of. */
+    private String text;
+
+    /** The index of the first character of the word in the text. */
+    private int start;
+
+    /** The index after the last character of the word in the text. */
+    private int end;
+
+    /**
+     * The width of the blank before the word on its line, if the line only
+     * counts it, or 0.
+     */
+    private int blankWidthBefore;
+
+    /** The distance from the start of that blank to the word. */
+    private int blankOffsetBefore;
+
     /** The font metrics. */
    private FontMetrics fontMetrics;
 
@@ -72,17 +91,59 @@ public final class RWord extends BaseBoundableRenderable {
     public RWord(ModelNode me, String word, RenderableContainer container,
             FontMetrics fontMetrics, int descent, int ascentPlusLeading,
             int height, int textTransform) {
+        this(me, word, 0, word.length(), container, fontMetrics, descent,
+                ascentPlusLeading, height, textTransform);
+    }
+
+    /**
+     * Instantiates a new r word for a part of a text. Unless the word is
+     * transformed, no string is created for it until it is needed.
+     *
+     * @param me
+     *            the me
+     * @param text
+     *            the text
+     * @param start
+     *            the index of the first character of the word
+     * @param end
+     *            the index after the last character of the word
+     * @param container
+     *            the container
+     * @param fontMetrics
+     *            the font metrics
+     * @param descent
+     *            the descent
+     * @param ascentPlusLeading
+     *            the ascent plus leading
+     * @param height
+     *            the height
+     * @param textTransform
+     *            the text transform
+     */
+    public RWord(ModelNode me, String text, int start, int end,
+            RenderableContainer container, FontMetrics fontMetrics,
+            int descent, int ascentPlusLeading, int height, int textTransform) {
         super(container, me);
-        String renderedWord = textTransform == RenderState.TEXTTRANSFORM_NONE ? word
-                : transformText(word, textTransform);
-        this.shownWord = renderedWord;
+        if (textTransform == RenderState.TEXTTRANSFORM_NONE) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        } else {
+            String renderedWord = transformText(text.substring(start, end),
+                    textTransform);
+            this.shownWord = renderedWord;
+            this.text = renderedWord;
+            this.start = 0;
+            this.end = renderedWord.length();
+        }
         this.fontMetrics = fontMetrics;
         this.descent = descent;
         this.ascentPlusLeading = ascentPlusLeading;
         this.height = height;
         // TODO: In anti-aliasing, stringWidth is said not to be reliable.
         // Dimensions set when constructed.
-        this.width = fontMetrics.stringWidth(renderedWord);
+        this.width = WordWidthCache.getInstance().stringWidth(fontMetrics,
+                this.text, this.start, this.end);
     }
 
     /**
@@ -129,7 +190,7 @@ public final class RWord extends BaseBoundableRenderable {
     @Override
     public void paint(Graphics g) {
         RenderState rs = this.modelNode.getRenderState();
-        String word = this.shownWord;
+        String word = this.getShownWord();
         int width = this.width;
         int ascentPlusLeading = this.ascentPlusLeading;
         int height = this.height;
@@ -212,9 +273,17 @@ public final class RWord extends BaseBoundableRenderable {
             startX = endX;
             endX = -1;
         }
+        if (inSelection && (this.blankWidthBefore > 0)) {
+            // The blank before the word is selected too.
+            g.setColor(SELECTION_COLOR);
+            g.setXORMode(SELECTION_XOR);
+            g.fillRect(-this.blankOffsetBefore, 0, this.blankWidthBefore,
+                    this.height);
+            g.setPaintMode();
+        }
         int width1 = -1;
         int width2 = -1;
-        char[] wordChars = this.shownWord.toCharArray();
+        char[] wordChars = this.getShownWord().toCharArray();
         if (startX != -1) {
             width1 = 0;
             FontMetrics fm = this.fontMetrics;
@@ -291,9 +360,12 @@ public final class RWord extends BaseBoundableRenderable {
             startX = endX;
             endX = -1;
         }
+        if (inSelection && (this.blankWidthBefore > 0)) {
+            buffer.append(' ');
+        }
         int index1 = -1;
         int index2 = -1;
-        char[] wordChars = this.shownWord.toCharArray();
+        char[] wordChars = this.getShownWord().toCharArray();
         if (startX != -1) {
             index1 = 0;
             FontMetrics fm = this.fontMetrics;
@@ -503,7 +575,7 @@ public final class RWord extends BaseBoundableRenderable {
  */
     @Override
     public String toString() {
-        return "RWord[word=" + this.shownWord + "]";
+        return "RWord[word=" + this.getShownWord() + "]";
     }
 
 	/**
@@ -512,7 +584,12 @@ public final class RWord extends BaseBoundableRenderable {
 	 * @return the shown word
 	 */
 	public String getShownWord() {
-		return shownWord;
+		String word = this.shownWord;
+		if (word == null) {
+			word = this.text.substring(this.start, this.end);
+			this.shownWord = word;
+		}
+		return word;
 	}
 
 	/**
@@ -523,6 +600,41 @@ public final class RWord extends BaseBoundableRenderable {
 	 */
 	public void setShownWord(String shownWord) {
 		this.shownWord = shownWord;
+		this.text = shownWord;
+		this.start = 0;
+		this.end = shownWord.length();
+	}
+
+	/**
+	 * Gets the width of the blank counted by the line before the word.
+	 *
+	 * @return the width, or 0 if there is none
+	 */
+	public int getBlankWidthBefore() {
+		return blankWidthBefore;
+	}
+
+	/**
+	 * Gets the distance from the start of the blank counted by the line
+	 * before the word to the word.
+	 *
+	 * @return the offset
+	 */
+	public int getBlankOffsetBefore() {
+		return blankOffsetBefore;
+	}
+
+	/**
+	 * Sets the blank counted by the line before the word.
+	 *
+	 * @param offset
+	 *            the distance from the start of the blank to the word
+	 * @param width
+	 *            the width of the blank, or 0 if there is none
+	 */
+	void setBlankBefore(int offset, int width) {
+		this.blankOffsetBefore = offset;
+		this.blankWidthBefore = width;
 	}
 
 	/**
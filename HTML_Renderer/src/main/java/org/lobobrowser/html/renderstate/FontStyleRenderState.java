@@ -171,7 +171,7 @@ public class FontStyleRenderState extends RenderStateDelegator {
         wi.setAscentPlusLeading(fm.getAscent() + fm.getLeading());
         wi.setDescent(fm.getDescent());
         wi.setHeight(fm.getHeight());
-        wi.setWidth(fm.stringWidth(word));
+        wi.setWidth(WordWidthCache.getInstance().stringWidth(fm, word));
         map.put(word, wi);
         return wi;
     }
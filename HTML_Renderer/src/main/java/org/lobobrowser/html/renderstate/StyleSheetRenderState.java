@@ -679,7 +679,7 @@ public class StyleSheetRenderState implements RenderState {
 		wi.setAscentPlusLeading(fm.getAscent() + fm.getLeading());
 		wi.setDescent(fm.getDescent());
 		wi.setHeight(fm.getHeight());
-		wi.setWidth(fm.stringWidth(word));
+		wi.setWidth(WordWidthCache.getInstance().stringWidth(fm, word));
 		map.put(word, wi);
 		return wi;
 	}
@@ -0,0 +1,339 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.renderstate;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lobobrowser.http.ConcurrentLRUCache;
+
+/**
+ * A process-wide cache of the widths of words, shared by all documents and
+ * all layout passes, so that laying out text again, for example when the
+ * window is resized, hardly ever measures a glyph.
+ * <p>
+ * Each font gets a table of the advances of the Latin-1 characters, from
+ * which the width of a word made only of those characters is added up
+ * without calling {@link FontMetrics}. The table is only used if it gives
+ * the same widths as {@link FontMetrics#stringWidth(String)} for the font,
+ * which is not the case with fractional metrics, kerning or ligatures.
+ * Words with combining marks or characters from U+0590 on, and all words of
+ * fonts without a table, are measured once and kept in a bounded LRU cache
+ * keyed by font and word. Those are the slow ones: combining marks and
+ * scripts such as Hebrew, Arabic or Devanagari need complex text layout,
+ * which costs tens of microseconds a word, and CJK glyphs are not in the
+ * fast path of the metrics either. Other words, such as Greek or Cyrillic
+ * ones, are measured directly, because the metrics handle them about as fast
+ * as a cache lookup.
+ * <p>
+ * Only metrics with the render context of the first metrics seen for a font
+ * are cached; others are always measured. This class is thread safe.
+ */
+public final class WordWidthCache {
+
+	/** The Constant instance. */
+	private static final WordWidthCache instance = new WordWidthCache();
+
+	/** The default approximate memory budget in bytes. */
+	private static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+	/** The approximate memory used by a word entry, besides its chars. */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	/** The maximum number of fonts kept. */
+	private static final int MAX_FONTS = 512;
+
+	/**
+	 * The number of characters in the advance table, as returned by
+	 * {@link FontMetrics#getWidths()}.
+	 */
+	private static final int TABLE_SIZE = 256;
+
+	/** The first combining mark, which makes a word worth caching. */
+	private static final char FIRST_COMBINING_MARK = 0x300;
+
+	/** The last combining mark. */
+	private static final char LAST_COMBINING_MARK = 0x36F;
+
+	/** The first character of the scripts worth caching. */
+	private static final char FIRST_CACHED_CHAR = 0x590;
+
+	/** The text measured to check the advance table of a font. */
+	private static final String CHECK_TEXT;
+
+	static {
+		StringBuilder sb = new StringBuilder();
+		for (char ch = 0x20; ch < TABLE_SIZE; ch++) {
+			if ((ch < 0x7F) || (ch >= 0xA0)) {
+				sb.append(ch);
+			}
+		}
+		CHECK_TEXT = sb.toString();
+	}
+
+	/** The widths of each font. */
+	private final ConcurrentHashMap<Font, FontWidths> fonts = new ConcurrentHashMap<Font, FontWidths>();
+
+	/** The widths of words by {@link WordKey}. */
+	private final ConcurrentLRUCache words = new ConcurrentLRUCache(DEFAULT_MAX_SIZE);
+
+	/**
+	 * Instantiates a new word width cache.
+	 */
+	private WordWidthCache() {
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static WordWidthCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the approximate memory budget of the word cache.
+	 *
+	 * @param approxMaxSize
+	 *            the approximate maximum size in bytes
+	 */
+	public void setApproxMaxSize(int approxMaxSize) {
+		this.words.setApproxMaxSize(approxMaxSize);
+	}
+
+	/**
+	 * Gets the width of a word, as {@link FontMetrics#stringWidth(String)}
+	 * would.
+	 *
+	 * @param fm
+	 *            the font metrics
+	 * @param word
+	 *            the word
+	 * @return the width
+	 */
+	public int stringWidth(FontMetrics fm, String word) {
+		return this.stringWidth(fm, word, 0, word.length());
+	}
+
+	/**
+	 * Gets the width of a part of a text, as
+	 * {@link FontMetrics#stringWidth(String)} would for that part. Text whose
+	 * characters are all in the width table is measured without creating a
+	 * string.
+	 *
+	 * @param fm
+	 *            the font metrics
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            the index of the first character
+	 * @param end
+	 *            the index after the last character
+	 * @return the width
+	 */
+	public int stringWidth(FontMetrics fm, String text, int start, int end) {
+		FontWidths fw = this.getFontWidths(fm);
+		if (fw == null) {
+			return fm.stringWidth(substring(text, start, end));
+		}
+		int[] advances = fw.advances;
+		if (advances == null) {
+			return this.getCachedWidth(fm, fw, substring(text, start, end));
+		}
+		int width = 0;
+		boolean inTable = true;
+		for (int i = start; i < end; i++) {
+			char ch = text.charAt(i);
+			if (ch < TABLE_SIZE) {
+				width += advances[ch];
+			} else if ((ch >= FIRST_CACHED_CHAR)
+					|| ((ch >= FIRST_COMBINING_MARK) && (ch <= LAST_COMBINING_MARK))) {
+				return this.getCachedWidth(fm, fw, substring(text, start, end));
+			} else {
+				inTable = false;
+			}
+		}
+		return inTable ? width : fm.stringWidth(substring(text, start, end));
+	}
+
+	/**
+	 * Gets a part of a text, without copying when the part is the whole
+	 * text.
+	 *
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            the start
+	 * @param end
+	 *            the end
+	 * @return the string
+	 */
+	private static String substring(String text, int start, int end) {
+		return (start == 0) && (end == text.length()) ? text : text.substring(start, end);
+	}
+
+	/**
+	 * Gets the width of a word from the LRU cache, measuring it on a miss.
+	 *
+	 * @param fm
+	 *            the font metrics
+	 * @param fw
+	 *            the font widths
+	 * @param word
+	 *            the word
+	 * @return the width
+	 */
+	private int getCachedWidth(FontMetrics fm, FontWidths fw, String word) {
+		WordKey key = new WordKey(fw, word);
+		Integer cached = (Integer) this.words.get(key);
+		if (cached != null) {
+			return cached.intValue();
+		}
+		int width = fm.stringWidth(word);
+		this.words.put(key, Integer.valueOf(width), ENTRY_OVERHEAD + (word.length() * 2));
+		return width;
+	}
+
+	/**
+	 * Gets the width of a character, as {@link FontMetrics#charWidth(char)}
+	 * would.
+	 *
+	 * @param fm
+	 *            the font metrics
+	 * @param ch
+	 *            the character
+	 * @return the width
+	 */
+	public int charWidth(FontMetrics fm, char ch) {
+		FontWidths fw = this.getFontWidths(fm);
+		if ((fw != null) && (fw.advances != null) && (ch < TABLE_SIZE)) {
+			return fw.advances[ch];
+		}
+		return fm.charWidth(ch);
+	}
+
+	/**
+	 * Gets the widths of the font of some metrics.
+	 *
+	 * @param fm
+	 *            the font metrics
+	 * @return the widths, or null if the metrics cannot be cached
+	 */
+	private FontWidths getFontWidths(FontMetrics fm) {
+		Font font = fm.getFont();
+		FontWidths fw = this.fonts.get(font);
+		if (fw == null) {
+			if (this.fonts.size() >= MAX_FONTS) {
+				// Fonts come from a small set in practice. The words of the
+				// fonts dropped here age out of the word cache.
+				this.fonts.clear();
+			}
+			FontWidths newFw = new FontWidths(fm);
+			fw = this.fonts.putIfAbsent(font, newFw);
+			if (fw == null) {
+				fw = newFw;
+			}
+		}
+		return fw.frc.equals(fm.getFontRenderContext()) ? fw : null;
+	}
+
+	/**
+	 * The widths of one font with one render context.
+	 */
+	private static final class FontWidths {
+
+		/** The render context. */
+		private final FontRenderContext frc;
+
+		/**
+		 * The advances of the characters of the table, or null if they do not
+		 * add up to the width of a word.
+		 */
+		private final int[] advances;
+
+		/**
+		 * Instantiates new font widths.
+		 *
+		 * @param fm
+		 *            the font metrics
+		 */
+		private FontWidths(FontMetrics fm) {
+			this.frc = fm.getFontRenderContext();
+			int[] widths = fm.getWidths();
+			int sum = 0;
+			for (int i = 0; i < CHECK_TEXT.length(); i++) {
+				sum += widths[CHECK_TEXT.charAt(i)];
+			}
+			this.advances = fm.getFont().hasLayoutAttributes() || (sum != fm.stringWidth(CHECK_TEXT)) ? null
+					: widths;
+		}
+	}
+
+	/**
+	 * The key of a word measured in a font.
+	 */
+	private static final class WordKey {
+
+		/** The font widths. */
+		private final FontWidths fontWidths;
+
+		/** The word. */
+		private final String word;
+
+		/**
+		 * Instantiates a new word key.
+		 *
+		 * @param fontWidths
+		 *            the font widths
+		 * @param word
+		 *            the word
+		 */
+		private WordKey(FontWidths fontWidths, String word) {
+			this.fontWidths = fontWidths;
+			this.word = word;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(this.fontWidths) * 31) + this.word.hashCode();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof WordKey)) {
+				return false;
+			}
+			WordKey key = (WordKey) other;
+			return (key.fontWidths == this.fontWidths) && key.word.equals(this.word);
+		}
+	}
+}
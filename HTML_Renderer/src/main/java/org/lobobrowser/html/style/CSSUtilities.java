@@ -23,36 +23,24 @@ package org.lobobrowser.html.style;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.StringTokenizer;
-import java.util.logging.Logger;
 
 import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.http.UserAgentContext;
-import org.lobobrowser.util.SSLCertificate;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
-import org.lobobrowser.util.io.IORoutines;
 import org.w3c.css.sac.InputSource;
 import org.w3c.dom.css.CSSStyleSheet;
 import org.w3c.dom.stylesheets.MediaList;
 
-import com.steadystate.css.parser.CSSOMParser;
-import com.steadystate.css.parser.SACParserCSS3;
-
 /**
  * The Class CSSUtilities.
  */
 public class CSSUtilities {
 
-	/** The Constant logger. */
-	private static final Logger logger = Logger.getLogger(CSSUtilities.class.getName());
-
 	/**
 	 * Instantiates a new CSS utilities.
 	 */
@@ -113,16 +101,52 @@ public class CSSUtilities {
 	}
 
 	/**
+	 * Parses the style sheet at <code>href</code>, resolved against the base
+	 * URI of the document. The result may share its rules with other
+	 * documents, see {@link StyleSheetCache}.
+	 *
 	 * @param href
-	 * @param href
+	 *            the href
 	 * @param doc
-	 * @return
+	 *            the document
+	 * @return the style sheet
 	 * @throws Exception
 	 */
 	public static CSSStyleSheet parse(String href, HTMLDocumentImpl doc) throws Exception {
+		return StyleSheetCache.getInstance().getStyleSheet(getStyleSheetURL(href, doc));
+	}
+
+	/**
+	 * Starts loading the style sheet at <code>href</code> in the background,
+	 * so that a later {@link #parse(String, HTMLDocumentImpl)} of the same
+	 * <code>href</code> finds it ready.
+	 *
+	 * @param href
+	 *            the href
+	 * @param doc
+	 *            the document
+	 * @throws IOException
+	 *             if the href is not a valid URL
+	 */
+	public static void preload(String href, HTMLDocumentImpl doc) throws IOException {
+		StyleSheetCache.getInstance().preload(getStyleSheetURL(href, doc));
+	}
+
+	/**
+	 * Gets the URL of a style sheet, resolved against the base URI of the
+	 * document.
+	 *
+	 * @param href
+	 *            the href
+	 * @param doc
+	 *            the document
+	 * @return the URL
+	 * @throws IOException
+	 *             if the href is not a valid URL
+	 */
+	private static URL getStyleSheetURL(String href, HTMLDocumentImpl doc) throws IOException {
 
 		URL url = null;
-		CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
 
 		URL baseURL = new URL(doc.getBaseURI());
 		URL scriptURL = Urls.createURL(baseURL, href);
@@ -142,29 +166,7 @@ public class CSSUtilities {
 				throw mfu;
 			}
 		}
-		logger.info("process(): Loading URI=[" + scriptURI + "].");
-		SSLCertificate.setCertificate();
-		URLConnection connection = url.openConnection();
-		connection.setRequestProperty("User-Agent", UserAgentContext.DEFAULT_USER_AGENT);
-		connection.setRequestProperty("Cookie", "");
-		if (connection instanceof HttpURLConnection) {
-			HttpURLConnection hc = (HttpURLConnection) connection;
-			hc.setInstanceFollowRedirects(true);
-			int responseCode = hc.getResponseCode();
-			logger.info("process(): HTTP response code: " + responseCode);
-		}
-		InputStream in = connection.getInputStream();
-		byte[] content;
-		try {
-			content = IORoutines.load(in, 8192);
-		} finally {
-			in.close();
-		}
-		String source = new String(content, "UTF-8");
-
-		InputSource is = getCssInputSourceForStyleSheet(source, doc.getBaseURI());
-		return parser.parseStyleSheet(is, null, null);
-
+		return url;
 	}
 
 	/**
@@ -25,23 +25,23 @@ import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
 import java.util.logging.Logger;
 
 import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
 import org.lobobrowser.html.info.StyleRuleInfo;
-import org.lobobrowser.html.style.selectors.SelectorMatcher;
+import org.lobobrowser.html.style.selectors.AncestorFilter;
+import org.lobobrowser.html.style.selectors.SelectorParser;
 import org.lobobrowser.html.style.selectors.SimpleSelector;
 import org.lobobrowser.http.UserAgentContext;
-import org.w3c.dom.Attr;
-import org.w3c.dom.NamedNodeMap;
+import org.lobobrowser.util.Strings;
 import org.w3c.dom.css.CSSImportRule;
 import org.w3c.dom.css.CSSMediaRule;
 import org.w3c.dom.css.CSSRule;
@@ -54,70 +54,48 @@ import org.w3c.dom.stylesheets.MediaList;
 /**
  * Aggregates all style sheets in a document. Every time a new STYLE element is
  * found, it is added to the style sheet aggreagator by means of the
- * {@link #addStyleSheet(CSSStyleSheet)} method. HTML elements have a
+ * {@link #addStyleSheets(List)} method. HTML elements have a
  * <code>style</code> object that has a list of <code>CSSStyleDeclaration</code>
  * instances. The instances inserted in that list are obtained by means of the
- * getStyleDeclarations(HTMLElementImpl, String, String, String)} method.
- */
-/**
- * @author Administrator
- *
+ * {@link #getActiveStyleDeclarations(HTMLElementImpl, Set)} method.
+ * <p>
+ * Each selector is indexed once, under the id of its rightmost compound
+ * selector if it has one, otherwise under its first class, otherwise under its
+ * element name, otherwise as a universal rule. An element is then cascaded by
+ * probing the buckets of its id, of each of its classes, of its tag name and
+ * the universal bucket, and matching only those candidates right to left.
  */
 public class StyleSheetAggregator {
 
 	/** The Constant logger. */
 	private static final Logger logger = Logger.getLogger(StyleSheetAggregator.class.getName());
 
-	/** The attribute. */
-	private String attribute;
-
-	/** The attributeValue. */
-	private String attributeValue;
-
-	/** The attributeOperator. */
-	private String attributeOperator = "";
-
-	/** The element. */
-	private String htmlElement;
+	/** Sorts matching rules by specificity, then source order. */
+	private static final Comparator<StyleRuleInfo> CASCADE_ORDER = new Comparator<StyleRuleInfo>() {
+		@Override
+		public int compare(StyleRuleInfo r1, StyleRuleInfo r2) {
+			int diff = r1.getSpecificity() - r2.getSpecificity();
+			return diff != 0 ? diff : r1.getOrder() - r2.getOrder();
+		}
+	};
 
 	/** The document. */
 	private final HTMLDocumentImpl document;
 
-	/** The class maps by element. */
-	private final Map<String, Map<String, Collection<StyleRuleInfo>>> classMapsByElement = new HashMap<String, Map<String, Collection<StyleRuleInfo>>>();
+	/** The rules by id. */
+	private final Map<String, Collection<StyleRuleInfo>> rulesById = new HashMap<String, Collection<StyleRuleInfo>>();
 
-	/** The attr maps by element. */
-	private final Map<String, Map<String, Collection<StyleRuleInfo>>> attrMapsByElement = new HashMap<String, Map<String, Collection<StyleRuleInfo>>>();
-
-	/** The id maps by element. */
-	private final Map<String, Map<String, Collection<StyleRuleInfo>>> idMapsByElement = new HashMap<String, Map<String, Collection<StyleRuleInfo>>>();
+	/** The rules by class. */
+	private final Map<String, Collection<StyleRuleInfo>> rulesByClass = new HashMap<String, Collection<StyleRuleInfo>>();
 
 	/** The rules by element. */
 	private final Map<String, Collection<StyleRuleInfo>> rulesByElement = new HashMap<String, Collection<StyleRuleInfo>>();
-	
-	/** The pseudo element. */
-	private String pseudoElement;
 
-	/** The op equal. */
-	private final String OP_EQUAL = "=";
-	
-	/** The op tilde equal. */
-	private final String OP_TILDE_EQUAL = "~=";
-	
-	/** The op pipe equal. */
-	private final String OP_PIPE_EQUAL = "|=";
-	
-	/** The op dollar equal. */
-	private final String OP_DOLLAR_EQUAL = "$=";
-	
-	/** The op circumflex equal. */
-	private final String OP_CIRCUMFLEX_EQUAL = "^=";
-	
-	/** The op star equal. */
-	private final String OP_STAR_EQUAL = "*=";
-	
-	/** The op all. */
-	private final String OP_ALL = "ALL";
+	/** The universal rules. */
+	private final Collection<StyleRuleInfo> universalRules = new ArrayList<StyleRuleInfo>();
+
+	/** The number of selectors indexed so far, used as source order. */
+	private int ruleCount;
 
 	/**
 	 * Instantiates a new style sheet aggregator.
@@ -182,100 +160,11 @@ public class StyleSheetAggregator {
 		HTMLDocumentImpl document = this.document;
 		if (rule instanceof CSSStyleRule) {
 			CSSStyleRule sr = (CSSStyleRule) rule;
-			String selectorList = sr.getSelectorText();
-			StringTokenizer commaTok = new StringTokenizer(selectorList, ",");
-			while (commaTok.hasMoreTokens()) {
-				String selectorPart = commaTok.nextToken().toLowerCase();
-				ArrayList<SimpleSelector> simpleSelectors = null;
-				String lastSelectorText = null;
-				StringTokenizer tok = new StringTokenizer(selectorPart, " \t\r\n");
-				if (tok.hasMoreTokens()) {
-					simpleSelectors = new ArrayList<SimpleSelector>();
-					SimpleSelector prevSelector = null;
-					SELECTOR_FOR: for (;;) {
-						String token = tok.nextToken();
-						if (">".equals(token)) {
-							if (prevSelector != null) {
-								prevSelector.setSelectorType(SimpleSelector.PARENT);
-							}
-							continue SELECTOR_FOR;
-						} else if ("+".equals(token)) {
-							if (prevSelector != null) {
-								prevSelector.setSelectorType(SimpleSelector.PRECEEDING_SIBLING);
-							}
-							continue SELECTOR_FOR;
-						}
-						int colonIdx = token.indexOf(':');
-						String simpleSelectorText = colonIdx == -1 ? token : token.substring(0, colonIdx);
-						pseudoElement = colonIdx == -1 ? null : token.substring(colonIdx + 1);
-						prevSelector = new SimpleSelector(simpleSelectorText, pseudoElement);
-						simpleSelectors.add(prevSelector);
-						if (!tok.hasMoreTokens()) {
-							lastSelectorText = simpleSelectorText;
-							break;
-						}
-					}
+			for (String selectorPart : SelectorParser.splitGroup(sr.getSelectorText())) {
+				ArrayList<SimpleSelector> simpleSelectors = SelectorParser.parse(selectorPart.toLowerCase());
+				if (simpleSelectors != null) {
+					this.addIndexedRule(new StyleRuleInfo(simpleSelectors, sr, this.ruleCount++));
 				}
-				if (lastSelectorText != null) {
-					int dotIdx = lastSelectorText.indexOf('.');
-					if (dotIdx != -1) {
-						String elemtl = lastSelectorText.substring(0, dotIdx);
-						String classtl = lastSelectorText.substring(dotIdx + 1);
-						this.addClassRule(elemtl, classtl, sr, simpleSelectors);
-					} else {
-						int poundIdx = lastSelectorText.indexOf('#');
-						if (poundIdx != -1) {
-							String elemtl = lastSelectorText.substring(0, poundIdx);
-							String idtl = lastSelectorText.substring(poundIdx + 1);
-							this.addIdRule(elemtl, idtl, sr, simpleSelectors);
-						} else {
-							String elemtl = lastSelectorText;
-							this.addElementRule(elemtl, sr, simpleSelectors);
-						}
-					}
-				}
-			}
-
-			if (selectorList.contains("[") && selectorList.endsWith("]")) {
-				String selector = selectorList.replace("\"", "");
-				int quadIdx = selector.indexOf("[") + 1;
-				htmlElement = selector.substring(0, selector.indexOf("["));
-				if (selectorList.contains(OP_PIPE_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_PIPE_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 2, selector.length() - 1);
-					attributeOperator = OP_PIPE_EQUAL;
-				} else if (selectorList.contains(OP_CIRCUMFLEX_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_CIRCUMFLEX_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 2, selector.length() - 1);
-					attributeOperator = OP_CIRCUMFLEX_EQUAL;
-				} else if (selectorList.contains(OP_TILDE_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_TILDE_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 2, selector.length() - 1);
-					attributeOperator = OP_TILDE_EQUAL;
-				} else if (selectorList.contains(OP_DOLLAR_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_DOLLAR_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 2, selector.length() - 1);
-					attributeOperator = OP_DOLLAR_EQUAL;
-				} else if (selectorList.contains(OP_STAR_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_STAR_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 2, selector.length() - 1);
-					attributeOperator = OP_STAR_EQUAL;
-				} else if (selectorList.contains(OP_EQUAL)) {
-					int eqIdx = selector.indexOf(OP_EQUAL);
-					attribute = selector.substring(quadIdx, eqIdx);
-					attributeValue = selector.substring(eqIdx + 1, selector.length() - 1);
-					attributeOperator = OP_EQUAL;
-				} else {
-					attribute = selector.substring(quadIdx, selector.length() - 1);
-					attributeValue = "-";
-					attributeOperator = OP_ALL;
-				}
-				this.addAttributeRule(htmlElement, attributeValue, sr, new ArrayList<SimpleSelector>());
 			}
 		} else if (rule instanceof CSSImportRule) {
 			UserAgentContext uacontext = document.getUserAgentContext();
@@ -308,261 +197,125 @@ public class StyleSheetAggregator {
 	}
 
 	/**
-	 * Adds the class rule.
-	 *
-	 * @param elemtl
-	 *            the elemtl
-	 * @param classtl
-	 *            the classtl
-	 * @param styleRule
-	 *            the style rule
-	 * @param ancestorSelectors
-	 *            the ancestor selectors
-	 */
-	private final void addClassRule(String elemtl, String classtl, CSSStyleRule styleRule,
-			ArrayList<SimpleSelector> ancestorSelectors) {
-		Map<String, Collection<StyleRuleInfo>> classMap = this.classMapsByElement.get(elemtl);
-		if (classMap == null) {
-			classMap = new HashMap<String, Collection<StyleRuleInfo>>();
-			this.classMapsByElement.put(elemtl, classMap);
-		}
-		Collection<StyleRuleInfo> rules = classMap.get(classtl);
-		if (rules == null) {
-			rules = new LinkedList<StyleRuleInfo>();
-			classMap.put(classtl, rules);
-		}
-		rules.add(new StyleRuleInfo(ancestorSelectors, styleRule));
-	}
-
-	/**
-	 * Adds the attribute rule.
-	 *
-	 * @param elemtl
-	 *            the elemtl
-	 * @param classtl
-	 *            the classtl
-	 * @param styleRule
-	 *            the style rule
-	 * @param ancestorSelectors
-	 *            the ancestor selectors
-	 */
-	private final void addAttributeRule(String elemtl, String attrtl, CSSStyleRule styleRule,
-			ArrayList<SimpleSelector> ancestorSelectors) {
-		Map<String, Collection<StyleRuleInfo>> attrMap = this.attrMapsByElement.get(elemtl);
-		if (attrMap == null) {
-			attrMap = new HashMap<String, Collection<StyleRuleInfo>>();
-			this.attrMapsByElement.put(elemtl, attrMap);
-		}
-		Collection<StyleRuleInfo> rules = attrMap.get(attrtl);
-		if (rules == null) {
-			rules = new LinkedList<StyleRuleInfo>();
-			attrMap.put(attrtl, rules);
-		}
-		rules.add(new StyleRuleInfo(ancestorSelectors, styleRule));
-	}
-
-	/**
-	 * Adds the id rule.
+	 * Adds the rule to the bucket of its rightmost id, class, element name or
+	 * to the universal rules, in that order of preference.
 	 *
-	 * @param elemtl
-	 *            the elemtl
-	 * @param idtl
-	 *            the idtl
-	 * @param styleRule
-	 *            the style rule
-	 * @param ancestorSelectors
-	 *            the ancestor selectors
+	 * @param ruleInfo
+	 *            the rule info
 	 */
-	private final void addIdRule(String elemtl, String idtl, CSSStyleRule styleRule,
-			ArrayList<SimpleSelector> ancestorSelectors) {
-		Map<String, Collection<StyleRuleInfo>> idsMap = this.idMapsByElement.get(elemtl);
-		if (idsMap == null) {
-			idsMap = new HashMap<String, Collection<StyleRuleInfo>>();
-			this.idMapsByElement.put(elemtl, idsMap);
+	private final void addIndexedRule(StyleRuleInfo ruleInfo) {
+		SimpleSelector subject = ruleInfo.getSubjectSelector();
+		String idtl = subject.getIdTL();
+		String[] classes = subject.getClassesTL();
+		String elemtl = subject.getElementTL();
+		if (idtl != null) {
+			addToBucket(this.rulesById, idtl, ruleInfo);
+		} else if (classes.length != 0) {
+			addToBucket(this.rulesByClass, classes[0], ruleInfo);
+		} else if (elemtl != null) {
+			addToBucket(this.rulesByElement, elemtl, ruleInfo);
+		} else {
+			this.universalRules.add(ruleInfo);
 		}
-		Collection<StyleRuleInfo> rules = idsMap.get(idtl);
-		if (rules == null) {
-			rules = new LinkedList<StyleRuleInfo>();
-			idsMap.put(idtl, rules);
-		}
-		rules.add(new StyleRuleInfo(ancestorSelectors, styleRule));
 	}
 
 	/**
-	 * Adds the element rule.
+	 * Adds the to bucket.
 	 *
-	 * @param elemtl
-	 *            the elemtl
-	 * @param styleRule
-	 *            the style rule
-	 * @param ancestorSelectors
-	 *            the ancestor selectors
+	 * @param map
+	 *            the map
+	 * @param key
+	 *            the key
+	 * @param ruleInfo
+	 *            the rule info
 	 */
-	private final void addElementRule(String elemtl, CSSStyleRule styleRule,
-			ArrayList<SimpleSelector> ancestorSelectors) {
-		Collection<StyleRuleInfo> rules = this.rulesByElement.get(elemtl);
+	private static void addToBucket(Map<String, Collection<StyleRuleInfo>> map, String key, StyleRuleInfo ruleInfo) {
+		Collection<StyleRuleInfo> rules = map.get(key);
 		if (rules == null) {
-			rules = new LinkedList<StyleRuleInfo>();
-			this.rulesByElement.put(elemtl, rules);
+			rules = new ArrayList<StyleRuleInfo>(2);
+			map.put(key, rules);
 		}
-		rules.add(new StyleRuleInfo(ancestorSelectors, styleRule));
+		rules.add(ruleInfo);
 	}
 
 	/**
-	 * Gets the active style declarations.
+	 * Gets the active style declarations, sorted in cascade order.
 	 *
 	 * @param element
 	 *            the element
-	 * @param elementName
-	 *            the element name
-	 * @param elementId
-	 *            the element id
-	 * @param className
-	 *            the class name
 	 * @param pseudoNames
 	 *            the pseudo names
-	 * @return the active style declarations
+	 * @return the active style declarations, or null if no rule matches
 	 */
-	public final Collection<CSSStyleDeclaration> getActiveStyleDeclarations(HTMLElementImpl element, String elementName,
-			String elementId, String className, Set pseudoNames, NamedNodeMap attributes) {
-
-		Collection<CSSStyleDeclaration> styleDeclarations = null;
-		String elementTL = elementName.toLowerCase();
-		Collection<StyleRuleInfo> elementRules = this.rulesByElement.get(elementTL);
-		if (elementRules != null) {
-			SelectorMatcher sm = new SelectorMatcher();			
-			if(sm.matchesPseudoClassSelector(pseudoElement, element) && element.getPseudoNames().contains(pseudoElement)){
-				styleDeclarations = putStyleDeclarations(elementRules, styleDeclarations, element, pseudoNames);
-			}else if(!sm.matchesPseudoClassSelector(pseudoElement, element) && !element.getPseudoNames().contains(pseudoElement)){
-				styleDeclarations = putStyleDeclarations(elementRules, styleDeclarations, element, pseudoNames);
-			}
+	public final Collection<CSSStyleDeclaration> getActiveStyleDeclarations(HTMLElementImpl element,
+			Set<String> pseudoNames) {
+		List<StyleRuleInfo> matches = null;
+		AncestorFilter filter = element.getAncestorFilter();
+		String elementId = element.getId();
+		if (elementId != null && elementId.length() != 0) {
+			matches = this.addMatches(this.rulesById.get(elementId.toLowerCase()), matches, element, pseudoNames,
+					filter);
 		}
-		elementRules = this.rulesByElement.get("*");
-		if (elementRules != null) {
-			styleDeclarations = putStyleDeclarations(elementRules, styleDeclarations, element, pseudoNames);
-		}
-
-		if (className != null) {
-			String classNameTL = className.toLowerCase();
-			Map<String, Collection<StyleRuleInfo>> classMaps = this.classMapsByElement.get(elementTL);
-			if (classMaps != null) {
-				Collection<StyleRuleInfo> classRules = classMaps.get(classNameTL);
-				if (classRules != null) {
-					styleDeclarations = putStyleDeclarations(classRules, styleDeclarations, element, pseudoNames);
-				}
-			}
-			classMaps = this.classMapsByElement.get("*");
-			if (classMaps != null) {
-				Collection<StyleRuleInfo> classRules = classMaps.get(classNameTL);
-				if (classRules != null) {
-					styleDeclarations = putStyleDeclarations(classRules, styleDeclarations, element, pseudoNames);
+		String classNames = element.getClassName();
+		if (classNames != null && classNames.length() != 0) {
+			String[] classArray = Strings.split(classNames);
+			CLASS_FOR: for (int i = 0; i < classArray.length; i++) {
+				String classNameTL = classArray[i].toLowerCase();
+				for (int j = 0; j < i; j++) {
+					if (classNameTL.equalsIgnoreCase(classArray[j])) {
+						continue CLASS_FOR;
+					}
 				}
+				matches = this.addMatches(this.rulesByClass.get(classNameTL), matches, element, pseudoNames, filter);
 			}
 		}
-		if (elementId != null) {
-			Map<String, Collection<StyleRuleInfo>> idMaps = this.idMapsByElement.get(elementTL);
-			if (idMaps != null) {
-				String elementIdTL = elementId.toLowerCase();
-				Collection<StyleRuleInfo> idRules = idMaps.get(elementIdTL);
-				if (idRules != null) {
-					styleDeclarations = putStyleDeclarations(idRules, styleDeclarations, element, pseudoNames);
-				}
-			}
-			idMaps = this.idMapsByElement.get("*");
-			if (idMaps != null) {
-				String elementIdTL = elementId.toLowerCase();
-				Collection<StyleRuleInfo> idRules = idMaps.get(elementIdTL);
-				if (idRules != null) {
-					styleDeclarations = putStyleDeclarations(idRules, styleDeclarations, element, pseudoNames);
-				}
-			}
+		matches = this.addMatches(this.rulesByElement.get(element.getTagName().toLowerCase()), matches, element,
+				pseudoNames, filter);
+		matches = this.addMatches(this.universalRules, matches, element, pseudoNames, filter);
+		if (matches == null) {
+			return null;
 		}
-
-		if (attributes != null && attributes.getLength() > 0) {
-			for (int i = 0; i < attributes.getLength(); i++) {
-				Attr attr = (Attr) attributes.item(i);
-				if (isAttributeOperator(attr, element)) {
-					Map<String, Collection<StyleRuleInfo>> classMaps = this.attrMapsByElement.get(htmlElement);
-					if (classMaps != null) {
-						Collection<StyleRuleInfo> attrRules = classMaps.get(attributeValue);
-						if (attrRules != null) {
-							styleDeclarations = putStyleDeclarations(attrRules, styleDeclarations, element,
-									pseudoNames);
-						}
-					}
-				}
-			}
+		if (matches.size() > 1) {
+			Collections.sort(matches, CASCADE_ORDER);
+		}
+		Collection<CSSStyleDeclaration> styleDeclarations = new ArrayList<CSSStyleDeclaration>(matches.size());
+		for (StyleRuleInfo ruleInfo : matches) {
+			styleDeclarations.add(ruleInfo.getStyleRule().getStyle());
 		}
 		return styleDeclarations;
 	}
-	
+
 	/**
 	 * Affected by pseudo name in ancestor.
 	 *
 	 * @param element
 	 *            the element
 	 * @param ancestor
-	 *            the ancestor
-	 * @param elementName
-	 *            the element name
-	 * @param elementId
-	 *            the element id
-	 * @param classArray
-	 *            the class array
+	 *            the ancestor, which may be the element itself
 	 * @param pseudoName
 	 *            the pseudo name
-	 * @return true, if successful
+	 * @return true, if a rule would match the element when
+	 *         <code>ancestor</code> is in the <code>pseudoName</code> state
 	 */
 	public final boolean affectedByPseudoNameInAncestor(HTMLElementImpl element, HTMLElementImpl ancestor,
-			String elementName, String elementId, String[] classArray, String pseudoName) {
-		String elementTL = elementName.toLowerCase();
-		Collection<StyleRuleInfo> elementRules = this.rulesByElement.get(elementTL);
-		if (elementRules != null) {
-			return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
-		}
-		elementRules = this.rulesByElement.get("*");
-		if (elementRules != null) {
-			return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
+			String pseudoName) {
+		String elementId = element.getId();
+		if (elementId != null && elementId.length() != 0 && this.isAffectedByPseudoNameInAncestor(
+				this.rulesById.get(elementId.toLowerCase()), ancestor, element, pseudoName)) {
+			return true;
 		}
-		if (classArray != null) {
-			for (int cidx = 0; cidx < classArray.length; cidx++) {
-				String className = classArray[cidx];
-				String classNameTL = className.toLowerCase();
-				Map<String, Collection<StyleRuleInfo>> classMaps = this.classMapsByElement.get(elementTL);
-				if (classMaps != null) {
-					Collection<StyleRuleInfo> classRules = classMaps.get(classNameTL);
-					if (classRules != null) {
-						return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
-					}
-				}
-				classMaps = this.classMapsByElement.get("*");
-				if (classMaps != null) {
-					Collection<StyleRuleInfo> classRules = classMaps.get(classNameTL);
-					if (classRules != null) {
-						return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
-					}
-				}
-			}
-		}
-		if (elementId != null) {
-			Map<String, Collection<StyleRuleInfo>> idMaps = this.idMapsByElement.get(elementTL);
-			if (idMaps != null) {
-				String elementIdTL = elementId.toLowerCase();
-				Collection<StyleRuleInfo> idRules = idMaps.get(elementIdTL);
-				if (idRules != null) {
-					return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
-				}
-			}
-			idMaps = this.idMapsByElement.get("*");
-			if (idMaps != null) {
-				String elementIdTL = elementId.toLowerCase();
-				Collection<StyleRuleInfo> idRules = idMaps.get(elementIdTL);
-				if (idRules != null) {
-					return isAffectedByPseudoNameInAncestor(elementRules, ancestor, element, pseudoName);
+		String classNames = element.getClassName();
+		if (classNames != null && classNames.length() != 0) {
+			for (String className : Strings.split(classNames)) {
+				if (this.isAffectedByPseudoNameInAncestor(this.rulesByClass.get(className.toLowerCase()), ancestor,
+						element, pseudoName)) {
+					return true;
 				}
 			}
 		}
-		return false;
+		return this.isAffectedByPseudoNameInAncestor(this.rulesByElement.get(element.getTagName().toLowerCase()),
+				ancestor, element, pseudoName)
+				|| this.isAffectedByPseudoNameInAncestor(this.universalRules, ancestor, element, pseudoName);
 	}
 
 	/**
@@ -593,90 +346,39 @@ public class StyleSheetAggregator {
 	}
 
 	/**
-	 * put style declarations
+	 * Adds the rules of a bucket that match the element.
 	 *
 	 * @param elementRules
-	 * @param styleDeclarations
+	 *            the candidate rules, may be null
+	 * @param matches
+	 *            the matches so far, may be null
 	 * @param element
+	 *            the element
 	 * @param pseudoNames
-	 * @return
+	 *            the pseudo names
+	 * @param filter
+	 *            the ancestor filter of the element
+	 * @return the matches
 	 */
-	private Collection<CSSStyleDeclaration> putStyleDeclarations(Collection<StyleRuleInfo> elementRules,
-			Collection<CSSStyleDeclaration> styleDeclarations, HTMLElementImpl element, Set pseudoNames) {
+	private List<StyleRuleInfo> addMatches(Collection<StyleRuleInfo> elementRules, List<StyleRuleInfo> matches,
+			HTMLElementImpl element, Set<String> pseudoNames, AncestorFilter filter) {
+		if (elementRules == null) {
+			return matches;
+		}
 		Iterator<StyleRuleInfo> i = elementRules.iterator();
 		while (i.hasNext()) {
 			StyleRuleInfo styleRuleInfo = i.next();
-			if (styleRuleInfo.isSelectorMatch(element, pseudoNames)) {
-				CSSStyleRule styleRule = styleRuleInfo.getStyleRule();
-				CSSStyleSheet styleSheet = styleRule.getParentStyleSheet();
+			if (styleRuleInfo.isSelectorMatch(element, pseudoNames, filter)) {
+				CSSStyleSheet styleSheet = styleRuleInfo.getStyleRule().getParentStyleSheet();
 				if ((styleSheet != null) && styleSheet.getDisabled()) {
 					continue;
 				}
-				if (styleDeclarations == null) {
-					styleDeclarations = new LinkedList<CSSStyleDeclaration>();
+				if (matches == null) {
+					matches = new ArrayList<StyleRuleInfo>();
 				}
-				styleDeclarations.add(styleRule.getStyle());
-			}
-		}
-		return styleDeclarations;
-	}
-
-	/**
-	 * is attribute operator
-	 *
-	 * @param attr
-	 * @return
-	 */
-	private boolean isAttributeOperator(Attr attr, HTMLElementImpl element) {
-
-		switch (attributeOperator) {
-		case OP_EQUAL:
-			if (attr.getName().equals(attribute) && attr.getValue().equals(attributeValue) && "*".equals(htmlElement)) {
-				return true;
-			} else if (attr.getName().equals(attribute) && attr.getValue().equals(attributeValue)
-					&& element.getNodeName().equals(htmlElement)) {
-				return true;
+				matches.add(styleRuleInfo);
 			}
-			break;
-		case OP_TILDE_EQUAL:
-		case OP_STAR_EQUAL:
-			if (attr.getName().equals(attribute) && attr.getValue().contains(attributeValue)
-					&& "*".equals(htmlElement)) {
-				return true;
-			} else if (attr.getName().equals(attribute) && attr.getValue().contains(attributeValue)
-					&& element.getNodeName().equals(htmlElement)) {
-				return true;
-			}
-			break;
-		case OP_PIPE_EQUAL:
-		case OP_CIRCUMFLEX_EQUAL:
-			if (attr.getName().equals(attribute) && attr.getValue().startsWith(attributeValue)
-					&& "*".equals(htmlElement)) {
-				return true;
-			} else if (attr.getName().equals(attribute) && attr.getValue().startsWith(attributeValue)
-					&& element.getNodeName().equals(htmlElement)) {
-				return true;
-			}
-			break;
-		case OP_DOLLAR_EQUAL:
-			if (attr.getName().equals(attribute) && attr.getValue().endsWith(attributeValue)
-					&& "*".equals(htmlElement)) {
-				return true;
-			} else if (attr.getName().equals(attribute) && attr.getValue().endsWith(attributeValue)
-					&& element.getNodeName().equals(htmlElement)) {
-				return true;
-			}
-			break;
-		case OP_ALL:
-			if (attr.getName().equals(attribute) && "*".equals(htmlElement)) {
-				return true;
-			} else if (attr.getName().equals(attribute) && element.getNodeName().equals(htmlElement)) {
-				return true;
-			}
-			break;
-		default:
-			break;
 		}
-		return false;
+		return matches;
 	}
 }
@@ -0,0 +1,499 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+
+package org.lobobrowser.html.style;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+import org.lobobrowser.html.dombl.ResourcePreloader;
+import org.lobobrowser.http.LRUCache;
+import org.lobobrowser.http.UserAgentContext;
+import org.lobobrowser.util.SSLCertificate;
+import org.lobobrowser.util.io.IORoutines;
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSPrimitiveValue;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSStyleSheet;
+import org.w3c.dom.css.CSSValue;
+import org.w3c.dom.stylesheets.MediaList;
+
+import com.steadystate.css.dom.CSSCharsetRuleImpl;
+import com.steadystate.css.dom.CSSFontFaceRuleImpl;
+import com.steadystate.css.dom.CSSImportRuleImpl;
+import com.steadystate.css.dom.CSSMediaRuleImpl;
+import com.steadystate.css.dom.CSSPageRuleImpl;
+import com.steadystate.css.dom.CSSRuleListImpl;
+import com.steadystate.css.dom.CSSStyleDeclarationImpl;
+import com.steadystate.css.dom.CSSStyleRuleImpl;
+import com.steadystate.css.dom.CSSStyleSheetImpl;
+import com.steadystate.css.dom.CSSUnknownRuleImpl;
+import com.steadystate.css.dom.CSSValueImpl;
+import com.steadystate.css.dom.CounterImpl;
+import com.steadystate.css.dom.MediaListImpl;
+import com.steadystate.css.dom.Property;
+import com.steadystate.css.dom.RGBColorImpl;
+import com.steadystate.css.dom.RectImpl;
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS3;
+
+/**
+ * A process-wide cache of parsed external style sheets, keyed by absolute URL.
+ * An entry keeps the <code>ETag</code> and <code>Last-Modified</code>
+ * validators of the response it was parsed from, so a stale entry is
+ * revalidated with a conditional request and reused on a <code>304</code>
+ * instead of being downloaded and parsed again.
+ * <p>
+ * The parsed sheet is read-only and never given out. Each caller gets its own
+ * {@link CSSStyleSheetImpl} holding a copy of the rules, declarations and
+ * values, so a change a script makes through the CSSOM, and the
+ * <code>disabled</code> flag, stay in one document. Copying the object graph
+ * is much cheaper than parsing the source again. Only selector lists and
+ * lexical units, which are replaced rather than changed, are shared.
+ */
+public final class StyleSheetCache {
+
+	/** The Constant logger. */
+	private static final Logger logger = Logger.getLogger(StyleSheetCache.class.getName());
+
+	/** The Constant instance. */
+	private static final StyleSheetCache instance = new StyleSheetCache();
+
+	/** The default approximate memory budget in bytes. */
+	private static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Approximate bytes of parsed object graph per character of source. Used
+	 * for accounting only.
+	 */
+	private static final int BYTES_PER_SOURCE_CHAR = 8;
+
+	/** The cache of {@link CachedStyleSheet} by URL. */
+	private final LRUCache cache = new LRUCache(DEFAULT_MAX_SIZE);
+
+	/**
+	 * Instantiates a new style sheet cache.
+	 */
+	private StyleSheetCache() {
+	}
+
+	/**
+	 * Gets the Constant instance.
+	 *
+	 * @return the Constant instance
+	 */
+	public static StyleSheetCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Sets the approximate memory budget of the cache.
+	 *
+	 * @param approxMaxSize
+	 *            the approximate maximum size in bytes
+	 */
+	public void setApproxMaxSize(int approxMaxSize) {
+		synchronized (this.cache) {
+			this.cache.setApproxMaxSize(approxMaxSize);
+		}
+	}
+
+	/**
+	 * Gets the style sheet at the given URL, downloading and parsing it only
+	 * if no valid cached copy exists.
+	 *
+	 * @param url
+	 *            the absolute URL of the style sheet
+	 * @return a style sheet owned by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public CSSStyleSheet getStyleSheet(URL url) throws IOException {
+		Object preloaded = ResourcePreloader.getInstance()
+				.take(ResourcePreloader.getKey(ResourcePreloader.KIND_STYLESHEET, url));
+		if (preloaded instanceof CSSStyleSheet) {
+			return (CSSStyleSheet) preloaded;
+		}
+		return this.load(url);
+	}
+
+	/**
+	 * Starts loading the style sheet at the given URL in the background, so
+	 * that a later call to {@link #getStyleSheet(URL)} finds it ready. Does
+	 * nothing if a valid cached copy exists.
+	 *
+	 * @param url
+	 *            the absolute URL of the style sheet
+	 */
+	public void preload(final URL url) {
+		CachedStyleSheet entry;
+		synchronized (this.cache) {
+			entry = (CachedStyleSheet) this.cache.get(url.toExternalForm());
+		}
+		if (entry != null && entry.expires > System.currentTimeMillis()) {
+			return;
+		}
+		ResourcePreloader.getInstance().preload(ResourcePreloader.getKey(ResourcePreloader.KIND_STYLESHEET, url),
+				new Callable<CSSStyleSheet>() {
+					@Override
+					public CSSStyleSheet call() throws IOException {
+						return load(url);
+					}
+				});
+	}
+
+	/**
+	 * Loads the style sheet at the given URL, downloading and parsing it only
+	 * if no valid cached copy exists.
+	 *
+	 * @param url
+	 *            the absolute URL of the style sheet
+	 * @return a style sheet owned by the caller
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private CSSStyleSheet load(URL url) throws IOException {
+		String key = url.toExternalForm();
+		CachedStyleSheet entry;
+		synchronized (this.cache) {
+			entry = (CachedStyleSheet) this.cache.get(key);
+		}
+		if (entry != null && entry.expires > System.currentTimeMillis()) {
+			return entry.newView();
+		}
+		logger.info("getStyleSheet(): Loading URI=[" + key + "].");
+		SSLCertificate.setCertificate();
+		URLConnection connection = url.openConnection();
+		connection.setRequestProperty("User-Agent", UserAgentContext.DEFAULT_USER_AGENT);
+		connection.setRequestProperty("Cookie", "");
+		if (entry != null) {
+			if (entry.eTag != null) {
+				connection.setRequestProperty("If-None-Match", entry.eTag);
+			}
+			if (entry.lastModified != 0) {
+				connection.setIfModifiedSince(entry.lastModified);
+			}
+		}
+		boolean cacheable = false;
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection hc = (HttpURLConnection) connection;
+			hc.setInstanceFollowRedirects(true);
+			int responseCode = hc.getResponseCode();
+			logger.info("getStyleSheet(): HTTP response code: " + responseCode);
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+				entry.expires = getExpiration(connection);
+				hc.disconnect();
+				return entry.newView();
+			}
+			cacheable = responseCode == HttpURLConnection.HTTP_OK && !hasCacheControl(connection, "no-store");
+		}
+		InputStream in = connection.getInputStream();
+		byte[] content;
+		try {
+			content = IORoutines.load(in, 8192);
+		} finally {
+			in.close();
+		}
+		String source = new String(content, "UTF-8");
+		CSSOMParser parser = new CSSOMParser(new SACParserCSS3());
+		InputSource is = CSSUtilities.getCssInputSourceForStyleSheet(source, key);
+		CSSStyleSheet sheet = parser.parseStyleSheet(is, null, null);
+		if (!(sheet instanceof CSSStyleSheetImpl) || !(sheet.getCssRules() instanceof CSSRuleListImpl)) {
+			return sheet;
+		}
+		String eTag = connection.getHeaderField("ETag");
+		long lastModified = connection.getLastModified();
+		long expires = getExpiration(connection);
+		if (cacheable && (eTag != null || lastModified != 0 || expires > System.currentTimeMillis())) {
+			CSSStyleSheetImpl sheetImpl = (CSSStyleSheetImpl) sheet;
+			sheetImpl.setReadOnly(true);
+			entry = new CachedStyleSheet(key, sheetImpl, eTag, lastModified, expires);
+			synchronized (this.cache) {
+				this.cache.put(key, entry, source.length() * BYTES_PER_SOURCE_CHAR);
+			}
+			return entry.newView();
+		}
+		return sheet;
+	}
+
+	/**
+	 * Gets the time until which a response may be used without revalidation,
+	 * from <code>Cache-Control: max-age</code> or <code>Expires</code>.
+	 *
+	 * @param connection
+	 *            the connection
+	 * @return the expiration time in milliseconds, or 0 if the response must
+	 *         be revalidated on every use
+	 */
+	private static long getExpiration(URLConnection connection) {
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		if (cacheControl != null) {
+			StringTokenizer tok = new StringTokenizer(cacheControl, ",");
+			while (tok.hasMoreTokens()) {
+				String token = tok.nextToken().trim().toLowerCase();
+				if ("no-cache".equals(token)) {
+					return 0;
+				}
+				if (token.startsWith("max-age=")) {
+					try {
+						long maxAge = Long.parseLong(token.substring("max-age=".length()).trim());
+						return System.currentTimeMillis() + maxAge * 1000;
+					} catch (NumberFormatException nfe) {
+						return 0;
+					}
+				}
+			}
+		}
+		return connection.getExpiration();
+	}
+
+	/**
+	 * Checks for a <code>Cache-Control</code> directive.
+	 *
+	 * @param connection
+	 *            the connection
+	 * @param directive
+	 *            the directive in lowercase
+	 * @return true, if successful
+	 */
+	private static boolean hasCacheControl(URLConnection connection, String directive) {
+		String cacheControl = connection.getHeaderField("Cache-Control");
+		return cacheControl != null && cacheControl.toLowerCase().contains(directive);
+	}
+
+	/**
+	 * A parsed style sheet with the validators of its response.
+	 */
+	private static class CachedStyleSheet {
+
+		/** The absolute URI of the style sheet. */
+		private final String uri;
+
+		/** The shared, read-only style sheet. */
+		private final CSSStyleSheetImpl styleSheet;
+
+		/** The e tag. */
+		private final String eTag;
+
+		/** The last modified. */
+		private final long lastModified;
+
+		/** The expiration time. */
+		private volatile long expires;
+
+		/**
+		 * Instantiates a new cached style sheet.
+		 *
+		 * @param uri
+		 *            the uri
+		 * @param styleSheet
+		 *            the style sheet
+		 * @param eTag
+		 *            the e tag
+		 * @param lastModified
+		 *            the last modified
+		 * @param expires
+		 *            the expires
+		 */
+		private CachedStyleSheet(String uri, CSSStyleSheetImpl styleSheet, String eTag, long lastModified,
+				long expires) {
+			this.uri = uri;
+			this.styleSheet = styleSheet;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+
+		/**
+		 * Creates a style sheet with a copy of the rules of the cached one.
+		 *
+		 * @return the style sheet
+		 */
+		private CSSStyleSheet newView() {
+			CSSStyleSheetImpl shared = this.styleSheet;
+			CSSStyleSheetImpl view = new CSSStyleSheetImpl();
+			view.setCssRules(copyRules(shared.getCssRules(), view, null));
+			view.setMedia(copyMedia(shared.getMedia()));
+			view.setBaseUri(this.uri);
+			return view;
+		}
+	}
+
+	/**
+	 * Copies a rule list.
+	 *
+	 * @param rules
+	 *            the rules
+	 * @param sheet
+	 *            the style sheet of the copy
+	 * @param parentRule
+	 *            the parent rule of the copy, or null
+	 * @return the rule list
+	 */
+	private static CSSRuleListImpl copyRules(CSSRuleList rules, CSSStyleSheetImpl sheet, CSSRule parentRule) {
+		CSSRuleListImpl copy = new CSSRuleListImpl();
+		int length = rules.getLength();
+		List<CSSRule> copyRules = new ArrayList<CSSRule>(length);
+		for (int i = 0; i < length; i++) {
+			copyRules.add(copyRule(rules.item(i), sheet, parentRule));
+		}
+		copy.setRules(copyRules);
+		return copy;
+	}
+
+	/**
+	 * Copies a rule.
+	 *
+	 * @param rule
+	 *            the rule
+	 * @param sheet
+	 *            the style sheet of the copy
+	 * @param parentRule
+	 *            the parent rule of the copy, or null
+	 * @return the rule
+	 */
+	private static CSSRule copyRule(CSSRule rule, CSSStyleSheetImpl sheet, CSSRule parentRule) {
+		if (rule instanceof CSSStyleRuleImpl) {
+			CSSStyleRuleImpl styleRule = (CSSStyleRuleImpl) rule;
+			CSSStyleRuleImpl copy = new CSSStyleRuleImpl(sheet, parentRule, styleRule.getSelectors());
+			copy.setStyle(copyStyle(styleRule.getStyle(), copy));
+			return copy;
+		} else if (rule instanceof CSSMediaRuleImpl) {
+			CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+			CSSMediaRuleImpl copy = new CSSMediaRuleImpl(sheet, parentRule, copyMedia(mediaRule.getMedia()));
+			copy.setCssRules(copyRules(mediaRule.getCssRules(), sheet, copy));
+			return copy;
+		} else if (rule instanceof CSSImportRuleImpl) {
+			CSSImportRuleImpl importRule = (CSSImportRuleImpl) rule;
+			return new CSSImportRuleImpl(sheet, parentRule, importRule.getHref(), copyMedia(importRule.getMedia()));
+		} else if (rule instanceof CSSFontFaceRuleImpl) {
+			CSSFontFaceRuleImpl copy = new CSSFontFaceRuleImpl(sheet, parentRule);
+			copy.setStyle(copyStyle(((CSSFontFaceRuleImpl) rule).getStyle(), copy));
+			return copy;
+		} else if (rule instanceof CSSPageRuleImpl) {
+			CSSPageRuleImpl pageRule = (CSSPageRuleImpl) rule;
+			String pseudoPage = pageRule.getSelectorText();
+			CSSPageRuleImpl copy = new CSSPageRuleImpl(sheet, parentRule,
+					pseudoPage.length() == 0 ? null : pseudoPage);
+			copy.setStyle(copyStyle(pageRule.getStyle(), copy));
+			return copy;
+		} else if (rule instanceof CSSCharsetRuleImpl) {
+			return new CSSCharsetRuleImpl(sheet, parentRule, ((CSSCharsetRuleImpl) rule).getEncoding());
+		} else if (rule instanceof CSSUnknownRuleImpl) {
+			return new CSSUnknownRuleImpl(sheet, parentRule, ((CSSUnknownRuleImpl) rule).getText());
+		}
+		return rule;
+	}
+
+	/**
+	 * Copies a style declaration.
+	 *
+	 * @param style
+	 *            the style declaration
+	 * @param parentRule
+	 *            the rule of the copy
+	 * @return the style declaration
+	 */
+	private static CSSStyleDeclarationImpl copyStyle(CSSStyleDeclaration style, CSSRule parentRule) {
+		CSSStyleDeclarationImpl copy = new CSSStyleDeclarationImpl(parentRule);
+		if (style instanceof CSSStyleDeclarationImpl) {
+			for (Property property : ((CSSStyleDeclarationImpl) style).getProperties()) {
+				copy.addProperty(
+						new Property(property.getName(), copyValue(property.getValue()), property.isImportant()));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies a value. Lexical units are shared, since the setters of a value
+	 * replace them.
+	 *
+	 * @param value
+	 *            the value, may be null
+	 * @return the value
+	 */
+	private static CSSValue copyValue(CSSValue value) {
+		if (!(value instanceof CSSValueImpl)) {
+			return value;
+		}
+		Object content = ((CSSValueImpl) value).getValue();
+		CSSValueImpl copy = new CSSValueImpl();
+		if (content instanceof List) {
+			List<CSSValueImpl> items = new ArrayList<CSSValueImpl>();
+			for (Object item : (List<?>) content) {
+				items.add((CSSValueImpl) copyValue((CSSValue) item));
+			}
+			copy.setValue(items);
+		} else if (content instanceof RGBColorImpl) {
+			RGBColorImpl color = (RGBColorImpl) content;
+			RGBColorImpl colorCopy = new RGBColorImpl();
+			colorCopy.setRed((CSSPrimitiveValue) copyValue(color.getRed()));
+			colorCopy.setGreen((CSSPrimitiveValue) copyValue(color.getGreen()));
+			colorCopy.setBlue((CSSPrimitiveValue) copyValue(color.getBlue()));
+			copy.setValue(colorCopy);
+		} else if (content instanceof RectImpl) {
+			RectImpl rect = (RectImpl) content;
+			RectImpl rectCopy = new RectImpl();
+			rectCopy.setTop((CSSPrimitiveValue) copyValue(rect.getTop()));
+			rectCopy.setRight((CSSPrimitiveValue) copyValue(rect.getRight()));
+			rectCopy.setBottom((CSSPrimitiveValue) copyValue(rect.getBottom()));
+			rectCopy.setLeft((CSSPrimitiveValue) copyValue(rect.getLeft()));
+			copy.setValue(rectCopy);
+		} else if (content instanceof CounterImpl) {
+			CounterImpl counter = (CounterImpl) content;
+			CounterImpl counterCopy = new CounterImpl();
+			counterCopy.setIdentifier(counter.getIdentifier());
+			counterCopy.setListStyle(counter.getListStyle());
+			counterCopy.setSeparator(counter.getSeparator());
+			copy.setValue(counterCopy);
+		} else {
+			copy.setValue(content);
+		}
+		return copy;
+	}
+
+	/**
+	 * Copies a media list.
+	 *
+	 * @param media
+	 *            the media list, may be null
+	 * @return the media list
+	 */
+	private static MediaList copyMedia(MediaList media) {
+		if (media == null) {
+			return null;
+		}
+		MediaListImpl copy = new MediaListImpl();
+		copy.setMediaText(media.getMediaText());
+		return copy;
+	}
+}
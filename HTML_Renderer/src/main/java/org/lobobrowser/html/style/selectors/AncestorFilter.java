@@ -0,0 +1,154 @@
+/*
+ * GNU LESSER GENERAL PUBLIC LICENSE Copyright (C) 2006 The Lobo Project.
+ * Copyright (C) 2014 - 2016 Lobo Evolution This library is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version. This
+ * library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.style.selectors;
+
+/**
+ * A bloom filter of the tag names, ids and classes of an element and its
+ * ancestors. A selector whose ancestor parts name a tag, id or class that is
+ * not in the filter of the parent cannot match, so it is rejected without
+ * walking up the tree. The filter may report false positives but never false
+ * negatives. Instances are immutable; a child's filter is a copy of its
+ * parent's with the child's own keys added.
+ */
+public final class AncestorFilter {
+
+	/** The number of bits, a power of two. */
+	private static final int BITS = 512;
+
+	/** The Constant EMPTY. */
+	public static final AncestorFilter EMPTY = new AncestorFilter(new long[BITS / 64]);
+
+	/** The bits. */
+	private final long[] bits;
+
+	/**
+	 * Instantiates a new ancestor filter.
+	 *
+	 * @param bits
+	 *            the bits
+	 */
+	private AncestorFilter(long[] bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Creates a filter holding the keys of this filter plus those of one more
+	 * element.
+	 *
+	 * @param tagTL
+	 *            the tag name in lowercase
+	 * @param idTL
+	 *            the id in lowercase, or null
+	 * @param classesTL
+	 *            the class names in lowercase, or null
+	 * @return the filter
+	 */
+	public AncestorFilter extend(String tagTL, String idTL, String[] classesTL) {
+		long[] newBits = this.bits.clone();
+		add(newBits, tagHash(tagTL));
+		if (idTL != null && idTL.length() != 0) {
+			add(newBits, idHash(idTL));
+		}
+		if (classesTL != null) {
+			for (String classTL : classesTL) {
+				add(newBits, classHash(classTL));
+			}
+		}
+		return new AncestorFilter(newBits);
+	}
+
+	/**
+	 * Checks whether every hash may be in the filter.
+	 *
+	 * @param hashes
+	 *            the hashes, as produced by {@link #tagHash(String)},
+	 *            {@link #idHash(String)} and {@link #classHash(String)}
+	 * @return false if at least one of the hashes is definitely absent
+	 */
+	public boolean mayContainAll(int[] hashes) {
+		long[] b = this.bits;
+		for (int hash : hashes) {
+			int h1 = hash & (BITS - 1);
+			int h2 = (hash >>> 16) & (BITS - 1);
+			if ((b[h1 >>> 6] & (1L << h1)) == 0 || (b[h2 >>> 6] & (1L << h2)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the hash.
+	 *
+	 * @param bits
+	 *            the bits
+	 * @param hash
+	 *            the hash
+	 */
+	private static void add(long[] bits, int hash) {
+		int h1 = hash & (BITS - 1);
+		int h2 = (hash >>> 16) & (BITS - 1);
+		bits[h1 >>> 6] |= 1L << h1;
+		bits[h2 >>> 6] |= 1L << h2;
+	}
+
+	/**
+	 * Spreads the bits of a string hash code.
+	 *
+	 * @param h
+	 *            the h
+	 * @return the int
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Tag hash.
+	 *
+	 * @param tagTL
+	 *            the tag name in lowercase
+	 * @return the hash
+	 */
+	public static int tagHash(String tagTL) {
+		return mix(tagTL.hashCode());
+	}
+
+	/**
+	 * Id hash.
+	 *
+	 * @param idTL
+	 *            the id in lowercase
+	 * @return the hash
+	 */
+	public static int idHash(String idTL) {
+		return mix(idTL.hashCode() ^ 0x5bd1e995);
+	}
+
+	/**
+	 * Class hash.
+	 *
+	 * @param classTL
+	 *            the class name in lowercase
+	 * @return the hash
+	 */
+	public static int classHash(String classTL) {
+		return mix(classTL.hashCode() * 0x9e3779b9);
+	}
+}
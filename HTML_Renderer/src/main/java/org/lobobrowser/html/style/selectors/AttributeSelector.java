@@ -0,0 +1,190 @@
+/*
+ * GNU LESSER GENERAL PUBLIC LICENSE Copyright (C) 2006 The Lobo Project.
+ * Copyright (C) 2014 - 2016 Lobo Evolution This library is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version. This
+ * library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.style.selectors;
+
+import org.lobobrowser.html.domimpl.HTMLElementImpl;
+
+/**
+ * An attribute condition of a simple selector, e.g.
+ * <code>[type="text"]</code> or <code>[lang|=en]</code>.
+ */
+public class AttributeSelector {
+
+	/** The op equal. */
+	public static final String OP_EQUAL = "=";
+
+	/** The op tilde equal. */
+	public static final String OP_TILDE_EQUAL = "~=";
+
+	/** The op pipe equal. */
+	public static final String OP_PIPE_EQUAL = "|=";
+
+	/** The op dollar equal. */
+	public static final String OP_DOLLAR_EQUAL = "$=";
+
+	/** The op circumflex equal. */
+	public static final String OP_CIRCUMFLEX_EQUAL = "^=";
+
+	/** The op star equal. */
+	public static final String OP_STAR_EQUAL = "*=";
+
+	/** The op all. */
+	public static final String OP_ALL = "ALL";
+
+	/** The attribute name in lowercase. */
+	private final String attribute;
+
+	/** The operator. */
+	private final String operator;
+
+	/** The attribute value in lowercase. */
+	private final String value;
+
+	/**
+	 * Instantiates a new attribute selector.
+	 *
+	 * @param attribute
+	 *            the attribute name in lowercase
+	 * @param operator
+	 *            one of the <code>OP_</code> constants
+	 * @param value
+	 *            the value in lowercase, ignored for {@link #OP_ALL}
+	 */
+	public AttributeSelector(String attribute, String operator, String value) {
+		this.attribute = attribute;
+		this.operator = operator;
+		this.value = value;
+	}
+
+	/**
+	 * Parses the text between the square brackets of an attribute selector.
+	 *
+	 * @param text
+	 *            the condition text, e.g. <code>href^="http"</code>
+	 * @return the attribute selector
+	 */
+	public static AttributeSelector parse(String text) {
+		int eqIdx = text.indexOf('=');
+		if (eqIdx == -1) {
+			return new AttributeSelector(text.trim(), OP_ALL, null);
+		}
+		String operator = OP_EQUAL;
+		int nameEnd = eqIdx;
+		if (eqIdx > 0) {
+			switch (text.charAt(eqIdx - 1)) {
+			case '~':
+				operator = OP_TILDE_EQUAL;
+				break;
+			case '|':
+				operator = OP_PIPE_EQUAL;
+				break;
+			case '$':
+				operator = OP_DOLLAR_EQUAL;
+				break;
+			case '^':
+				operator = OP_CIRCUMFLEX_EQUAL;
+				break;
+			case '*':
+				operator = OP_STAR_EQUAL;
+				break;
+			default:
+				break;
+			}
+			if (!OP_EQUAL.equals(operator)) {
+				nameEnd--;
+			}
+		}
+		String value = text.substring(eqIdx + 1).trim();
+		int length = value.length();
+		if (length >= 2) {
+			char first = value.charAt(0);
+			if ((first == '"' || first == '\'') && value.charAt(length - 1) == first) {
+				value = value.substring(1, length - 1);
+			}
+		}
+		return new AttributeSelector(text.substring(0, nameEnd).trim(), operator, value);
+	}
+
+	/**
+	 * Matches.
+	 *
+	 * @param element
+	 *            the element
+	 * @return true, if successful
+	 */
+	public final boolean matches(HTMLElementImpl element) {
+		String attrValue = element.getAttribute(this.attribute);
+		if (attrValue == null) {
+			return false;
+		}
+		String op = this.operator;
+		if (OP_ALL.equals(op)) {
+			return true;
+		}
+		String v = this.value;
+		String av = attrValue.toLowerCase();
+		switch (op) {
+		case OP_EQUAL:
+			return av.equals(v);
+		case OP_TILDE_EQUAL:
+			if (v.length() == 0) {
+				return false;
+			}
+			for (String token : av.split("\\s+")) {
+				if (token.equals(v)) {
+					return true;
+				}
+			}
+			return false;
+		case OP_PIPE_EQUAL:
+			return av.equals(v) || av.startsWith(v + "-");
+		case OP_CIRCUMFLEX_EQUAL:
+			return v.length() != 0 && av.startsWith(v);
+		case OP_DOLLAR_EQUAL:
+			return v.length() != 0 && av.endsWith(v);
+		case OP_STAR_EQUAL:
+			return v.length() != 0 && av.contains(v);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the attribute.
+	 *
+	 * @return the attribute
+	 */
+	public String getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * Gets the operator.
+	 *
+	 * @return the operator
+	 */
+	public String getOperator() {
+		return operator;
+	}
+
+	/**
+	 * Gets the value.
+	 *
+	 * @return the value
+	 */
+	public String getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * GNU LESSER GENERAL PUBLIC LICENSE Copyright (C) 2006 The Lobo Project.
+ * Copyright (C) 2014 - 2016 Lobo Evolution This library is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version. This
+ * library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details. You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.html.style.selectors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits selector text into {@link SimpleSelector} lists. Brackets,
+ * parentheses and quoted strings are skipped, so commas and spaces inside
+ * <code>[title="a, b"]</code> or <code>:not(.a .b)</code> are not taken as
+ * separators.
+ */
+public final class SelectorParser {
+
+	/**
+	 * Instantiates a new selector parser.
+	 */
+	private SelectorParser() {
+	}
+
+	/**
+	 * Splits a selector group such as <code>h1, h2 &gt; a</code> into its
+	 * selectors.
+	 *
+	 * @param selectorList
+	 *            the selector list
+	 * @return the selectors, trimmed and non-empty
+	 */
+	public static List<String> splitGroup(String selectorList) {
+		List<String> parts = new ArrayList<String>(1);
+		int length = selectorList.length();
+		int start = 0;
+		int i = 0;
+		while (i < length) {
+			char ch = selectorList.charAt(i);
+			if (ch == ',') {
+				addPart(parts, selectorList.substring(start, i));
+				start = i + 1;
+				i++;
+			} else {
+				i = skip(selectorList, i);
+			}
+		}
+		addPart(parts, selectorList.substring(start));
+		return parts;
+	}
+
+	/**
+	 * Adds the part.
+	 *
+	 * @param parts
+	 *            the parts
+	 * @param part
+	 *            the part
+	 */
+	private static void addPart(List<String> parts, String part) {
+		String trimmed = part.trim();
+		if (trimmed.length() != 0) {
+			parts.add(trimmed);
+		}
+	}
+
+	/**
+	 * Parses a single selector, e.g. <code>ul.menu &gt; li a:hover</code>.
+	 * The combinator between two compound selectors is recorded as the
+	 * selector type of the compound on its left.
+	 *
+	 * @param selectorText
+	 *            the selector text in lowercase
+	 * @return the compound selectors from left to right, or null if the text
+	 *         holds no selector
+	 */
+	public static ArrayList<SimpleSelector> parse(String selectorText) {
+		ArrayList<SimpleSelector> simpleSelectors = new ArrayList<SimpleSelector>();
+		int length = selectorText.length();
+		int combinator = SimpleSelector.ANCESTOR;
+		int i = 0;
+		while (i < length) {
+			char ch = selectorText.charAt(i);
+			if (Character.isWhitespace(ch)) {
+				i++;
+			} else if (ch == '>' || ch == '+' || ch == '~') {
+				combinator = ch == '>' ? SimpleSelector.PARENT
+						: ch == '+' ? SimpleSelector.PRECEEDING_SIBLING : SimpleSelector.GENERAL_SIBLING;
+				i++;
+			} else {
+				int start = i;
+				while (i < length) {
+					ch = selectorText.charAt(i);
+					if (Character.isWhitespace(ch) || ch == '>' || ch == '+' || ch == '~') {
+						break;
+					}
+					i = skip(selectorText, i);
+				}
+				int size = simpleSelectors.size();
+				if (size != 0) {
+					simpleSelectors.get(size - 1).setSelectorType(combinator);
+				}
+				simpleSelectors.add(new SimpleSelector(selectorText.substring(start, i)));
+				combinator = SimpleSelector.ANCESTOR;
+			}
+		}
+		return simpleSelectors.isEmpty() ? null : simpleSelectors;
+	}
+
+	/**
+	 * Returns the index after the character at <code>index</code>, skipping
+	 * a whole bracketed, parenthesized or quoted section if one starts there.
+	 *
+	 * @param text
+	 *            the text
+	 * @param index
+	 *            the index
+	 * @return the next index
+	 */
+	private static int skip(String text, int index) {
+		char ch = text.charAt(index);
+		if (ch == '[') {
+			return closingIndex(text, index, '[', ']') + 1;
+		} else if (ch == '(') {
+			return closingIndex(text, index, '(', ')') + 1;
+		} else if (ch == '"' || ch == '\'') {
+			int end = text.indexOf(ch, index + 1);
+			return end == -1 ? text.length() : end + 1;
+		}
+		return index + 1;
+	}
+
+	/**
+	 * Finds the index of the character closing the section opened at
+	 * <code>index</code>.
+	 *
+	 * @param text
+	 *            the text
+	 * @param index
+	 *            the index of the opening character
+	 * @param open
+	 *            the opening character
+	 * @param close
+	 *            the closing character
+	 * @return the index of the closing character, or the text length if the
+	 *         section is not closed
+	 */
+	static int closingIndex(String text, int index, char open, char close) {
+		int length = text.length();
+		int depth = 0;
+		int i = index;
+		while (i < length) {
+			char ch = text.charAt(i);
+			if (ch == '"' || ch == '\'') {
+				int end = text.indexOf(ch, i + 1);
+				if (end == -1) {
+					return length;
+				}
+				i = end + 1;
+				continue;
+			}
+			if (ch == open) {
+				depth++;
+			} else if (ch == close && --depth == 0) {
+				return i;
+			}
+			i++;
+		}
+		return length;
+	}
+}
@@ -14,12 +14,17 @@
  */
 package org.lobobrowser.html.style.selectors;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.util.Strings;
 
 /**
- * The Class SimpleSelector.
+ * The Class SimpleSelector. It represents one compound selector, such as
+ * <code>div#main.note[title]:first-child</code>, together with the combinator
+ * that relates it to the next compound selector on its right.
  */
 public class SimpleSelector {
 
@@ -32,6 +37,45 @@ public class SimpleSelector {
 	/** The Constant PRECEEDING_SIBLING. */
 	public static final int PRECEEDING_SIBLING = 2;
 
+	/** The Constant GENERAL_SIBLING. */
+	public static final int GENERAL_SIBLING = 3;
+
+	/** The pseudo-classes that are resolved against the document tree. */
+	private static final Set<String> STRUCTURAL_PSEUDO_CLASSES = new HashSet<String>();
+
+	/** The pseudo-elements. */
+	private static final Set<String> PSEUDO_ELEMENTS = new HashSet<String>();
+
+	static {
+		Set<String> sp = STRUCTURAL_PSEUDO_CLASSES;
+		sp.add("first-child");
+		sp.add("last-child");
+		sp.add("only-child");
+		sp.add("first-of-type");
+		sp.add("last-of-type");
+		sp.add("only-of-type");
+		sp.add("nth-child");
+		sp.add("nth-last-child");
+		sp.add("nth-of-type");
+		sp.add("nth-last-of-type");
+		sp.add("root");
+		sp.add("empty");
+		Set<String> pe = PSEUDO_ELEMENTS;
+		pe.add("before");
+		pe.add("after");
+		pe.add("first-line");
+		pe.add("first-letter");
+	}
+
+	/** The Constant EMPTY_CLASSES. */
+	private static final String[] EMPTY_CLASSES = new String[0];
+
+	/** The Constant EMPTY_ATTRIBUTES. */
+	private static final AttributeSelector[] EMPTY_ATTRIBUTES = new AttributeSelector[0];
+
+	/** The Constant SELECTOR_MATCHER. */
+	private static final SelectorMatcher SELECTOR_MATCHER = new SelectorMatcher();
+
 	/** The simple selector text. */
 	private String simpleSelectorText;
 
@@ -41,68 +85,217 @@ public class SimpleSelector {
 	/** The selector type. */
 	private int selectorType;
 
+	/** The element name in lowercase, or null for the universal selector. */
+	private final String elementTL;
+
+	/** The id in lowercase. */
+	private final String idTL;
+
+	/** The class names in lowercase. */
+	private final String[] classesTL;
+
+	/** The attribute selectors. */
+	private final AttributeSelector[] attributeSelectors;
+
+	/** The pseudo-classes and pseudo-elements, without the colons. */
+	private final String[] pseudoClasses;
+
+	/** Whether a pseudo-class depends on the element state. */
+	private final boolean dynamicPseudoClass;
+
+	/** The specificity. */
+	private final int specificity;
+
 	/**
 	 * Instantiates a new simple selector.
 	 *
 	 * @param simpleSelectorText
-	 *            Simple selector text in lower case.
-	 * @param pseudoElement
-	 *            The pseudo-element if any.
+	 *            Simple selector text in lower case, e.g.
+	 *            <code>a.external[href]:hover</code>.
 	 */
-	public SimpleSelector(String simpleSelectorText, String pseudoElement) {
+	public SimpleSelector(String simpleSelectorText) {
 		super();
 		this.simpleSelectorText = simpleSelectorText;
-		this.pseudoElement = pseudoElement;
 		this.selectorType = ANCESTOR;
+		String text = simpleSelectorText;
+		int length = text.length();
+		int i = identEnd(text, 0);
+		String element = text.substring(0, i);
+		String id = null;
+		ArrayList<String> classes = null;
+		ArrayList<AttributeSelector> attributes = null;
+		ArrayList<String> pseudos = null;
+		while (i < length) {
+			char ch = text.charAt(i);
+			if (ch == '#') {
+				int end = identEnd(text, i + 1);
+				id = text.substring(i + 1, end);
+				i = end;
+			} else if (ch == '.') {
+				int end = identEnd(text, i + 1);
+				if (classes == null) {
+					classes = new ArrayList<String>(2);
+				}
+				classes.add(text.substring(i + 1, end));
+				i = end;
+			} else if (ch == '[') {
+				int end = SelectorParser.closingIndex(text, i, '[', ']');
+				if (attributes == null) {
+					attributes = new ArrayList<AttributeSelector>(1);
+				}
+				attributes.add(AttributeSelector.parse(text.substring(i + 1, end)));
+				i = end + 1;
+			} else if (ch == ':') {
+				int start = i + 1;
+				if (start < length && text.charAt(start) == ':') {
+					start++;
+				}
+				int end = identEnd(text, start);
+				if (end < length && text.charAt(end) == '(') {
+					end = SelectorParser.closingIndex(text, end, '(', ')') + 1;
+				}
+				if (pseudos == null) {
+					pseudos = new ArrayList<String>(1);
+				}
+				pseudos.add(text.substring(start, Math.min(end, length)));
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		this.elementTL = element.length() == 0 || "*".equals(element) ? null : element;
+		this.idTL = id == null || id.length() == 0 ? null : id;
+		this.classesTL = classes == null ? EMPTY_CLASSES : classes.toArray(EMPTY_CLASSES);
+		this.attributeSelectors = attributes == null ? EMPTY_ATTRIBUTES : attributes.toArray(EMPTY_ATTRIBUTES);
+		this.pseudoClasses = pseudos == null ? EMPTY_CLASSES : pseudos.toArray(EMPTY_CLASSES);
+		this.pseudoElement = pseudos == null ? null : pseudos.get(0);
+
+		boolean dynamic = false;
+		int idCount = this.idTL == null ? 0 : 1;
+		int classCount = this.classesTL.length + this.attributeSelectors.length;
+		int elementCount = this.elementTL == null ? 0 : 1;
+		for (String pseudo : this.pseudoClasses) {
+			if (PSEUDO_ELEMENTS.contains(pseudo)) {
+				elementCount++;
+			} else {
+				classCount++;
+			}
+			if (!STRUCTURAL_PSEUDO_CLASSES.contains(baseName(pseudo))) {
+				dynamic = true;
+			}
+		}
+		this.dynamicPseudoClass = dynamic;
+		this.specificity = (Math.min(idCount, 0xFF) << 16) | (Math.min(classCount, 0xFF) << 8)
+				| Math.min(elementCount, 0xFF);
 	}
 
 	/**
-	 * Matches.
+	 * Returns the index just past the identifier starting at <code>start</code>.
 	 *
-	 * @param element
-	 *            the element
-	 * @return true, if successful
+	 * @param text
+	 *            the text
+	 * @param start
+	 *            the start
+	 * @return the end index
 	 */
-	public final boolean matches(HTMLElementImpl element) {
-		Set<String> names = element.getPseudoNames();
-		if (names == null) {
-			return this.pseudoElement == null;
-		} else {
-			String pe = this.pseudoElement;
-			return (pe == null) || names.contains(pe);
+	private static int identEnd(String text, int start) {
+		int length = text.length();
+		int i = start;
+		while (i < length) {
+			char ch = text.charAt(i);
+			if (ch == '#' || ch == '.' || ch == '[' || ch == ':' || ch == '(') {
+				break;
+			}
+			i++;
 		}
+		return i;
+	}
+
+	/**
+	 * Gets the name of a pseudo-class without its argument.
+	 *
+	 * @param pseudo
+	 *            the pseudo-class, e.g. <code>nth-child(2n)</code>
+	 * @return the base name
+	 */
+	private static String baseName(String pseudo) {
+		int parenIdx = pseudo.indexOf('(');
+		return parenIdx == -1 ? pseudo : pseudo.substring(0, parenIdx);
 	}
 
 	/**
-	 * Matches.
+	 * Checks whether this compound selector matches the given element.
 	 *
-	 * @param names
-	 *            the names
+	 * @param element
+	 *            the element
+	 * @param pseudoNames
+	 *            the state pseudo-names (e.g. <code>hover</code>) that apply to
+	 *            the element, or <code>null</code> to use
+	 *            {@link HTMLElementImpl#getPseudoNames()}.
 	 * @return true, if successful
 	 */
-	public final boolean matches(Set names) {
-		if (names == null) {
-			return this.pseudoElement == null;
-		} else {
-			String pe = this.pseudoElement;
-			return (pe == null) || names.contains(pe);
+	public final boolean matches(HTMLElementImpl element, Set<String> pseudoNames) {
+		String elemtl = this.elementTL;
+		if (elemtl != null && !elemtl.equalsIgnoreCase(element.getTagName())) {
+			return false;
+		}
+		String idtl = this.idTL;
+		if (idtl != null && !idtl.equalsIgnoreCase(element.getId())) {
+			return false;
+		}
+		String[] classes = this.classesTL;
+		if (classes.length != 0) {
+			String classNames = element.getClassName();
+			if (classNames == null || classNames.length() == 0) {
+				return false;
+			}
+			String[] elementClasses = Strings.split(classNames);
+			for (String classtl : classes) {
+				if (!containsIgnoreCase(elementClasses, classtl)) {
+					return false;
+				}
+			}
 		}
+		for (AttributeSelector attributeSelector : this.attributeSelectors) {
+			if (!attributeSelector.matches(element)) {
+				return false;
+			}
+		}
+		String[] pseudos = this.pseudoClasses;
+		if (pseudos.length != 0) {
+			Set<String> names = pseudoNames;
+			if (names == null && this.dynamicPseudoClass) {
+				names = element.getPseudoNames();
+			}
+			for (String pseudo : pseudos) {
+				if (STRUCTURAL_PSEUDO_CLASSES.contains(baseName(pseudo))) {
+					if (!SELECTOR_MATCHER.matchesPseudoClassSelector(pseudo, element)) {
+						return false;
+					}
+				} else if (names == null || !names.contains(pseudo)) {
+					return false;
+				}
+			}
+		}
+		return true;
 	}
 
 	/**
-	 * Matches.
+	 * Contains ignore case.
 	 *
-	 * @param pseudoName
-	 *            the pseudo name
+	 * @param values
+	 *            the values
+	 * @param valueTL
+	 *            the value in lowercase
 	 * @return true, if successful
 	 */
-	public final boolean matches(String pseudoName) {
-		if (pseudoName == null) {
-			return this.pseudoElement == null;
-		} else {
-			String pe = this.pseudoElement;
-			return (pe == null) || pseudoName.equals(pe);
+	private static boolean containsIgnoreCase(String[] values, String valueTL) {
+		for (String value : values) {
+			if (valueTL.equalsIgnoreCase(value)) {
+				return true;
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -113,7 +306,50 @@ public class SimpleSelector {
 	 * @return true, if successful
 	 */
 	public final boolean hasPseudoName(String pseudoName) {
-		return pseudoName.equals(this.pseudoElement);
+		for (String pseudo : this.pseudoClasses) {
+			if (pseudoName.equals(pseudo)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the specificity, packed as <code>(a &lt;&lt; 16) | (b &lt;&lt; 8) | c</code>
+	 * where <code>a</code> counts ids, <code>b</code> classes, attributes and
+	 * pseudo-classes, and <code>c</code> element names and pseudo-elements.
+	 *
+	 * @return the specificity
+	 */
+	public int getSpecificity() {
+		return specificity;
+	}
+
+	/**
+	 * Gets the element name in lowercase.
+	 *
+	 * @return the element name, or null for the universal selector
+	 */
+	public String getElementTL() {
+		return elementTL;
+	}
+
+	/**
+	 * Gets the id in lowercase.
+	 *
+	 * @return the id, or null
+	 */
+	public String getIdTL() {
+		return idTL;
+	}
+
+	/**
+	 * Gets the class names in lowercase.
+	 *
+	 * @return the class names
+	 */
+	public String[] getClassesTL() {
+		return classesTL;
 	}
 
 	/**
@@ -144,16 +380,6 @@ public class SimpleSelector {
 		return simpleSelectorText;
 	}
 
-	/**
-	 * Sets the simple selector text.
-	 *
-	 * @param simpleSelectorText
-	 *            the new simple selector text
-	 */
-	public void setSimpleSelectorText(String simpleSelectorText) {
-		this.simpleSelectorText = simpleSelectorText;
-	}
-
 	/**
 	 * Gets the pseudo element.
 	 *
@@ -162,14 +388,4 @@ public class SimpleSelector {
 	public String getPseudoElement() {
 		return pseudoElement;
 	}
-
-	/**
-	 * Sets the pseudo element.
-	 *
-	 * @param pseudoElement
-	 *            the new pseudo element
-	 */
-	public void setPseudoElement(String pseudoElement) {
-		this.pseudoElement = pseudoElement;
-	}
 }
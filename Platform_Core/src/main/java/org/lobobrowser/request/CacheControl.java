@@ -0,0 +1,388 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.request;
+
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.StringTokenizer;
+
+import org.lobobrowser.util.Urls;
+
+/**
+ * The caching rules of a response, read from its <code>Cache-Control</code>,
+ * <code>Expires</code>, <code>Date</code>, <code>Age</code>,
+ * <code>Last-Modified</code>, <code>ETag</code> and <code>Vary</code>
+ * headers, and the freshness calculation of RFC 7234 for a private cache.
+ * <p>
+ * <code>s-maxage</code> and <code>proxy-revalidate</code> apply to shared
+ * caches only and are parsed but not used. A response without an explicit
+ * lifetime gets the usual heuristic of a tenth of the time since it was last
+ * modified, or else the default offset from the cache settings.
+ */
+public final class CacheControl {
+
+    /** The request headers a cached response may vary on. */
+    private static final String[] SAFE_VARY_HEADERS = { "accept",
+            "accept-encoding", "accept-language", "user-agent" };
+
+    /** Whether the response must not be stored. */
+    private final boolean noStore;
+
+    /** Whether the response must be revalidated before each use. */
+    private final boolean noCache;
+
+    /** Whether the response must not be used stale. */
+    private final boolean mustRevalidate;
+
+    /** The max age in seconds, or -1. */
+    private final long maxAge;
+
+    /** The shared cache max age in seconds, or -1. */
+    private final long sMaxAge;
+
+    /** The stale while revalidate window in seconds, or -1. */
+    private final long staleWhileRevalidate;
+
+    /** The expires time, or null. */
+    private final Long expires;
+
+    /** The date, or null. */
+    private final Long date;
+
+    /** The age in seconds. */
+    private final long age;
+
+    /** The last modified header. */
+    private final String lastModified;
+
+    /** The e tag. */
+    private final String eTag;
+
+    /** The vary header. */
+    private final String vary;
+
+    /**
+     * Reads the caching rules from the headers of a response.
+     *
+     * @param connection
+     *            the connection
+     */
+    public CacheControl(URLConnection connection) {
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean mustRevalidate = false;
+        long maxAge = -1;
+        long sMaxAge = -1;
+        long staleWhileRevalidate = -1;
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            StringTokenizer tok = new StringTokenizer(cacheControl, ",");
+            while (tok.hasMoreTokens()) {
+                String token = tok.nextToken().trim().toLowerCase();
+                int eqIdx = token.indexOf('=');
+                String name = eqIdx == -1 ? token : token.substring(0, eqIdx)
+                        .trim();
+                String value = eqIdx == -1 ? null : token.substring(eqIdx + 1)
+                        .trim();
+                if ("no-store".equals(name)) {
+                    noStore = true;
+                } else if ("no-cache".equals(name)) {
+                    noCache = true;
+                } else if ("must-revalidate".equals(name)) {
+                    mustRevalidate = true;
+                } else if ("max-age".equals(name)) {
+                    maxAge = parseSeconds(value);
+                } else if ("s-maxage".equals(name)) {
+                    sMaxAge = parseSeconds(value);
+                } else if ("stale-while-revalidate".equals(name)) {
+                    staleWhileRevalidate = parseSeconds(value);
+                }
+            }
+        }
+        if (!noCache) {
+            String pragma = connection.getHeaderField("Pragma");
+            noCache = cacheControl == null && pragma != null
+                    && pragma.toLowerCase().contains("no-cache");
+        }
+        this.noStore = noStore;
+        this.noCache = noCache;
+        this.mustRevalidate = mustRevalidate;
+        this.maxAge = maxAge;
+        this.sMaxAge = sMaxAge;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        Long date = parseDate(connection.getHeaderField("Date"));
+        String expiresText = connection.getHeaderField("Expires");
+        Long expires = parseDate(expiresText);
+        if (expires == null && expiresText != null) {
+            // An invalid Expires header means already expired.
+            expires = date == null ? new Long(0) : date;
+        }
+        this.date = date;
+        this.expires = expires;
+        long age = parseSeconds(connection.getHeaderField("Age"));
+        this.age = age < 0 ? 0 : age;
+        this.lastModified = connection.getHeaderField("Last-Modified");
+        this.eTag = connection.getHeaderField("ETag");
+        this.vary = connection.getHeaderField("Vary");
+    }
+
+    /**
+     * Checks whether the response may be stored.
+     *
+     * @return true, if successful
+     */
+    public boolean isStorable() {
+        return !this.noStore
+                && (this.vary == null || !"*".equals(this.vary.trim()));
+    }
+
+    /**
+     * Gets the freshness lifetime of the response.
+     *
+     * @param requestTime
+     *            the time the response was received
+     * @param defaultOffsetSeconds
+     *            the lifetime of a response that has no expiration
+     *            information and no <code>Last-Modified</code> header, or
+     *            null
+     * @return the lifetime in milliseconds
+     */
+    public long getFreshnessLifetime(long requestTime,
+            Integer defaultOffsetSeconds) {
+        if (this.noCache || !this.hasSafeVary()) {
+            return 0;
+        }
+        if (this.maxAge >= 0) {
+            return this.maxAge * 1000;
+        }
+        if (this.expires != null) {
+            long base = this.date == null ? requestTime : this.date.longValue();
+            return Math.max(0, this.expires.longValue() - base);
+        }
+        Long lastModified = parseDate(this.lastModified);
+        if (lastModified != null) {
+            long base = this.date == null ? requestTime : this.date.longValue();
+            return Math.max(0, (base - lastModified.longValue()) / 10);
+        }
+        if (defaultOffsetSeconds != null) {
+            return defaultOffsetSeconds.longValue() * 1000;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the current age of the response. The stored request time is
+     * taken as the response time, since a response that was revalidated is
+     * stored again with a new request time but its original
+     * <code>Date</code>.
+     *
+     * @param requestTime
+     *            the time the response was received
+     * @param now
+     *            the current time
+     * @return the age in milliseconds
+     */
+    public long getAge(long requestTime, long now) {
+        return this.age * 1000 + Math.max(0, now - requestTime);
+    }
+
+    /**
+     * Checks whether the response may be used without revalidation.
+     *
+     * @param requestTime
+     *            the time the response was received
+     * @param now
+     *            the current time
+     * @param defaultOffsetSeconds
+     *            the default lifetime, or null
+     * @return true, if successful
+     */
+    public boolean isFresh(long requestTime, long now,
+            Integer defaultOffsetSeconds) {
+        return this.getAge(requestTime, now) < this.getFreshnessLifetime(
+                requestTime, defaultOffsetSeconds);
+    }
+
+    /**
+     * Checks whether a stale response may be used while it is revalidated
+     * in the background.
+     *
+     * @param requestTime
+     *            the time the response was received
+     * @param now
+     *            the current time
+     * @param defaultOffsetSeconds
+     *            the default lifetime, or null
+     * @return true, if successful
+     */
+    public boolean mayServeWhileRevalidating(long requestTime, long now,
+            Integer defaultOffsetSeconds) {
+        if (this.staleWhileRevalidate <= 0 || this.mustRevalidate
+                || this.noCache || !this.hasSafeVary()) {
+            return false;
+        }
+        return this.getAge(requestTime, now) < this.getFreshnessLifetime(
+                requestTime, defaultOffsetSeconds)
+                + this.staleWhileRevalidate * 1000;
+    }
+
+    /**
+     * Gets the expiration time of the response, for code that keeps an
+     * absolute time.
+     *
+     * @param requestTime
+     *            the time the response was received
+     * @return the expiration time, or null if the response carries no
+     *         expiration information
+     */
+    public Long getExpiration(long requestTime) {
+        if (this.noCache) {
+            return new Long(0);
+        }
+        if (this.maxAge < 0 && this.expires == null) {
+            return null;
+        }
+        return new Long(requestTime - this.age * 1000
+                + this.getFreshnessLifetime(requestTime, null));
+    }
+
+    /**
+     * Checks that the response varies only on request headers this user
+     * agent sends the same way every time. Responses that vary on others,
+     * such as <code>Cookie</code>, are always revalidated since the request
+     * headers they were stored for are not kept.
+     *
+     * @return true, if successful
+     */
+    private boolean hasSafeVary() {
+        if (this.vary == null) {
+            return true;
+        }
+        StringTokenizer tok = new StringTokenizer(this.vary, ",");
+        while (tok.hasMoreTokens()) {
+            String header = tok.nextToken().trim().toLowerCase();
+            boolean safe = false;
+            for (String safeHeader : SAFE_VARY_HEADERS) {
+                if (safeHeader.equals(header)) {
+                    safe = true;
+                    break;
+                }
+            }
+            if (!safe) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a number of seconds.
+     *
+     * @param value
+     *            the value, or null
+     * @return the seconds, or -1 if the value is missing or invalid
+     */
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        String text = value.trim();
+        if (text.length() >= 2 && text.charAt(0) == '"'
+                && text.charAt(text.length() - 1) == '"') {
+            text = text.substring(1, text.length() - 1);
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses an HTTP date.
+     *
+     * @param value
+     *            the value, or null
+     * @return the time, or null if the value is missing or invalid
+     */
+    private static Long parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            synchronized (Urls.PATTERN_RFC1123) {
+                Date date = Urls.PATTERN_RFC1123.parse(value.trim());
+                return new Long(date.getTime());
+            }
+        } catch (ParseException pe) {
+            return null;
+        }
+    }
+
+    /** Checks if the response must not be stored.
+     *
+     * @return the no store
+     */
+    public boolean isNoStore() {
+        return this.noStore;
+    }
+
+    /** Checks if the response must be revalidated before each use.
+     *
+     * @return the no cache
+     */
+    public boolean isNoCache() {
+        return this.noCache;
+    }
+
+    /** Checks if the response must not be used stale.
+     *
+     * @return the must revalidate
+     */
+    public boolean isMustRevalidate() {
+        return this.mustRevalidate;
+    }
+
+    /** Gets the shared cache max age, which a private cache ignores.
+     *
+     * @return the s max age in seconds, or -1
+     */
+    public long getSMaxAge() {
+        return this.sMaxAge;
+    }
+
+    /** Gets the last modified header.
+     *
+     * @return the last modified
+     */
+    public String getLastModified() {
+        return this.lastModified;
+    }
+
+    /** Gets the e tag.
+     *
+     * @return the e tag
+     */
+    public String getETag() {
+        return this.eTag;
+    }
+}
@@ -60,6 +60,9 @@ public class CacheInfo {
     /** The connection. */
     private URLConnection connection;
 
+    /** The cache control of a persistent entry. */
+    private CacheControl cacheControl;
+
     /**
      * Instantiates a new cache info.
      *
@@ -129,6 +132,58 @@ public class CacheInfo {
         return this.getURLConnection().getHeaderField("date");
     }
 
+    /** Gets the caching rules of the cached response. They are parsed once
+     * and kept with the memory entry, if there is one.
+	 *
+	 * @return the cache control
+	 */
+    public final CacheControl getCacheControl() {
+        MemoryCacheEntry entry = this.memoryEntry;
+        CacheControl cc = entry != null ? entry.getCacheControl()
+                : this.cacheControl;
+        if (cc == null) {
+            cc = new CacheControl(this.getURLConnection());
+            if (entry != null) {
+                entry.setCacheControl(cc);
+            } else {
+                this.cacheControl = cc;
+            }
+        }
+        return cc;
+    }
+
+    /**
+     * Checks whether the cached response may be used without revalidation.
+     *
+     * @param defaultOffsetSeconds
+     *            the lifetime of a response without expiration information,
+     *            or null
+     * @param now
+     *            the current time
+     * @return true, if is fresh
+     */
+    public final boolean isFresh(Integer defaultOffsetSeconds, long now) {
+        return this.getCacheControl().isFresh(this.getRequestTime(), now,
+                defaultOffsetSeconds);
+    }
+
+    /**
+     * Checks whether the stale cached response may be used while it is
+     * revalidated in the background.
+     *
+     * @param defaultOffsetSeconds
+     *            the lifetime of a response without expiration information,
+     *            or null
+     * @param now
+     *            the current time
+     * @return true, if successful
+     */
+    public final boolean mayServeWhileRevalidating(
+            Integer defaultOffsetSeconds, long now) {
+        return this.getCacheControl().mayServeWhileRevalidating(
+                this.getRequestTime(), now, defaultOffsetSeconds);
+    }
+
     /**
      * Adds the request time of the cached document to the given offset.
      *
@@ -94,6 +94,15 @@ public class ClientletRequestHandler extends AbstractRequestHandler {
         }
     }
 
+    /**
+     * Checks whether the request navigates a top-level frame.
+     *
+     * @return true, if successful
+     */
+    public boolean isTopLevel() {
+        return this.frame.getParentFrame() == null;
+    }
+
     /** The window properties. */
     private volatile java.util.Properties windowProperties = null;
 
@@ -39,6 +39,7 @@ import java.util.StringTokenizer;
 import java.util.logging.Logger;
 
 import org.lobobrowser.clientlet.ClientletResponse;
+import org.lobobrowser.http.ContentDecoders;
 import org.lobobrowser.ua.ProgressType;
 import org.lobobrowser.ua.RequestType;
 import org.lobobrowser.util.GenericEventListener;
@@ -318,11 +319,13 @@ public class ClientletResponseImpl implements ClientletResponse {
                                 pe.getProgress(), contentLength);
                     }
                 });
-                // TODO Buffer size too big if contentLength small
-                bis = new BufferedInputStream(mis, bufferSize);
-            } else {
-                bis = new BufferedInputStream(in, bufferSize);
+                in = mis;
             }
+            // Progress is reported on the bytes as sent, but clientlets
+            // read them decoded.
+            in = ContentDecoders.decode(in, connection.getContentEncoding());
+            // TODO Buffer size too big if contentLength small
+            bis = new BufferedInputStream(in, bufferSize);
             if (this.isCacheable) {
                 this.inputStream = new RecordedInputStream(bis,
                         MAX_CACHE_BUFFER_SIZE);
@@ -363,7 +366,12 @@ public class ClientletResponseImpl implements ClientletResponse {
      */
     @Override
     public int getContentLength() {
-        return this.connection.getContentLength();
+        URLConnection connection = this.connection;
+        if (ContentDecoders.isEncoded(connection.getContentEncoding())) {
+            // The length of the body as sent, not as read.
+            return -1;
+        }
+        return connection.getContentLength();
     }
 
     /**
@@ -383,7 +391,8 @@ public class ClientletResponseImpl implements ClientletResponse {
         }
     }
 
-    /** Gets the stored content.
+    /** Gets the stored content. The array is shared with the recorded
+	 * stream and must not be modified.
 	 *
 	 * @return the stored content
 	 */
@@ -0,0 +1,325 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.request;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.lobobrowser.store.JournalFile;
+
+/**
+ * The persistent cookies of the {@link CookieStore}, kept in one append-only
+ * {@link JournalFile}. Every change is one record:
+ *
+ * <pre>
+ * PUT    domain name path expires value
+ * REMOVE domain name
+ * </pre>
+ *
+ * Changes are queued in memory and
+ * written in batches by a background thread, at most once every
+ * {@link #FLUSH_DELAY} milliseconds, and once more when the JVM exits.
+ * When the file holds many more records than there are cookies it is
+ * rewritten with one <code>PUT</code> per cookie that has not expired.
+ */
+final class CookieJournal implements Runnable {
+
+    /** The Constant logger. */
+    private static final Logger logger = Logger.getLogger(CookieJournal.class
+            .getName());
+
+    /** The Constant PUT. */
+    private static final String PUT = "PUT";
+
+    /** The Constant REMOVE. */
+    private static final String REMOVE = "REMOVE";
+
+    /** The delay in milliseconds between a change and its flush. */
+    private static final int FLUSH_DELAY = 2000;
+
+    /** The number of redundant records that triggers compaction. */
+    private static final int COMPACT_THRESHOLD = 500;
+
+    /** The file. */
+    private final File file;
+
+    /** The records of the cookies in the file, by domain and name. */
+    private final Map<String, String[]> live = new HashMap<String, String[]>();
+
+    /** The records not written yet. */
+    private List<String[]> pending = new ArrayList<String[]>();
+
+    /** The number of records in the file that are no longer needed. */
+    private int redundantRecords;
+
+    /** The journal. */
+    private final JournalFile journal;
+
+    /** The thread started. */
+    private boolean threadStarted;
+
+    /**
+     * Instantiates a new cookie journal.
+     *
+     * @param file
+     *            the file
+     */
+    CookieJournal(File file) {
+        this.file = file;
+        this.journal = new JournalFile(file);
+    }
+
+    /**
+     * Checks whether the file exists.
+     *
+     * @return true, if successful
+     */
+    boolean exists() {
+        return this.journal.exists();
+    }
+
+    /**
+     * Reads the cookies in the file that have not expired and starts the
+     * thread that writes changes. Must be called with the privileges needed
+     * to write the file.
+     *
+     * @return the cookies by domain and name
+     */
+    synchronized Map<String, Map<String, CookieValue>> load() {
+        Map<String, Map<String, CookieValue>> cookies = new HashMap<String, Map<String, CookieValue>>();
+        if (this.journal.exists()) {
+            try {
+                this.journal.replay(new JournalFile.RecordHandler() {
+                    @Override
+                    public boolean handleRecord(String[] fields) {
+                        return replayRecord(fields);
+                    }
+                });
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "load(): Unable to read cookies.", ioe);
+            }
+        }
+        long now = System.currentTimeMillis();
+        Iterator<String[]> i = this.live.values().iterator();
+        while (i.hasNext()) {
+            String[] record = i.next();
+            long expires = Long.parseLong(record[4]);
+            if (expires < now) {
+                i.remove();
+                this.redundantRecords++;
+                continue;
+            }
+            Map<String, CookieValue> domainMap = cookies.get(record[1]);
+            if (domainMap == null) {
+                domainMap = new HashMap<String, CookieValue>(2);
+                cookies.put(record[1], domainMap);
+            }
+            domainMap.put(record[2], new CookieValue(record[5], record[3],
+                    record[1], expires));
+        }
+        if (!this.threadStarted) {
+            Thread t = new Thread(this, "CookieJournal");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+            this.threadStarted = true;
+        }
+        return cookies;
+    }
+
+    /**
+     * Queues a persistent cookie to be written.
+     *
+     * @param domain
+     *            the domain
+     * @param name
+     *            the name
+     * @param cookieValue
+     *            the cookie value, which must have an expiration time
+     */
+    synchronized void put(String domain, String name, CookieValue cookieValue) {
+        String[] record = new String[] { PUT, domain, name,
+                cookieValue.getPath(),
+                String.valueOf(cookieValue.getExpires()),
+                cookieValue.getValue() };
+        if (this.live.put(getKey(domain, name), record) != null) {
+            this.redundantRecords++;
+        }
+        this.queue(record);
+    }
+
+    /**
+     * Queues the removal of a persistent cookie. Nothing is written if the
+     * cookie is not in the file.
+     *
+     * @param domain
+     *            the domain
+     * @param name
+     *            the name
+     */
+    synchronized void remove(String domain, String name) {
+        if (this.live.remove(getKey(domain, name)) != null) {
+            this.redundantRecords += 2;
+            this.queue(new String[] { REMOVE, domain, name });
+        }
+    }
+
+    /**
+     * Writes the queued records now.
+     *
+     * @return true, if the records are written, false if they could not be
+     */
+    boolean flush() {
+        // Only one flush at a time, so records are written in order.
+        synchronized (this.file) {
+            List<String[]> batch;
+            List<String[]> snapshot = null;
+            synchronized (this) {
+                batch = this.pending;
+                if (batch.isEmpty()) {
+                    return true;
+                }
+                this.pending = new ArrayList<String[]>();
+                if (this.redundantRecords >= COMPACT_THRESHOLD
+                        && this.redundantRecords >= this.live.size()) {
+                    snapshot = new ArrayList<String[]>(this.live.values());
+                    this.redundantRecords = 0;
+                }
+            }
+            try {
+                if (snapshot != null) {
+                    this.compact(snapshot);
+                } else {
+                    for (String[] record : batch) {
+                        this.journal.append(record);
+                    }
+                    this.journal.flush();
+                }
+                return true;
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "flush(): Unable to write cookies.", ioe);
+                this.journal.close();
+                return false;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        for (;;) {
+            try {
+                synchronized (this) {
+                    while (this.pending.isEmpty()) {
+                        this.wait();
+                    }
+                }
+                // Let more changes gather before writing.
+                Thread.sleep(FLUSH_DELAY);
+                this.flush();
+            } catch (Throwable err) {
+                logger.log(Level.SEVERE, "run()", err);
+            }
+        }
+    }
+
+    /**
+     * Queues a record and wakes up the writing thread.
+     *
+     * @param record
+     *            the record
+     */
+    private void queue(String[] record) {
+        this.pending.add(record);
+        this.notify();
+    }
+
+    /**
+     * Replays a record of the file into the live records.
+     *
+     * @param fields
+     *            the fields of the record
+     * @return false if the record is malformed
+     */
+    private boolean replayRecord(String[] fields) {
+        if (PUT.equals(fields[0]) && fields.length == 6) {
+            Long.parseLong(fields[4]);
+            if (this.live.put(getKey(fields[1], fields[2]), fields) != null) {
+                this.redundantRecords++;
+            }
+        } else if (REMOVE.equals(fields[0]) && fields.length == 3) {
+            this.live.remove(getKey(fields[1], fields[2]));
+            this.redundantRecords += 2;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the file with the given records, leaving out expired
+     * cookies.
+     *
+     * @param records
+     *            the records
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void compact(List<String[]> records) throws IOException {
+        long now = System.currentTimeMillis();
+        List<String[]> current = new ArrayList<String[]>(records.size());
+        for (String[] record : records) {
+            if (Long.parseLong(record[4]) >= now) {
+                current.add(record);
+            }
+        }
+        this.journal.rewrite(current);
+    }
+
+    /**
+     * Gets the key of a cookie.
+     *
+     * @param domain
+     *            the domain
+     * @param name
+     *            the name
+     * @return the key
+     */
+    private static String getKey(String domain, String name) {
+        return domain + '\t' + name;
+    }
+}
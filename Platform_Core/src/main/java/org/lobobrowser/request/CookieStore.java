@@ -23,22 +23,25 @@
  */
 package org.lobobrowser.request;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.lobobrowser.http.Cookie;
+import org.lobobrowser.security.GenericLocalPermission;
 import org.lobobrowser.store.RestrictedStore;
 import org.lobobrowser.store.StorageManager;
 import org.lobobrowser.util.DateUtil;
@@ -47,6 +50,13 @@ import org.lobobrowser.util.Strings;
 
 /**
  * The Class CookieStore.
+ * <p>
+ * All cookies are kept in memory by domain, so looking up the cookies of a
+ * request needs no file access. Persistent cookies are also written to a
+ * {@link CookieJournal} in the store directory, which is read once on first
+ * use. Cookies saved by earlier versions, one serialized file per cookie in
+ * each host's restricted store, are moved into the journal when it is
+ * first created.
  *
  * @author J. H. S.
  */
@@ -58,6 +68,9 @@ public class CookieStore {
     /** The Constant COOKIE_PATH_PATTERN. */
     private static final String COOKIE_PATH_PATTERN = "\\.W\\$Cookies/.*";
 
+    /** The name of the cookie journal in the store directory. */
+    private static final String COOKIE_FILE = "cookies";
+
    /** The Constant instance. */
     private static final CookieStore instance = new CookieStore();
 
@@ -65,8 +78,17 @@ public class CookieStore {
     private static final Logger logger = Logger.getLogger(CookieStore.class
             .getName());
 
-    /** The transient map by host. */
-    private final Map<String, Map<String, CookieValue>> transientMapByHost = new HashMap<String, Map<String, CookieValue>>();
+    /** The cookies by domain and name. */
+    private Map<String, Map<String, CookieValue>> cookiesByDomain;
+
+    /** The cookies with an expiration time, soonest first. */
+    private final PriorityQueue<ExpiringCookie> expiringCookies = new PriorityQueue<ExpiringCookie>();
+
+    /** The number of entries in the expiration queue for cookies since replaced. */
+    private int staleExpiringCookies;
+
+    /** The journal of persistent cookies, or null if they cannot be saved. */
+    private CookieJournal journal;
 
     /**
      * Instantiates a new cookie store.
@@ -210,40 +232,207 @@ public class CookieStore {
                     + ",expires=" + expires + ",value=[" + value + "].");
         }
         Long expiresLong = expires == null ? null : expires.getTime();
+        if (expiresLong != null) {
+            SecurityManager sm = System.getSecurityManager();
+            if (sm != null) {
+                sm.checkPermission(GenericLocalPermission.EXT_GENERIC);
+            }
+        }
         CookieValue cookieValue = new CookieValue(value, path, domain,
                 expiresLong);
         synchronized (this) {
-            // Always save a transient cookie. It acts as a cache.
-            Map<String, CookieValue> hostMap = this.transientMapByHost
+            this.ensureLoaded();
+            this.removeExpired();
+            Map<String, CookieValue> domainMap = this.cookiesByDomain
                     .get(domain);
-            if (hostMap == null) {
-                hostMap = new HashMap<String, CookieValue>(2);
-                this.transientMapByHost.put(domain, hostMap);
+            if (cookieValue.isExpired()) {
+                // An expiration time in the past deletes the cookie.
+                if (domainMap != null) {
+                    this.replaced(domainMap.remove(name));
+                }
+                if (this.journal != null) {
+                    this.journal.remove(domain, name);
+                }
+                return;
+            }
+            if (domainMap == null) {
+                domainMap = new HashMap<String, CookieValue>(2);
+                this.cookiesByDomain.put(domain, domainMap);
+            }
+            this.replaced(domainMap.put(name, cookieValue));
+            if (expiresLong != null) {
+                this.expiringCookies.add(new ExpiringCookie(domain, name,
+                        cookieValue));
+                if (this.journal != null) {
+                    this.journal.put(domain, name, cookieValue);
+                }
+            } else if (this.journal != null) {
+                // A transient cookie replaces a persistent one.
+                this.journal.remove(domain, name);
             }
-            hostMap.put(name, cookieValue);
         }
-        if (expiresLong != null) {
-            try {
-                RestrictedStore store = StorageManager.getInstance()
-                        .getRestrictedStore(domain, true);
-                store.saveObject(this.getPathFromCookieName(name), cookieValue);
-            } catch (IOException ioe) {
-                logger.log(Level.WARNING,
-                        "saveCookie(): Unable to save cookie named '" + name
-                        + "' with domain '" + domain + "'", ioe);
+    }
+
+    /**
+     * Loads the persistent cookies on first use. Must be called while
+     * holding the lock of the store.
+     */
+    private void ensureLoaded() {
+        if (this.cookiesByDomain != null) {
+            return;
+        }
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            // Reason: The journal is owned by the store, and callers are
+            // checked for permission before they can see or save
+            // persistent cookies.
+            @Override
+            public Object run() {
+                File file;
+                try {
+                    file = new File(StorageManager.getInstance().getAppHome(),
+                            COOKIE_FILE);
+                } catch (IOException ioe) {
+                    logger.log(Level.WARNING,
+                            "ensureLoaded(): Unable to locate cookie journal. Cookies will not be saved.",
+                            ioe);
+                    cookiesByDomain = new HashMap<String, Map<String, CookieValue>>();
+                    return null;
+                }
+                CookieJournal journal = new CookieJournal(file);
+                boolean migrate = !journal.exists();
+                cookiesByDomain = journal.load();
+                CookieStore.this.journal = journal;
+                if (migrate) {
+                    migrateCookieFiles();
+                }
+                for (Map.Entry<String, Map<String, CookieValue>> domainEntry : cookiesByDomain
+                        .entrySet()) {
+                    for (Map.Entry<String, CookieValue> entry : domainEntry
+                            .getValue().entrySet()) {
+                        expiringCookies.add(new ExpiringCookie(domainEntry
+                                .getKey(), entry.getKey(), entry.getValue()));
+                    }
+                }
+                return null;
             }
+        });
+    }
+
+    /**
+     * Moves the cookies saved as files in the restricted store of each host
+     * into the journal. The files of a host are removed only once its cookies
+     * are written to the journal.
+     */
+    private void migrateCookieFiles() {
+        try {
+            StorageManager storageManager = StorageManager.getInstance();
+            for (String hostName : storageManager.getRestrictedStoreHostNames()) {
+                RestrictedStore store = storageManager.getRestrictedStore(
+                        hostName, false);
+                if (store == null) {
+                    continue;
+                }
+                Iterator pathsIterator = store.getPaths(COOKIE_PATH_PATTERN)
+                        .iterator();
+                LinkedList<String> migratedPaths = new LinkedList<String>();
+                while (pathsIterator.hasNext()) {
+                    String filePath = (String) pathsIterator.next();
+                    String cookieName = this.getCookieNameFromPath(filePath);
+                    try {
+                        CookieValue cookieValue = (CookieValue) store
+                                .retrieveObject(filePath);
+                        if ((cookieValue != null)
+                                && (cookieValue.getExpires() != null)
+                                && !cookieValue.isExpired()) {
+                            Map<String, CookieValue> domainMap = this.cookiesByDomain
+                                    .get(hostName);
+                            if (domainMap == null) {
+                                domainMap = new HashMap<String, CookieValue>(2);
+                                this.cookiesByDomain.put(hostName, domainMap);
+                            }
+                            domainMap.put(cookieName, cookieValue);
+                            this.journal.put(hostName, cookieName, cookieValue);
+                        }
+                    } catch (ClassNotFoundException cnf) {
+                        logger.log(Level.WARNING,
+                                "migrateCookieFiles(): Possible engine versioning error.",
+                                cnf);
+                    }
+                    migratedPaths.add(filePath);
+                }
+                if (!this.journal.flush()) {
+                    // Kept for the next start.
+                    continue;
+                }
+                for (String filePath : migratedPaths) {
+                    store.removeObject(filePath);
+                }
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING,
+                    "migrateCookieFiles(): Unable to read saved cookies.", ioe);
         }
     }
 
     /**
-     * Gets the path from cookie name.
+     * Accounts for a cookie that was replaced or deleted, and drops the
+     * entries of such cookies from the expiration queue once they are the
+     * majority. Must be called while holding the lock of the store.
      *
-     * @param cookieName
-     *            the cookie name
-     * @return the path from cookie name
+     * @param oldValue
+     *            the old cookie value, or null
+     */
+    private void replaced(CookieValue oldValue) {
+        if ((oldValue == null) || (oldValue.getExpires() == null)) {
+            return;
+        }
+        if (++this.staleExpiringCookies > 64
+                && this.staleExpiringCookies * 2 > this.expiringCookies.size()) {
+            Iterator<ExpiringCookie> i = this.expiringCookies.iterator();
+            while (i.hasNext()) {
+                ExpiringCookie ec = i.next();
+                Map<String, CookieValue> domainMap = this.cookiesByDomain
+                        .get(ec.domain);
+                if ((domainMap == null)
+                        || (domainMap.get(ec.name) != ec.cookieValue)) {
+                    i.remove();
+                }
+            }
+            this.staleExpiringCookies = 0;
+        }
+    }
+
+    /**
+     * Removes the cookies that have expired. Must be called while holding
+     * the lock of the store.
      */
-    private String getPathFromCookieName(String cookieName) {
-        return COOKIE_PATH_PREFIX + cookieName;
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        ExpiringCookie head;
+        while (((head = this.expiringCookies.peek()) != null)
+                && (head.expires < now)) {
+            this.expiringCookies.poll();
+            Map<String, CookieValue> domainMap = this.cookiesByDomain
+                    .get(head.domain);
+            // The cookie may have been replaced since.
+            if ((domainMap != null)
+                    && (domainMap.get(head.name) == head.cookieValue)) {
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info("removeExpired(): Cookie " + head.name
+                            + " from " + head.domain + " expired: "
+                            + head.expires);
+                }
+                domainMap.remove(head.name);
+                if (domainMap.isEmpty()) {
+                    this.cookiesByDomain.remove(head.domain);
+                }
+                if (this.journal != null) {
+                    this.journal.remove(head.domain, head.name);
+                }
+            } else if (this.staleExpiringCookies > 0) {
+                this.staleExpiringCookies--;
+            }
+        }
     }
 
     /**
@@ -262,126 +451,38 @@ public class CookieStore {
 
     /**
      * Gets cookies belonging exactly to the host name given, not to a broader
-     * domain.
+     * domain. Must be called while holding the lock of the store.
      *
      * @param hostName
      *            the host name
      * @param path
      *            the path
-     * @return the cookies strict
+     * @param cookies
+     *            the collection the cookies are added to
      */
-    private Collection<Cookie> getCookiesStrict(String hostName, String path) {
-
-        if ((path == null) || (path.length() == 0)) {
-            path = "/";
-        }
-        boolean liflag = logger.isLoggable(Level.INFO);
-        Collection<Cookie> cookies = new LinkedList<Cookie>();
-        Set<String> transientCookieNames = new HashSet<String>();
-        synchronized (this) {
-            Map<String, CookieValue> hostMap = this.transientMapByHost
-                    .get(hostName);
-            if (hostMap != null) {
-                Iterator<Map.Entry<String, CookieValue>> i = hostMap.entrySet()
-                        .iterator();
-                while (i.hasNext()) {
-                    Map.Entry<String, CookieValue> entry = i.next();
-                    CookieValue cookieValue = entry.getValue();
-                    if (cookieValue.isExpired()) {
-                        if (liflag) {
-                            logger.info("getCookiesStrict(): Cookie "
-                                    + entry.getKey() + " from " + hostName
-                                    + " expired: " + cookieValue.getExpires());
-                        }
-                    } else {
-                        if (path.startsWith(cookieValue.getPath())) {
-                            String cookieName = entry.getKey();
-                            transientCookieNames.add(cookieName);
-                            Cookie cookie = new Cookie();
-                            cookie.setName(cookieName);
-                            cookie.setValue(cookieValue.getValue());
-                            cookie.setPath(cookieValue.getPath());
-                            cookie.setDomain(cookieValue.getDomain());
-                            cookies.add(cookie);
-                        } else {
-                            if (liflag) {
-                                logger.info("getCookiesStrict(): Skipping cookie "
-                                        + cookieValue
-                                        + " since it does not match path "
-                                        + path);
-                            }
-                        }
-                    }
-                }
-            }
+    private void getCookiesStrict(String hostName, String path,
+            Collection<Cookie> cookies) {
+        Map<String, CookieValue> domainMap = this.cookiesByDomain.get(hostName);
+        if (domainMap == null) {
+            return;
         }
-        try {
-            RestrictedStore store = StorageManager.getInstance()
-                    .getRestrictedStore(hostName, false);
-            if (store != null) {
-                Collection paths;
-                paths = store.getPaths(COOKIE_PATH_PATTERN);
-                Iterator pathsIterator = paths.iterator();
-                while (pathsIterator.hasNext()) {
-                    String filePath = (String) pathsIterator.next();
-                    String cookieName = this.getCookieNameFromPath(filePath);
-                    if (!transientCookieNames.contains(cookieName)) {
-                        CookieValue cookieValue = (CookieValue) store
-                                .retrieveObject(filePath);
-                        if (cookieValue != null) {
-                            if (cookieValue.isExpired()) {
-                                if (logger.isLoggable(Level.INFO)) {
-                                    logger.info("getCookiesStrict(): Cookie "
-                                            + cookieName + " from " + hostName
-                                            + " expired: "
-                                            + cookieValue.getExpires());
-                                }
-                                store.removeObject(filePath);
-                            } else {
-                                if (path.startsWith(cookieValue.getPath())) {
-                                    // Found one that is not in main memory.
-                                    // Cache it.
-                                    synchronized (this) {
-                                        Map<String, CookieValue> hostMap = this.transientMapByHost
-                                                .get(hostName);
-                                        if (hostMap == null) {
-                                            hostMap = new HashMap<String, CookieValue>();
-                                            this.transientMapByHost.put(
-                                                    hostName, hostMap);
-                                        }
-                                        hostMap.put(cookieName, cookieValue);
-                                    }
-                                    // Now add cookie to the collection.
-                                    Cookie cookie = new Cookie();
-                                    cookie.setName(cookieName);
-                                    cookie.setValue(cookieValue.getValue());
-                                    cookie.setPath(cookieValue.getPath());
-                                    cookie.setDomain(cookieValue.getDomain());
-                                    cookies.add(cookie);
-                                } else {
-                                    if (logger.isLoggable(Level.INFO)) {
-                                        logger.info("getCookiesStrict(): Skipping cookie "
-                                                + cookieValue
-                                                + " since it does not match path "
-                                                + path);
-                                    }
-                                }
-                            }
-                        } else {
-                            logger.warning("getCookiesStrict(): Expected to find cookie named "
-                                    + cookieName + " but file is missing.");
-                        }
-                    }
+        for (Map.Entry<String, CookieValue> entry : domainMap.entrySet()) {
+            CookieValue cookieValue = entry.getValue();
+            if (path.startsWith(cookieValue.getPath())) {
+                Cookie cookie = new Cookie();
+                cookie.setName(entry.getKey());
+                cookie.setValue(cookieValue.getValue());
+                cookie.setPath(cookieValue.getPath());
+                cookie.setDomain(cookieValue.getDomain());
+                cookies.add(cookie);
+            } else {
+                if (logger.isLoggable(Level.INFO)) {
+                    logger.info("getCookiesStrict(): Skipping cookie "
+                            + cookieValue + " since it does not match path "
+                            + path);
                 }
             }
-        } catch (IOException ioe) {
-            logger.log(Level.SEVERE, "getCookiesStrict()", ioe);
-        } catch (ClassNotFoundException cnf) {
-            logger.log(Level.SEVERE,
-                    "getCookiesStrict(): Possible engine versioning error.",
-                    cnf);
         }
-        return cookies;
     }
 
     /**
@@ -394,12 +495,22 @@ public class CookieStore {
      * @return the cookies
      */
     public Collection<Cookie> getCookies(String hostName, String path) {
-        // Security provided by RestrictedStore.
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(GenericLocalPermission.EXT_GENERIC);
+        }
+        if ((path == null) || (path.length() == 0)) {
+            path = "/";
+        }
         Collection<String> possibleDomains = Domains
                 .getPossibleDomains(hostName);
         Collection<Cookie> cookies = new LinkedList<Cookie>();
-        for (String domain : possibleDomains) {
-            cookies.addAll(this.getCookiesStrict(domain, path));
+        synchronized (this) {
+            this.ensureLoaded();
+            this.removeExpired();
+            for (String domain : possibleDomains) {
+                this.getCookiesStrict(domain, path, cookies);
+            }
         }
         if (logger.isLoggable(Level.INFO)) {
             logger.info("getCookies(): For host=" + hostName + ", found "
@@ -407,4 +518,51 @@ public class CookieStore {
         }
         return cookies;
     }
+
+    /**
+     * A cookie in the expiration queue.
+     */
+    private static final class ExpiringCookie implements
+            Comparable<ExpiringCookie> {
+
+        /** The domain. */
+        private final String domain;
+
+        /** The name. */
+        private final String name;
+
+        /** The cookie value. */
+        private final CookieValue cookieValue;
+
+        /** The expiration time. */
+        private final long expires;
+
+        /**
+         * Instantiates a new expiring cookie.
+         *
+         * @param domain
+         *            the domain
+         * @param name
+         *            the name
+         * @param cookieValue
+         *            the cookie value, which must have an expiration time
+         */
+        private ExpiringCookie(String domain, String name,
+                CookieValue cookieValue) {
+            this.domain = domain;
+            this.name = name;
+            this.cookieValue = cookieValue;
+            this.expires = cookieValue.getExpires().longValue();
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(ExpiringCookie other) {
+            return this.expires < other.expires ? -1
+                    : (this.expires == other.expires ? 0 : 1);
+        }
+    }
 }
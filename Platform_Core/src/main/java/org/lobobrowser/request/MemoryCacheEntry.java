@@ -51,6 +51,9 @@ public class MemoryCacheEntry {
     /** The alt object size. */
     private int altObjectSize;
 
+    /** The caching rules of the response, parsed on first use. */
+    private volatile CacheControl cacheControl;
+
     /**
      * Instantiates a new memory cache entry.
      *
@@ -237,4 +240,23 @@ public class MemoryCacheEntry {
 		this.altObjectSize = altObjectSize;
 	}
 
+	/**
+	 * Gets the cache control.
+	 *
+	 * @return the cache control, or null if not parsed yet
+	 */
+	public CacheControl getCacheControl() {
+		return cacheControl;
+	}
+
+	/**
+	 * Sets the cache control.
+	 *
+	 * @param cacheControl
+	 *            the new cache control
+	 */
+	public void setCacheControl(CacheControl cacheControl) {
+		this.cacheControl = cacheControl;
+	}
+
 }
@@ -41,12 +41,10 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +56,7 @@ import org.lobobrowser.clientlet.CancelClientletException;
 import org.lobobrowser.clientlet.ClientletException;
 import org.lobobrowser.clientlet.ClientletRequest;
 import org.lobobrowser.clientlet.ClientletResponse;
+import org.lobobrowser.http.ContentDecoders;
 import org.lobobrowser.http.Cookie;
 import org.lobobrowser.http.Header;
 import org.lobobrowser.http.NameValuePair;
@@ -74,7 +73,6 @@ import org.lobobrowser.ua.UserAgent;
 import org.lobobrowser.util.BoxedObject;
 import org.lobobrowser.util.ID;
 import org.lobobrowser.util.SSLCertificate;
-import org.lobobrowser.util.SimpleThreadPool;
 import org.lobobrowser.util.SimpleThreadPoolTask;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
@@ -93,7 +91,7 @@ public final class RequestEngine {
 	private static final boolean loggerInfo = logger.isLoggable(Level.INFO);
 
 	/** The thread pool. */
-	private final SimpleThreadPool threadPool;
+	private final RequestScheduler threadPool;
 
 	/** The processing requests. */
 	private final Collection<RequestInfo> processingRequests = new HashSet<RequestInfo>();
@@ -110,13 +108,17 @@ public final class RequestEngine {
 	/** The connection settings. */
 	private final ConnectionSettings connectionSettings;
 
+	/** The URLs being revalidated in the background. */
+	private final Collection<String> revalidatingUrls = new HashSet<String>();
+
 	/**
 	 * Instantiates a new request engine.
 	 */
 	private RequestEngine() {
-		// Use few threads to avoid excessive parallelism. Note that
-		// downloads are not handled by this thread pool.
-		this.threadPool = new SimpleThreadPool("RequestEngineThreadPool", 3, 5, 60 * 1000);
+		// Enough threads for a page's subresources, still capped per host
+		// by the scheduler. Note that downloads are not handled by this
+		// thread pool.
+		this.threadPool = new RequestScheduler("RequestEngineThreadPool", 3, 8, 60 * 1000);
 
 		// Security: Private fields that require privileged access to get
 		// initialized.
@@ -233,11 +235,61 @@ public final class RequestEngine {
 	 *            the handler
 	 */
 	public void scheduleRequest(RequestHandler handler) {
+		this.scheduleRequest(handler, getPriority(handler));
+	}
+
+	/**
+	 * Schedule request.
+	 *
+	 * @param handler
+	 *            the handler
+	 * @param priority
+	 *            one of the <code>PRIORITY_</code> constants of
+	 *            {@link RequestScheduler}
+	 */
+	private void scheduleRequest(RequestHandler handler, int priority) {
 		// Note: Important to create task with current access context if there's
 		// a security manager.
 		SecurityManager sm = System.getSecurityManager();
 		AccessControlContext context = sm == null ? null : AccessController.getContext();
-		this.threadPool.schedule(new RequestHandlerTask(handler, context));
+		URL url = handler.getLatestRequestURL();
+		String host = url == null ? null : url.getHost();
+		this.threadPool.schedule(new RequestHandlerTask(handler, context), host, priority);
+	}
+
+	/**
+	 * Gets the priority of a request. Navigations of a top-level frame come
+	 * first and are the only requests exempt from the per-host limit. Frame
+	 * content, navigations within frames and downloads come next. Page
+	 * elements all have the same request type, so style sheets, which block
+	 * rendering, and scripts, which block parsing, are told apart from images
+	 * and other elements by the extension of the URL path. This only orders
+	 * elements requested through this engine; the HTML renderer fetches its
+	 * own style sheets and scripts with <code>HttpRequest</code>.
+	 *
+	 * @param handler
+	 *            the handler
+	 * @return the priority
+	 */
+	private static int getPriority(RequestHandler handler) {
+		RequestType type = handler.getRequestType();
+		if (type != RequestType.ELEMENT && type != RequestType.NONE) {
+			if (type != RequestType.FRAME && type != RequestType.DOWNLOAD
+					&& handler instanceof ClientletRequestHandler
+					&& ((ClientletRequestHandler) handler).isTopLevel()) {
+				return RequestScheduler.PRIORITY_DOCUMENT;
+			}
+			return RequestScheduler.PRIORITY_FRAME;
+		}
+		URL url = handler.getLatestRequestURL();
+		String path = url == null ? "" : url.getPath().toLowerCase();
+		if (path.endsWith(".css")) {
+			return RequestScheduler.PRIORITY_STYLESHEET;
+		}
+		if (path.endsWith(".js")) {
+			return RequestScheduler.PRIORITY_SCRIPT;
+		}
+		return RequestScheduler.PRIORITY_ELEMENT;
 	}
 
 	/** The Constant NORMAL_FORM_ENCODING. */
@@ -437,7 +489,15 @@ public final class RequestEngine {
 			connection.addRequestProperty("Referer", referrer);
 		}
 		if (cacheInfo != null) {
-			String date = cacheInfo.getDateAsText();
+			CacheControl cacheControl = cacheInfo.getCacheControl();
+			String eTag = cacheControl.getETag();
+			if (eTag != null) {
+				connection.addRequestProperty("If-None-Match", eTag);
+			}
+			String date = cacheControl.getLastModified();
+			if (date == null) {
+				date = cacheInfo.getDateAsText();
+			}
 			if (date != null) {
 				connection.addRequestProperty("If-Modified-Since", date);
 			}
@@ -445,6 +505,8 @@ public final class RequestEngine {
 		if (connection instanceof HttpURLConnection) {
 			HttpURLConnection hconnection = (HttpURLConnection) connection;
 			hconnection.setRequestMethod(requestMethod);
+			// Decoded by ClientletResponseImpl.
+			connection.addRequestProperty("Accept-Encoding", ContentDecoders.getAcceptEncoding());
 		}
 		Header[] headers = request.getExtraHeaders();
 		if (headers != null) {
@@ -539,8 +601,19 @@ public final class RequestEngine {
 							actualApproxObjectSize = approxAltObjectSize;
 						}
 					}
-					Long expiration = Urls.getExpiration(connection, currentTime);
+					Long expiration = new CacheControl(connection).getExpiration(currentTime);
+					// The content has been decoded, so the headers
+					// describing the encoded body are not cached.
+					final boolean decoded = ContentDecoders.isEncoded(connection.getContentEncoding());
 					List<NameValuePair> headers = Urls.getHeaders(connection);
+					if (decoded) {
+						Iterator<NameValuePair> i = headers.iterator();
+						while (i.hasNext()) {
+							if (isEncodingHeader(i.next().getName())) {
+								i.remove();
+							}
+						}
+					}
 					MemoryCacheEntry memEntry = new MemoryCacheEntry(content, headers, expiration, altObject,
 							actualApproxObjectSize);
 					int approxMemEntrySize = content.length + (altObject == null ? 0 : approxAltObjectSize);
@@ -556,7 +629,7 @@ public final class RequestEngine {
 								if (!hadDate && "date".equalsIgnoreCase(headerKey)) {
 									hadDate = true;
 								}
-								if (!hadContentLength && "content-length".equalsIgnoreCase(headerKey)) {
+								if (!hadContentLength && !decoded && "content-length".equalsIgnoreCase(headerKey)) {
 									hadContentLength = true;
 								}
 							}
@@ -564,7 +637,8 @@ public final class RequestEngine {
 							if (headerValue == null) {
 								break;
 							}
-							if (CacheInfo.HEADER_REQUEST_TIME.equalsIgnoreCase(headerKey)) {
+							if (CacheInfo.HEADER_REQUEST_TIME.equalsIgnoreCase(headerKey)
+									|| (decoded && isEncodingHeader(headerKey))) {
 								continue;
 							}
 							String headerPrefix = (headerKey == null) || (headerKey.length() == 0) ? ""
@@ -590,7 +664,9 @@ public final class RequestEngine {
 						out.close();
 					}
 					try {
-						cm.putPersistent(url, out.toByteArray(), false);
+						boolean compress = cacheSettings.isCompressPersistentCache()
+								&& isCompressible(connection.getContentType());
+						cm.putPersistent(url, out.toByteArray(), false, compress);
 					} catch (Exception err) {
 						logger.log(Level.WARNING, "cache(): Unable to cache response content.", err);
 					}
@@ -628,17 +704,9 @@ public final class RequestEngine {
 	 * @return true, if successful
 	 */
 	private boolean mayBeCached(HttpURLConnection connection) {
-		String cacheControl = connection.getHeaderField("Cache-Control");
-		if (cacheControl != null) {
-			StringTokenizer tok = new StringTokenizer(cacheControl, ",");
-			while (tok.hasMoreTokens()) {
-				String token = tok.nextToken().trim();
-				if ("no-cache".equalsIgnoreCase(token)) {
-					return false;
-				}
-			}
-		}
-		return true;
+		// A no-cache response is stored, but it is revalidated before each
+		// use.
+		return new CacheControl(connection).isStorable();
 	}
 
 	/**
@@ -824,37 +892,27 @@ public final class RequestEngine {
 				}
 				return cacheInfo.getURLConnection();
 			} else if (!shouldRevalidateAlways(connectionUrl, requestType)) {
-				Long expires = cacheInfo.getExpires();
-				if (expires == null) {
-					Integer defaultOffset = this.cacheSettings.getDefaultCacheExpirationOffset();
-					if (defaultOffset != null) {
-						expires = cacheInfo.getExpiresGivenOffset(defaultOffset.longValue());
-						if (loggerInfo) {
-							Date expiresDate = expires == null ? null : new Date(expires);
-							logger.info("getURLConnection(): Used default offset for " + connectionUrl + ": expires="
-									+ expiresDate);
+				Integer defaultOffset = this.cacheSettings.getDefaultCacheExpirationOffset();
+				long now = System.currentTimeMillis();
+				if (cacheInfo.isFresh(defaultOffset, now)) {
+					if (loggerInfo) {
+						if (cacheInfo.hasTransientEntry()) {
+							logger.info("getURLConnection(): FROM-RAM: " + connectionUrl + ".");
+						} else {
+							logger.info("getURLConnection(): FROM-FILE: " + connectionUrl + ".");
 						}
 					}
+					return cacheInfo.getURLConnection();
 				}
-				if (expires != null) {
-					if (expires.longValue() > System.currentTimeMillis()) {
-						if (loggerInfo) {
-							long secondsToExpiration = (expires.longValue() - System.currentTimeMillis()) / 1000;
-							if (cacheInfo.hasTransientEntry()) {
-								logger.info("getURLConnection(): FROM-RAM: " + connectionUrl + ". Expires in "
-										+ secondsToExpiration + " seconds.");
-							} else {
-								logger.info("getURLConnection(): FROM-FILE: " + connectionUrl + ". Expires in "
-										+ secondsToExpiration + " seconds.");
-							}
-						}
-						return cacheInfo.getURLConnection();
-					} else {
-						if (loggerInfo) {
-							logger.info("getURLConnection(): EXPIRED: " + connectionUrl + ". Expired on "
-									+ new Date(expires) + ".");
-						}
+				if (cacheInfo.mayServeWhileRevalidating(defaultOffset, now)) {
+					if (loggerInfo) {
+						logger.info("getURLConnection(): STALE-WHILE-REVALIDATE: " + connectionUrl + ".");
 					}
+					this.scheduleRevalidation(connectionUrl);
+					return cacheInfo.getURLConnection();
+				}
+				if (loggerInfo) {
+					logger.info("getURLConnection(): EXPIRED: " + connectionUrl + ".");
 				}
 				// If the document has expired, the cache may still
 				// be used, but only after validation.
@@ -907,6 +965,40 @@ public final class RequestEngine {
 		return connection;
 	}
 
+	/**
+	 * Checks whether a response header describes the body as sent rather
+	 * than as decoded.
+	 *
+	 * @param name
+	 *            the header name, or null
+	 * @return true, if it is Content-Encoding or Content-Length
+	 */
+	private static boolean isEncodingHeader(String name) {
+		return "content-encoding".equalsIgnoreCase(name) || "content-length".equalsIgnoreCase(name);
+	}
+
+	/**
+	 * Checks whether content of a type is worth compressing in the disk
+	 * cache. Images, archives and media are compressed already.
+	 *
+	 * @param contentType
+	 *            the content type, or null
+	 * @return true, if is compressible
+	 */
+	private static boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		String type = contentType.toLowerCase();
+		int scIdx = type.indexOf(';');
+		if (scIdx != -1) {
+			type = type.substring(0, scIdx).trim();
+		}
+		return type.startsWith("text/") || type.endsWith("+xml") || type.endsWith("+json")
+				|| type.endsWith("/xml") || type.endsWith("/json") || type.endsWith("javascript")
+				|| type.endsWith("ecmascript");
+	}
+
 	/**
 	 * Checks if is OK to retrieve from cache.
 	 *
@@ -919,6 +1011,45 @@ public final class RequestEngine {
 				&& (requestType != RequestType.DOWNLOAD);
 	}
 
+	/**
+	 * Revalidates a cached response on the request thread pool, behind all
+	 * other requests, unless a revalidation of the same URL is already under
+	 * way. The request always revalidates and stores the response again, so
+	 * the next request finds it fresh.
+	 *
+	 * @param url
+	 *            the url
+	 */
+	private void scheduleRevalidation(final URL url) {
+		final String key = Urls.getNoRefForm(url);
+		synchronized (this.revalidatingUrls) {
+			if (!this.revalidatingUrls.add(key)) {
+				return;
+			}
+		}
+		this.scheduleRequest(new SimpleRequestHandler(url, RequestType.ADDRESS_BAR) {
+			@Override
+			public boolean handleException(ClientletResponse response, Throwable exception) throws ClientletException {
+				logger.log(Level.WARNING, "scheduleRevalidation(): Unable to revalidate " + key + ".", exception);
+				return true;
+			}
+
+			@Override
+			public void processResponse(ClientletResponse response) throws ClientletException, IOException {
+				// The engine reads the rest of the response and caches it.
+			}
+
+			@Override
+			public void handleProgress(ProgressType progressType, URL url, String method, int value, int max) {
+				if (progressType == ProgressType.DONE) {
+					synchronized (revalidatingUrls) {
+						revalidatingUrls.remove(key);
+					}
+				}
+			}
+		}, RequestScheduler.PRIORITY_BACKGROUND);
+	}
+
 	/**
 	 * Process handler.
 	 *
@@ -0,0 +1,347 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.request;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.lobobrowser.util.SimpleThreadPoolTask;
+
+/**
+ * The thread pool of the {@link RequestEngine}. Waiting tasks are run in
+ * order of priority, then in the order they were scheduled, and no more than
+ * {@link #MAX_RUNNING_PER_HOST} tasks run against the same host at a time,
+ * except for top-level documents. A task whose host is at its limit is passed over in
+ * favour of the next task for another host.
+ * <p>
+ * Like {@link org.lobobrowser.util.SimpleThreadPool}, running tasks can be
+ * cancelled without shutting the pool down, and threads above the minimum
+ * exit after being idle for a while.
+ */
+final class RequestScheduler {
+
+    /** The Constant logger. */
+    private static final Logger logger = Logger
+            .getLogger(RequestScheduler.class.getName());
+
+    /** The priority of a top-level document navigation. */
+    static final int PRIORITY_DOCUMENT = 0;
+
+    /** The priority of frame content. */
+    static final int PRIORITY_FRAME = 1;
+
+    /** The priority of a style sheet. */
+    static final int PRIORITY_STYLESHEET = 2;
+
+    /** The priority of a script. */
+    static final int PRIORITY_SCRIPT = 3;
+
+    /** The priority of an image or any other page element. */
+    static final int PRIORITY_ELEMENT = 4;
+
+    /** The priority of background work such as revalidation. */
+    static final int PRIORITY_BACKGROUND = 5;
+
+    /** The maximum number of tasks running against one host. */
+    static final int MAX_RUNNING_PER_HOST = 6;
+
+    /** The waiting tasks, in the order they should run. */
+    private final TreeSet<Entry> queue = new TreeSet<Entry>();
+
+    /** The running tasks. */
+    private final Set<Entry> running = new HashSet<Entry>();
+
+    /** The number of running tasks by host. */
+    private final Map<String, Integer> runningByHost = new HashMap<String, Integer>();
+
+    /** The name. */
+    private final String name;
+
+    /** The min threads. */
+    private final int minThreads;
+
+    /** The max threads. */
+    private final int maxThreads;
+
+    /** The idle alive millis. */
+    private final int idleAliveMillis;
+
+    /** The num threads. */
+    private int numThreads;
+
+    /** The num idle threads. */
+    private int numIdleThreads;
+
+    /** The thread number. */
+    private int threadNumber;
+
+    /** The sequence of the next task. */
+    private long sequence;
+
+    /**
+     * Instantiates a new request scheduler.
+     *
+     * @param name
+     *            the name
+     * @param minShrinkToThreads
+     *            the min shrink to threads
+     * @param maxThreads
+     *            the max threads
+     * @param idleAliveMillis
+     *            the idle alive millis
+     */
+    RequestScheduler(String name, int minShrinkToThreads, int maxThreads,
+            int idleAliveMillis) {
+        this.name = name;
+        this.minThreads = minShrinkToThreads;
+        this.maxThreads = maxThreads;
+        this.idleAliveMillis = idleAliveMillis;
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param task
+     *            the task
+     * @param host
+     *            the host the task connects to, or null
+     * @param priority
+     *            one of the <code>PRIORITY_</code> constants
+     */
+    synchronized void schedule(SimpleThreadPoolTask task, String host,
+            int priority) {
+        if (task == null) {
+            throw new IllegalArgumentException("null task");
+        }
+        this.queue.add(new Entry(task, host == null ? "" : host, priority,
+                this.sequence++));
+        if (this.numIdleThreads == 0) {
+            this.addThread();
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Removes a task from the queue and cancels it if it is running.
+     *
+     * @param task
+     *            the task
+     */
+    void cancel(SimpleThreadPoolTask task) {
+        synchronized (this) {
+            Iterator<Entry> i = this.queue.iterator();
+            while (i.hasNext()) {
+                if (i.next().task.equals(task)) {
+                    i.remove();
+                }
+            }
+        }
+        task.cancel();
+    }
+
+    /**
+     * Cancels all waiting tasks and any currently running task.
+     */
+    void cancelAll() {
+        List<Entry> runningNow;
+        synchronized (this) {
+            this.queue.clear();
+            runningNow = new ArrayList<Entry>(this.running);
+        }
+        for (Entry entry : runningNow) {
+            entry.task.cancel();
+        }
+    }
+
+    /**
+     * Adds a thread if the maximum has not been reached.
+     */
+    private void addThread() {
+        if (this.numThreads < this.maxThreads) {
+            Thread t = new Thread(new ThreadRunnable(), this.name
+                    + this.threadNumber++);
+            t.setDaemon(true);
+            t.start();
+            this.numThreads++;
+        }
+    }
+
+    /**
+     * Removes the first waiting task whose host is below its limit.
+     *
+     * @return the entry, or null if no task may run now
+     */
+    private Entry take() {
+        Iterator<Entry> i = this.queue.iterator();
+        while (i.hasNext()) {
+            Entry entry = i.next();
+            Integer count = this.runningByHost.get(entry.host);
+            if (count == null || count.intValue() < MAX_RUNNING_PER_HOST
+                    || entry.priority == PRIORITY_DOCUMENT) {
+                i.remove();
+                this.running.add(entry);
+                this.runningByHost.put(entry.host, count == null ? 1 : count
+                        .intValue() + 1);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the end of a task.
+     *
+     * @param entry
+     *            the entry
+     */
+    private void finished(Entry entry) {
+        this.running.remove(entry);
+        Integer count = this.runningByHost.get(entry.host);
+        if (count != null) {
+            if (count.intValue() <= 1) {
+                this.runningByHost.remove(entry.host);
+            } else {
+                this.runningByHost.put(entry.host, count.intValue() - 1);
+            }
+        }
+        // A task for the same host may be waiting.
+        this.notifyAll();
+    }
+
+    /**
+     * A scheduled task.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        /** The task. */
+        private final SimpleThreadPoolTask task;
+
+        /** The host. */
+        private final String host;
+
+        /** The priority. */
+        private final int priority;
+
+        /** The sequence. */
+        private final long sequence;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param task
+         *            the task
+         * @param host
+         *            the host
+         * @param priority
+         *            the priority
+         * @param sequence
+         *            the sequence
+         */
+        private Entry(SimpleThreadPoolTask task, String host, int priority,
+                long sequence) {
+            this.task = task;
+            this.host = host;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        @Override
+        public int compareTo(Entry other) {
+            if (this.priority != other.priority) {
+                return this.priority < other.priority ? -1 : 1;
+            }
+            return this.sequence < other.sequence ? -1
+                    : (this.sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * The Class ThreadRunnable.
+     */
+    private class ThreadRunnable implements Runnable {
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            Object monitor = RequestScheduler.this;
+            Entry entry = null;
+            for (;;) {
+                try {
+                    synchronized (monitor) {
+                        if (entry != null) {
+                            finished(entry);
+                            entry = null;
+                        }
+                        numIdleThreads++;
+                        try {
+                            long waitBase = System.currentTimeMillis();
+                            while ((entry = take()) == null) {
+                                long maxWait = idleAliveMillis
+                                        - (System.currentTimeMillis() - waitBase);
+                                if (maxWait <= 0) {
+                                    if (numThreads > minThreads) {
+                                        // Should be only way to exit thread.
+                                        numThreads--;
+                                        return;
+                                    }
+                                    waitBase = System.currentTimeMillis();
+                                    continue;
+                                }
+                                monitor.wait(maxWait);
+                            }
+                        } finally {
+                            numIdleThreads--;
+                        }
+                    }
+                    Thread currentThread = Thread.currentThread();
+                    String baseName = currentThread.getName();
+                    try {
+                        currentThread.setName(baseName + ":" + entry.task);
+                        entry.task.run();
+                    } catch (Throwable thrown) {
+                        logger.log(Level.SEVERE, "run(): Error in task: "
+                                + entry.task + ".", thrown);
+                    } finally {
+                        currentThread.setName(baseName);
+                    }
+                } catch (Throwable thrown) {
+                    logger.log(Level.SEVERE, "run(): Error in thread pool: "
+                            + name + ".", thrown);
+                }
+            }
+        }
+    }
+}
@@ -99,6 +99,7 @@ public class CacheSettings implements Serializable {
     public void resetDefaults() {
         this.setMaxRAMCacheSize(5 * 1024 * 1024);
         this.setDefaultCacheExpirationOffset(60);
+        this.setCompressPersistentCache(true);
     }
 
     /** Gets the max ram cache size.
@@ -137,4 +138,26 @@ public class CacheSettings implements Serializable {
     public void setDefaultCacheExpirationOffset(int defaultCacheExpirationOffset) {
         this.defaultCacheExpirationOffset = defaultCacheExpirationOffset;
     }
+
+    /** The compress persistent cache. */
+    private boolean compressPersistentCache;
+
+    /** Checks whether text responses are stored compressed in the disk
+     * cache.
+	 *
+	 * @return true, if is compress persistent cache
+	 */
+    public boolean isCompressPersistentCache() {
+        return compressPersistentCache;
+    }
+
+    /** Sets whether text responses are stored compressed in the disk cache.
+     * Entries already stored are not affected.
+	 *
+	 * @param compressPersistentCache
+	 *            the new compress persistent cache
+	 */
+    public void setCompressPersistentCache(boolean compressPersistentCache) {
+        this.compressPersistentCache = compressPersistentCache;
+    }
 }
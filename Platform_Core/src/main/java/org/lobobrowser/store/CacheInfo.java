@@ -36,6 +36,15 @@ public class CacheInfo {
     /** The entry info list. */
     private java.util.List entryInfoList;
 
+    /** The hit count. */
+    private long hitCount;
+
+    /** The miss count. */
+    private long missCount;
+
+    /** The eviction count. */
+    private long evictionCount;
+
     /**
      * Instantiates a new cache info.
      *
@@ -110,4 +119,61 @@ public class CacheInfo {
 	public void setEntryInfoList(java.util.List entryInfoList) {
 		this.entryInfoList = entryInfoList;
 	}
+
+	/**
+	 * Gets the hit count.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Sets the hit count.
+	 *
+	 * @param hitCount
+	 *            the new hit count
+	 */
+	public void setHitCount(long hitCount) {
+		this.hitCount = hitCount;
+	}
+
+	/**
+	 * Gets the miss count.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Sets the miss count.
+	 *
+	 * @param missCount
+	 *            the new miss count
+	 */
+	public void setMissCount(long missCount) {
+		this.missCount = missCount;
+	}
+
+	/**
+	 * Gets the eviction count.
+	 *
+	 * @return the eviction count
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Sets the eviction count.
+	 *
+	 * @param evictionCount
+	 *            the new eviction count
+	 */
+	public void setEvictionCount(long evictionCount) {
+		this.evictionCount = evictionCount;
+	}
 }
@@ -24,17 +24,22 @@
 package org.lobobrowser.store;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.URL;
-import java.util.Arrays;
 import java.util.List;
 import java.util.jar.JarFile;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.lobobrowser.http.LRUCache;
+import org.lobobrowser.http.ConcurrentLRUCache;
 import org.lobobrowser.security.GenericLocalPermission;
 import org.lobobrowser.util.Strings;
 import org.lobobrowser.util.Urls;
@@ -42,6 +47,17 @@ import org.lobobrowser.util.io.IORoutines;
 
 /**
  * The Class CacheManager.
+ * <p>
+ * Persistent entries are tracked by a {@link DiskCacheIndex}. Least recently
+ * used files are evicted one at a time right after a write pushes the cache
+ * over its budget, so the cache directory is never walked except once, in a
+ * background thread shortly after startup, to index a cache that has no
+ * journal yet.
+ * <p>
+ * Persistent content may be stored gzip compressed. Compressed files are
+ * recognized by their magic number and inflated as they are read, so both
+ * kinds of files can be in the cache at once, and the budget applies to the
+ * space they take on disk.
  *
  * @author J. H. S.
  */
@@ -51,9 +67,6 @@ public final class CacheManager implements Runnable {
     private static final Logger logger = Logger.getLogger(CacheManager.class
             .getName());
 
-    /** The Constant AFTER_SWEEP_SLEEP. */
-    private static final int AFTER_SWEEP_SLEEP = 5 * 60 * 1000;
-
     /** The Constant INITIAL_SLEEP. */
     private static final int INITIAL_SLEEP = 30 * 1000;
 
@@ -63,18 +76,50 @@ public final class CacheManager implements Runnable {
     /** The Constant MAX_CACHE_SIZE. */
     private static final long MAX_CACHE_SIZE = 100000000;
 
+    /** The number of cache file locks, a power of two. */
+    private static final int LOCK_STRIPES = 64;
+
     /** The transient cache. */
-    private final LRUCache transientCache = new LRUCache(1000000);
+    private final ConcurrentLRUCache transientCache = new ConcurrentLRUCache(1000000);
+
+    /** The cache file locks, picked by key hash. */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /** The cache root, or null if there is no persistent cache. */
+    private final File cacheRoot;
+
+    /** The index of the persistent cache, or null if there is none. */
+    private final DiskCacheIndex index;
 
     /**
      * Instantiates a new cache manager.
      */
     private CacheManager() {
         super();
-        Thread t = new Thread(this, "CacheManager");
-        t.setDaemon(true);
-        t.setPriority(Thread.MIN_PRIORITY);
-        t.start();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+        File root;
+        try {
+            root = StorageManager.getInstance().getCacheRoot();
+        } catch (IOException ioe) {
+            // Only the transient cache is kept then.
+            logger.log(Level.WARNING, "CacheManager(): Persistent cache not available.", ioe);
+            root = null;
+        }
+        this.cacheRoot = root;
+        this.index = root == null ? null : new DiskCacheIndex(root);
+        if (this.index == null) {
+            return;
+        }
+        if (this.index.isRebuildNeeded()) {
+            Thread t = new Thread(this, "CacheManager");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+        } else {
+            this.evict();
+        }
     }
 
     /** The instance. */
@@ -111,9 +156,7 @@ public final class CacheManager implements Runnable {
      */
     public void putTransient(URL url, Object value, int approxSize) {
         String key = Urls.getNoRefForm(url);
-        synchronized (this.transientCache) {
-            this.transientCache.put(key, value, approxSize);
-        }
+        this.transientCache.put(key, value, approxSize);
     }
 
     /**
@@ -125,9 +168,7 @@ public final class CacheManager implements Runnable {
      */
     public Object getTransient(URL url) {
         String key = Urls.getNoRefForm(url);
-        synchronized (this.transientCache) {
-            return this.transientCache.get(key);
-        }
+        return this.transientCache.get(key);
     }
 
     /**
@@ -138,9 +179,7 @@ public final class CacheManager implements Runnable {
      */
     public void removeTransient(URL url) {
         String key = Urls.getNoRefForm(url);
-        synchronized (this.transientCache) {
-            this.transientCache.remove(key);
-        }
+        this.transientCache.remove(key);
     }
 
     /** Sets the max transient cache size.
@@ -149,9 +188,7 @@ public final class CacheManager implements Runnable {
 	 *            the new max transient cache size
 	 */
     public void setMaxTransientCacheSize(int approxMaxSize) {
-        synchronized (this.transientCache) {
-            this.transientCache.setApproxMaxSize(approxMaxSize);
-        }
+        this.transientCache.setApproxMaxSize(approxMaxSize);
     }
 
     /** Gets the max transient cache size.
@@ -159,9 +196,7 @@ public final class CacheManager implements Runnable {
 	 * @return the max transient cache size
 	 */
     public int getMaxTransientCacheSize() {
-        synchronized (this.transientCache) {
-            return this.transientCache.getApproxMaxSize();
-        }
+        return this.transientCache.getApproxMaxSize();
     }
 
     /** Gets the transient cache info.
@@ -169,15 +204,14 @@ public final class CacheManager implements Runnable {
 	 * @return the transient cache info
 	 */
     public CacheInfo getTransientCacheInfo() {
-        long approxSize;
-        int numEntries;
-        List entryInfo;
-        synchronized (this.transientCache) {
-            approxSize = this.transientCache.getApproxSize();
-            numEntries = this.transientCache.getNumEntries();
-            entryInfo = this.transientCache.getEntryInfoList();
-        }
-        return new CacheInfo(approxSize, numEntries, entryInfo);
+        ConcurrentLRUCache cache = this.transientCache;
+        List entryInfo = cache.getEntryInfoList();
+        CacheInfo info = new CacheInfo(cache.getApproxSize(), entryInfo.size(),
+                entryInfo);
+        info.setHitCount(cache.getHitCount());
+        info.setMissCount(cache.getMissCount());
+        info.setEvictionCount(cache.getEvictionCount());
+        return info;
     }
 
     /**
@@ -194,19 +228,46 @@ public final class CacheManager implements Runnable {
      */
     public void putPersistent(URL url, byte[] rawContent, boolean isDecoration)
             throws IOException {
+        this.putPersistent(url, rawContent, isDecoration, false);
+    }
+
+    /**
+     * Put persistent, optionally compressing the content.
+     *
+     * @param url
+     *            the url
+     * @param rawContent
+     *            the raw content
+     * @param isDecoration
+     *            the is decoration
+     * @param compress
+     *            whether to gzip the content on disk, which only pays for
+     *            content that is not compressed already
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void putPersistent(URL url, byte[] rawContent, boolean isDecoration,
+            boolean compress) throws IOException {
+        DiskCacheIndex index = this.getIndex();
         File cacheFile = getCacheFile(url, isDecoration);
-        synchronized (getLock(cacheFile)) {
+        String key = this.getKey(cacheFile);
+        synchronized (this.getLock(key)) {
             File parent = cacheFile.getParentFile();
             if ((parent != null) && !parent.exists()) {
                 parent.mkdirs();
             }
-            FileOutputStream fout = new FileOutputStream(cacheFile);
+            OutputStream fout = new FileOutputStream(cacheFile);
             try {
+                if (compress) {
+                    fout = new GZIPOutputStream(fout, 8192);
+                }
                 fout.write(rawContent);
             } finally {
                 fout.close();
             }
+            index.put(key, cacheFile.length());
         }
+        this.evict();
     }
 
     /**
@@ -224,14 +285,53 @@ public final class CacheManager implements Runnable {
             throws IOException {
         // We don't return an InputStream because further synchronization
         // would be needed to prevent concurrent writes into the file.
+        DiskCacheIndex index = this.getIndex();
         File cacheFile = getCacheFile(url, isDecoration);
-        synchronized (getLock(cacheFile)) {
-            cacheFile.setLastModified(System.currentTimeMillis());
+        String key = this.getKey(cacheFile);
+        synchronized (this.getLock(key)) {
+            byte[] content;
             try {
-                return IORoutines.load(cacheFile);
+                content = load(cacheFile);
             } catch (FileNotFoundException fnf) {
+                index.remove(key);
                 return null;
             }
+            index.touch(key, cacheFile.length());
+            return content;
+        }
+    }
+
+    /**
+     * Loads a cache file, inflating it while it is read if it is compressed.
+     *
+     * @param file
+     *            the file
+     * @return the content
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static byte[] load(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File '" + file.getName() + "' too big");
+        }
+        PushbackInputStream in = new PushbackInputStream(new FileInputStream(
+                file), 2);
+        try {
+            byte[] magic = new byte[2];
+            int n = in.read(magic);
+            if (n > 0) {
+                in.unread(magic, 0, n);
+            }
+            int header = (magic[0] & 0xFF) | ((magic[1] & 0xFF) << 8);
+            if ((n == 2) && (header == GZIPInputStream.GZIP_MAGIC)) {
+                // Text usually shrinks three to five times.
+                InputStream gin = new GZIPInputStream(in, 8192);
+                return IORoutines.load(gin, (int) Math.min(length * 4, 1 << 20));
+            }
+            return IORoutines.loadExact(in, (int) length);
+        } finally {
+            in.close();
         }
     }
 
@@ -248,8 +348,11 @@ public final class CacheManager implements Runnable {
      */
     public boolean removePersistent(URL url, boolean isDecoration)
             throws IOException {
+        DiskCacheIndex index = this.getIndex();
         File cacheFile = getCacheFile(url, isDecoration);
-        synchronized (getLock(cacheFile)) {
+        String key = this.getKey(cacheFile);
+        synchronized (this.getLock(key)) {
+            index.remove(key);
             return cacheFile.delete();
         }
     }
@@ -264,8 +367,10 @@ public final class CacheManager implements Runnable {
      *             Signals that an I/O exception has occurred.
      */
     public JarFile getJarFile(URL url) throws IOException {
+        DiskCacheIndex index = this.getIndex();
         File cacheFile = getCacheFile(url, false);
-        synchronized (getLock(cacheFile)) {
+        String key = this.getKey(cacheFile);
+        synchronized (this.getLock(key)) {
             if (!cacheFile.exists()) {
                 if (Urls.isLocalFile(url)) {
                     return new JarFile(url.getFile());
@@ -274,7 +379,7 @@ public final class CacheManager implements Runnable {
                         "JAR file cannot be obtained for a URL that is not cached locally: "
                                 + url + ".");
             }
-            cacheFile.setLastModified(System.currentTimeMillis());
+            index.touch(key, cacheFile.length());
             return new JarFile(cacheFile);
         }
     }
@@ -312,16 +417,47 @@ public final class CacheManager implements Runnable {
     }
 
     /**
-     * Gets the lock.
+     * Gets the index key of a cache file, its path relative to the cache
+     * root.
      *
      * @param file
      *            the file
-     * @return the lock
+     * @return the key
+     */
+    private String getKey(File file) {
+        String path = file.getAbsolutePath();
+        String rootPath = this.cacheRoot.getAbsolutePath();
+        if (path.startsWith(rootPath) && path.length() > rootPath.length()) {
+            path = path.substring(rootPath.length() + 1);
+        }
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Gets the index of the persistent cache.
+     *
+     * @return the index
      * @throws IOException
-     *             Signals that an I/O exception has occurred.
+     *             if there is no persistent cache.
      */
-    private static Object getLock(File file) throws IOException {
-        return ("cm:" + file.getCanonicalPath()).intern();
+    private DiskCacheIndex getIndex() throws IOException {
+        DiskCacheIndex index = this.index;
+        if (index == null) {
+            throw new IOException("Persistent cache not available.");
+        }
+        return index;
+    }
+
+    /**
+     * Gets the lock of a cache file.
+     *
+     * @param key
+     *            the index key of the file
+     * @return the lock
+     */
+    private Object getLock(String key) {
+        int h = key.hashCode();
+        return this.locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
     }
 
     /**
@@ -338,12 +474,15 @@ public final class CacheManager implements Runnable {
      */
     public boolean checkCacheFile(URL url, boolean isDecoration)
             throws IOException {
+        DiskCacheIndex index = this.getIndex();
         File file = getCacheFile(url, isDecoration);
-        synchronized (getLock(file)) {
+        String key = this.getKey(file);
+        synchronized (this.getLock(key)) {
             if (file.exists()) {
-                file.setLastModified(System.currentTimeMillis());
+                index.touch(key, file.length());
                 return true;
             }
+            index.remove(key);
             return false;
         }
     }
@@ -362,6 +501,9 @@ public final class CacheManager implements Runnable {
         File hostHome = new File(loboHome, "HostStore");
         deleteRecursive(cacheHome);
         deleteRecursive(hostHome);
+        if (this.index != null) {
+            this.index.clear();
+        }
     }
 
     /**
@@ -407,18 +549,11 @@ public final class CacheManager implements Runnable {
         } catch (InterruptedException ie) {
             // ignore
         }
-        for (;;) {
-            try {
-                this.sweepCache();
-                Thread.sleep(AFTER_SWEEP_SLEEP);
-            } catch (Throwable err) {
-                logger.log(Level.SEVERE, "run()", err);
-                try {
-                    Thread.sleep(AFTER_SWEEP_SLEEP);
-                } catch (InterruptedException ie) {
-                    // ignore
-                }
-            }
+        try {
+            this.index.rebuild();
+            this.evict();
+        } catch (Throwable err) {
+            logger.log(Level.SEVERE, "run()", err);
         }
     }
 
@@ -431,93 +566,28 @@ public final class CacheManager implements Runnable {
     }
 
     /**
-     * Sweep cache.
-     *
-     * @throws Exception
-     *             the exception
+     * Deletes least recently used cache files until the cache is within its
+     * budget. Files accessed within the last minute are kept.
      */
-    private void sweepCache() throws Exception {
-        CacheStoreInfo sinfo = this.getCacheStoreInfo();
-        if (logger.isLoggable(Level.INFO)) {
-            logger.info("sweepCache(): Cache size is " + sinfo.getLength()
-                    + " with a max of " + this.getMaxCacheSize()
-                    + ". The number of cache files is "
-                    + sinfo.getFileInfos().length + ".");
+    private void evict() {
+        if (this.index == null) {
+            return;
         }
-        long oversize = sinfo.getLength() - this.getMaxCacheSize();
-        if (oversize > 0) {
-            CacheFileInfo[] finfos = sinfo.getFileInfos();
-            // Sort in ascending order of modification
-            Arrays.sort(finfos);
-            long okToDeleteBeforeThis = System.currentTimeMillis()
-                    - DELETE_TOLERANCE;
-            for (int i = 0; i < finfos.length; i++) {
-                try {
-                    Thread.yield();
-                    CacheFileInfo finfo = finfos[i];
-                    synchronized (getLock(finfo.getFile())) {
-                        long lastModified = finfo.getLastModified();
-                        if (lastModified < okToDeleteBeforeThis) {
-                            Thread.sleep(1);
-                            long time1 = System.currentTimeMillis();
-                            finfo.delete();
-                            long time2 = System.currentTimeMillis();
-                            if (logger.isLoggable(Level.INFO)) {
-                                logger.info("sweepCache(): Removed " + finfo
-                                        + " in " + (time2 - time1) + " ms.");
-                            }
-                            oversize -= finfo.getInitialLength();
-                            if (oversize <= 0) {
-                                break;
-                            }
-                        }
+        long okToDeleteBeforeThis = System.currentTimeMillis()
+                - DELETE_TOLERANCE;
+        String key;
+        while ((key = this.index.evictEldest(this.getMaxCacheSize(),
+                okToDeleteBeforeThis)) != null) {
+            synchronized (this.getLock(key)) {
+                // The file may have been written again since it was evicted.
+                if (!this.index.contains(key)) {
+                    File file = new File(this.cacheRoot, key);
+                    file.delete();
+                    if (logger.isLoggable(Level.INFO)) {
+                        logger.info("evict(): Removed " + file + ".");
                     }
-                } catch (Throwable thrown) {
-                    logger.log(Level.WARNING, "sweepCache()", thrown);
                 }
             }
         }
     }
-
-    /** Gets the cache store info.
-	 *
-	 * @return the cache store info
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-    private CacheStoreInfo getCacheStoreInfo() throws IOException {
-        CacheStoreInfo csinfo = new CacheStoreInfo();
-        File cacheRoot = StorageManager.getInstance().getCacheRoot();
-        populateCacheStoreInfo(csinfo, cacheRoot);
-        return csinfo;
-    }
-
-    /**
-     * Populate cache store info.
-     *
-     * @param csinfo
-     *            the csinfo
-     * @param directory
-     *            the directory
-     */
-    private void populateCacheStoreInfo(CacheStoreInfo csinfo, File directory) {
-        File[] files = directory.listFiles();
-        if (files == null) {
-            logger.severe("populateCacheStoreInfo(): Unexpected: '" + directory
-                    + "' is not a directory.");
-            return;
-        }
-        if (files.length == 0) {
-            directory.delete();
-        }
-        for (int i = 0; i < files.length; i++) {
-            Thread.yield();
-            File file = files[i];
-            if (file.isDirectory()) {
-                this.populateCacheStoreInfo(csinfo, file);
-            } else {
-                csinfo.addCacheFile(file);
-            }
-        }
-    }
 }
@@ -0,0 +1,439 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The in-memory index of the persistent cache, backed by an append-only
+ * journal in the cache root.
+ * <p>
+ * Entries are kept in access order, so the least recently used entry is
+ * always the first one and eviction costs O(1) per entry. Every change is
+ * appended to the journal, a {@link JournalFile}, as one record:
+ *
+ * <pre>
+ * PUT    key length lastAccess
+ * READ   key lastAccess
+ * REMOVE key
+ * </pre>
+ *
+ * On startup the journal is replayed to rebuild the index. When the
+ * journal holds many more records than there are entries it is compacted
+ * into one <code>PUT</code> per entry. If there is no journal yet, the index
+ * starts empty and the files already in the cache root are added once by
+ * {@link #rebuild()}, which the cache manager runs in the background.
+ * <p>
+ * Response validators are not indexed; they are kept with the headers at the
+ * start of each cache file.
+ * <p>
+ * Keys are paths relative to the cache root with <code>/</code> separators.
+ * All methods are synchronized on the index; callers serialize access to the
+ * cache files themselves.
+ */
+final class DiskCacheIndex {
+
+    /** The Constant logger. */
+    private static final Logger logger = Logger.getLogger(DiskCacheIndex.class
+            .getName());
+
+    /** The name of the journal file in the cache root. */
+    static final String JOURNAL_FILE = "journal";
+
+    /** The Constant PUT. */
+    private static final String PUT = "PUT";
+
+    /** The Constant READ. */
+    private static final String READ = "READ";
+
+    /** The Constant REMOVE. */
+    private static final String REMOVE = "REMOVE";
+
+    /** The minimum number of redundant records before compaction. */
+    private static final int COMPACT_THRESHOLD = 2000;
+
+    /** The cache root. */
+    private final File root;
+
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            1024, 0.75f, true);
+
+    /** The total length of the indexed files. */
+    private long size;
+
+    /** The number of journal records not needed to rebuild the index. */
+    private int redundantRecords;
+
+    /** The journal. */
+    private final JournalFile journal;
+
+    /** Whether the files in the cache root still have to be indexed. */
+    private boolean rebuildNeeded;
+
+    /**
+     * Instantiates a new disk cache index and loads it from the journal. If
+     * there is no journal, the index starts empty and needs a
+     * {@link #rebuild()}.
+     *
+     * @param root
+     *            the cache root
+     */
+    DiskCacheIndex(File root) {
+        this.root = root;
+        this.journal = new JournalFile(new File(root, JOURNAL_FILE));
+        try {
+            if (this.journal.exists()) {
+                this.journal.replay(new JournalFile.RecordHandler() {
+                    @Override
+                    public boolean handleRecord(String[] fields) {
+                        return replayRecord(fields);
+                    }
+                });
+                if (this.redundantRecords >= COMPACT_THRESHOLD) {
+                    this.compact();
+                }
+            } else {
+                this.rebuildNeeded = true;
+                this.compact();
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "DiskCacheIndex(): Unable to open cache journal.", ioe);
+        }
+    }
+
+    /**
+     * Records a file written into the cache.
+     *
+     * @param key
+     *            the key
+     * @param length
+     *            the length of the file
+     */
+    synchronized void put(String key, long length) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key, length, now);
+        this.add(entry);
+        this.append(PUT, key, String.valueOf(length), String.valueOf(now));
+    }
+
+    /**
+     * Records an access to a cached file. A file found on disk that is not in
+     * the index, for example one written before a crash, is added to it.
+     *
+     * @param key
+     *            the key
+     * @param length
+     *            the length of the file
+     */
+    synchronized void touch(String key, long length) {
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.put(key, length);
+        } else {
+            entry.lastAccess = System.currentTimeMillis();
+            this.append(READ, key, String.valueOf(entry.lastAccess));
+        }
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key
+     *            the key
+     * @return true, if the key was indexed
+     */
+    synchronized boolean remove(String key) {
+        Entry entry = this.entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        this.size -= entry.length;
+        this.append(REMOVE, key);
+        return true;
+    }
+
+    /**
+     * Checks whether a key is indexed.
+     *
+     * @param key
+     *            the key
+     * @return true, if successful
+     */
+    synchronized boolean contains(String key) {
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Removes the least recently used entry if the cache is over budget.
+     *
+     * @param maxSize
+     *            the maximum total length
+     * @param okToEvictBeforeThis
+     *            entries accessed at or after this time are kept
+     * @return the key of the removed entry, whose file should be deleted, or
+     *         null if nothing needs to be evicted
+     */
+    synchronized String evictEldest(long maxSize, long okToEvictBeforeThis) {
+        if (this.size <= maxSize) {
+            return null;
+        }
+        Iterator<Entry> i = this.entries.values().iterator();
+        if (!i.hasNext()) {
+            return null;
+        }
+        Entry eldest = i.next();
+        if (eldest.lastAccess >= okToEvictBeforeThis) {
+            return null;
+        }
+        i.remove();
+        this.size -= eldest.length;
+        this.append(REMOVE, eldest.key);
+        return eldest.key;
+    }
+
+    /**
+     * Removes every entry and truncates the journal.
+     */
+    synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+        this.redundantRecords = 0;
+        try {
+            this.compact();
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "clear(): Unable to truncate cache journal.", ioe);
+        }
+    }
+
+    /**
+     * Checks whether the files in the cache root still have to be indexed.
+     *
+     * @return true, if successful
+     */
+    synchronized boolean isRebuildNeeded() {
+        return this.rebuildNeeded;
+    }
+
+    /**
+     * Adds the files in the cache root that are not indexed yet and rewrites
+     * the journal. They count as less recently used than every indexed entry,
+     * in the order they were last modified. The cache root is walked without
+     * holding the lock of the index.
+     */
+    void rebuild() {
+        CacheStoreInfo sinfo = new CacheStoreInfo();
+        this.addFiles(sinfo, this.root);
+        CacheFileInfo[] finfos = sinfo.getFileInfos();
+        Arrays.sort(finfos);
+        int prefixLength = this.root.getAbsolutePath().length() + 1;
+        synchronized (this) {
+            LinkedHashMap<String, Entry> indexed = new LinkedHashMap<String, Entry>(
+                    this.entries);
+            this.entries.clear();
+            this.size = 0;
+            for (CacheFileInfo finfo : finfos) {
+                String key = finfo.getFile().getAbsolutePath()
+                        .substring(prefixLength)
+                        .replace(File.separatorChar, '/');
+                if (!indexed.containsKey(key)) {
+                    this.add(new Entry(key, finfo.getInitialLength(), finfo
+                            .getLastModified()));
+                }
+            }
+            for (Entry entry : indexed.values()) {
+                this.add(entry);
+            }
+            this.rebuildNeeded = false;
+            try {
+                this.compact();
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "rebuild(): Unable to rewrite cache journal.", ioe);
+            }
+        }
+    }
+
+    /**
+     * Gets the total length of the indexed files.
+     *
+     * @return the size
+     */
+    synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    synchronized int getNumEntries() {
+        return this.entries.size();
+    }
+
+    /**
+     * Adds an entry, replacing any entry with the same key.
+     *
+     * @param entry
+     *            the entry
+     */
+    private void add(Entry entry) {
+        Entry old = this.entries.put(entry.key, entry);
+        this.size += entry.length;
+        if (old != null) {
+            this.size -= old.length;
+            this.redundantRecords++;
+        }
+    }
+
+    /**
+     * Appends a record to the journal and compacts it if it has grown too
+     * large.
+     *
+     * @param fields
+     *            the fields, the first one being the record type
+     */
+    private void append(String... fields) {
+        try {
+            this.journal.append(fields);
+            this.journal.flush();
+            if (!PUT.equals(fields[0])) {
+                this.redundantRecords++;
+            }
+            if (this.redundantRecords >= COMPACT_THRESHOLD
+                    && this.redundantRecords >= this.entries.size()) {
+                this.compact();
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "append(): Unable to write cache journal.", ioe);
+            this.journal.close();
+        }
+    }
+
+    /**
+     * Replays a journal record into the index.
+     *
+     * @param fields
+     *            the fields of the record
+     * @return false if the record is malformed
+     */
+    private boolean replayRecord(String[] fields) {
+        String key = fields[1];
+        if (PUT.equals(fields[0]) && fields.length == 4) {
+            this.add(new Entry(key, Long.parseLong(fields[2]), Long
+                    .parseLong(fields[3])));
+        } else if (READ.equals(fields[0]) && fields.length == 3) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                entry.lastAccess = Long.parseLong(fields[2]);
+            }
+            this.redundantRecords++;
+        } else if (REMOVE.equals(fields[0]) && fields.length == 2) {
+            Entry entry = this.entries.remove(key);
+            if (entry != null) {
+                this.size -= entry.length;
+            }
+            this.redundantRecords++;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the cache files under a directory.
+     *
+     * @param sinfo
+     *            the sinfo
+     * @param directory
+     *            the directory
+     */
+    private void addFiles(CacheStoreInfo sinfo, File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                this.addFiles(sinfo, file);
+            } else if (!directory.equals(this.root)
+                    || !file.getName().startsWith(JOURNAL_FILE)) {
+                sinfo.addCacheFile(file);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record per entry.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private void compact() throws IOException {
+        List<String[]> records = new ArrayList<String[]>(this.entries.size());
+        for (Entry entry : this.entries.values()) {
+            records.add(new String[] { PUT, entry.key,
+                    String.valueOf(entry.length),
+                    String.valueOf(entry.lastAccess) });
+        }
+        this.journal.rewrite(records);
+        this.redundantRecords = 0;
+    }
+
+    /**
+     * An indexed cache file.
+     */
+    private static class Entry {
+
+        /** The key. */
+        private final String key;
+
+        /** The length of the file. */
+        private final long length;
+
+        /** The time of the last access. */
+        private long lastAccess;
+
+        /**
+         * Instantiates a new entry.
+         *
+         * @param key
+         *            the key
+         * @param length
+         *            the length
+         * @param lastAccess
+         *            the last access
+         */
+        private Entry(String key, long length, long lastAccess) {
+            this.key = key;
+            this.length = length;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
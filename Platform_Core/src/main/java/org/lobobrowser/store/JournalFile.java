@@ -0,0 +1,272 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only file of records, one per line, with tab separated, URL
+ * encoded fields. The first field is the type of the record. A line that
+ * cannot be replayed, such as one cut short by a crash, is skipped. The file
+ * is compacted by writing the records still needed to a temporary file that
+ * then replaces it.
+ * <p>
+ * Instances are not synchronized; callers serialize access themselves.
+ */
+public final class JournalFile {
+
+    /** The Constant logger. */
+    private static final Logger logger = Logger.getLogger(JournalFile.class
+            .getName());
+
+    /** The file. */
+    private final File file;
+
+    /** The writer, or null if the file is not open for appending. */
+    private Writer writer;
+
+    /**
+     * Instantiates a new journal file.
+     *
+     * @param file
+     *            the file
+     */
+    public JournalFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Checks whether the file exists.
+     *
+     * @return true, if successful
+     */
+    public boolean exists() {
+        return this.file.exists();
+    }
+
+    /**
+     * Reads the records in the file and passes each one to the handler, with
+     * its fields decoded.
+     *
+     * @param handler
+     *            the handler
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void replay(RecordHandler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                boolean handled;
+                try {
+                    for (int i = 1; i < fields.length; i++) {
+                        fields[i] = decode(fields[i]);
+                    }
+                    handled = handler.handleRecord(fields);
+                } catch (RuntimeException re) {
+                    handled = false;
+                }
+                if (!handled) {
+                    logger.warning("replay(): Ignoring malformed record in "
+                            + this.file.getName() + ": " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Appends a record, opening the file for appending if needed. The record
+     * is buffered until {@link #flush()}.
+     *
+     * @param fields
+     *            the fields, the first one being the record type
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void append(String... fields) throws IOException {
+        Writer writer = this.writer;
+        if (writer == null) {
+            writer = open(this.file, true);
+            this.writer = writer;
+        }
+        writeRecord(writer, fields);
+    }
+
+    /**
+     * Writes the appended records to the file.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void flush() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Replaces the content of the file with the given records.
+     *
+     * @param records
+     *            the records
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public void rewrite(Iterable<String[]> records) throws IOException {
+        this.close();
+        File tmpFile = new File(this.file.getPath() + ".tmp");
+        Writer out = open(tmpFile, false);
+        try {
+            for (String[] record : records) {
+                writeRecord(out, record);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(this.file)) {
+            this.file.delete();
+            if (!tmpFile.renameTo(this.file)) {
+                throw new IOException("Unable to replace " + this.file + ".");
+            }
+        }
+    }
+
+    /**
+     * Closes the file. It is opened again by the next {@link #append}.
+     */
+    public void close() {
+        Writer writer = this.writer;
+        if (writer != null) {
+            this.writer = null;
+            try {
+                writer.close();
+            } catch (IOException ioe) {
+                logger.log(Level.WARNING, "close()", ioe);
+            }
+        }
+    }
+
+    /**
+     * Opens a file for writing, creating its directory if needed.
+     *
+     * @param file
+     *            the file
+     * @param append
+     *            whether to append to the file
+     * @return the writer
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static Writer open(File file, boolean append) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                file, append), "UTF-8"));
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param out
+     *            the out
+     * @param fields
+     *            the fields
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    private static void writeRecord(Writer out, String[] fields)
+            throws IOException {
+        out.write(fields[0]);
+        for (int i = 1; i < fields.length; i++) {
+            out.write('\t');
+            out.write(encode(fields[i]));
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Encodes a field so it holds no tab or line break.
+     *
+     * @param value
+     *            the value, or null
+     * @return the encoded value
+     */
+    private static String encode(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException(uee);
+        }
+    }
+
+    /**
+     * Decodes a field.
+     *
+     * @param value
+     *            the encoded value
+     * @return the value
+     */
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException(uee);
+        }
+    }
+
+    /**
+     * Receives the records of a journal file as it is replayed.
+     */
+    public interface RecordHandler {
+
+        /**
+         * Handles a record.
+         *
+         * @param fields
+         *            the decoded fields, the first one being the record type
+         * @return false if the record is malformed
+         */
+        boolean handleRecord(String[] fields);
+    }
+}
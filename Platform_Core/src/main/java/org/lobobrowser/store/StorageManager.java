@@ -27,6 +27,8 @@ import java.io.File;
 import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -220,6 +222,36 @@ public class StorageManager extends StorageManagerCommon implements Runnable {
         return store;
     }
 
+    /**
+     * Gets the names of the hosts that have a restricted store.
+     *
+     * @return the host names
+     */
+    public Collection<String> getRestrictedStoreHostNames() {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(GenericLocalPermission.EXT_GENERIC);
+        }
+        return AccessController
+                .doPrivileged(new PrivilegedAction<Collection<String>>() {
+                    @Override
+                    public Collection<String> run() {
+                        Collection<String> hostNames = new ArrayList<String>();
+                        File[] domainDirs = new File(storeDirectory,
+                                HOST_STORE_DIR).listFiles();
+                        if (domainDirs != null) {
+                            for (File domainDir : domainDirs) {
+                                if (domainDir.isDirectory()) {
+                                    hostNames.add(getHostName(domainDir
+                                            .getName()));
+                                }
+                            }
+                        }
+                        return hostNames;
+                    }
+                });
+    }
+
     /** Gets the settings directory.
 	 *
 	 * @return the settings directory
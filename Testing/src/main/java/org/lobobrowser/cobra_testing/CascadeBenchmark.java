@@ -0,0 +1,111 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.cobra_testing;
+
+import java.io.StringReader;
+
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
+import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.html.parser.DocumentBuilderImpl;
+import org.lobobrowser.html.parser.InputSourceImpl;
+import org.lobobrowser.html.test.SimpleUserAgentContext;
+import org.w3c.dom.NodeList;
+
+/**
+ * Times the style cascade of a deep synthetic document against a style sheet
+ * made of descendant selectors, most of which do not match.
+ */
+public class CascadeBenchmark {
+
+	/** The depth of each nested block. */
+	private static final int DEPTH = 20;
+
+	/** The number of nested blocks. */
+	private static final int BLOCKS = 50;
+
+	/** The number of descendant rules. */
+	private static final int RULES = 400;
+
+	/** The number of measured iterations. */
+	private static final int ITERATIONS = 20;
+
+	public static void main(String[] args) throws Exception {
+		DocumentBuilderImpl builder = new DocumentBuilderImpl(new SimpleUserAgentContext());
+		HTMLDocumentImpl document = (HTMLDocumentImpl) builder
+				.parse(new InputSourceImpl(new StringReader(buildDocument()), "http://localhost/"));
+		NodeList elements = document.getElementsByTagName("*");
+		int length = elements.getLength();
+		System.out.println("Elements: " + length + ", rules: " + RULES);
+		for (int i = 0; i < ITERATIONS / 2; i++) {
+			cascade(document, elements);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			cascade(document, elements);
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println("Average cascade: " + (elapsed / ITERATIONS / 1000) + " us, "
+				+ (elapsed / ITERATIONS / length) + " ns per element");
+	}
+
+	/**
+	 * Computes the style of every element from scratch, including the
+	 * rebuild of the rule index.
+	 *
+	 * @param document
+	 *            the document
+	 * @param elements
+	 *            the elements
+	 */
+	private static void cascade(HTMLDocumentImpl document, NodeList elements) {
+		document.allInvalidated(true);
+		int length = elements.getLength();
+		for (int i = 0; i < length; i++) {
+			((HTMLElementImpl) elements.item(i)).getCurrentStyle();
+		}
+	}
+
+	/**
+	 * Builds the document.
+	 *
+	 * @return the html
+	 */
+	private static String buildDocument() {
+		StringBuilder html = new StringBuilder("<html><head><style>");
+		for (int i = 0; i < RULES; i++) {
+			html.append(".absent").append(i).append(" div span { color: red }\n");
+			html.append("section.c").append(i % DEPTH).append(" .missing p { color: blue }\n");
+		}
+		html.append(".level0 .level").append(DEPTH - 1).append(" { color: green }\n");
+		html.append("</style></head><body>");
+		for (int b = 0; b < BLOCKS; b++) {
+			for (int d = 0; d < DEPTH; d++) {
+				html.append("<div class='level").append(d).append("'>");
+			}
+			html.append("<span>text</span><p>para</p>");
+			for (int d = 0; d < DEPTH; d++) {
+				html.append("</div>");
+			}
+		}
+		html.append("</body></html>");
+		return html.toString();
+	}
+}
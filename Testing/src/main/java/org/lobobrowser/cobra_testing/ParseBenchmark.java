@@ -0,0 +1,160 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.cobra_testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lobobrowser.html.parser.DocumentBuilderImpl;
+import org.lobobrowser.html.parser.InputSourceImpl;
+import org.lobobrowser.html.test.SimpleUserAgentContext;
+
+/**
+ * Measures HTML parser throughput. The arguments are saved pages or
+ * directories of saved pages; without arguments a large synthetic page is
+ * parsed. Reports megabytes of source per second and, where the JVM supports
+ * it, bytes allocated per megabyte of source.
+ */
+public class ParseBenchmark {
+
+	/** The number of warm-up passes over the corpus. */
+	private static final int WARMUP = 5;
+
+	/** The number of measured passes over the corpus. */
+	private static final int ITERATIONS = 10;
+
+	/** The number of repeated blocks in the synthetic page. */
+	private static final int SYNTHETIC_BLOCKS = 5000;
+
+	public static void main(String[] args) throws Exception {
+		List<String> corpus = new ArrayList<String>();
+		for (String arg : args) {
+			addPages(new File(arg), corpus);
+		}
+		if (corpus.isEmpty()) {
+			corpus.add(buildDocument());
+		}
+		long chars = 0;
+		for (String page : corpus) {
+			chars += page.length();
+		}
+		double megabytes = chars / (1024.0 * 1024.0);
+		System.out.println("Pages: " + corpus.size() + ", source: " + String.format("%.2f", megabytes) + " MB");
+		DocumentBuilderImpl builder = new DocumentBuilderImpl(new SimpleUserAgentContext());
+		for (int i = 0; i < WARMUP; i++) {
+			parseAll(builder, corpus);
+		}
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		boolean allocationSupported = threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported();
+		long allocatedBefore = allocationSupported
+				? ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId) : 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			parseAll(builder, corpus);
+		}
+		long elapsed = System.nanoTime() - start;
+		double seconds = elapsed / 1e9;
+		System.out.println("Throughput: " + String.format("%.2f", megabytes * ITERATIONS / seconds) + " MB/s");
+		if (allocationSupported) {
+			long allocated = ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(threadId)
+					- allocatedBefore;
+			System.out.println("Allocated: " + String.format("%.1f", allocated / (megabytes * ITERATIONS) / 1024.0)
+					+ " KB per MB of source");
+		}
+	}
+
+	/**
+	 * Parses every page of the corpus into a new document.
+	 *
+	 * @param builder
+	 *            the builder
+	 * @param corpus
+	 *            the corpus
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void parseAll(DocumentBuilderImpl builder, List<String> corpus) throws Exception {
+		for (String page : corpus) {
+			builder.parse(new InputSourceImpl(new StringReader(page), "http://localhost/"));
+		}
+	}
+
+	/**
+	 * Adds a saved page, or every <code>.htm</code> and <code>.html</code>
+	 * file under a directory.
+	 *
+	 * @param file
+	 *            the file
+	 * @param corpus
+	 *            the corpus
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void addPages(File file, List<String> corpus) throws IOException {
+		if (file.isDirectory()) {
+			File[] files = file.listFiles();
+			if (files != null) {
+				for (File child : files) {
+					String name = child.getName().toLowerCase();
+					if (child.isDirectory() || name.endsWith(".htm") || name.endsWith(".html")) {
+						addPages(child, corpus);
+					}
+				}
+			}
+		} else {
+			corpus.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Builds a synthetic page with the usual mix of markup, attributes,
+	 * entities, comments and text.
+	 *
+	 * @return the html
+	 */
+	private static String buildDocument() {
+		StringBuilder html = new StringBuilder("<html><head><title>Parse benchmark</title></head><body>\r\n");
+		for (int i = 0; i < SYNTHETIC_BLOCKS; i++) {
+			html.append("<div class=\"item row-").append(i % 7).append("\" id=\"item").append(i)
+					.append("\" data-index=").append(i).append(">\r\n");
+			html.append("  <!-- item ").append(i).append(" -->\r\n");
+			html.append("  <h2><a href=\"/items/").append(i).append("?ref=list&amp;page=").append(i / 50)
+					.append("\" title='Item ").append(i).append("'>Item &quot;").append(i)
+					.append("&quot;</a></h2>\r\n");
+			html.append("  <p>Lorem ipsum dolor sit amet, consectetur adipiscing elit &mdash; sed do eiusmod ")
+					.append("tempor incididunt ut labore et dolore magna aliqua.<br/>Ut enim ad minim veniam.</p>\r\n");
+			html.append("  <ul><li>one<li>two<li>three &lt; four</ul>\r\n");
+			html.append("  <img src=\"/img/").append(i).append(".png\" alt=\"\" width=32 height=32>\r\n");
+			html.append("</div>\r\n");
+		}
+		html.append("</body></html>");
+		return html.toString();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+    GNU GENERAL LICENSE
+    Copyright (C) 2006 The Lobo Project. Copyright (C) 2014 - 2016 Lobo Evolution
+
+    This program is free software; you can redistribute it and/or
+    modify it under the terms of the GNU General Public
+    License as published by the Free Software Foundation; either
+    verion 2 of the License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    General License for more details.
+
+    You should have received a copy of the GNU General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+
+    Contact info: lobochief@users.sourceforge.net; ivan.difrancesco@yahoo.it
+ */
+package org.lobobrowser.cobra_testing;
+
+import java.io.StringReader;
+
+import org.lobobrowser.html.domimpl.HTMLDocumentImpl;
+import org.lobobrowser.html.domimpl.HTMLElementImpl;
+import org.lobobrowser.html.parser.DocumentBuilderImpl;
+import org.lobobrowser.html.parser.InputSourceImpl;
+import org.lobobrowser.html.test.SimpleUserAgentContext;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks the cascade of selectors that mix sibling combinators with
+ * descendant and child combinators, whose sibling compounds are not
+ * ancestors of the subject, and that query selectors ignore the case of ids
+ * and classes whether or not they are looked up in the document indexes.
+ */
+public class SelectorCascadeTest {
+
+	/** The document. */
+	private static final String HTML = "<html><head><style>"
+			+ "h1 + div span { color: red }\n"
+			+ "h2 ~ div > em { color: blue }\n"
+			+ "</style></head><body>"
+			+ "<h1>a</h1><div><p><span id='adjacent'>matches</span></p></div>"
+			+ "<div><span id='notAdjacent'>does not match</span></div>"
+			+ "<h2>b</h2><p>x</p><div><em id='general'>matches</em><b><em id='notChild'>does not match</em></b></div>"
+			+ "<div><em id='generalFurther'>matches</em></div>"
+			+ "<section id='scope'><i id='mixedId' class='MixedClass'>a</i>"
+			+ "<i id='Twice' class='twice'>b</i><i id='twice' class='Twice'>c</i></section>"
+			+ "</body></html>";
+
+	public static void main(String[] args) throws Exception {
+		DocumentBuilderImpl builder = new DocumentBuilderImpl(new SimpleUserAgentContext());
+		HTMLDocumentImpl document = (HTMLDocumentImpl) builder
+				.parse(new InputSourceImpl(new StringReader(HTML), "http://localhost/"));
+		int failures = 0;
+		failures += check(document, "adjacent", "red");
+		failures += check(document, "notAdjacent", null);
+		failures += check(document, "general", "blue");
+		failures += check(document, "notChild", null);
+		failures += check(document, "generalFurther", "blue");
+		HTMLElementImpl scope = (HTMLElementImpl) document.getElementById("scope");
+		failures += checkQuery("document #MIXEDID", document.querySelectorAll("#MIXEDID"), 1);
+		failures += checkQuery("document .mixedclass", document.querySelectorAll(".mixedclass"), 1);
+		failures += checkQuery("scope #MixedId", scope.querySelectorAll("#MixedId"), 1);
+		failures += checkQuery("scope .MIXEDCLASS", scope.querySelectorAll(".MIXEDCLASS"), 1);
+		failures += checkQuery("document #TWICE", document.querySelectorAll("#TWICE"), 2);
+		failures += checkQuery("document .TWICE", document.querySelectorAll(".TWICE"), 2);
+		failures += checkQuery("scope #twice", scope.querySelectorAll("#twice"), 2);
+		if (failures > 0) {
+			throw new IllegalStateException(failures + " selector(s) cascaded wrongly");
+		}
+		System.out.println("All selectors cascaded as expected.");
+	}
+
+	/**
+	 * Checks the color an element gets from the style sheet.
+	 *
+	 * @param document
+	 *            the document
+	 * @param id
+	 *            the id of the element
+	 * @param expected
+	 *            the expected color, or null if no rule applies
+	 * @return 1 if the color is wrong, 0 otherwise
+	 */
+	private static int check(HTMLDocumentImpl document, String id, String expected) {
+		HTMLElementImpl element = (HTMLElementImpl) document.getElementById(id);
+		String color = element.getCurrentStyle().getColor();
+		boolean ok = expected == null ? color == null : expected.equals(color);
+		System.out.println((ok ? "OK " : "FAIL ") + id + ": " + color);
+		return ok ? 0 : 1;
+	}
+
+	/**
+	 * Checks the number of elements a query selects.
+	 *
+	 * @param query
+	 *            a description of the query
+	 * @param nodes
+	 *            the selected nodes
+	 * @param expected
+	 *            the expected number of nodes
+	 * @return 1 if the number is wrong, 0 otherwise
+	 */
+	private static int checkQuery(String query, NodeList nodes, int expected) {
+		boolean ok = nodes.getLength() == expected;
+		System.out.println((ok ? "OK " : "FAIL ") + query + ": " + nodes.getLength());
+		return ok ? 0 : 1;
+	}
+}